@@ -62,6 +62,11 @@ public class SimulatorConfig {
    */
   private static String dpEndpoint;
 
+  /**
+   * Whether the messages for the simulator's own /to-dc and /to-dp are delivered in-process
+   */
+  private static boolean inProcessDelivery;
+
   /**
    * The scheme component of the sender participant id.
    * <br> The scheme used in TOOP is iso6523-actorid-upis
@@ -88,8 +93,188 @@ public class SimulatorConfig {
    * when in DP mode
    */
   private static boolean dpResponseAuto = true;
+
+  /**
+   * The number of worker threads that create the automatic DP responses
+   */
+  private static int dpResponseWorkers;
+
+  /**
+   * The maximum number of requests waiting for an automatic DP response
+   */
+  private static int dpResponseQueueSize;
+
+  /**
+   * The maximum time in seconds to wait for the pending DP responses at shutdown
+   */
+  private static int dpResponseDrainTimeout;
+
+  /**
+   * The maximum number of DP responses kept in the response cache
+   */
+  private static int dpResponseCacheSize;
+
+  /**
+   * The maximum number of DP responses posted to one connector endpoint at the same time
+   */
+  private static int dpDeliveryConcurrency;
+
+  /**
+   * The maximum number of attempts to deliver a DP response
+   */
+  private static int dpDeliveryMaxAttempts;
+
+  /**
+   * The delay in milliseconds before the first retry of a DP response
+   */
+  private static int dpDeliveryRetryBackoff;
+
+  /**
+   * The maximum number of undelivered DP responses
+   */
+  private static int dpDeliveryQueueSize;
+
+  /**
+   * The distribution of the DP response delays
+   */
+  private static String dpLatency;
+
+  /**
+   * The delay of the DP responses in milliseconds for the fixed distribution
+   */
+  private static int dpLatencyFixed;
+
+  /**
+   * The shortest delay of the DP responses in milliseconds for the uniform distribution
+   */
+  private static int dpLatencyMin;
+
+  /**
+   * The longest delay of the DP responses in milliseconds for the uniform distribution
+   */
+  private static int dpLatencyMax;
+
+  /**
+   * The median delay of the DP responses in milliseconds for the lognormal distribution
+   */
+  private static int dpLatencyMedian;
+
+  /**
+   * The spread of the DP response delays for the lognormal distribution
+   */
+  private static double dpLatencySigma;
+
+  /**
+   * The share of the requests the DP answers with an error response
+   */
+  private static double dpErrorRate;
+
+  /**
+   * The share of the requests the DP doesn't answer
+   */
+  private static double dpTimeoutRate;
+
+  /**
+   * The number of threads that process the messages received on /to-dc
+   */
+  private static int dcIngestWorkers;
+
+  /**
+   * The maximum number of /to-dc messages waiting for a thread
+   */
+  private static int dcIngestQueueSize;
+
+  /**
+   * The maximum number of /to-dc messages in flight
+   */
+  private static int dcMaxInflight;
+
+  /**
+   * The maximum time (seconds) to wait for the pending /to-dc messages at shutdown
+   */
+  private static int dcIngestDrainTimeout;
+
+  /**
+   * The maximum number of sent DC requests waiting for a response
+   */
+  private static int correlationMaxSize;
+
+  /**
+   * The time in seconds after which a DC request without a response is forgotten
+   */
+  private static int correlationExpiry;
+
+  /**
+   * The total time (seconds) the shutdown waits for the pending work of all the components
+   */
+  private static int shutdownTimeout;
   private static String gatewayEndpoint = "http://gw-freedonia.dev.exchange.toop.eu:9082/holodeckb2b/as4";
 
+  /**
+   * Whether the DSD query results are computed upfront
+   */
+  private static boolean dsdPrecompute = true;
+
+  /**
+   * The maximum number of DSD query results that are cached
+   */
+  private static int dsdCacheSize;
+
+  /**
+   * Whether the SMP service metadata is decoded on demand from the snapshot
+   */
+  private static boolean smpLazyLoad = true;
+
+  /**
+   * Whether the discovery directory is watched and reloaded on change
+   */
+  private static boolean discoveryWatch = true;
+
+  /**
+   * The maximum number of pooled outbound HTTP connections to one host
+   */
+  private static int httpMaxConnectionsPerRoute;
+
+  /**
+   * The maximum number of pooled outbound HTTP connections
+   */
+  private static int httpMaxConnectionsTotal;
+
+  /**
+   * The connect timeout of the outbound HTTP calls in milliseconds
+   */
+  private static int httpConnectTimeout;
+
+  /**
+   * The read timeout of the outbound HTTP calls in milliseconds
+   */
+  private static int httpSocketTimeout;
+
+  /**
+   * Whether the messages crossing the simulator are recorded into the journal
+   */
+  private static boolean recorderEnabled;
+
+  /**
+   * The directory of the journal segments
+   */
+  private static String recorderDirectory;
+
+  /**
+   * The size of a journal segment in megabytes
+   */
+  private static int recorderSegmentSize;
+
+  /**
+   * The maximum number of journal segments kept
+   */
+  private static int recorderMaxSegments;
+
+  /**
+   * The maximum number of messages waiting for the journal writer
+   */
+  private static int recorderQueueSize;
+
   static {
     Config conf = Util.resolveConfiguration(ToopSimulatorResources.getSimulatorConfResource(), true);
 
@@ -102,6 +287,7 @@ public class SimulatorConfig {
     connectorPort = conf.getInt("toop-simulator.connectorPort");
     dcEndpoint = conf.getString("toop-simulator.dcEndpoint");
     dpEndpoint = conf.getString("toop-simulator.dpEndpoint");
+    inProcessDelivery = conf.getBoolean("toop-simulator.inProcessDelivery");
     senderScheme = conf.getString("toop-simulator.senderScheme");
     sender = conf.getString("toop-simulator.sender");
 
@@ -109,18 +295,94 @@ public class SimulatorConfig {
     receiver = conf.getString("toop-simulator.receiver");
 
     dpResponseAuto = conf.getBoolean("toop-simulator.dpResponseAuto");
+    dpResponseWorkers = conf.getInt("toop-simulator.dpResponseWorkers");
+    dpResponseQueueSize = conf.getInt("toop-simulator.dpResponseQueueSize");
+    dpResponseDrainTimeout = conf.getInt("toop-simulator.dpResponseDrainTimeout");
+    dpResponseCacheSize = conf.getInt("toop-simulator.dpResponseCacheSize");
+    dpDeliveryConcurrency = conf.getInt("toop-simulator.dpDeliveryConcurrency");
+    dpDeliveryMaxAttempts = conf.getInt("toop-simulator.dpDeliveryMaxAttempts");
+    dpDeliveryRetryBackoff = conf.getInt("toop-simulator.dpDeliveryRetryBackoff");
+    dpDeliveryQueueSize = conf.getInt("toop-simulator.dpDeliveryQueueSize");
+    dpLatency = conf.getString("toop-simulator.dpLatency");
+    dpLatencyFixed = conf.getInt("toop-simulator.dpLatencyFixed");
+    dpLatencyMin = conf.getInt("toop-simulator.dpLatencyMin");
+    dpLatencyMax = conf.getInt("toop-simulator.dpLatencyMax");
+    dpLatencyMedian = conf.getInt("toop-simulator.dpLatencyMedian");
+    dpLatencySigma = conf.getDouble("toop-simulator.dpLatencySigma");
+    dpErrorRate = conf.getDouble("toop-simulator.dpErrorRate");
+    dpTimeoutRate = conf.getDouble("toop-simulator.dpTimeoutRate");
+    dcIngestWorkers = conf.getInt("toop-simulator.dcIngestWorkers");
+    dcIngestQueueSize = conf.getInt("toop-simulator.dcIngestQueueSize");
+    dcMaxInflight = conf.getInt("toop-simulator.dcMaxInflight");
+    dcIngestDrainTimeout = conf.getInt("toop-simulator.dcIngestDrainTimeout");
+    correlationMaxSize = conf.getInt("toop-simulator.correlationMaxSize");
+    correlationExpiry = conf.getInt("toop-simulator.correlationExpiry");
+    shutdownTimeout = conf.getInt("toop-simulator.shutdownTimeout");
 
     mockGateway = conf.getBoolean("toop-simulator.MEM.mockGateway");
     gatewayEndpoint = conf.getString("toop-simulator.MEM.gatewayEndpoint");
 
+    dsdPrecompute = conf.getBoolean("toop-simulator.discovery.dsdPrecompute");
+    dsdCacheSize = conf.getInt("toop-simulator.discovery.dsdCacheSize");
+    smpLazyLoad = conf.getBoolean("toop-simulator.discovery.smpLazyLoad");
+    discoveryWatch = conf.getBoolean("toop-simulator.discovery.watch");
+
+    httpMaxConnectionsPerRoute = conf.getInt("toop-simulator.http.maxConnectionsPerRoute");
+    httpMaxConnectionsTotal = conf.getInt("toop-simulator.http.maxConnectionsTotal");
+    httpConnectTimeout = conf.getInt("toop-simulator.http.connectTimeout");
+    httpSocketTimeout = conf.getInt("toop-simulator.http.socketTimeout");
+
+    recorderEnabled = conf.getBoolean("toop-simulator.recorder.enabled");
+    recorderDirectory = conf.getString("toop-simulator.recorder.directory");
+    recorderSegmentSize = conf.getInt("toop-simulator.recorder.segmentSize");
+    recorderMaxSegments = conf.getInt("toop-simulator.recorder.maxSegments");
+    recorderQueueSize = conf.getInt("toop-simulator.recorder.queueSize");
+
     LOGGER.debug("mode: " + mode);
     LOGGER.debug("dcEndpoint: " + dcEndpoint);
     LOGGER.debug("dpEndpoint: " + dpEndpoint);
+    LOGGER.debug("inProcessDelivery: " + inProcessDelivery);
     LOGGER.debug("sender: " + sender);
     LOGGER.debug("receiver: " + receiver);
     LOGGER.debug("dpResponseAuto: " + dpResponseAuto);
+    LOGGER.debug("dpResponseWorkers: " + dpResponseWorkers);
+    LOGGER.debug("dpResponseQueueSize: " + dpResponseQueueSize);
+    LOGGER.debug("dpResponseDrainTimeout: " + dpResponseDrainTimeout);
+    LOGGER.debug("dpResponseCacheSize: " + dpResponseCacheSize);
+    LOGGER.debug("dpDeliveryConcurrency: " + dpDeliveryConcurrency);
+    LOGGER.debug("dpDeliveryMaxAttempts: " + dpDeliveryMaxAttempts);
+    LOGGER.debug("dpDeliveryRetryBackoff: " + dpDeliveryRetryBackoff);
+    LOGGER.debug("dpDeliveryQueueSize: " + dpDeliveryQueueSize);
+    LOGGER.debug("dpLatency: " + dpLatency);
+    LOGGER.debug("dpLatencyFixed: " + dpLatencyFixed);
+    LOGGER.debug("dpLatencyMin: " + dpLatencyMin);
+    LOGGER.debug("dpLatencyMax: " + dpLatencyMax);
+    LOGGER.debug("dpLatencyMedian: " + dpLatencyMedian);
+    LOGGER.debug("dpLatencySigma: " + dpLatencySigma);
+    LOGGER.debug("dpErrorRate: " + dpErrorRate);
+    LOGGER.debug("dpTimeoutRate: " + dpTimeoutRate);
+    LOGGER.debug("dcIngestWorkers: " + dcIngestWorkers);
+    LOGGER.debug("dcIngestQueueSize: " + dcIngestQueueSize);
+    LOGGER.debug("dcMaxInflight: " + dcMaxInflight);
+    LOGGER.debug("dcIngestDrainTimeout: " + dcIngestDrainTimeout);
+    LOGGER.debug("correlationMaxSize: " + correlationMaxSize);
+    LOGGER.debug("correlationExpiry: " + correlationExpiry);
+    LOGGER.debug("shutdownTimeout: " + shutdownTimeout);
     LOGGER.debug("connectorPort: " + connectorPort);
     LOGGER.debug("mockGateway: " + mockGateway);
+    LOGGER.debug("dsdPrecompute: " + dsdPrecompute);
+    LOGGER.debug("dsdCacheSize: " + dsdCacheSize);
+    LOGGER.debug("smpLazyLoad: " + smpLazyLoad);
+    LOGGER.debug("discoveryWatch: " + discoveryWatch);
+    LOGGER.debug("httpMaxConnectionsPerRoute: " + httpMaxConnectionsPerRoute);
+    LOGGER.debug("httpMaxConnectionsTotal: " + httpMaxConnectionsTotal);
+    LOGGER.debug("httpConnectTimeout: " + httpConnectTimeout);
+    LOGGER.debug("httpSocketTimeout: " + httpSocketTimeout);
+    LOGGER.debug("recorderEnabled: " + recorderEnabled);
+    LOGGER.debug("recorderDirectory: " + recorderDirectory);
+    LOGGER.debug("recorderSegmentSize: " + recorderSegmentSize);
+    LOGGER.debug("recorderMaxSegments: " + recorderMaxSegments);
+    LOGGER.debug("recorderQueueSize: " + recorderQueueSize);
   }
 
   /**
@@ -168,6 +430,16 @@ public class SimulatorConfig {
     return dpEndpoint;
   }
 
+  /**
+   * Whether the messages for the simulator's own /to-dc and /to-dp (the default endpoints) are handed
+   * over in-process instead of being posted over the loopback interface. Turn it off to test with HTTP
+   *
+   * @return the in process delivery
+   */
+  public static boolean isInProcessDelivery() {
+    return inProcessDelivery;
+  }
+
   /**
    * The ID of this instance as DC or DP
    *
@@ -309,4 +581,332 @@ public class SimulatorConfig {
   public static String getGatewayEndpoint() {
     return gatewayEndpoint;
   }
+
+  /**
+   * Whether the results of the DSD queries are computed at startup
+   *
+   * @return the boolean
+   */
+  public static boolean isDsdPrecompute() {
+    return dsdPrecompute;
+  }
+
+  /**
+   * The maximum number of DSD query results kept in the cache
+   *
+   * @return the dsd cache size
+   */
+  public static int getDsdCacheSize() {
+    return dsdCacheSize;
+  }
+
+  /**
+   * Whether the SMP service metadata entries are decoded on demand (only possible with an SMP snapshot)
+   *
+   * @return the boolean
+   */
+  public static boolean isSmpLazyLoad() {
+    return smpLazyLoad;
+  }
+
+  /**
+   * Whether the files in the discovery directory are watched and reloaded when they change
+   *
+   * @return the boolean
+   */
+  public static boolean isDiscoveryWatch() {
+    return discoveryWatch;
+  }
+
+  /**
+   * The number of worker threads that create the automatic DP responses
+   *
+   * @return the dp response workers
+   */
+  public static int getDpResponseWorkers() {
+    return dpResponseWorkers;
+  }
+
+  /**
+   * The maximum number of requests waiting for an automatic DP response, the requests
+   * beyond it are rejected with HTTP 503
+   *
+   * @return the dp response queue size
+   */
+  public static int getDpResponseQueueSize() {
+    return dpResponseQueueSize;
+  }
+
+  /**
+   * The maximum time in seconds to wait for the pending automatic DP responses at shutdown
+   *
+   * @return the dp response drain timeout
+   */
+  public static int getDpResponseDrainTimeout() {
+    return dpResponseDrainTimeout;
+  }
+
+  /**
+   * The maximum number of DP responses kept in the response cache (0 disables the cache)
+   *
+   * @return the dp response cache size
+   */
+  public static int getDpResponseCacheSize() {
+    return dpResponseCacheSize;
+  }
+
+  /**
+   * The maximum number of DP responses posted to one connector endpoint at the same time
+   *
+   * @return the dp delivery concurrency
+   */
+  public static int getDpDeliveryConcurrency() {
+    return dpDeliveryConcurrency;
+  }
+
+  /**
+   * The maximum number of attempts to deliver a DP response, before it is moved to the dead-letter list
+   *
+   * @return the dp delivery max attempts
+   */
+  public static int getDpDeliveryMaxAttempts() {
+    return dpDeliveryMaxAttempts;
+  }
+
+  /**
+   * The delay in milliseconds before the first retry of a DP response, doubled for every further retry
+   *
+   * @return the dp delivery retry backoff
+   */
+  public static int getDpDeliveryRetryBackoff() {
+    return dpDeliveryRetryBackoff;
+  }
+
+  /**
+   * The maximum number of undelivered DP responses, the responses beyond it are dead-lettered
+   *
+   * @return the dp delivery queue size
+   */
+  public static int getDpDeliveryQueueSize() {
+    return dpDeliveryQueueSize;
+  }
+
+  /**
+   * The distribution of the DP response delays, one of none, fixed, uniform and lognormal
+   *
+   * @return the dp latency
+   */
+  public static String getDpLatency() {
+    return dpLatency;
+  }
+
+  /**
+   * The delay of the DP responses in milliseconds for the fixed distribution
+   *
+   * @return the dp latency fixed
+   */
+  public static int getDpLatencyFixed() {
+    return dpLatencyFixed;
+  }
+
+  /**
+   * The shortest delay of the DP responses in milliseconds for the uniform distribution
+   *
+   * @return the dp latency min
+   */
+  public static int getDpLatencyMin() {
+    return dpLatencyMin;
+  }
+
+  /**
+   * The longest delay of the DP responses in milliseconds for the uniform distribution
+   *
+   * @return the dp latency max
+   */
+  public static int getDpLatencyMax() {
+    return dpLatencyMax;
+  }
+
+  /**
+   * The median delay of the DP responses in milliseconds for the lognormal distribution
+   *
+   * @return the dp latency median
+   */
+  public static int getDpLatencyMedian() {
+    return dpLatencyMedian;
+  }
+
+  /**
+   * The standard deviation of the logarithm of the DP response delays for the lognormal distribution
+   *
+   * @return the dp latency sigma
+   */
+  public static double getDpLatencySigma() {
+    return dpLatencySigma;
+  }
+
+  /**
+   * The share of the requests (0.0 to 1.0) the DP answers with an error response
+   *
+   * @return the dp error rate
+   */
+  public static double getDpErrorRate() {
+    return dpErrorRate;
+  }
+
+  /**
+   * The share of the requests (0.0 to 1.0) the DP doesn't answer at all
+   *
+   * @return the dp timeout rate
+   */
+  public static double getDpTimeoutRate() {
+    return dpTimeoutRate;
+  }
+
+  /**
+   * The number of threads that process the messages received on /to-dc
+   *
+   * @return the dc ingest workers
+   */
+  public static int getDcIngestWorkers() {
+    return dcIngestWorkers;
+  }
+
+  /**
+   * The maximum number of /to-dc messages waiting for a thread, the messages beyond it are rejected with HTTP 503
+   *
+   * @return the dc ingest queue size
+   */
+  public static int getDcIngestQueueSize() {
+    return dcIngestQueueSize;
+  }
+
+  /**
+   * The maximum number of /to-dc messages being read, waiting or being processed. The requests beyond it
+   * are rejected with HTTP 429 before their body is read. 0 means no limit
+   *
+   * @return the dc max inflight
+   */
+  public static int getDcMaxInflight() {
+    return dcMaxInflight;
+  }
+
+  /**
+   * The maximum time in seconds to wait for the pending /to-dc messages at shutdown
+   *
+   * @return the dc ingest drain timeout
+   */
+  public static int getDcIngestDrainTimeout() {
+    return dcIngestDrainTimeout;
+  }
+
+  /**
+   * The maximum number of sent DC requests waiting for a response, the oldest ones are forgotten
+   *
+   * @return the correlation max size
+   */
+  public static int getCorrelationMaxSize() {
+    return correlationMaxSize;
+  }
+
+  /**
+   * The time in seconds after which a DC request without a response is forgotten
+   *
+   * @return the correlation expiry
+   */
+  public static int getCorrelationExpiry() {
+    return correlationExpiry;
+  }
+
+  /**
+   * The total time in seconds the shutdown waits for the pending work. It is shared by all the
+   * components, each of them waits at most the remaining time (and at most its own drain timeout)
+   *
+   * @return the shutdown timeout
+   */
+  public static int getShutdownTimeout() {
+    return shutdownTimeout;
+  }
+
+  /**
+   * The maximum number of pooled outbound HTTP connections to one host
+   *
+   * @return the max connections per route
+   */
+  public static int getHttpMaxConnectionsPerRoute() {
+    return httpMaxConnectionsPerRoute;
+  }
+
+  /**
+   * The maximum number of pooled outbound HTTP connections
+   *
+   * @return the max connections in total
+   */
+  public static int getHttpMaxConnectionsTotal() {
+    return httpMaxConnectionsTotal;
+  }
+
+  /**
+   * The connect timeout of the outbound HTTP calls in milliseconds
+   *
+   * @return the connect timeout
+   */
+  public static int getHttpConnectTimeout() {
+    return httpConnectTimeout;
+  }
+
+  /**
+   * The read timeout of the outbound HTTP calls in milliseconds
+   *
+   * @return the socket timeout
+   */
+  public static int getHttpSocketTimeout() {
+    return httpSocketTimeout;
+  }
+
+  /**
+   * Whether the messages crossing the simulator (/to-dc, /to-dp, the mocked gateway and the
+   * submissions to the connector) are recorded into the journal
+   *
+   * @return the recorder enabled
+   */
+  public static boolean isRecorderEnabled() {
+    return recorderEnabled;
+  }
+
+  /**
+   * The directory of the journal segments
+   *
+   * @return the recorder directory
+   */
+  public static String getRecorderDirectory() {
+    return recorderDirectory;
+  }
+
+  /**
+   * The size of a journal segment in megabytes, a new segment is started when it is full
+   *
+   * @return the recorder segment size
+   */
+  public static int getRecorderSegmentSize() {
+    return recorderSegmentSize;
+  }
+
+  /**
+   * The maximum number of journal segments kept, the oldest ones are deleted (0 means no limit)
+   *
+   * @return the recorder max segments
+   */
+  public static int getRecorderMaxSegments() {
+    return recorderMaxSegments;
+  }
+
+  /**
+   * The maximum number of messages waiting for the journal writer, the messages beyond it are not recorded
+   *
+   * @return the recorder queue size
+   */
+  public static int getRecorderQueueSize() {
+    return recorderQueueSize;
+  }
 }
@@ -132,6 +132,10 @@ public class ToopSimulatorMain {
     TCAPIConfig.setDDServiceGroupHrefProvider(DiscoveryProvider.getInstance());
     TCAPIConfig.setDDServiceMetadataProvider(DiscoveryProvider.getInstance());
     TCAPIConfig.setDSDDatasetResponseProvider(DiscoveryProvider.getInstance());
+
+    if (SimulatorConfig.isDiscoveryWatch()) {
+      DiscoveryProvider.getInstance().startWatching();
+    }
   }
 
 }
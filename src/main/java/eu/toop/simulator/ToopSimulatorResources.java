@@ -80,5 +80,15 @@ public class ToopSimulatorResources {
     Util.transferResourceToDirectory("datasets/document/attachments/03a74657-c4c9-4a26-92ac-abf37e36c6ae.pdf", "datasets/document/attachments");
     Util.transferResourceToDirectory("datasets/document/attachments/dummy.pdf", "datasets/document/attachments");
     Util.transferResourceToDirectory("datasets/document/attachments/dummy.jpg", "datasets/document/attachments");
+
+    //the bundled snapshot only matches the bundled YAML files, don't copy it next to the edited ones
+    final boolean copySnapshot = !new File("discovery/endpointhrefs.yml").exists() && !new File("discovery/serviceMetadataTypes.yml").exists() &&
+        Util.class.getClassLoader().getResource("discovery/smp-snapshot.bin") != null;
+    Util.transferResourceToDirectory("discovery/directory.xml", "discovery");
+    Util.transferResourceToDirectory("discovery/endpointhrefs.yml", "discovery");
+    Util.transferResourceToDirectory("discovery/serviceMetadataTypes.yml", "discovery");
+    //copied after the YAML files, so that it is not older than them
+    if (copySnapshot)
+      Util.transferResourceToDirectory("discovery/smp-snapshot.bin", "discovery");
   }
 }
@@ -62,6 +62,15 @@ public class Cli {
           }
 
 
+          case SimulatorCliHelper.CMD_LOAD_DC_REQUESTS: {
+            if (SimulatorConfig.getMode() == SimulationMode.DC) {
+              CommandProcessor.processLoadDCRequests(command);
+            } else {
+              System.out.println("Ignoring command in nonDC mode");
+            }
+            break;
+          }
+
           case SimulatorCliHelper.CMD_SEND_DP_RESPONSE: {
             if (SimulatorConfig.getMode() == SimulationMode.DP) {
               CommandProcessor.processSendDPResponse(command);
@@ -71,6 +80,14 @@ public class Cli {
             break;
           }
 
+          case SimulatorCliHelper.CMD_LATENCY:
+            CommandProcessor.processLatency(command);
+            break;
+
+          case SimulatorCliHelper.CMD_JOURNAL:
+            CommandProcessor.processJournal(command);
+            break;
+
           case SimulatorCliHelper.CMD_QUIT:
             System.exit(0);
             break;
@@ -18,8 +18,19 @@
  */
 package eu.toop.simulator.cli;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,8 +40,12 @@ import com.helger.commons.io.stream.StreamHelper;
 
 import eu.toop.simulator.SimulatorConfig;
 import eu.toop.simulator.ToopSimulatorMain;
+import eu.toop.simulator.mock.CorrelationTracker;
+import eu.toop.simulator.mock.MessageRecorder;
 import eu.toop.simulator.mock.MockDC;
 import eu.toop.simulator.mock.MockDP;
+import eu.toop.simulator.mock.TCMessageEntity;
+import eu.toop.simulator.util.MessageJournal;
 
 /**
  * Process the command line input and executes the related services.
@@ -121,6 +136,73 @@ public class CommandProcessor {
 
 
 
+  /**
+   * Process the load-dc-requests command
+   *
+   * @param command the input command
+   * @throws InterruptedException if interrupted while waiting for the requests
+   */
+  public static void processLoadDCRequests(CliCommand command) throws InterruptedException {
+    ValueEnforcer.notNull(command, "Empty command list");
+
+    //-n count [-c concurrency] [-rate requests per second] [-f files...] [-s sender] [-r receiver] [-d doctypes... | -pd predefinedDocTypes... | -pd all]
+
+    final int count = command.hasOption("n") ? Integer.parseInt(command.getOption("n").get(0)) : 100;
+    final int concurrency = command.hasOption("c") ? Integer.parseInt(command.getOption("c").get(0)) : 1;
+    final double rate = command.hasOption("rate") ? Double.parseDouble(command.getOption("rate").get(0)) : 0;
+
+    String sender = SimulatorConfig.getSender();
+    if (command.hasOption("s")) {
+      sender = command.getOption("s").get(0);
+    }
+    String receiver = SimulatorConfig.getReceiver();
+    if (command.hasOption("r")) {
+      receiver = command.getOption("r").get(0);
+    }
+
+    final List<String> docTypes = new ArrayList<>();
+    if (command.hasOption("d")) {
+      docTypes.addAll(command.getOption("d"));
+    } else if (command.hasOption("pd")) {
+      for (final String sIndex : command.getOption("pd")) {
+        if (sIndex.equals("all")) {
+          docTypes.addAll(Arrays.asList(dcPredefinedDoctypes));
+          continue;
+        }
+        final int index = Integer.parseInt(sIndex) - 1; //counting starts from 1.
+        if (index < 0 || index >= dcPredefinedDoctypes.length) {
+          throw new IllegalArgumentException("invalid predefined doctype index");
+        }
+        docTypes.add(dcPredefinedDoctypes[index]);
+      }
+    }
+    if (docTypes.isEmpty()) {
+      docTypes.add("RegisteredOrganization::REGISTERED_ORGANIZATION_TYPE::CONCEPT##CCCEV::toop-edm:v2.1");
+    }
+
+    final List<String> files = new ArrayList<>();
+    if (command.hasOption("f")) {
+      files.addAll(command.getOption("f"));
+    }
+    if (files.isEmpty()) {
+      //the default request
+      files.add(null);
+    }
+
+    //every combination is built once and submitted again and again
+    final List<TCMessageEntity> requests = new ArrayList<>();
+    for (final String file : files) {
+      for (final String docType : docTypes) {
+        requests.add(MockDC.createDCRequest(sender, receiver, docType, file));
+      }
+    }
+
+    System.out.println("Sending " + count + " requests (" + requests.size() + " variants) with " + concurrency + " threads" +
+        (rate > 0 ? " at " + rate + " requests/s" : ""));
+    final LoadGenerator.Report report = new LoadGenerator(MockDC::submitDCRequest, requests, count, concurrency, rate).run();
+    System.out.println(report);
+  }
+
   /**
    * Process the send-dc-request command
    *
@@ -172,6 +254,85 @@ public class CommandProcessor {
     MockDP.sendDPResponse(sender, receiver, docType, file);
   }
 
+  /**
+   * Process the latency command
+   *
+   * @param command the input command
+   */
+  public static void processLatency(CliCommand command) {
+    ValueEnforcer.notNull(command, "Empty command list");
+
+    //[-reset]
+    final CorrelationTracker tracker = MockDC.getCorrelationTracker();
+    System.out.println(tracker);
+    if (command.hasOption("reset")) {
+      tracker.reset();
+      System.out.println("The measurements were reset");
+    }
+  }
+
+  /**
+   * Process the journal command
+   *
+   * @param command the input command
+   * @throws IOException if the extracted message can't be written
+   */
+  public static void processJournal(CliCommand command) throws IOException {
+    ValueEnforcer.notNull(command, "Empty command list");
+
+    //[-dir directory] [-c channel] [-n count] | [-dir directory] -x sequence [-o file]
+    final File directory = new File(command.hasOption("dir") ? command.getOption("dir").get(0) : SimulatorConfig.getRecorderDirectory());
+    if (MessageJournal.listSegments(directory).isEmpty()) {
+      System.out.println("There is no journal in " + directory.getAbsolutePath());
+      return;
+    }
+
+    if (command.hasOption("x")) {
+      final long sequence = Long.parseLong(command.getOption("x").get(0));
+      final AtomicReference<MessageJournal.Record> found = new AtomicReference<>();
+      MessageJournal.read(directory, record -> {
+        if (record.getSequence() == sequence)
+          found.set(record);
+      });
+      if (found.get() == null) {
+        System.out.println("There is no message " + sequence + " in the journal");
+        return;
+      }
+
+      final byte[] payload = found.get().getPayload();
+      if (command.hasOption("o")) {
+        final File file = new File(command.getOption("o").get(0));
+        Files.write(file.toPath(), payload);
+        System.out.println("Wrote " + payload.length + " bytes to " + file.getAbsolutePath());
+      } else {
+        System.out.println(new String(payload, StandardCharsets.UTF_8));
+      }
+      return;
+    }
+
+    final MessageRecorder.EChannel channel = command.hasOption("c") ?
+        MessageRecorder.EChannel.valueOf(command.getOption("c").get(0).toUpperCase(Locale.ROOT)) : null;
+    final int count = command.hasOption("n") ? Integer.parseInt(command.getOption("n").get(0)) : 20;
+
+    //only the last messages are kept
+    final ArrayDeque<String> lines = new ArrayDeque<>();
+    final AtomicLong matching = new AtomicLong();
+    MessageJournal.read(directory, record -> {
+      final MessageRecorder.EChannel recordChannel = MessageRecorder.EChannel.getFromIDOrNull(record.getChannel());
+      if (channel != null && recordChannel != channel)
+        return;
+      matching.incrementAndGet();
+      lines.add(String.format("%8d  %-24s  %-13s  %9d  %s", record.getSequence(), Instant.ofEpochMilli(record.getTimestamp()),
+          recordChannel == null ? Byte.toString(record.getChannel()) : recordChannel.name(), record.getPayloadLength(), record.getMetadata()));
+      if (lines.size() > count)
+        lines.removeFirst();
+    });
+
+    System.out.println(String.format("%8s  %-24s  %-13s  %9s  %s", "#", "Time", "Channel", "Bytes", "Metadata"));
+    lines.forEach(System.out::println);
+    System.out.println(lines.size() + " of " + matching.get() + " messages in " + directory.getAbsolutePath());
+  }
+
   /**
    * Print help message.
    */
@@ -0,0 +1,228 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.cli;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.json.IJson;
+
+import eu.toop.simulator.mock.DCDPUtil;
+import eu.toop.simulator.mock.TCMessageEntity;
+
+/**
+ * Submits a number of prepared requests with a fixed number of threads, optionally at a
+ * target rate, and measures the latency of every submission.
+ * <p>
+ * The requests are cycled through, so a mix of files and doctypes can be sent. When a rate is
+ * given, every submission has a scheduled start time and its latency is measured from that
+ * time, so a slow target that delays the next submissions shows up in the latencies instead of
+ * silently lowering the rate.
+ */
+public class LoadGenerator {
+
+  /**
+   * Submits a request
+   */
+  @FunctionalInterface
+  public interface ISender {
+    /**
+     * @param request the request
+     * @return the JSON response of the connector
+     * @throws IOException on a transport error or an error status
+     */
+    IJson send(@Nonnull TCMessageEntity request) throws IOException;
+  }
+
+  private final ISender sender;
+  private final List<TCMessageEntity> requests;
+  private final int count;
+  private final int concurrency;
+  private final double rate;
+
+  /**
+   * Create a new generator
+   *
+   * @param sender      submits the requests
+   * @param requests    the requests, cycled through
+   * @param count       the number of submissions
+   * @param concurrency the number of threads that submit the requests
+   * @param rate        the target number of submissions per second, <code>0</code> for as fast as possible
+   */
+  public LoadGenerator(@Nonnull ISender sender, @Nonnull List<TCMessageEntity> requests, int count, int concurrency, double rate) {
+    ValueEnforcer.notNull(sender, "sender");
+    ValueEnforcer.notEmpty(requests, "requests");
+    ValueEnforcer.isGT0(count, "count");
+    ValueEnforcer.isGT0(concurrency, "concurrency");
+    ValueEnforcer.isTrue(rate >= 0, "rate must be >= 0");
+    this.sender = sender;
+    this.requests = requests;
+    this.count = count;
+    this.concurrency = concurrency;
+    this.rate = rate;
+  }
+
+  /**
+   * Submit the requests and wait for all of them
+   *
+   * @return the measurements
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Nonnull
+  public Report run() throws InterruptedException {
+    final long[] latencies = new long[count];
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicReference<String> firstError = new AtomicReference<>();
+    final long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+
+    final AtomicInteger threadIndex = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+      final Thread thread = new Thread(runnable, "load-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    final long start = System.nanoTime();
+    final Callable<Void> worker = () -> {
+      int i;
+      while ((i = next.getAndIncrement()) < count) {
+        long scheduled = System.nanoTime();
+        if (intervalNanos > 0) {
+          scheduled = start + i * intervalNanos;
+          long wait;
+          while ((wait = scheduled - System.nanoTime()) > 0)
+            LockSupport.parkNanos(wait);
+        }
+
+        boolean success;
+        try {
+          success = DCDPUtil.isAccepted(sender.send(requests.get(i % requests.size())));
+          if (!success)
+            firstError.compareAndSet(null, "The connector did not accept the request");
+        } catch (IOException | RuntimeException ex) {
+          success = false;
+          firstError.compareAndSet(null, ex.getMessage());
+        }
+        latencies[i] = System.nanoTime() - scheduled;
+        if (!success)
+          failed.incrementAndGet();
+      }
+      return null;
+    };
+
+    try {
+      //waiting for the futures publishes the latencies written by the workers
+      for (final Future<Void> future : executor.invokeAll(Collections.nCopies(concurrency, worker)))
+        future.get();
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException(ex.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    final long elapsed = System.nanoTime() - start;
+
+    return new Report(latencies, failed.get(), elapsed, firstError.get());
+  }
+
+  /**
+   * The result of a run
+   */
+  public static final class Report {
+    private final long[] sortedLatencies;
+    private final long failed;
+    private final long elapsedNanos;
+    private final String firstError;
+
+    Report(long[] latencies, long failed, long elapsedNanos, String firstError) {
+      this.sortedLatencies = latencies.clone();
+      Arrays.sort(this.sortedLatencies);
+      this.failed = failed;
+      this.elapsedNanos = elapsedNanos;
+      this.firstError = firstError;
+    }
+
+    /**
+     * @return the number of submissions
+     */
+    public int getCount() {
+      return sortedLatencies.length;
+    }
+
+    /**
+     * @return the number of failed submissions
+     */
+    public long getFailedCount() {
+      return failed;
+    }
+
+    /**
+     * @return the duration of the run in milliseconds
+     */
+    public double getElapsedMillis() {
+      return elapsedNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return the number of submissions per second
+     */
+    public double getThroughput() {
+      return sortedLatencies.length / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    /**
+     * @param percentile the percentile, between 0 (exclusive) and 100
+     * @return the latency at the percentile in milliseconds (nearest rank)
+     */
+    public double getLatencyMillis(double percentile) {
+      ValueEnforcer.isTrue(percentile > 0 && percentile <= 100, "percentile must be in (0, 100]");
+      final int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+      return sortedLatencies[Math.max(rank, 1) - 1] / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+      final List<String> lines = new ArrayList<>();
+      lines.add(String.format("Requests: %d (%d failed)", getCount(), failed));
+      lines.add(String.format("Duration: %.1f ms", getElapsedMillis()));
+      lines.add(String.format("Throughput: %.1f requests/s", getThroughput()));
+      lines.add(String.format("Latency: p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms",
+          getLatencyMillis(50), getLatencyMillis(95), getLatencyMillis(99), getLatencyMillis(100)));
+      if (firstError != null)
+        lines.add("First error: " + firstError);
+      return String.join(System.lineSeparator(), lines);
+    }
+  }
+}
@@ -32,6 +32,9 @@ public class SimulatorCliHelper {
   public static final String CMD_HELP = "help";
   public static final String CMD_SEND_DC_REQUEST = "send-dc-request";
   public static final String CMD_SEND_DP_RESPONSE = "send-dp-response";
+  public static final String CMD_LOAD_DC_REQUESTS = "load-dc-requests";
+  public static final String CMD_LATENCY = "latency";
+  public static final String CMD_JOURNAL = "journal";
   public static final String CMD_QUIT = "quit";
   /**
    * Read lines from the console, with input editing.
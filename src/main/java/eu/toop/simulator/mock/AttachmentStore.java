@@ -0,0 +1,152 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.mime.IMimeType;
+import com.helger.commons.mime.MimeTypeDeterminator;
+import com.helger.commons.string.StringHelper;
+
+/**
+ * Keeps the attachments of the cached DP responses off the heap. Each distinct content is
+ * written once to a temporary file and memory-mapped read-only, and its mime type is
+ * determined once. The same content (e.g. the same PDF in several responses) is
+ * stored only once.
+ */
+public class AttachmentStore {
+  /**
+   * The Logger instance
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(AttachmentStore.class);
+
+  private static final class Entry {
+    private final ByteBuffer data;
+    private final IMimeType mimeType;
+
+    private Entry(ByteBuffer data, IMimeType mimeType) {
+      this.data = data;
+      this.mimeType = mimeType;
+    }
+  }
+
+  /**
+   * The stored contents by their SHA-256 digest
+   */
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  private long mappedBytes;
+
+  /**
+   * Get the stored attachment with the given content, store it if it's new
+   *
+   * @param contentID the content id of the attachment
+   * @param bytes     the content
+   * @return the attachment, backed by the memory-mapped content
+   */
+  @Nonnull
+  public ResponseAttachment get(@Nonnull String contentID, @Nonnull byte[] bytes) {
+    final String digest = getDigest(bytes);
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(digest);
+    }
+
+    if (entry == null) {
+      //map outside of the lock, the same content stored twice concurrently is harmless
+      entry = new Entry(map(bytes), MimeTypeDeterminator.getInstance().getMimeTypeFromBytes(bytes));
+      synchronized (this) {
+        final Entry existing = entries.putIfAbsent(digest, entry);
+        if (existing == null)
+          mappedBytes += bytes.length;
+        else
+          entry = existing;
+      }
+    }
+    return ResponseAttachment.of(contentID, entry.mimeType, entry.data);
+  }
+
+  /**
+   * Forget the stored contents. The mappings are released when the attachments that use them are collected
+   */
+  public synchronized void clear() {
+    entries.clear();
+    mappedBytes = 0;
+  }
+
+  /**
+   * @return the number of distinct contents
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the total size of the distinct contents
+   */
+  public synchronized long getMappedBytes() {
+    return mappedBytes;
+  }
+
+  private static ByteBuffer map(byte[] bytes) {
+    try {
+      final Path file = Files.createTempFile("toop-attachment", ".bin");
+      try {
+        Files.write(file, bytes);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+          //the mapping stays valid after the channel is closed
+          return channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes.length);
+        }
+      } finally {
+        try {
+          Files.delete(file);
+        } catch (IOException ex) {
+          //some platforms don't allow deleting a mapped file
+          LOGGER.debug("Couldn't delete " + file + " yet: " + ex.getMessage());
+          file.toFile().deleteOnExit();
+        }
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Couldn't store the attachment: " + ex.getMessage(), ex);
+    }
+  }
+
+  private static String getDigest(byte[] bytes) {
+    try {
+      return StringHelper.getHexEncoded(MessageDigest.getInstance("SHA-256").digest(bytes));
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex.getMessage(), ex);
+    }
+  }
+}
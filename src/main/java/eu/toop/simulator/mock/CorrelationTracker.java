@@ -0,0 +1,297 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.ValueEnforcer;
+
+import eu.toop.simulator.util.LatencyHistogram;
+
+/**
+ * Correlates the requests sent by the simulated DC with the responses that arrive at
+ * <code>/to-dc</code> by the EDM request ID, and measures the time until the connector
+ * accepted a request and the end-to-end time until its response arrived.
+ * <p>
+ * The table holds at most <code>maxSize</code> requests waiting for a response, a request
+ * that had no response for <code>expirySeconds</code> is dropped. When the same request ID
+ * is sent more than once (e.g. by <code>load-dc-requests</code>), the responses are matched
+ * to the sends of that ID in order.
+ */
+public class CorrelationTracker {
+
+  /**
+   * A sent request
+   */
+  public static final class Exchange {
+    private final String requestID;
+    private final long sentNanos;
+    private boolean done;
+
+    private Exchange(String requestID, long sentNanos) {
+      this.requestID = requestID;
+      this.sentNanos = sentNanos;
+    }
+  }
+
+  private final int maxSize;
+  private final long expiryNanos;
+
+  //guarded by this
+  private final Map<String, ArrayDeque<Exchange>> pendingByID = new HashMap<>();
+  private final ArrayDeque<Exchange> pendingInOrder = new ArrayDeque<>();
+  private int pending;
+  private long sent;
+  private long accepted;
+  private long failed;
+  private long responded;
+  private long unmatched;
+  private long expired;
+  private long evicted;
+
+  private final LatencyHistogram acceptanceLatency = new LatencyHistogram();
+  private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+
+  /**
+   * Create a new tracker
+   *
+   * @param maxSize       the maximum number of requests waiting for a response
+   * @param expirySeconds the time after which a request without a response is dropped
+   */
+  public CorrelationTracker(int maxSize, int expirySeconds) {
+    ValueEnforcer.isGT0(maxSize, "maxSize");
+    ValueEnforcer.isGT0(expirySeconds, "expirySeconds");
+    this.maxSize = maxSize;
+    this.expiryNanos = TimeUnit.SECONDS.toNanos(expirySeconds);
+  }
+
+  /**
+   * Record that a request is being submitted to the connector
+   *
+   * @param requestID the EDM request ID
+   * @return the handle to report the outcome of the submission
+   */
+  @Nonnull
+  public synchronized Exchange sent(@Nonnull String requestID) {
+    ValueEnforcer.notNull(requestID, "requestID");
+    final Exchange exchange = new Exchange(requestID, System.nanoTime());
+    pendingByID.computeIfAbsent(requestID, k -> new ArrayDeque<>()).add(exchange);
+    pendingInOrder.add(exchange);
+    ++pending;
+    ++sent;
+    purge(exchange.sentNanos);
+    return exchange;
+  }
+
+  /**
+   * Record that the connector accepted the request. The response may have arrived already.
+   *
+   * @param exchange the handle returned by {@link #sent(String)}
+   */
+  public void accepted(@Nonnull Exchange exchange) {
+    acceptanceLatency.record(System.nanoTime() - exchange.sentNanos);
+    synchronized (this) {
+      ++accepted;
+    }
+  }
+
+  /**
+   * Record that the submission failed, no response is expected
+   *
+   * @param exchange the handle returned by {@link #sent(String)}
+   */
+  public synchronized void failed(@Nonnull Exchange exchange) {
+    ++failed;
+    if (!exchange.done)
+      remove(exchange);
+  }
+
+  /**
+   * Record that a response arrived
+   *
+   * @param requestID   the request ID of the response
+   * @param arrivalNanos the {@link System#nanoTime()} of the arrival
+   * @return <code>true</code> if the response matched a sent request
+   */
+  public boolean responded(@Nullable String requestID, long arrivalNanos) {
+    final Exchange exchange;
+    synchronized (this) {
+      purge(arrivalNanos);
+      final ArrayDeque<Exchange> exchanges = requestID == null ? null : pendingByID.get(requestID);
+      if (exchanges == null) {
+        ++unmatched;
+        return false;
+      }
+      exchange = exchanges.peekFirst();
+      remove(exchange);
+      ++responded;
+    }
+    endToEndLatency.record(arrivalNanos - exchange.sentNanos);
+    return true;
+  }
+
+  //called with the lock held
+  private void remove(Exchange exchange) {
+    exchange.done = true;
+    --pending;
+    final ArrayDeque<Exchange> exchanges = pendingByID.get(exchange.requestID);
+    exchanges.remove(exchange);
+    if (exchanges.isEmpty())
+      pendingByID.remove(exchange.requestID);
+    //it stays in pendingInOrder until it reaches the head
+  }
+
+  //called with the lock held
+  private void purge(long nowNanos) {
+    Exchange head;
+    while ((head = pendingInOrder.peekFirst()) != null) {
+      if (head.done) {
+        pendingInOrder.pollFirst();
+      } else if (nowNanos - head.sentNanos > expiryNanos) {
+        pendingInOrder.pollFirst();
+        remove(head);
+        ++expired;
+      } else if (pending > maxSize) {
+        pendingInOrder.pollFirst();
+        remove(head);
+        ++evicted;
+      } else {
+        break;
+      }
+    }
+    //the handled requests behind a long waiting one are dropped in bulk, so the queue stays bounded too
+    if (pendingInOrder.size() > 2 * maxSize)
+      pendingInOrder.removeIf(exchange -> exchange.done);
+  }
+
+  /**
+   * Forget the pending requests and the measurements
+   */
+  public synchronized void reset() {
+    pendingByID.clear();
+    pendingInOrder.forEach(exchange -> exchange.done = true);
+    pendingInOrder.clear();
+    pending = 0;
+    sent = accepted = failed = responded = unmatched = expired = evicted = 0;
+    acceptanceLatency.reset();
+    endToEndLatency.reset();
+  }
+
+  /**
+   * @return the number of requests waiting for a response
+   */
+  public synchronized int getPendingCount() {
+    purge(System.nanoTime());
+    return pending;
+  }
+
+  /**
+   * @return the maximum number of requests waiting for a response
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @return the time in seconds after which a request without a response is dropped
+   */
+  public long getExpirySeconds() {
+    return TimeUnit.NANOSECONDS.toSeconds(expiryNanos);
+  }
+
+  /**
+   * @return the number of sent requests
+   */
+  public synchronized long getSentCount() {
+    return sent;
+  }
+
+  /**
+   * @return the number of requests accepted by the connector
+   */
+  public synchronized long getAcceptedCount() {
+    return accepted;
+  }
+
+  /**
+   * @return the number of requests that the connector didn't accept
+   */
+  public synchronized long getFailedCount() {
+    return failed;
+  }
+
+  /**
+   * @return the number of responses that matched a request
+   */
+  public synchronized long getRespondedCount() {
+    return responded;
+  }
+
+  /**
+   * @return the number of responses that didn't match a pending request
+   */
+  public synchronized long getUnmatchedCount() {
+    return unmatched;
+  }
+
+  /**
+   * @return the number of requests dropped because they had no response in time
+   */
+  public synchronized long getExpiredCount() {
+    return expired;
+  }
+
+  /**
+   * @return the number of requests dropped because the table was full
+   */
+  public synchronized long getEvictedCount() {
+    return evicted;
+  }
+
+  /**
+   * @return the time from sending a request until the connector accepted it
+   */
+  @Nonnull
+  public LatencyHistogram getAcceptanceLatency() {
+    return acceptanceLatency;
+  }
+
+  /**
+   * @return the time from sending a request until its response arrived
+   */
+  @Nonnull
+  public LatencyHistogram getEndToEndLatency() {
+    return endToEndLatency;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Sent: %d, accepted: %d, failed: %d, responded: %d, waiting: %d, unmatched responses: %d, expired: %d, evicted: %d",
+        getSentCount(), getAcceptedCount(), getFailedCount(), getRespondedCount(), getPendingCount(), getUnmatchedCount(),
+        getExpiredCount(), getEvictedCount()) + System.lineSeparator() +
+        "Connector acceptance: " + acceptanceLatency + System.lineSeparator() +
+        "End-to-end: " + endToEndLatency;
+  }
+}
@@ -19,34 +19,32 @@
 package eu.toop.simulator.mock;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ByteArrayEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.mime.CMimeType;
-import com.helger.httpclient.HttpClientManager;
 import com.helger.httpclient.response.ResponseHandlerJson;
 import com.helger.json.IJson;
+import com.helger.json.IJsonObject;
 import com.helger.json.serialize.JsonWriter;
 import com.helger.json.serialize.JsonWriterSettings;
 
 import eu.toop.connector.api.me.EMEProtocol;
 import eu.toop.connector.api.rest.TCOutgoingMessage;
 import eu.toop.connector.api.rest.TCOutgoingMetadata;
-import eu.toop.connector.api.rest.TCPayload;
 import eu.toop.connector.api.rest.TCRestJAXB;
 import eu.toop.simulator.SimulatorConfig;
+import eu.toop.simulator.util.SimulatorHttpClient;
 
 /**
  * A utility class that contains methods for submitting requests/responses to the connector
@@ -57,6 +55,8 @@ public class DCDPUtil {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DCDPUtil.class);
 
+  private static final String EDM_CONTENT_ID = "simualtorrequest@toop";
+
   /**
    * Send a TC outgoing message to the
    * @param sender the sender participant id. optional
@@ -73,32 +73,52 @@ public class DCDPUtil {
     ValueEnforcer.notNull(defaultResourceName, "defaultResourceName");
     ValueEnforcer.notNull(connectorEndpoint, "connectorEndpoint");
 
-    InputStream edmSourceStream;
-    if (sFileName != null) {
-      final File file = new File(sFileName);
-      if (!file.exists() || !file.isFile()) {
-        throw new IllegalArgumentException("The file with name " + sFileName + " does not exist or is not a file");
-      }
-
-      try {
-        edmSourceStream = new FileInputStream(sFileName);
-      } catch (FileNotFoundException e) {
-        throw new IllegalStateException(e);
-      }
-    } else {
-      edmSourceStream = MockDC.class.getResourceAsStream(defaultResourceName);
-    }
+    final TCMessageEntity entity = createMessage(sender, receiver, docTypeId, loadEdmSource(sFileName, defaultResourceName));
+    LOGGER.info(entity.getSkeleton());
 
     try {
-      sendRequest(sender, receiver, docTypeId, edmSourceStream, connectorEndpoint);
+      final IJson aJson = postToConnector(connectorEndpoint, entity);
+      LOGGER.info (new JsonWriter(new JsonWriterSettings().setIndentEnabled (true)).writeAsString (aJson));
     } catch (IOException e) {
       LOGGER.error("IOException during submission to " + connectorEndpoint + ": " + sFileName + ": " + e.getMessage());
     }
   }
 
-  private static void sendRequest(String sender, String receiver, String docType, InputStream edmSourceStream, String connectorEndpoint) throws IOException {
-    ValueEnforcer.notNull(edmSourceStream, "edmSourceStream");
+  /**
+   * Load the EDM payload of an outgoing message
+   *
+   * @param sFileName           optional edm filename, it is mapped into the memory
+   * @param defaultResourceName the default edm classpath resource if the file name is null
+   * @return the payload
+   */
+  static ResponseAttachment loadEdmSource(@Nullable String sFileName, @Nonnull String defaultResourceName) {
+    try {
+      if (sFileName != null) {
+        final File file = new File(sFileName);
+        if (!file.exists() || !file.isFile()) {
+          throw new IllegalArgumentException("The file with name " + sFileName + " does not exist or is not a file");
+        }
+        return ResponseAttachment.map(EDM_CONTENT_ID, CMimeType.APPLICATION_XML, file);
+      }
+      try (InputStream edmSourceStream = MockDC.class.getResourceAsStream(defaultResourceName)) {
+        ValueEnforcer.notNull(edmSourceStream, "edmSourceStream");
+        return ResponseAttachment.of(EDM_CONTENT_ID, CMimeType.APPLICATION_XML, StreamHelper.getAllBytes(edmSourceStream));
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
 
+  /**
+   * Create the outgoing message. The entity is repeatable, so it can be posted more than once.
+   *
+   * @param sender    the sender participant id
+   * @param receiver  the receiver participant id
+   * @param docType   doctype id
+   * @param edmSource the edm payload
+   * @return the message
+   */
+  static TCMessageEntity createMessage(String sender, String receiver, String docType, ResponseAttachment edmSource) {
     final TCOutgoingMessage aOM = new TCOutgoingMessage();
     {
       final TCOutgoingMetadata aMetadata = new TCOutgoingMetadata();
@@ -111,24 +131,32 @@ public class DCDPUtil {
       aMetadata.setTransportProtocol(EMEProtocol.AS4.getTransportProfileID());
       aOM.setMetadata(aMetadata);
     }
-    {
-      final TCPayload aPayload = new TCPayload();
-      aPayload.setValue(IOUtils.toByteArray(edmSourceStream));
 
-      aPayload.setMimeType(CMimeType.APPLICATION_XML.getAsString());
-      aPayload.setContentID("simualtorrequest@toop");
-      aOM.addPayload(aPayload);
-    }
+    //the edm payload is streamed from the file while the message is written
+    return new TCMessageEntity(aOM, Collections.singletonList(edmSource));
+  }
 
-    LOGGER.info(TCRestJAXB.outgoingMessage().getAsString(aOM));
+  /**
+   * @param response the JSON response of the connector to a submission
+   * @return <code>false</code> if the connector reported that it didn't accept the message
+   */
+  public static boolean isAccepted(@Nullable IJson response) {
+    //the connector answers with {"success": true|false, ...}
+    return !(response instanceof IJsonObject) || ((IJsonObject) response).getAsBoolean("success", true);
+  }
 
-    try (HttpClientManager aHCM = new HttpClientManager()) {
-      final HttpPost aPost = new HttpPost("http://localhost:" + SimulatorConfig.getConnectorPort() + connectorEndpoint);
-      final byte[] asBytes = TCRestJAXB.outgoingMessage().getAsBytes(aOM);
-      LOGGER.info(new String(asBytes));
-      aPost.setEntity(new ByteArrayEntity(asBytes));
-      final IJson aJson = aHCM.execute(aPost, new ResponseHandlerJson());
-      LOGGER.info (new JsonWriter(new JsonWriterSettings().setIndentEnabled (true)).writeAsString (aJson));
-    }
+  /**
+   * Post the message to the connector running in this simulator
+   *
+   * @param connectorEndpoint the path of the connector endpoint (e.g. <code>/api/user/submit/request</code>)
+   * @param entity            the message
+   * @return the JSON response of the connector
+   * @throws IOException on a transport error
+   */
+  static IJson postToConnector(@Nonnull String connectorEndpoint, @Nonnull TCMessageEntity entity) throws IOException {
+    MessageRecorder.record(MessageRecorder.EChannel.SUBMIT, "POST " + connectorEndpoint, entity);
+    final HttpPost aPost = new HttpPost("http://localhost:" + SimulatorConfig.getConnectorPort() + connectorEndpoint);
+    aPost.setEntity(entity);
+    return SimulatorHttpClient.getInstance().execute(aPost, new ResponseHandlerJson());
   }
 }
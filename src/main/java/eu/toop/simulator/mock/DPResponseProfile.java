@@ -0,0 +1,274 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.ValueEnforcer;
+
+import eu.toop.simulator.SimulatorConfig;
+
+/**
+ * How the simulated DP behaves when it answers a request: how long it takes (a fixed,
+ * uniformly distributed or lognormally distributed delay), and how often it answers with
+ * an error response or doesn't answer at all (the DC has to time out).
+ */
+public class DPResponseProfile {
+
+  /**
+   * The upper limit of a delay, it cuts the long tail of the lognormal distribution
+   */
+  static final long MAX_DELAY_MS = 600_000;
+
+  /**
+   * The distribution of the delays
+   */
+  public enum ELatency {
+    /**
+     * Respond right away
+     */
+    NONE,
+    /**
+     * Always the same delay
+     */
+    FIXED,
+    /**
+     * A delay between a minimum and a maximum
+     */
+    UNIFORM,
+    /**
+     * A delay around a median with a long tail, like the response times of real services
+     */
+    LOGNORMAL;
+
+    /**
+     * @param id the name of the distribution, case insensitive
+     * @return the distribution
+     */
+    @Nonnull
+    public static ELatency getFromID(@Nonnull String id) {
+      try {
+        return valueOf(id.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException ex) {
+        throw new IllegalArgumentException("Unknown latency distribution '" + id + "', use one of none, fixed, uniform, lognormal");
+      }
+    }
+  }
+
+  /**
+   * What happens to a request
+   */
+  public enum EOutcome {
+    /**
+     * The request is answered with the response of the mini DP
+     */
+    RESPONSE,
+    /**
+     * The request is answered with an error response
+     */
+    ERROR,
+    /**
+     * The request is not answered
+     */
+    TIMEOUT
+  }
+
+  /**
+   * The outcome and the delay of a request
+   */
+  public static final class Decision {
+    private final EOutcome outcome;
+    private final long delayMillis;
+
+    private Decision(EOutcome outcome, long delayMillis) {
+      this.outcome = outcome;
+      this.delayMillis = delayMillis;
+    }
+
+    /**
+     * @return what happens to the request
+     */
+    @Nonnull
+    public EOutcome getOutcome() {
+      return outcome;
+    }
+
+    /**
+     * @return the time to wait before answering, in milliseconds
+     */
+    public long getDelayMillis() {
+      return delayMillis;
+    }
+  }
+
+  private final ELatency latency;
+  private final long fixedMillis;
+  private final long minMillis;
+  private final long maxMillis;
+  private final long medianMillis;
+  private final double sigma;
+  private final double errorRate;
+  private final double timeoutRate;
+
+  private final AtomicLong responses = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+
+  /**
+   * Create a new profile
+   *
+   * @param latency      the distribution of the delays
+   * @param fixedMillis  the delay of the fixed distribution
+   * @param minMillis    the minimum of the uniform distribution
+   * @param maxMillis    the maximum of the uniform distribution
+   * @param medianMillis the median of the lognormal distribution
+   * @param sigma        the standard deviation of the logarithm of the lognormal delays (0.5 is moderate, 1.0 has a long tail)
+   * @param errorRate    the share of the requests answered with an error response, between 0 and 1
+   * @param timeoutRate  the share of the requests not answered, between 0 and 1
+   */
+  public DPResponseProfile(@Nonnull ELatency latency, long fixedMillis, long minMillis, long maxMillis, long medianMillis, double sigma,
+                           double errorRate, double timeoutRate) {
+    ValueEnforcer.notNull(latency, "latency");
+    ValueEnforcer.isGE0(fixedMillis, "fixedMillis");
+    ValueEnforcer.isGE0(minMillis, "minMillis");
+    ValueEnforcer.isTrue(maxMillis >= minMillis, "The maximum latency must not be less than the minimum");
+    ValueEnforcer.isTrue(latency != ELatency.LOGNORMAL || medianMillis > 0, "The median latency must be positive");
+    ValueEnforcer.isTrue(sigma >= 0, "sigma must not be negative");
+    ValueEnforcer.isTrue(errorRate >= 0 && timeoutRate >= 0 && errorRate + timeoutRate <= 1,
+        "The error and timeout rates must be between 0 and 1, and their sum at most 1");
+    this.latency = latency;
+    this.fixedMillis = fixedMillis;
+    this.minMillis = minMillis;
+    this.maxMillis = maxMillis;
+    this.medianMillis = medianMillis;
+    this.sigma = sigma;
+    this.errorRate = errorRate;
+    this.timeoutRate = timeoutRate;
+  }
+
+  /**
+   * @return the profile configured with the <code>dpLatency*</code>, <code>dpErrorRate</code> and <code>dpTimeoutRate</code> settings
+   */
+  @Nonnull
+  public static DPResponseProfile createFromConfig() {
+    return new DPResponseProfile(ELatency.getFromID(SimulatorConfig.getDpLatency()), SimulatorConfig.getDpLatencyFixed(),
+        SimulatorConfig.getDpLatencyMin(), SimulatorConfig.getDpLatencyMax(), SimulatorConfig.getDpLatencyMedian(),
+        SimulatorConfig.getDpLatencySigma(), SimulatorConfig.getDpErrorRate(), SimulatorConfig.getDpTimeoutRate());
+  }
+
+  /**
+   * @return <code>false</code> if every request is answered right away with the response of the mini DP
+   */
+  public boolean isActive() {
+    return latency != ELatency.NONE || errorRate > 0 || timeoutRate > 0;
+  }
+
+  /**
+   * Decide what happens to the next request
+   *
+   * @return the decision
+   */
+  @Nonnull
+  public Decision decide() {
+    return decide(ThreadLocalRandom.current());
+  }
+
+  @Nonnull
+  Decision decide(@Nonnull Random random) {
+    final double r = random.nextDouble();
+    if (r < timeoutRate) {
+      timeouts.incrementAndGet();
+      return new Decision(EOutcome.TIMEOUT, 0);
+    }
+    final EOutcome outcome;
+    if (r < timeoutRate + errorRate) {
+      errors.incrementAndGet();
+      outcome = EOutcome.ERROR;
+    } else {
+      responses.incrementAndGet();
+      outcome = EOutcome.RESPONSE;
+    }
+    return new Decision(outcome, nextDelayMillis(random));
+  }
+
+  long nextDelayMillis(@Nonnull Random random) {
+    final double delay;
+    switch (latency) {
+      case FIXED:
+        delay = fixedMillis;
+        break;
+      case UNIFORM:
+        delay = minMillis + random.nextDouble() * (maxMillis - minMillis);
+        break;
+      case LOGNORMAL:
+        delay = medianMillis * Math.exp(sigma * random.nextGaussian());
+        break;
+      default:
+        delay = 0;
+        break;
+    }
+    return Math.min(Math.round(delay), MAX_DELAY_MS);
+  }
+
+  /**
+   * @return the number of requests answered with the response of the mini DP
+   */
+  public long getResponseCount() {
+    return responses.get();
+  }
+
+  /**
+   * @return the number of requests answered with an error response
+   */
+  public long getErrorCount() {
+    return errors.get();
+  }
+
+  /**
+   * @return the number of requests not answered
+   */
+  public long getTimeoutCount() {
+    return timeouts.get();
+  }
+
+  @Override
+  public String toString() {
+    final String delay;
+    switch (latency) {
+      case FIXED:
+        delay = fixedMillis + " ms";
+        break;
+      case UNIFORM:
+        delay = minMillis + " - " + maxMillis + " ms";
+        break;
+      case LOGNORMAL:
+        delay = "lognormal, median " + medianMillis + " ms, sigma " + sigma;
+        break;
+      default:
+        delay = "none";
+        break;
+    }
+    return "delay: " + delay + ", error rate: " + errorRate + ", timeout rate: " + timeoutRate;
+  }
+}
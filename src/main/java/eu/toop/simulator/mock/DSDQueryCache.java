@@ -0,0 +1,149 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.ICommonsSet;
+
+import eu.toop.connector.api.dsd.DSDDatasetResponse;
+
+/**
+ * A size bounded LRU cache for the DSD query results. When the cache is full, the least
+ * recently used entry is evicted. The number of hits, misses and evictions are counted
+ * for monitoring purposes.
+ */
+public class DSDQueryCache {
+
+  private final int maxSize;
+
+  private final LinkedHashMap<DSDQueryKey, ICommonsSet<DSDDatasetResponse>> cache;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Create a new cache
+   *
+   * @param maxSize the maximum number of entries. If <code>0</code> then nothing is cached.
+   */
+  public DSDQueryCache(int maxSize) {
+    ValueEnforcer.isGE0(maxSize, "maxSize");
+    this.maxSize = maxSize;
+    //access order = true, so that the iteration order is LRU first
+    this.cache = new LinkedHashMap<DSDQueryKey, ICommonsSet<DSDDatasetResponse>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<DSDQueryKey, ICommonsSet<DSDDatasetResponse>> eldest) {
+        if (size() > DSDQueryCache.this.maxSize) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Return the cached result for the given key, or compute it with the <code>loader</code>
+   * and cache it. The loader is called without holding the cache lock, so that a slow
+   * query does not block the lookups of the other keys.
+   *
+   * @param key    the query key
+   * @param loader the function that computes the result on a cache miss. Should return an immutable set
+   * @return the query result
+   */
+  @Nonnull
+  public ICommonsSet<DSDDatasetResponse> get(@Nonnull DSDQueryKey key,
+                                             @Nonnull Function<DSDQueryKey, ICommonsSet<DSDDatasetResponse>> loader) {
+    ICommonsSet<DSDDatasetResponse> ret;
+    synchronized (cache) {
+      ret = cache.get(key);
+    }
+
+    if (ret != null) {
+      hits.incrementAndGet();
+      return ret;
+    }
+
+    misses.incrementAndGet();
+    ret = loader.apply(key);
+
+    if (maxSize > 0) {
+      synchronized (cache) {
+        cache.put(key, ret);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return the maximum number of entries
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @return the current number of entries
+   */
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * @return the number of lookups that were served from the cache
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of lookups that had to compute the result
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return the number of entries that were evicted due to the size limit
+   */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  @Override
+  public String toString() {
+    return "DSDQueryCache{" +
+        "size=" + size() +
+        ", maxSize=" + maxSize +
+        ", hits=" + hits +
+        ", misses=" + misses +
+        ", evictions=" + evictions +
+        '}';
+  }
+}
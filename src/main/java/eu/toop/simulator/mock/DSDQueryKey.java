@@ -21,11 +21,14 @@ package eu.toop.simulator.mock;
 import java.util.Objects;
 
 /**
- * This class is used as a KEY for the DSD queries.
+ * This class is used as a KEY for the DSD queries. A query is either made by
+ * country code or by DP type, so only one of <code>countryCode</code> and
+ * <code>dpType</code> is expected to be set.
  */
 public class DSDQueryKey {
   private String datasetType;
   private String countryCode;
+  private String dpType;
 
   /**
    * Instantiates a new Dsd query key.
@@ -40,8 +43,42 @@ public class DSDQueryKey {
    * @param countryCode the country code
    */
   public DSDQueryKey(String datasetType, String countryCode) {
+    this(datasetType, countryCode, null);
+  }
+
+  /**
+   * Instantiates a new Dsd query key.
+   *
+   * @param datasetType the dataset type
+   * @param countryCode the country code
+   * @param dpType      the dp type
+   */
+  public DSDQueryKey(String datasetType, String countryCode, String dpType) {
     this.datasetType = datasetType;
     this.countryCode = countryCode;
+    this.dpType = dpType;
+  }
+
+  /**
+   * Create a key for a query by country code
+   *
+   * @param datasetType the dataset type
+   * @param countryCode the country code
+   * @return the new key
+   */
+  public static DSDQueryKey byCountry(String datasetType, String countryCode) {
+    return new DSDQueryKey(datasetType, countryCode, null);
+  }
+
+  /**
+   * Create a key for a query by DP type
+   *
+   * @param datasetType the dataset type
+   * @param dpType      the dp type
+   * @return the new key
+   */
+  public static DSDQueryKey byDPType(String datasetType, String dpType) {
+    return new DSDQueryKey(datasetType, null, dpType);
   }
 
   /**
@@ -80,17 +117,45 @@ public class DSDQueryKey {
     this.countryCode = countryCode;
   }
 
+  /**
+   * Gets dp type.
+   *
+   * @return the dp type
+   */
+  public String getDpType() {
+    return dpType;
+  }
+
+  /**
+   * Sets dp type.
+   *
+   * @param dpType the dp type
+   */
+  public void setDpType(String dpType) {
+    this.dpType = dpType;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
     DSDQueryKey that = (DSDQueryKey) o;
     return Objects.equals(datasetType, that.datasetType) &&
-        Objects.equals(countryCode, that.countryCode);
+        Objects.equals(countryCode, that.countryCode) &&
+        Objects.equals(dpType, that.dpType);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(datasetType, countryCode);
+    return Objects.hash(datasetType, countryCode, dpType);
+  }
+
+  @Override
+  public String toString() {
+    return "DSDQueryKey{" +
+        "datasetType='" + datasetType + '\'' +
+        ", countryCode='" + countryCode + '\'' +
+        ", dpType='" + dpType + '\'' +
+        '}';
   }
 }
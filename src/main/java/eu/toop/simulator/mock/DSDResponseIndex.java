@@ -0,0 +1,311 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.transform.TransformerException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.ICommonsSet;
+
+import eu.toop.connector.api.dsd.DSDDatasetHelper;
+import eu.toop.connector.api.dsd.DSDDatasetResponse;
+import eu.toop.dsd.api.DsdDataConverter;
+import eu.toop.edm.jaxb.dcatap.DCatAPDatasetType;
+import eu.toop.simulator.util.ImmutableCommonsSet;
+
+/**
+ * An in-memory index of the DSD query results. The directory content is parsed once,
+ * and the results for every (datasetType, countryCode) and (datasetType, dpType)
+ * combination that occurs in it are converted to DSD responses upfront. This way a DSD
+ * query becomes a map lookup that returns a shared immutable set instead of an XSLT
+ * transformation per call.
+ * <p>
+ * The directory is kept as bytes and read with StAX. Per query only the matching
+ * <code>match</code> elements are passed on to the DSD converter (see {@link DirectoryStreamReader}),
+ * a query without any matching element doesn't reach the converter at all.
+ * <p>
+ * The directory can be split into shards (e.g. one per country). Each shard is
+ * precomputed separately, in parallel if an executor is given, and the results of the
+ * shards are merged per query.
+ * <p>
+ * For directories that are too large to be precomputed, precomputation can be turned off.
+ * Then the queries (and the queries that are not in the index) are served through a
+ * size bounded {@link DSDQueryCache}.
+ */
+public class DSDResponseIndex {
+  /**
+   * The Logger instance
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(DSDResponseIndex.class);
+
+  /**
+   * The separator of the doctype id components (e.g. <code>RegisteredOrganization::REGISTERED_ORGANIZATION_TYPE::CONCEPT##CCCEV::toop-edm:v2.1</code>)
+   */
+  private static final String DOCTYPE_SEPARATOR = "::";
+
+  /**
+   * The shared result of the queries without any matching directory entry
+   */
+  private static final ICommonsSet<DSDDatasetResponse> NO_RESPONSES = new ImmutableCommonsSet<>(Collections.emptySet());
+
+  /**
+   * The directory content of each shard, kept for the queries that are not precomputed
+   */
+  private final List<byte[]> directories;
+
+  private final Map<DSDQueryKey, ICommonsSet<DSDDatasetResponse>> index = new HashMap<>();
+
+  /**
+   * The LRU cache for the queries that are not precomputed
+   */
+  private final DSDQueryCache queryCache;
+
+  /**
+   * Parse the directory content and build the index.
+   *
+   * @param directoryBytes the directory query result (a PD <code>resultlist</code>). May not be <code>null</code>
+   * @param precompute     whether to compute the results of all the queries upfront
+   * @param cacheSize      the maximum number of entries of the query cache
+   */
+  public DSDResponseIndex(@Nonnull byte[] directoryBytes, boolean precompute, int cacheSize) {
+    this(Collections.singletonList(directoryBytes), precompute, cacheSize, null);
+  }
+
+  /**
+   * Parse the directory shards and build the index.
+   *
+   * @param directoryShards the directory query result (a PD <code>resultlist</code>) of each shard. May not be empty
+   * @param precompute      whether to compute the results of all the queries upfront
+   * @param cacheSize       the maximum number of entries of the query cache
+   * @param executor        the executor that precomputes the shards in parallel, <code>null</code> to
+   *                        precompute them on the calling thread
+   */
+  public DSDResponseIndex(@Nonnull List<byte[]> directoryShards, boolean precompute, int cacheSize, @Nullable ExecutorService executor) {
+    ValueEnforcer.notEmptyNoNullValue(directoryShards, "directoryShards");
+    directories = new ArrayList<>(directoryShards);
+    queryCache = new DSDQueryCache(cacheSize);
+
+    if (!precompute) {
+      LOGGER.info("DSD precomputation is disabled, using a query cache with size " + cacheSize);
+      return;
+    }
+
+    //the shards are merged per query key
+    final ConcurrentHashMap<DSDQueryKey, Set<DSDDatasetResponse>> results = new ConcurrentHashMap<>();
+    if (executor == null || directories.size() == 1) {
+      directories.forEach(directory -> precompute(directory, results));
+    } else {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (byte[] directory : directories) {
+        futures.add(executor.submit(() -> precompute(directory, results)));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException(ex);
+        } catch (ExecutionException ex) {
+          throw new IllegalStateException(ex.getCause().getMessage(), ex.getCause());
+        }
+      }
+    }
+
+    results.forEach((key, value) -> index.put(key, new ImmutableCommonsSet<>(value)));
+    LOGGER.info("Indexed " + index.size() + " DSD queries from " + directories.size() + " directory shard(s)");
+  }
+
+  private static void precompute(byte[] directory, ConcurrentHashMap<DSDQueryKey, Set<DSDDatasetResponse>> results) {
+    final Set<String> datasetTypes = new LinkedHashSet<>();
+    final Set<String> countryCodes = new LinkedHashSet<>();
+    final Set<String> dpTypes = new LinkedHashSet<>();
+
+    DirectoryStreamReader.forEachQueryTerm(directory, (name, value) -> {
+      if (value.isEmpty())
+        return;
+
+      if (DirectoryStreamReader.DOCTYPE_ID.equals(name)) {
+        final String datasetType = getDatasetType(value);
+        if (datasetType != null)
+          datasetTypes.add(datasetType);
+      } else if (DirectoryStreamReader.COUNTRY_CODE.equals(name)) {
+        countryCodes.add(value);
+      } else if (DirectoryStreamReader.IDENTIFIER.equals(name)) {
+        //only the DP type identifiers are reported
+        dpTypes.add(value);
+      }
+    });
+
+    for (String datasetType : datasetTypes) {
+      for (String countryCode : countryCodes) {
+        merge(results, DSDQueryKey.byCountry(datasetType, countryCode), queryByCountry(directory, datasetType, countryCode));
+      }
+
+      for (String dpType : dpTypes) {
+        merge(results, DSDQueryKey.byDPType(datasetType, dpType), queryByDPType(directory, datasetType, dpType));
+      }
+    }
+
+    LOGGER.debug("Precomputed a directory shard with " + datasetTypes.size() + " dataset types, " +
+        countryCodes.size() + " country codes and " + dpTypes.size() + " dp types");
+  }
+
+  private static void merge(ConcurrentHashMap<DSDQueryKey, Set<DSDDatasetResponse>> results, DSDQueryKey key,
+                            Set<DSDDatasetResponse> responses) {
+    results.compute(key, (k, existing) -> {
+      if (existing == null)
+        return new LinkedHashSet<>(responses);
+      existing.addAll(responses);
+      return existing;
+    });
+  }
+
+  /**
+   * Get the DSD responses for the given dataset type and country code
+   *
+   * @param sDatasetType the dataset type
+   * @param sCountryCode the country code
+   * @return an immutable set of responses, never <code>null</code>
+   */
+  @Nonnull
+  public ICommonsSet<DSDDatasetResponse> getByCountry(@Nonnull String sDatasetType, @Nonnull String sCountryCode) {
+    final DSDQueryKey queryKey = DSDQueryKey.byCountry(sDatasetType, sCountryCode);
+    final ICommonsSet<DSDDatasetResponse> ret = index.get(queryKey);
+    if (ret != null)
+      return ret;
+
+    return queryCache.get(queryKey, key -> queryByCountry(key.getDatasetType(), key.getCountryCode()));
+  }
+
+  /**
+   * Get the DSD responses for the given dataset type and dp type
+   *
+   * @param sDatasetType the dataset type
+   * @param sDPType      the dp type
+   * @return an immutable set of responses, never <code>null</code>
+   */
+  @Nonnull
+  public ICommonsSet<DSDDatasetResponse> getByDPType(@Nonnull String sDatasetType, @Nonnull String sDPType) {
+    final DSDQueryKey queryKey = DSDQueryKey.byDPType(sDatasetType, sDPType);
+    final ICommonsSet<DSDDatasetResponse> ret = index.get(queryKey);
+    if (ret != null)
+      return ret;
+
+    return queryCache.get(queryKey, key -> queryByDPType(key.getDatasetType(), key.getDpType()));
+  }
+
+  /**
+   * @return the number of the precomputed queries
+   */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * @return the cache that serves the queries that are not precomputed
+   */
+  @Nonnull
+  public DSDQueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  private ICommonsSet<DSDDatasetResponse> queryByCountry(String sDatasetType, String sCountryCode) {
+    if (directories.size() == 1)
+      return queryByCountry(directories.get(0), sDatasetType, sCountryCode);
+
+    final Set<DSDDatasetResponse> ret = new LinkedHashSet<>();
+    directories.forEach(directory -> ret.addAll(queryByCountry(directory, sDatasetType, sCountryCode)));
+    return new ImmutableCommonsSet<>(ret);
+  }
+
+  private ICommonsSet<DSDDatasetResponse> queryByDPType(String sDatasetType, String sDPType) {
+    if (directories.size() == 1)
+      return queryByDPType(directories.get(0), sDatasetType, sDPType);
+
+    final Set<DSDDatasetResponse> ret = new LinkedHashSet<>();
+    directories.forEach(directory -> ret.addAll(queryByDPType(directory, sDatasetType, sDPType)));
+    return new ImmutableCommonsSet<>(ret);
+  }
+
+  static ICommonsSet<DSDDatasetResponse> queryByCountry(byte[] directory, String sDatasetType, String sCountryCode) {
+    final String directoryXml = DirectoryStreamReader.filter(directory, sDatasetType, DirectoryStreamReader.COUNTRY_CODE, sCountryCode);
+    if (directoryXml == null)
+      return NO_RESPONSES;
+
+    try {
+      final String dsdXml = DsdDataConverter.convertDIRToDSDWithCountryCode(directoryXml, sDatasetType, sCountryCode);
+      return buildResponseSet(dsdXml);
+    } catch (TransformerException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  static ICommonsSet<DSDDatasetResponse> queryByDPType(byte[] directory, String sDatasetType, String sDPType) {
+    final String directoryXml = DirectoryStreamReader.filter(directory, sDatasetType, DirectoryStreamReader.IDENTIFIER, sDPType);
+    if (directoryXml == null)
+      return NO_RESPONSES;
+
+    try {
+      final String dsdXml = DsdDataConverter.convertDIRToDSDWithDPType(directoryXml, sDatasetType, sDPType);
+      return buildResponseSet(dsdXml);
+    } catch (TransformerException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  private static ICommonsSet<DSDDatasetResponse> buildResponseSet(String dsdXml) {
+    final List<DCatAPDatasetType> datasetTypes = DsdDataConverter.parseDataset(dsdXml);
+    return new ImmutableCommonsSet<>(DSDDatasetHelper.buildDSDResponseSet(datasetTypes));
+  }
+
+  /**
+   * Extract the dataset type from a TOOP EDM doctype id value, which looks like
+   * <code>[DatasetIdentifier]::[DatasetType]::[Distribution]::toop-edm:v2.x</code>
+   *
+   * @param docTypeValue the value of the doctype id
+   * @return the dataset type or <code>null</code> if the doctype is not an EDM dataset doctype
+   */
+  private static String getDatasetType(String docTypeValue) {
+    if (docTypeValue == null)
+      return null;
+
+    final String[] parts = docTypeValue.split(DOCTYPE_SEPARATOR);
+    if (parts.length < 4 || !parts[parts.length - 1].startsWith("toop-edm:"))
+      return null;
+
+    return parts[1];
+  }
+}
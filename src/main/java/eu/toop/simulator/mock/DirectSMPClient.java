@@ -0,0 +1,193 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.bind.JAXBException;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+import com.helger.commons.error.level.EErrorLevel;
+import com.helger.httpclient.HttpClientManager;
+import com.helger.httpclient.response.ResponseHandlerByteArray;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.xsds.bdxr.smp1.ServiceGroupType;
+import com.helger.xsds.bdxr.smp1.ServiceMetadataReferenceType;
+import com.helger.xsds.bdxr.smp1.ServiceMetadataType;
+import com.helger.xsds.bdxr.smp1.SignedServiceMetadataType;
+
+import eu.toop.connector.api.dd.IDDServiceGroupHrefProvider;
+import eu.toop.connector.api.dd.IDDServiceMetadataProvider;
+import eu.toop.connector.api.error.ITCErrorHandler;
+import eu.toop.connector.api.error.LoggingTCErrorHandler;
+import eu.toop.edm.error.EToopErrorCode;
+
+/**
+ * Queries a single BDXR SMP at a fixed address over HTTP, without an SML lookup and without
+ * verifying the signatures. It is meant for filling the offline discovery cache from a known
+ * (or a stub) SMP; the connector uses <code>DDServiceGroupHrefProviderSMP</code> and
+ * <code>DDServiceMetadataProviderSMP</code> instead.
+ * <p>
+ * Like the connector providers, the failures are reported to the error handler (or logged,
+ * for the service metadata) instead of being thrown. A missing participant or service
+ * metadata (HTTP 404) is not a failure. {@link #queryServiceMetadata(IParticipantIdentifier, IDocumentTypeIdentifier)}
+ * throws the failures, so that the caller can retry them.
+ */
+public class DirectSMPClient implements IDDServiceGroupHrefProvider, IDDServiceMetadataProvider, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DirectSMPClient.class);
+
+  private final String smpUrl;
+
+  private final HttpClientManager httpClientManager = new HttpClientManager();
+
+  /**
+   * Create a new client
+   *
+   * @param smpUrl the base URL of the SMP, e.g. <code>http://smp.example.org</code>
+   */
+  public DirectSMPClient(@Nonnull String smpUrl) {
+    ValueEnforcer.notEmpty(smpUrl, "smpUrl");
+    this.smpUrl = smpUrl.endsWith("/") ? smpUrl.substring(0, smpUrl.length() - 1) : smpUrl;
+  }
+
+  @Nonnull
+  @Override
+  public ICommonsSortedMap<String, String> getAllServiceGroupHrefs(@Nonnull IParticipantIdentifier aParticipantID, @Nonnull ITCErrorHandler aErrorHandler) {
+    final ICommonsSortedMap<String, String> ret = new CommonsTreeMap<>();
+    final String url = smpUrl + "/" + encode(aParticipantID.getScheme() + "::" + aParticipantID.getValue());
+
+    final byte[] bytes;
+    try {
+      bytes = getOrNull(url);
+    } catch (IOException ex) {
+      aErrorHandler.onMessage(EErrorLevel.ERROR, ex.getMessage(), ex, EToopErrorCode.GEN);
+      return ret;
+    }
+    if (bytes != null) {
+      try {
+        final ServiceGroupType serviceGroup = SMPDiscoveryData.getJAXBContext().createUnmarshaller()
+            .unmarshal(new StreamSource(new ByteArrayInputStream(bytes)), ServiceGroupType.class).getValue();
+        if (serviceGroup.getServiceMetadataReferenceCollection() != null) {
+          for (ServiceMetadataReferenceType reference : serviceGroup.getServiceMetadataReferenceCollection().getServiceMetadataReference()) {
+            ret.put(decode(reference.getHref()), reference.getHref());
+          }
+        }
+      } catch (JAXBException ex) {
+        aErrorHandler.onMessage(EErrorLevel.ERROR, "Invalid service group from " + url, ex, EToopErrorCode.GEN);
+      }
+    }
+    return ret;
+  }
+
+  @Nullable
+  @Override
+  public ServiceMetadataType getServiceMetadata(@Nonnull IParticipantIdentifier aParticipantID, @Nonnull IDocumentTypeIdentifier aDocTypeID,
+                                                @Nonnull IProcessIdentifier aProcessID, @Nonnull String sTransportProfile) {
+    try {
+      return queryServiceMetadata(aParticipantID, aDocTypeID);
+    } catch (IOException ex) {
+      LoggingTCErrorHandler.INSTANCE.onMessage(EErrorLevel.ERROR, ex.getMessage(), ex, EToopErrorCode.GEN);
+      return null;
+    }
+  }
+
+  /**
+   * Query the service metadata, telling a missing one from a failed call
+   *
+   * @param aParticipantID the participant
+   * @param aDocTypeID     the doctype
+   * @return the service metadata, <code>null</code> if the SMP doesn't have it (HTTP 404)
+   * @throws IOException if the call failed or the response is not valid service metadata
+   */
+  @Nullable
+  public ServiceMetadataType queryServiceMetadata(@Nonnull IParticipantIdentifier aParticipantID,
+                                                  @Nonnull IDocumentTypeIdentifier aDocTypeID) throws IOException {
+    final String url = smpUrl + "/" + encode(aParticipantID.getScheme() + "::" + aParticipantID.getValue()) +
+        "/services/" + encode(aDocTypeID.getScheme() + "::" + aDocTypeID.getValue());
+
+    final byte[] bytes = getOrNull(url);
+    if (bytes == null)
+      return null;
+
+    try {
+      return SMPDiscoveryData.getJAXBContext().createUnmarshaller()
+          .unmarshal(new StreamSource(new ByteArrayInputStream(bytes)), SignedServiceMetadataType.class).getValue()
+          .getServiceMetadata();
+    } catch (JAXBException ex) {
+      throw new IOException("Invalid service metadata from " + url, ex);
+    }
+  }
+
+  @Override
+  public void close() {
+    httpClientManager.close();
+  }
+
+  /**
+   * @return the body, or <code>null</code> if the resource doesn't exist (HTTP 404)
+   * @throws IOException if the call failed
+   */
+  @Nullable
+  private byte[] getOrNull(String url) throws IOException {
+    LOGGER.debug("GET " + url);
+    try {
+      return httpClientManager.execute(new HttpGet(url), new ResponseHandlerByteArray());
+    } catch (HttpResponseException ex) {
+      if (ex.getStatusCode() == 404)
+        return null;
+      throw new IOException("SMP call to " + url + " failed with HTTP " + ex.getStatusCode(), ex);
+    } catch (IOException ex) {
+      throw new IOException("SMP call to " + url + " failed: " + ex.getMessage(), ex);
+    }
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * Streaming (StAX) passes over the directory content (a PD <code>resultlist</code>).
+ * <p>
+ * The DSD converter needs the directory as a string and transforms all of it on every
+ * query. {@link #filter(byte[], String, String, String)} reduces the directory to the
+ * <code>match</code> elements that can contribute to a query before it is handed to the
+ * converter, so that neither the full directory string nor the full DSD document are
+ * built per query. The filter is deliberately loose (a superset of what the converter
+ * selects), the converter still applies the exact criteria.
+ */
+final class DirectoryStreamReader {
+
+  static final String MATCH = "match";
+  static final String DOCTYPE_ID = "docTypeID";
+  static final String COUNTRY_CODE = "countryCode";
+  static final String IDENTIFIER = "identifier";
+  static final String SCHEME = "scheme";
+  /**
+   * The scheme of the <code>identifier</code> elements that hold the DP types
+   */
+  static final String DP_TYPE_SCHEME = "DataProviderIdentifierType";
+
+  private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+  static {
+    INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+  }
+
+  private DirectoryStreamReader() {
+  }
+
+  /**
+   * Pass the text of each <code>docTypeID</code>, <code>countryCode</code> and DP type <code>identifier</code>
+   * element of the directory to the consumer. The other identifiers (e.g. of the legal entities) are skipped.
+   *
+   * @param directory the directory content
+   * @param consumer  receives the local name and the trimmed text of the element
+   */
+  static void forEachQueryTerm(@Nonnull byte[] directory, @Nonnull BiConsumer<String, String> consumer) {
+    try {
+      final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(directory));
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT)
+            continue;
+
+          final String name = reader.getLocalName();
+          if (DOCTYPE_ID.equals(name) || COUNTRY_CODE.equals(name) || (IDENTIFIER.equals(name) && isDPType(reader.getAttributeValue(null, SCHEME))))
+            consumer.accept(name, reader.getElementText().trim());
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException ex) {
+      throw new IllegalStateException("Couldn't parse the directory content: " + ex.getMessage(), ex);
+    }
+  }
+
+  private static boolean isDPType(@Nullable String scheme) {
+    return scheme != null && DP_TYPE_SCHEME.equals(scheme.trim());
+  }
+
+  /**
+   * Copy the directory, keeping only the <code>match</code> elements that have a
+   * <code>docTypeID</code> containing the dataset type and an element with the given name and value.
+   *
+   * @param directory   the directory content
+   * @param datasetType the dataset type
+   * @param elementName {@link #COUNTRY_CODE} or {@link #IDENTIFIER}
+   * @param value       the expected value of the element
+   * @return the reduced directory or <code>null</code> if no <code>match</code> was kept
+   */
+  @Nullable
+  static String filter(@Nonnull byte[] directory, @Nonnull String datasetType, @Nonnull String elementName, @Nonnull String value) {
+    final StringWriter out = new StringWriter();
+    int kept = 0;
+    try {
+      final XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(new ByteArrayInputStream(directory));
+      final XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(out);
+      try {
+        //the events of the current match, written only if the match is kept
+        final List<XMLEvent> match = new ArrayList<>();
+        boolean inMatch = false;
+        boolean datasetTypeFound = false;
+        boolean valueFound = false;
+        String textElement = null;
+        String text = null;
+
+        while (reader.hasNext()) {
+          final XMLEvent event = reader.nextEvent();
+          switch (event.getEventType()) {
+            case XMLStreamConstants.COMMENT:
+              continue;
+            case XMLStreamConstants.START_ELEMENT: {
+              final String name = event.asStartElement().getName().getLocalPart();
+              if (!inMatch && MATCH.equals(name)) {
+                inMatch = true;
+                datasetTypeFound = false;
+                valueFound = false;
+                match.clear();
+              } else if (inMatch && (DOCTYPE_ID.equals(name) || elementName.equals(name))) {
+                textElement = name;
+                text = "";
+              }
+              break;
+            }
+            case XMLStreamConstants.CHARACTERS:
+              if (textElement != null)
+                text = event.asCharacters().getData().trim();
+              break;
+            case XMLStreamConstants.END_ELEMENT: {
+              final String name = event.asEndElement().getName().getLocalPart();
+              if (name.equals(textElement)) {
+                if (DOCTYPE_ID.equals(name))
+                  datasetTypeFound |= text.contains(datasetType);
+                else
+                  valueFound |= text.equals(value);
+                textElement = null;
+              } else if (inMatch && MATCH.equals(name)) {
+                inMatch = false;
+                if (datasetTypeFound && valueFound) {
+                  for (XMLEvent matchEvent : match) {
+                    writer.add(matchEvent);
+                  }
+                  writer.add(event);
+                  ++kept;
+                }
+                continue;
+              }
+              break;
+            }
+            default:
+              break;
+          }
+
+          if (inMatch)
+            match.add(event);
+          else
+            writer.add(event);
+        }
+        writer.flush();
+      } finally {
+        writer.close();
+        reader.close();
+      }
+    } catch (XMLStreamException ex) {
+      throw new IllegalStateException("Couldn't filter the directory content: " + ex.getMessage(), ex);
+    }
+    return kept == 0 ? null : out.toString();
+  }
+}
@@ -0,0 +1,642 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+import com.helger.pd.searchapi.PDSearchAPIReader;
+import com.helger.pd.searchapi.PDSearchAPIWriter;
+import com.helger.pd.searchapi.v1.IDType;
+import com.helger.pd.searchapi.v1.MatchType;
+import com.helger.pd.searchapi.v1.ResultListType;
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.xsds.bdxr.smp1.DocumentIdentifierType;
+import com.helger.xsds.bdxr.smp1.ParticipantIdentifierType;
+import com.helger.xsds.bdxr.smp1.ServiceMetadataType;
+
+import eu.toop.connector.api.TCConfig;
+import eu.toop.connector.api.dd.IDDServiceGroupHrefProvider;
+import eu.toop.connector.api.error.ITCErrorHandler;
+import eu.toop.connector.app.smp.DDServiceGroupHrefProviderSMP;
+import eu.toop.connector.app.smp.DDServiceMetadataProviderSMP;
+import eu.toop.dsd.api.ToopDirClient;
+import eu.toop.simulator.cli.CliCommand;
+
+/**
+ * This class contains the logic for updating the simulator cache
+ * for offline SMP and DSD mocking.
+ * <p>
+ * The directory queries (one per country) and the SMP queries (one per participant and one
+ * per participant and doctype) are run on a bounded executor, and each failed query is
+ * retried with an exponential backoff. A participant or a service metadata that the SMP doesn't
+ * have (HTTP 404) is not retried. In incremental mode (the default), the SMP data of a
+ * participant is reused from the previous cache if its doctypes in the directory didn't change.
+ * <p>
+ * The cache is written to the <code>discovery</code> directory by default, where the simulator
+ * picks it up (and reloads it, if it is watched). The files are only replaced when all the queries
+ * succeeded (or found nothing), each one atomically and the snapshot last, so that a watching
+ * simulator doesn't read a half written file. If a query fails after all its attempts, the
+ * previous cache is kept as it is. Use <code>-o src/main/resources/discovery</code>
+ * to update the bundled cache.
+ */
+public class DiscoveryCacheUpdater {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryCacheUpdater.class);
+
+  /**
+   * The default TOOP Directory
+   */
+  public static final String DEFAULT_DIRECTORY_URL = "http://directory.acc.exchange.toop.eu";
+
+  /**
+   * The countries that are queried from the directory by default
+   */
+  public static final List<String> DEFAULT_COUNTRY_CODES = Collections.unmodifiableList(Arrays.asList("SV", "GQ", "PF", "GF"));
+
+  /**
+   * Queries the service metadata of a participant and a doctype for the updater
+   */
+  @FunctionalInterface
+  public interface IServiceMetadataQuery {
+    /**
+     * @param aParticipantID the participant
+     * @param aDocTypeID     the doctype
+     * @return the service metadata, <code>null</code> if the SMP doesn't have it
+     * @throws Exception if the query failed, it is retried
+     */
+    @Nullable
+    ServiceMetadataType query(@Nonnull IParticipantIdentifier aParticipantID, @Nonnull IDocumentTypeIdentifier aDocTypeID) throws Exception;
+  }
+
+  private String directoryUrl = DEFAULT_DIRECTORY_URL;
+  private List<String> countryCodes = DEFAULT_COUNTRY_CODES;
+  private File outputDirectory = new File(DiscoveryProvider.DISCOVERY_DIRECTORY);
+  private int parallelism = 8;
+  private int maxAttempts = 3;
+  private long retryDelayMs = 500;
+  private boolean incremental = true;
+
+  private IDDServiceGroupHrefProvider hrefProvider = new DDServiceGroupHrefProviderSMP();
+  private IServiceMetadataQuery serviceMetadataQuery = createConnectorServiceMetadataQuery();
+
+  private final AtomicInteger fetchedParticipantCount = new AtomicInteger();
+  private final AtomicInteger reusedParticipantCount = new AtomicInteger();
+  private final AtomicInteger retryCount = new AtomicInteger();
+  private final AtomicInteger failureCount = new AtomicInteger();
+  private final AtomicInteger notFoundCount = new AtomicInteger();
+
+  /**
+   * The connector SMP client logs its failures and returns <code>null</code>, so only its exceptions are retried
+   */
+  private static IServiceMetadataQuery createConnectorServiceMetadataQuery() {
+    final DDServiceMetadataProviderSMP provider = new DDServiceMetadataProviderSMP();
+    return (aParticipantID, aDocTypeID) -> provider.getServiceMetadata(aParticipantID, aDocTypeID,
+        TCConfig.getIdentifierFactory().createProcessIdentifier("dummy-procid", "procid-dummy"),
+        ESMPTransportProfile.TRANSPORT_PROFILE_BDXR_AS4.getID());
+  }
+
+  /**
+   * @param directoryUrl the base URL of the TOOP Directory
+   * @return this
+   */
+  @Nonnull
+  public DiscoveryCacheUpdater setDirectoryUrl(@Nonnull String directoryUrl) {
+    ValueEnforcer.notEmpty(directoryUrl, "directoryUrl");
+    this.directoryUrl = directoryUrl;
+    return this;
+  }
+
+  /**
+   * @param countryCodes the countries to query from the directory
+   * @return this
+   */
+  @Nonnull
+  public DiscoveryCacheUpdater setCountryCodes(@Nonnull List<String> countryCodes) {
+    ValueEnforcer.notEmptyNoNullValue(countryCodes, "countryCodes");
+    this.countryCodes = countryCodes;
+    return this;
+  }
+
+  /**
+   * @param outputDirectory the directory that the cache files are written to
+   * @return this
+   */
+  @Nonnull
+  public DiscoveryCacheUpdater setOutputDirectory(@Nonnull File outputDirectory) {
+    ValueEnforcer.notNull(outputDirectory, "outputDirectory");
+    this.outputDirectory = outputDirectory;
+    return this;
+  }
+
+  /**
+   * @param parallelism the maximum number of concurrent queries
+   * @return this
+   */
+  @Nonnull
+  public DiscoveryCacheUpdater setParallelism(int parallelism) {
+    ValueEnforcer.isGT0(parallelism, "parallelism");
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * @param maxAttempts    the maximum number of attempts per query
+   * @param retryDelayMs   the delay before the first retry, doubled for each further retry
+   * @return this
+   */
+  @Nonnull
+  public DiscoveryCacheUpdater setRetries(int maxAttempts, long retryDelayMs) {
+    ValueEnforcer.isGT0(maxAttempts, "maxAttempts");
+    ValueEnforcer.isGE0(retryDelayMs, "retryDelayMs");
+    this.maxAttempts = maxAttempts;
+    this.retryDelayMs = retryDelayMs;
+    return this;
+  }
+
+  /**
+   * @param incremental whether the SMP data of the unchanged participants is reused
+   * @return this
+   */
+  @Nonnull
+  public DiscoveryCacheUpdater setIncremental(boolean incremental) {
+    this.incremental = incremental;
+    return this;
+  }
+
+  /**
+   * Query the SMP data from the given providers instead of the connector SMP client
+   *
+   * @param hrefProvider         the service group href provider
+   * @param serviceMetadataQuery the service metadata query, e.g. {@link DirectSMPClient#queryServiceMetadata}
+   * @return this
+   */
+  @Nonnull
+  public DiscoveryCacheUpdater setSMPProviders(@Nonnull IDDServiceGroupHrefProvider hrefProvider,
+                                               @Nonnull IServiceMetadataQuery serviceMetadataQuery) {
+    ValueEnforcer.notNull(hrefProvider, "hrefProvider");
+    ValueEnforcer.notNull(serviceMetadataQuery, "serviceMetadataQuery");
+    this.hrefProvider = hrefProvider;
+    this.serviceMetadataQuery = serviceMetadataQuery;
+    return this;
+  }
+
+  /**
+   * @return the number of participants that were queried from the SMP in the last update
+   */
+  public int getFetchedParticipantCount() {
+    return fetchedParticipantCount.get();
+  }
+
+  /**
+   * @return the number of participants that were reused from the previous cache in the last update
+   */
+  public int getReusedParticipantCount() {
+    return reusedParticipantCount.get();
+  }
+
+  /**
+   * @return the number of retried queries in the last update
+   */
+  public int getRetryCount() {
+    return retryCount.get();
+  }
+
+  /**
+   * @return the number of queries that failed after all the attempts in the last update
+   */
+  public int getFailureCount() {
+    return failureCount.get();
+  }
+
+  /**
+   * @return the number of queries in the last update for which the SMP had nothing (HTTP 404)
+   */
+  public int getNotFoundCount() {
+    return notFoundCount.get();
+  }
+
+  /**
+   * Update the DSD and the SMP caches
+   *
+   * @throws IOException if a query failed after all the attempts, the previous cache is kept then
+   */
+  public void update() throws IOException {
+    fetchedParticipantCount.set(0);
+    reusedParticipantCount.set(0);
+    retryCount.set(0);
+    failureCount.set(0);
+    notFoundCount.set(0);
+
+    final long start = System.currentTimeMillis();
+    final ExecutorService executor = createExecutor();
+    try {
+      final File directoryFile = new File(outputDirectory, DiscoveryProvider.DIRECTORY_FILE);
+      final ResultListType previousResults = incremental && directoryFile.exists() ?
+          PDSearchAPIReader.resultListV1().read(directoryFile) : null;
+
+      final ResultListType results = updateDSDCache(executor);
+      updateSMPCache(executor, results, previousResults);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    LOGGER.info("Discovery cache updated in " + (System.currentTimeMillis() - start) + " ms. Participants fetched: " +
+        fetchedParticipantCount + ", reused: " + reusedParticipantCount + ", retries: " + retryCount + ", failures: " + failureCount +
+        ", not found: " + notFoundCount);
+  }
+
+  /**
+   * Update the DSD cache from the TOOP Directory, querying the countries in parallel
+   *
+   * @return the directory contents
+   */
+  private ResultListType updateDSDCache(ExecutorService executor) throws IOException {
+    final List<Future<ResultListType>> futures = new ArrayList<>();
+    for (String countryCode : countryCodes) {
+      futures.add(executor.submit(() -> withRetry("Directory query for " + countryCode,
+          () -> Optional.of(queryDirectory(countryCode)))));
+    }
+
+    ResultListType results = null;
+    for (int i = 0; i < futures.size(); ++i) {
+      final ResultListType countryResults = getResult(futures.get(i));
+      if (countryResults == null)
+        throw new IOException("Couldn't query the directory for " + countryCodes.get(i));
+
+      if (results == null)
+        results = countryResults;
+      else
+        results.getMatch().addAll(countryResults.getMatch());
+    }
+
+    return results;
+  }
+
+  private ResultListType queryDirectory(String countryCode) {
+    final ResultListType results = PDSearchAPIReader.resultListV1().read(ToopDirClient.callSearchApiWithCountryCode(directoryUrl, countryCode));
+    if (results == null)
+      throw new IllegalStateException("Invalid directory response");
+    return results;
+  }
+
+  /**
+   * Update the SMP cache from the SMP, querying the participants in parallel
+   */
+  private void updateSMPCache(ExecutorService executor, ResultListType results, @Nullable ResultListType previousResults) throws IOException {
+    final SMPDiscoveryData previousData = previousResults == null ? null : readPreviousSMPData();
+    final Map<String, Set<String>> previousDocTypes = getDocTypesByParticipant(previousResults);
+
+    final LinkedHashMap<ParticipantIdentifierType, Future<? extends Map<String, String>>> hrefsFutures = new LinkedHashMap<>();
+    final LinkedHashMap<SMPServiceMetadataKey, Future<ServiceMetadataType>> serviceMetadataFutures = new LinkedHashMap<>();
+
+    for (MatchType matchType : results.getMatch()) {
+      final ParticipantIdentifierType pId = createParticipantId(matchType.getParticipantID());
+      if (hrefsFutures.containsKey(pId))
+        continue;
+
+      final IParticipantIdentifier pIdToQuery = TCConfig.getIdentifierFactory().createParticipantIdentifier(pId.getScheme(), pId.getValue());
+      final ICommonsSortedMap<String, String> previousHrefs = previousData == null ? null :
+          previousData.getServiceGroupHrefs(pId.getScheme(), pId.getValue());
+      //an empty service group may come from an earlier failed query, it is queried again
+      final boolean reuse = previousHrefs != null && !previousHrefs.isEmpty() &&
+          getDocTypes(matchType).equals(previousDocTypes.get(toString(matchType.getParticipantID())));
+
+      if (reuse) {
+        reusedParticipantCount.incrementAndGet();
+        hrefsFutures.put(pId, CompletableFuture.completedFuture(previousHrefs));
+      } else {
+        fetchedParticipantCount.incrementAndGet();
+        hrefsFutures.put(pId, executor.submit(() -> withRetry("Service group query for " + toString(matchType.getParticipantID()),
+            () -> queryHrefs(pIdToQuery))));
+      }
+
+      for (IDType dId : matchType.getDocTypeID()) {
+        final DocumentIdentifierType docType = createDocTypeId(dId);
+        final ServiceMetadataType previousServiceMetadata = reuse ?
+            previousData.getServiceMetadata(pId.getScheme(), pId.getValue(), docType.getScheme(), docType.getValue()) : null;
+
+        final Future<ServiceMetadataType> future;
+        if (previousServiceMetadata != null) {
+          future = CompletableFuture.completedFuture(previousServiceMetadata);
+        } else {
+          future = executor.submit(() -> withRetry("Service metadata query for " + toString(matchType.getParticipantID()) + " and " + toString(dId),
+              () -> Optional.ofNullable(serviceMetadataQuery.query(pIdToQuery,
+                  TCConfig.getIdentifierFactory().createDocumentTypeIdentifier(docType.getScheme(), docType.getValue())))));
+        }
+        serviceMetadataFutures.put(new SMPServiceMetadataKey(pId, docType), future);
+      }
+    }
+
+    //collect the results in the directory order
+    final LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap = new LinkedHashMap<>();
+    for (Map.Entry<ParticipantIdentifierType, Future<? extends Map<String, String>>> entry : hrefsFutures.entrySet()) {
+      final Map<String, String> hrefs = getResult(entry.getValue());
+      hrefsMap.put(entry.getKey(), hrefs == null ? new LinkedHashMap<>() : new LinkedHashMap<>(hrefs));
+    }
+
+    final LinkedHashMap<SMPServiceMetadataKey, ServiceMetadataType> serviceMetadataMap = new LinkedHashMap<>();
+    for (Map.Entry<SMPServiceMetadataKey, Future<ServiceMetadataType>> entry : serviceMetadataFutures.entrySet()) {
+      serviceMetadataMap.put(entry.getKey(), getResult(entry.getValue()));
+    }
+
+    //don't replace the good data of the previous cache with the failed queries
+    if (failureCount.get() > 0)
+      throw new IOException(failureCount + " SMP queries failed, the previous cache is kept");
+
+    outputDirectory.mkdirs();
+    writeAtomically(DiscoveryProvider.DIRECTORY_FILE, outputStream -> {
+      if (PDSearchAPIWriter.resultListV1().setFormattedOutput(true).write(results, outputStream).isFailure())
+        throw new IOException("Couldn't write the directory results");
+    });
+    final Yaml yaml = new Yaml();
+    writeAtomically(DiscoveryProvider.HREFS_FILE, outputStream -> dumpYaml(yaml, hrefsMap, outputStream));
+    writeAtomically(DiscoveryProvider.SERVICE_METADATA_FILE, outputStream -> dumpYaml(yaml, serviceMetadataMap, outputStream));
+
+    //the snapshot is written last, so that it is newer than the YAML files
+    writeSnapshot(new SMPDiscoveryData(hrefsMap, serviceMetadataMap));
+  }
+
+  /**
+   * Regenerate the binary SMP snapshot from the existing YAML files, without
+   * querying the SMP.
+   */
+  public void updateSMPSnapshot() throws IOException {
+    try (FileInputStream hrefsStream = new FileInputStream(new File(outputDirectory, DiscoveryProvider.HREFS_FILE));
+         FileInputStream smdStream = new FileInputStream(new File(outputDirectory, DiscoveryProvider.SERVICE_METADATA_FILE))) {
+      writeSnapshot(SMPDiscoveryData.readYaml(hrefsStream, smdStream));
+    }
+  }
+
+  /**
+   * Query the hrefs, failing if the provider reported an error
+   *
+   * @return the hrefs, empty if the SMP doesn't know the participant (or it has no services)
+   */
+  private Optional<ICommonsSortedMap<String, String>> queryHrefs(IParticipantIdentifier pIdToQuery) {
+    final AtomicReference<String> error = new AtomicReference<>();
+    final ITCErrorHandler errorHandler = (eErrorLevel, sMsg, t, eCode) -> {
+      if (eErrorLevel.isError())
+        error.compareAndSet(null, sMsg);
+    };
+
+    final ICommonsSortedMap<String, String> hrefs = hrefProvider.getAllServiceGroupHrefs(pIdToQuery, errorHandler);
+    if (error.get() != null)
+      throw new IllegalStateException(error.get());
+    return hrefs == null || hrefs.isEmpty() ? Optional.empty() : Optional.of(hrefs);
+  }
+
+  /**
+   * Call until it doesn't throw, at most <code>maxAttempts</code> times. An empty result means
+   * that the SMP doesn't have the data (HTTP 404), it is not retried.
+   *
+   * @return the result or <code>null</code> if there is no result or all the attempts failed
+   */
+  @Nullable
+  private <T> T withRetry(String description, Callable<Optional<T>> call) {
+    long delay = retryDelayMs;
+    for (int attempt = 1; ; ++attempt) {
+      final String failure;
+      try {
+        final Optional<T> result = call.call();
+        if (!result.isPresent()) {
+          notFoundCount.incrementAndGet();
+          LOGGER.info(description + " found nothing");
+        }
+        return result.orElse(null);
+      } catch (Exception ex) {
+        failure = ex.getMessage();
+      }
+
+      if (attempt >= maxAttempts) {
+        failureCount.incrementAndGet();
+        LOGGER.error(description + " failed after " + attempt + " attempts: " + failure);
+        return null;
+      }
+
+      retryCount.incrementAndGet();
+      LOGGER.warn(description + " failed (attempt " + attempt + "/" + maxAttempts + "), retrying in " + delay + " ms: " + failure);
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      delay *= 2;
+    }
+  }
+
+  private ExecutorService createExecutor() {
+    final AtomicInteger threadCount = new AtomicInteger();
+    //the queue is bounded, when it is full the submitting thread runs the query itself
+    return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(parallelism * 4), runnable -> {
+      final Thread thread = new Thread(runnable, "discovery-updater-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }, new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  private static <T> T getResult(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ex);
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException(ex.getCause().getMessage(), ex.getCause());
+    }
+  }
+
+  @Nullable
+  private SMPDiscoveryData readPreviousSMPData() throws IOException {
+    final File hrefsFile = new File(outputDirectory, DiscoveryProvider.HREFS_FILE);
+    final File smdFile = new File(outputDirectory, DiscoveryProvider.SERVICE_METADATA_FILE);
+    if (!hrefsFile.exists() || !smdFile.exists())
+      return null;
+
+    try (FileInputStream hrefsStream = new FileInputStream(hrefsFile);
+         FileInputStream smdStream = new FileInputStream(smdFile)) {
+      return SMPDiscoveryData.readYaml(hrefsStream, smdStream);
+    } catch (RuntimeException ex) {
+      LOGGER.warn("Couldn't read the previous SMP cache, fetching everything: " + ex.getMessage());
+      return null;
+    }
+  }
+
+  private static Map<String, Set<String>> getDocTypesByParticipant(@Nullable ResultListType results) {
+    final Map<String, Set<String>> ret = new HashMap<>();
+    if (results != null) {
+      for (MatchType matchType : results.getMatch()) {
+        ret.put(toString(matchType.getParticipantID()), getDocTypes(matchType));
+      }
+    }
+    return ret;
+  }
+
+  private static Set<String> getDocTypes(MatchType matchType) {
+    final Set<String> ret = new TreeSet<>();
+    for (IDType dId : matchType.getDocTypeID()) {
+      ret.add(toString(dId));
+    }
+    return ret;
+  }
+
+  private static String toString(IDType idType) {
+    return idType.getScheme() + "::" + idType.getValue();
+  }
+
+  /**
+   * Writes the content of a cache file
+   */
+  @FunctionalInterface
+  private interface IContentWriter {
+    void write(OutputStream outputStream) throws IOException;
+  }
+
+  /**
+   * Write the content into a temporary file in the output directory, then move it in place of the
+   * cache file, so that the file is never seen half written
+   */
+  private void writeAtomically(String fileName, IContentWriter contentWriter) throws IOException {
+    final File tempFile = File.createTempFile("." + fileName, ".tmp", outputDirectory);
+    try {
+      try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+        contentWriter.write(outputStream);
+      }
+      Files.move(tempFile.toPath(), new File(outputDirectory, fileName).toPath(),
+          StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+  }
+
+  private static void dumpYaml(Yaml yaml, Object data, OutputStream outputStream) throws IOException {
+    final Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+    yaml.dump(data, writer);
+    writer.flush();
+  }
+
+  private void writeSnapshot(SMPDiscoveryData smpData) throws IOException {
+    writeAtomically(DiscoveryProvider.SNAPSHOT_FILE, smpData::writeSnapshot);
+  }
+
+  private static ParticipantIdentifierType createParticipantId(IDType idType) {
+    ParticipantIdentifierType pId = new ParticipantIdentifierType();
+    pId.setScheme(idType.getScheme());
+    pId.setValue(idType.getValue());
+    return pId;
+  }
+
+
+  private static DocumentIdentifierType createDocTypeId(IDType idType) {
+    DocumentIdentifierType docId = new DocumentIdentifierType();
+    docId.setScheme(idType.getScheme());
+    docId.setValue(idType.getValue());
+    return docId;
+  }
+
+  /**
+   * Entry point.
+   * <pre>
+   *   [snapshot] [-d directoryUrl] [-c countryCode...] [-s smpUrl] [-o outputDirectory]
+   *   [-t parallelism] [-r maxAttempts] [-full]
+   * </pre>
+   * With <code>snapshot</code> only the SMP snapshot is regenerated from the YAML files.
+   * With <code>-s</code> the given SMP is queried directly instead of the one found with the
+   * connector SMP client. <code>-full</code> queries all the participants again.
+   *
+   * @param args the arguments
+   */
+  public static void main(String[] args) throws Exception {
+    final DiscoveryCacheUpdater updater = new DiscoveryCacheUpdater();
+    if (args.length == 0) {
+      updater.update();
+      return;
+    }
+
+    final CliCommand command = CliCommand.parse(Arrays.asList(args));
+    if (command.hasOption("d"))
+      updater.setDirectoryUrl(command.getOption("d").get(0));
+    if (command.hasOption("c"))
+      updater.setCountryCodes(command.getOption("c"));
+    if (command.hasOption("o"))
+      updater.setOutputDirectory(new File(command.getOption("o").get(0)));
+    if (command.hasOption("t"))
+      updater.setParallelism(Integer.parseInt(command.getOption("t").get(0)));
+    if (command.hasOption("r"))
+      updater.setRetries(Integer.parseInt(command.getOption("r").get(0)), updater.retryDelayMs);
+    if (command.hasOption("full"))
+      updater.setIncremental(false);
+
+    final List<String> parameters = command.getEmptyParameters();
+    if (parameters != null && parameters.contains("snapshot")) {
+      updater.updateSMPSnapshot();
+      return;
+    }
+
+    if (command.hasOption("s")) {
+      try (DirectSMPClient smpClient = new DirectSMPClient(command.getOption("s").get(0))) {
+        updater.setSMPProviders(smpClient, smpClient::queryServiceMetadata);
+        updater.update();
+      }
+    } else {
+      updater.update();
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the discovery directory (and its shards) with a {@link WatchService} and calls
+ * the given callback on its own daemon thread when one of the discovery files changes or
+ * a shard is added or removed. The events
+ * that arrive within {@link #QUIET_PERIOD_MS} of each other are handled together, so that
+ * an editor saving several files (or writing a file in several steps) causes a single reload.
+ */
+public class DiscoveryDataWatcher implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryDataWatcher.class);
+
+  /**
+   * Wait this long without any new event before calling the callback
+   */
+  static final long QUIET_PERIOD_MS = 500;
+
+  private final Path directory;
+  private final Path shardsDirectory;
+  private final Runnable onChange;
+  private final WatchService watchService;
+  private final Thread thread;
+
+  /**
+   * Create a new watcher
+   *
+   * @param directory the discovery directory
+   * @param onChange  called on the watcher thread after the files change
+   * @throws IOException if the directory can't be watched
+   */
+  public DiscoveryDataWatcher(@Nonnull Path directory, @Nonnull Runnable onChange) throws IOException {
+    this.directory = directory;
+    this.onChange = onChange;
+    this.shardsDirectory = directory.resolve(DiscoveryProvider.SHARDS_DIRECTORY);
+    this.watchService = FileSystems.getDefault().newWatchService();
+    register(directory);
+    if (Files.isDirectory(shardsDirectory)) {
+      register(shardsDirectory);
+      try (DirectoryStream<Path> shards = Files.newDirectoryStream(shardsDirectory, Files::isDirectory)) {
+        for (Path shard : shards) {
+          register(shard);
+        }
+      }
+    }
+
+    thread = new Thread(this::watch, "discovery-watcher");
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Start the watcher thread
+   */
+  public void start() {
+    LOGGER.info("Watching " + directory.toAbsolutePath() + " for discovery data changes");
+    thread.start();
+  }
+
+  /**
+   * Stop watching. The reload that is in progress (if any) is completed.
+   */
+  @Override
+  public void close() {
+    try {
+      watchService.close();
+    } catch (IOException ex) {
+      LOGGER.warn("Couldn't close the watch service: " + ex.getMessage());
+    }
+  }
+
+  private void register(Path path) throws IOException {
+    path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        if (!isRelevant(key))
+          continue;
+
+        //wait until the changes settle
+        while ((key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS)) != null) {
+          isRelevant(key);
+        }
+
+        try {
+          onChange.run();
+        } catch (RuntimeException ex) {
+          LOGGER.error("Discovery data change handling failed: " + ex.getMessage(), ex);
+        }
+      }
+    } catch (ClosedWatchServiceException ex) {
+      LOGGER.info("Stopped watching " + directory.toAbsolutePath());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Consume the events of the key and reset it
+   *
+   * @return true if one of the discovery files has changed
+   */
+  private boolean isRelevant(WatchKey key) {
+    final boolean isShardsDirectory = shardsDirectory.equals(key.watchable());
+    boolean relevant = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        relevant = true;
+      } else if (isShardsDirectory) {
+        //a shard is added or removed
+        relevant = true;
+        final Path shard = shardsDirectory.resolve(event.context().toString());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(shard)) {
+          try {
+            register(shard);
+          } catch (IOException ex) {
+            LOGGER.warn("Couldn't watch the new shard " + shard + ": " + ex.getMessage());
+          }
+        }
+      } else {
+        final String fileName = event.context().toString();
+        relevant |= DiscoveryProvider.DIRECTORY_FILE.equals(fileName) ||
+            DiscoveryProvider.HREFS_FILE.equals(fileName) ||
+            DiscoveryProvider.SERVICE_METADATA_FILE.equals(fileName) ||
+            DiscoveryProvider.SNAPSHOT_FILE.equals(fileName);
+      }
+    }
+    key.reset();
+    return relevant;
+  }
+}
@@ -18,45 +18,56 @@
  */
 package eu.toop.simulator.mock;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.xml.transform.TransformerException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.yaml.snakeyaml.Yaml;
 
 import com.helger.commons.ValueEnforcer;
-import com.helger.commons.collection.impl.CommonsTreeMap;
 import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.collection.impl.ICommonsSortedMap;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
-import com.helger.xsds.bdxr.smp1.DocumentIdentifierType;
-import com.helger.xsds.bdxr.smp1.ParticipantIdentifierType;
 import com.helger.xsds.bdxr.smp1.ServiceMetadataType;
 
 import eu.toop.connector.api.dd.IDDServiceGroupHrefProvider;
 import eu.toop.connector.api.dd.IDDServiceMetadataProvider;
-import eu.toop.connector.api.dsd.DSDDatasetHelper;
 import eu.toop.connector.api.dsd.DSDDatasetResponse;
 import eu.toop.connector.api.dsd.IDSDDatasetResponseProvider;
 import eu.toop.connector.api.error.ITCErrorHandler;
-import eu.toop.dsd.api.DsdDataConverter;
-import eu.toop.edm.error.EToopErrorCode;
-import eu.toop.edm.jaxb.dcatap.DCatAPDatasetType;
+import eu.toop.simulator.SimulatorConfig;
+import eu.toop.simulator.util.ImmutableCommonsSortedMap;
 
 /**
  * This class plays the role of both a directory and an SMP server. It reads its contents
- * from the file or classpath resource 'disovery-data.xml' and creates a map in the memory
- * to provide query results.
+ * from the <code>discovery</code> directory, or from the classpath if that doesn't exist,
+ * and creates a map in the memory to provide query results.
+ * <p>
+ * Large directories can be split into shards, one subdirectory of <code>discovery/shards</code>
+ * per shard (e.g. per country code or participant scheme), each with its own directory and
+ * SMP files. The shards are read in parallel and merged into one index.
+ * <p>
+ * The files in the <code>discovery</code> directory can be watched. When they change, the
+ * data is reloaded on the watcher thread and swapped in at once, the lookups that are in
+ * progress keep using the previous data.
  *
  * @author yerlibilgin
  */
@@ -67,11 +78,32 @@ public class DiscoveryProvider implements IDDServiceGroupHrefProvider, IDDServic
    */
   private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryProvider.class);
 
+  /**
+   * The directory (and the classpath folder) that contains the discovery data
+   */
+  public static final String DISCOVERY_DIRECTORY = "discovery";
+
+  static final String DIRECTORY_FILE = "directory.xml";
+  static final String HREFS_FILE = "endpointhrefs.yml";
+  static final String SERVICE_METADATA_FILE = "serviceMetadataTypes.yml";
+  static final String SNAPSHOT_FILE = "smp-snapshot.bin";
+
+  /**
+   * The subdirectory of the discovery directory that contains the shards, e.g.
+   * <code>discovery/shards/SV/directory.xml</code>
+   */
+  static final String SHARDS_DIRECTORY = "shards";
+
+  /**
+   * The binary snapshot of the SMP data, generated by <code>DiscoveryCacheUpdater</code>
+   * during the build. If it doesn't exist, the YAML files are read.
+   */
+  static final String SMP_SNAPSHOT_RESOURCE = "/" + DISCOVERY_DIRECTORY + "/" + SNAPSHOT_FILE;
+
   /**
    * The Instance.
    */
-  static final DiscoveryProvider instance = new DiscoveryProvider();
-  private byte[] resultListBytes;
+  static final DiscoveryProvider instance = new DiscoveryProvider(new File(DISCOVERY_DIRECTORY));
 
   /**
    * Gets instance.
@@ -82,59 +114,118 @@ public class DiscoveryProvider implements IDDServiceGroupHrefProvider, IDDServic
     return instance;
   }
 
+  /**
+   * Returned for the unknown participants
+   */
+  private static final ICommonsSortedMap<String, String> EMPTY_MAP = new ImmutableCommonsSortedMap<>(Collections.emptyMap());
 
-  private LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap = new LinkedHashMap<>();
-  private LinkedHashMap<SMPServiceMetadataKey, ServiceMetadataType> serviceMetadataMap = new LinkedHashMap<>();
+  /**
+   * The directory that overrides the classpath resources
+   */
+  private final File dataDirectory;
 
-  private static final CommonsTreeMap EMPTY_MAP = new CommonsTreeMap<>();
+  /**
+   * The current data. It is replaced as a whole on reload, so read it once per lookup.
+   */
+  private volatile DiscoveryData data;
 
-  private DiscoveryProvider() {
-    InputStream stream = this.getClass().getResourceAsStream("/discovery/directory.xml");
-    resultListBytes = StreamHelper.getAllBytes(stream);
+  private final AtomicInteger reloadCount = new AtomicInteger();
 
-    Yaml yaml = new Yaml();
-    stream = this.getClass().getResourceAsStream("/discovery/endpointhrefs.yml");
-    ValueEnforcer.notNull(stream, "resource: /discovery/endpointhrefs.yml");
-    hrefsMap = yaml.load(stream);
+  private DiscoveryDataWatcher watcher;
 
-    stream = this.getClass().getResourceAsStream("/discovery/serviceMetadataTypes.yml");
-    ValueEnforcer.notNull(stream, "resource: /discovery/serviceMetadataTypes.yml");
-    serviceMetadataMap = yaml.load(stream);
+  DiscoveryProvider(@Nonnull File dataDirectory) {
+    this.dataDirectory = dataDirectory;
+    data = loadData();
   }
 
-  @Nonnull
-  @Override
-  public ICommonsSortedMap<String, String> getAllServiceGroupHrefs(@Nonnull IParticipantIdentifier aParticipantID, @Nonnull ITCErrorHandler aErrorHandler) {
-    ParticipantIdentifierType pId = createParticipantId(aParticipantID);
+  /**
+   * Start watching the discovery directory, and reload the data when a file changes.
+   * Does nothing if the data is read from the classpath or the watcher was already started.
+   */
+  public synchronized void startWatching() {
+    if (watcher != null)
+      return;
 
-    if (hrefsMap.containsKey(pId)) {
-      final LinkedHashMap<String, String> hrefsMapForPid = hrefsMap.get(pId);
+    if (getShardDirectories().isEmpty()) {
+      LOGGER.info("The discovery data is read from the classpath, nothing to watch");
+      return;
+    }
 
-      CommonsTreeMap<String, String> ret = new CommonsTreeMap<>();
-      hrefsMapForPid.forEach((k, v) -> {
-        ret.put(k, v);
-      });
+    try {
+      watcher = new DiscoveryDataWatcher(dataDirectory.toPath(), this::reload);
+      watcher.start();
+    } catch (IOException ex) {
+      throw new IllegalStateException("Couldn't watch " + dataDirectory.getAbsolutePath(), ex);
+    }
+  }
 
+  /**
+   * Stop watching the discovery directory
+   */
+  public synchronized void stopWatching() {
+    if (watcher != null) {
+      watcher.close();
+      watcher = null;
+    }
+  }
+
+  /**
+   * Read the discovery data again and swap it in. If the new data can't be read,
+   * the current data is kept.
+   */
+  public synchronized void reload() {
+    final long start = System.nanoTime();
+    try {
+      data = loadData();
+      reloadCount.incrementAndGet();
+      LOGGER.info("Reloaded the discovery data in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    } catch (RuntimeException ex) {
+      LOGGER.error("Couldn't reload the discovery data, keeping the current data: " + ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * @return the number of successful reloads since startup
+   */
+  public int getReloadCount() {
+    return reloadCount.get();
+  }
+
+  /**
+   * Returns the cache that serves the DSD queries which are not precomputed
+   *
+   * @return the DSD query cache
+   */
+  @Nonnull
+  public DSDQueryCache getDSDQueryCache() {
+    return data.dsdResponseIndex.getQueryCache();
+  }
 
-      LOGGER.error("Service Group Hrefs size " + ret.size());
+  @Nonnull
+  @Override
+  public ICommonsSortedMap<String, String> getAllServiceGroupHrefs(@Nonnull IParticipantIdentifier aParticipantID, @Nonnull ITCErrorHandler aErrorHandler) {
+    final ICommonsSortedMap<String, String> ret = data.smpData.getServiceGroupHrefs(aParticipantID.getScheme(), aParticipantID.getValue());
+    if (ret != null) {
+      LOGGER.debug("Service Group Hrefs size {}", ret.size());
       return ret;
     }
 
-    LOGGER.error("Service Group Hrefs Empty");
+    LOGGER.debug("Service Group Hrefs Empty");
     return EMPTY_MAP;
   }
 
   @Nullable
   @Override
   public ServiceMetadataType getServiceMetadata(@Nonnull IParticipantIdentifier aParticipantID, @Nonnull IDocumentTypeIdentifier aDocTypeID, @Nonnull IProcessIdentifier aProcessID, @Nonnull String sTransportProfile) {
-    SMPServiceMetadataKey key = new SMPServiceMetadataKey(createParticipantId(aParticipantID), createDocTypeId(aDocTypeID));
-
-    if (serviceMetadataMap.containsKey(key)) {
-      LOGGER.debug("Found match " + key);
-      return serviceMetadataMap.get(key);
+    final ServiceMetadataType serviceMetadata = data.smpData.getServiceMetadata(aParticipantID.getScheme(), aParticipantID.getValue(),
+        aDocTypeID.getScheme(), aDocTypeID.getValue());
+    if (serviceMetadata != null) {
+      LOGGER.debug("Found match for participant: {}::{}    and doctypeid: {}::{}",
+          aParticipantID.getScheme(), aParticipantID.getValue(), aDocTypeID.getScheme(), aDocTypeID.getValue());
+      return serviceMetadata;
     } else {
-      LOGGER.error("No service metadata found for participant: " + aParticipantID.getScheme() + "::" + aParticipantID.getValue() +
-          "    and doctypeid: " + aDocTypeID.getScheme() + "::" + aDocTypeID.getValue(), EToopErrorCode.GEN);
+      LOGGER.error("No service metadata found for participant: {}::{}    and doctypeid: {}::{}",
+          aParticipantID.getScheme(), aParticipantID.getValue(), aDocTypeID.getScheme(), aDocTypeID.getValue());
       return null;
     }
   }
@@ -153,17 +244,9 @@ public class DiscoveryProvider implements IDDServiceGroupHrefProvider, IDDServic
                                                                          @Nonnull final String sCountryCode,
                                                                          @Nonnull final ITCErrorHandler aErrorHandler) {
 
-    String resultListXml = new String(resultListBytes, StandardCharsets.UTF_8);
-    try {
-      final String dsdXml = DsdDataConverter.convertDIRToDSDWithCountryCode(resultListXml, sDatasetType, sCountryCode);
-      final List<DCatAPDatasetType> datasetTypes = DsdDataConverter.parseDataset(dsdXml);
-      final ICommonsSet<DSDDatasetResponse> set = DSDDatasetHelper.buildDSDResponseSet(datasetTypes);
-      LOGGER.debug("Size of dsd dataset response set " + set.size());
-      return set;
-    } catch (TransformerException e) {
-      throw new IllegalStateException(e.getMessage(), e);
-    }
-
+    final ICommonsSet<DSDDatasetResponse> set = data.dsdResponseIndex.getByCountry(sDatasetType, sCountryCode);
+    LOGGER.debug("Size of dsd dataset response set " + set.size());
+    return set;
   }
 
   @Nonnull
@@ -172,32 +255,149 @@ public class DiscoveryProvider implements IDDServiceGroupHrefProvider, IDDServic
                                                                         @Nonnull final String sDPType,
                                                                         @Nonnull final ITCErrorHandler aErrorHandler) {
 
-    String resultListXml = new String(resultListBytes, StandardCharsets.UTF_8);
+    final ICommonsSet<DSDDatasetResponse> set = data.dsdResponseIndex.getByDPType(sDatasetType, sDPType);
+    LOGGER.debug("Size of dsd dataset response set " + set.size());
+    return set;
+  }
+
+  private DiscoveryData loadData() {
+    final List<File> shardDirectories = getShardDirectories();
+    if (shardDirectories.isEmpty()) {
+      LOGGER.info("Loading the discovery data from the classpath");
+      return new DiscoveryData(readDirectory(Collections.singletonList(StreamHelper.getAllBytes(openResource(DIRECTORY_FILE))), null),
+          readSMPDataFromClasspath());
+    }
+
+    if (shardDirectories.size() == 1) {
+      LOGGER.info("Loading the discovery data from " + shardDirectories.get(0).getAbsolutePath());
+      final File shardDirectory = shardDirectories.get(0);
+      return new DiscoveryData(readDirectory(Collections.singletonList(readFile(new File(shardDirectory, DIRECTORY_FILE))), null),
+          readSMPDataFromFiles(shardDirectory));
+    }
+
+    //read the shards in parallel
+    final long start = System.nanoTime();
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(shardDirectories.size(), Runtime.getRuntime().availableProcessors()));
     try {
-      final String dsdXml = DsdDataConverter.convertDIRToDSDWithDPType(resultListXml, sDatasetType, sDPType);
-      final List<DCatAPDatasetType> datasetTypes = DsdDataConverter.parseDataset(dsdXml);
-      final ICommonsSet<DSDDatasetResponse> set = DSDDatasetHelper.buildDSDResponseSet(datasetTypes);
-      LOGGER.debug("Size of dsd dataset response set " + set.size());
-      return set;
-    } catch (TransformerException e) {
-      throw new IllegalStateException(e.getMessage(), e);
+      final List<Future<byte[]>> directoryFutures = new ArrayList<>();
+      final List<Future<SMPDiscoveryData>> smpFutures = new ArrayList<>();
+      for (File shardDirectory : shardDirectories) {
+        directoryFutures.add(executor.submit(() -> readFile(new File(shardDirectory, DIRECTORY_FILE))));
+        smpFutures.add(executor.submit(() -> readSMPDataFromFiles(shardDirectory)));
+      }
+
+      final List<byte[]> directoryShards = new ArrayList<>();
+      for (Future<byte[]> future : directoryFutures) {
+        directoryShards.add(getResult(future));
+      }
+      final DSDResponseIndex dsdResponseIndex = readDirectory(directoryShards, executor);
+
+      final List<SMPDiscoveryData> smpShards = new ArrayList<>();
+      for (Future<SMPDiscoveryData> future : smpFutures) {
+        smpShards.add(getResult(future));
+      }
+      final SMPDiscoveryData smpData = SMPDiscoveryData.merge(smpShards);
+
+      LOGGER.info("Loaded " + shardDirectories.size() + " discovery shards with " + smpData.getServiceMetadataCount() +
+          " service metadata entries in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+      return new DiscoveryData(dsdResponseIndex, smpData);
+    } finally {
+      executor.shutdownNow();
     }
+  }
 
+  /**
+   * The subdirectories of <code>shards</code> that contain a directory file, sorted by name. If
+   * there are none, the discovery directory itself (if it contains a directory file). The files in
+   * the discovery directory (e.g. the sample data copied there at startup) are not mixed with the shards.
+   */
+  List<File> getShardDirectories() {
+    final List<File> ret = new ArrayList<>();
+    final File[] shards = new File(dataDirectory, SHARDS_DIRECTORY).listFiles(file -> file.isDirectory() && new File(file, DIRECTORY_FILE).exists());
+    if (shards != null && shards.length > 0) {
+      Arrays.sort(shards);
+      ret.addAll(Arrays.asList(shards));
+    } else if (new File(dataDirectory, DIRECTORY_FILE).exists()) {
+      ret.add(dataDirectory);
+    }
+    return ret;
   }
 
+  private static DSDResponseIndex readDirectory(List<byte[]> directoryShards, @Nullable ExecutorService executor) {
+    return new DSDResponseIndex(directoryShards, SimulatorConfig.isDsdPrecompute(), SimulatorConfig.getDsdCacheSize(), executor);
+  }
 
-  private ParticipantIdentifierType createParticipantId(IParticipantIdentifier aParticipantID) {
-    ParticipantIdentifierType pId = new ParticipantIdentifierType();
-    pId.setScheme(aParticipantID.getScheme());
-    pId.setValue(aParticipantID.getValue());
-    return pId;
+  private static SMPDiscoveryData readSMPDataFromFiles(File directory) {
+    final File hrefsFile = new File(directory, HREFS_FILE);
+    final File serviceMetadataFile = new File(directory, SERVICE_METADATA_FILE);
+    final File snapshotFile = new File(directory, SNAPSHOT_FILE);
+
+    //use the snapshot only if the YAML files were not edited after it
+    if (snapshotFile.exists() && snapshotFile.lastModified() >= hrefsFile.lastModified() &&
+        snapshotFile.lastModified() >= serviceMetadataFile.lastModified()) {
+      LOGGER.debug("Loading SMP data from the snapshot " + snapshotFile + ", lazy: " + SimulatorConfig.isSmpLazyLoad());
+      return SMPDiscoveryData.readSnapshot(openFile(snapshotFile), SimulatorConfig.isSmpLazyLoad());
+    }
+
+    try (InputStream hrefsStream = openFile(hrefsFile);
+         InputStream serviceMetadataStream = openFile(serviceMetadataFile)) {
+      return SMPDiscoveryData.readYaml(hrefsStream, serviceMetadataStream);
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex.getMessage(), ex);
+    }
+  }
+
+  private static byte[] readFile(File file) {
+    return StreamHelper.getAllBytes(openFile(file));
   }
 
+  private static <T> T getResult(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ex);
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException(ex.getCause().getMessage(), ex.getCause());
+    }
+  }
+
+  private SMPDiscoveryData readSMPDataFromClasspath() {
+    final InputStream stream = this.getClass().getResourceAsStream(SMP_SNAPSHOT_RESOURCE);
+    if (stream != null) {
+      LOGGER.info("Loading SMP data from the snapshot " + SMP_SNAPSHOT_RESOURCE + ", lazy: " + SimulatorConfig.isSmpLazyLoad());
+      return SMPDiscoveryData.readSnapshot(stream, SimulatorConfig.isSmpLazyLoad());
+    }
+
+    LOGGER.info("No SMP snapshot found, loading SMP data from the YAML files");
+    return SMPDiscoveryData.readYaml(openResource(HREFS_FILE), openResource(SERVICE_METADATA_FILE));
+  }
 
-  private DocumentIdentifierType createDocTypeId(IDocumentTypeIdentifier aDoctypeId) {
-    DocumentIdentifierType docId = new DocumentIdentifierType();
-    docId.setScheme(aDoctypeId.getScheme());
-    docId.setValue(aDoctypeId.getValue());
-    return docId;
+  private InputStream openResource(String fileName) {
+    final String resource = "/" + DISCOVERY_DIRECTORY + "/" + fileName;
+    final InputStream stream = this.getClass().getResourceAsStream(resource);
+    ValueEnforcer.notNull(stream, "resource: " + resource);
+    return stream;
+  }
+
+  private static InputStream openFile(File file) {
+    try {
+      return new FileInputStream(file);
+    } catch (FileNotFoundException ex) {
+      throw new IllegalStateException("Couldn't read " + file.getAbsolutePath(), ex);
+    }
+  }
+
+  /**
+   * The directory and SMP data that are loaded and replaced together
+   */
+  private static final class DiscoveryData {
+    private final DSDResponseIndex dsdResponseIndex;
+    private final SMPDiscoveryData smpData;
+
+    private DiscoveryData(DSDResponseIndex dsdResponseIndex, SMPDiscoveryData smpData) {
+      this.dsdResponseIndex = dsdResponseIndex;
+      this.smpData = smpData;
+    }
   }
 }
@@ -0,0 +1,148 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the root element of an EDM document (StAX) and stops there, to learn what the
+ * document is and which request it belongs to without parsing all of it.
+ */
+public final class EDMPeek {
+
+  static final String QUERY_REQUEST = "QueryRequest";
+  static final String QUERY_RESPONSE = "QueryResponse";
+  static final String QUERY_NAMESPACE = "urn:oasis:names:tc:ebxml-regrep:xsd:query:4.0";
+  static final String STATUS_FAILURE = "urn:oasis:names:tc:ebxml-regrep:ResponseStatusType:Failure";
+
+  private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+
+  static {
+    INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+  }
+
+  private final String rootNamespace;
+  private final String rootName;
+  private final String requestID;
+  private final String status;
+
+  private EDMPeek(String rootNamespace, String rootName, String requestID, String status) {
+    this.rootNamespace = rootNamespace;
+    this.rootName = rootName;
+    this.requestID = requestID;
+    this.status = status;
+  }
+
+  /**
+   * Read the root element of the document
+   *
+   * @param document the document, it is not closed
+   * @return the root element, <code>null</code> if the document is not XML
+   */
+  @Nullable
+  public static EDMPeek peek(@Nonnull InputStream document) {
+    try {
+      final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(document);
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT)
+            continue;
+          final String name = reader.getLocalName();
+          String requestID = null;
+          String status = null;
+          if (QUERY_REQUEST.equals(name)) {
+            requestID = reader.getAttributeValue(null, "id");
+          } else if (QUERY_RESPONSE.equals(name)) {
+            requestID = reader.getAttributeValue(null, "requestId");
+            status = reader.getAttributeValue(null, "status");
+          }
+          final String namespace = reader.getNamespaceURI();
+          return new EDMPeek(namespace == null || namespace.isEmpty() ? null : namespace, name, requestID, status);
+        }
+        return null;
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * @return the namespace URI of the root element, <code>null</code> if it has none
+   */
+  @Nullable
+  public String getRootNamespace() {
+    return rootNamespace;
+  }
+
+  /**
+   * @return the local name of the root element
+   */
+  @Nonnull
+  public String getRootName() {
+    return rootName;
+  }
+
+  /**
+   * @return the id of a request, or the request id of a response (an error response is a
+   * <code>QueryResponse</code> too). <code>null</code> for other documents
+   */
+  @Nullable
+  public String getRequestID() {
+    return requestID;
+  }
+
+  /**
+   * @return the status of a response, <code>null</code> for other documents
+   */
+  @Nullable
+  public String getStatus() {
+    return status;
+  }
+
+  /**
+   * @return <code>true</code> if the document is an EDM request
+   */
+  public boolean isRequest() {
+    return QUERY_NAMESPACE.equals(rootNamespace) && QUERY_REQUEST.equals(rootName);
+  }
+
+  /**
+   * @return <code>true</code> if the document is an EDM response, but not an error response
+   */
+  public boolean isResponse() {
+    return QUERY_NAMESPACE.equals(rootNamespace) && QUERY_RESPONSE.equals(rootName) && !STATUS_FAILURE.equals(status);
+  }
+
+  /**
+   * @return <code>true</code> if the document is an EDM error response (a response with the status Failure)
+   */
+  public boolean isErrorResponse() {
+    return QUERY_NAMESPACE.equals(rootNamespace) && QUERY_RESPONSE.equals(rootName) && STATUS_FAILURE.equals(status);
+  }
+}
@@ -0,0 +1,226 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.state.ESuccess;
+import com.helger.httpclient.response.ResponseHandlerByteArray;
+
+import eu.toop.connector.api.me.incoming.MEIncomingTransportMetadata;
+import eu.toop.connector.api.me.model.MEPayload;
+import eu.toop.connector.api.rest.ETCPayloadType;
+import eu.toop.connector.api.rest.TCIncomingMessage;
+import eu.toop.connector.api.rest.TCIncomingMetadata;
+import eu.toop.connector.api.rest.TCPayload;
+import eu.toop.connector.api.rest.TCRestJAXB;
+import eu.toop.simulator.SimulatorConfig;
+import eu.toop.simulator.util.SimulatorHttpClient;
+
+/**
+ * Forwards the messages of the mocked gateway to the /to-dc and /to-dp endpoints. Unlike
+ * {@link eu.toop.connector.app.incoming.DC_DP_TriggerViaHttp}, which needs the parsed EDM
+ * objects and serializes them again, the payloads are passed through as they are.
+ * <p>
+ * When an endpoint is the /to-dc or /to-dp of this simulator, the message is handed to it in-process
+ * (no TCIncomingMessage, no socket), unless <code>inProcessDelivery</code> is turned off.
+ */
+public final class IncomingMessageForwarder {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IncomingMessageForwarder.class);
+
+  static final String DC_PATH = "/to-dc";
+  static final String DP_PATH = "/to-dp";
+
+  /**
+   * An endpoint of this simulator that receives the messages in-process
+   */
+  public interface ILocalEndpoint {
+    /**
+     * Receive a message as if it had been posted to the endpoint. The attachments are
+     * not passed, the simulated endpoints don't use them.
+     *
+     * @param payloadType the type of the document
+     * @param metadata    the metadata
+     * @param document    the EDM document
+     * @return <code>false</code> if the endpoint is saturated and rejected the message
+     */
+    boolean receive(@Nonnull ETCPayloadType payloadType, @Nonnull MEIncomingTransportMetadata metadata, @Nonnull byte[] document);
+  }
+
+  private static volatile ILocalEndpoint localDC;
+  private static volatile ILocalEndpoint localDP;
+
+  private static final AtomicLong inProcessCount = new AtomicLong();
+  private static final AtomicLong httpCount = new AtomicLong();
+
+  private IncomingMessageForwarder() {
+  }
+
+  /**
+   * Register the /to-dc and /to-dp of this simulator
+   *
+   * @param dc the /to-dc endpoint, <code>null</code> to always use HTTP
+   * @param dp the /to-dp endpoint, <code>null</code> to always use HTTP
+   */
+  public static void setLocalEndpoints(@Nullable ILocalEndpoint dc, @Nullable ILocalEndpoint dp) {
+    localDC = dc;
+    localDP = dp;
+  }
+
+  /**
+   * @param destURL the /to-dc or /to-dp endpoint
+   * @return the endpoint that receives the messages in-process, <code>null</code> if they have to be posted
+   */
+  @Nullable
+  public static ILocalEndpoint getLocalEndpoint(@Nonnull String destURL) {
+    if (!SimulatorConfig.isInProcessDelivery())
+      return null;
+    if (isSelf(destURL, SimulatorConfig.getConnectorPort(), DC_PATH))
+      return localDC;
+    if (isSelf(destURL, SimulatorConfig.getConnectorPort(), DP_PATH))
+      return localDP;
+    return null;
+  }
+
+  /**
+   * @param destURL       the URL
+   * @param connectorPort the port of this simulator
+   * @param path          the path of the endpoint
+   * @return <code>true</code> if the URL is the endpoint of this simulator, reached over the loopback interface
+   */
+  static boolean isSelf(@Nonnull String destURL, int connectorPort, @Nonnull String path) {
+    final URI uri;
+    try {
+      uri = new URI(destURL);
+    } catch (URISyntaxException ex) {
+      return false;
+    }
+    if (!"http".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null)
+      return false;
+    final String host = uri.getHost().toLowerCase(Locale.ROOT);
+    final boolean loopback = host.equals("localhost") || host.startsWith("127.") || host.equals("[::1]") || host.equals("::1");
+    final int port = uri.getPort() == -1 ? 80 : uri.getPort();
+    return loopback && port == connectorPort && path.equals(uri.getPath());
+  }
+
+  /**
+   * Hand a message to an endpoint of this simulator
+   *
+   * @param endpoint    the endpoint, see {@link #getLocalEndpoint(String)}
+   * @param payloadType the type of the document
+   * @param metadata    the metadata
+   * @param document    the EDM document
+   * @param destURL     the URL of the endpoint, for the log
+   * @return the success of the delivery, the failures are logged
+   */
+  @Nonnull
+  public static ESuccess forwardInProcess(@Nonnull ILocalEndpoint endpoint, @Nonnull ETCPayloadType payloadType,
+                                          @Nonnull MEIncomingTransportMetadata metadata, @Nonnull byte[] document,
+                                          @Nonnull String destURL) {
+    inProcessCount.incrementAndGet();
+    if (endpoint.receive(payloadType, metadata, document))
+      return ESuccess.SUCCESS;
+    LOGGER.error("Could not forward the " + payloadType + " to " + destURL + ": the endpoint is saturated");
+    return ESuccess.FAILURE;
+  }
+
+  /**
+   * @return the number of messages handed to the endpoints of this simulator in-process
+   */
+  public static long getInProcessCount() {
+    return inProcessCount.get();
+  }
+
+  /**
+   * @return the number of messages posted over HTTP
+   */
+  public static long getHttpCount() {
+    return httpCount.get();
+  }
+
+  /**
+   * Forward the payloads as a TCIncomingMessage
+   *
+   * @param payloadType the type of the first payload
+   * @param metadata    the metadata
+   * @param payloads    the EDM document first, then the attachments
+   * @param destURL     the /to-dc or /to-dp endpoint
+   * @return the success of the delivery, the failures are logged
+   */
+  @Nonnull
+  public static ESuccess forward(@Nonnull ETCPayloadType payloadType, @Nonnull MEIncomingTransportMetadata metadata,
+                                 @Nonnull Iterable<MEPayload> payloads, @Nonnull String destURL) {
+    ValueEnforcer.notNull(payloadType, "payloadType");
+    ValueEnforcer.notNull(metadata, "metadata");
+    ValueEnforcer.notNull(payloads, "payloads");
+    ValueEnforcer.notEmpty(destURL, "destURL");
+
+    final ILocalEndpoint aLocalEndpoint = getLocalEndpoint(destURL);
+    if (aLocalEndpoint != null) {
+      final Iterator<MEPayload> it = payloads.iterator();
+      ValueEnforcer.isTrue(it.hasNext(), "There is no payload");
+      return forwardInProcess(aLocalEndpoint, payloadType, metadata, it.next().getData().bytes(), destURL);
+    }
+
+    httpCount.incrementAndGet();
+    final TCIncomingMessage aMessage = new TCIncomingMessage();
+    {
+      final TCIncomingMetadata aMetadata = new TCIncomingMetadata();
+      aMetadata.setSenderID(TCRestJAXB.createTCID(metadata.getSenderID().getScheme(), metadata.getSenderID().getValue()));
+      aMetadata.setReceiverID(TCRestJAXB.createTCID(metadata.getReceiverID().getScheme(), metadata.getReceiverID().getValue()));
+      aMetadata.setDocTypeID(TCRestJAXB.createTCID(metadata.getDocumentTypeID().getScheme(), metadata.getDocumentTypeID().getValue()));
+      aMetadata.setProcessID(TCRestJAXB.createTCID(metadata.getProcessID().getScheme(), metadata.getProcessID().getValue()));
+      aMetadata.setPayloadType(payloadType);
+      aMessage.setMetadata(aMetadata);
+    }
+    for (final MEPayload aItem : payloads) {
+      final TCPayload aPayload = new TCPayload();
+      aPayload.setValue(aItem.getData().bytes());
+      aPayload.setMimeType(aItem.getMimeType().getAsString());
+      aPayload.setContentID(aItem.getContentID());
+      aMessage.addPayload(aPayload);
+    }
+
+    final HttpPost aPost = new HttpPost(destURL);
+    aPost.setEntity(new ByteArrayEntity(TCRestJAXB.incomingMessage().getAsBytes(aMessage), ContentType.APPLICATION_XML));
+    try {
+      SimulatorHttpClient.getInstance().execute(aPost, new ResponseHandlerByteArray());
+      return ESuccess.SUCCESS;
+    } catch (IOException ex) {
+      LOGGER.error("Could not forward the " + payloadType + " to " + destURL + ": " + ex.getMessage());
+      return ESuccess.FAILURE;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import eu.toop.connector.api.me.incoming.MEIncomingTransportMetadata;
+import eu.toop.simulator.SimulatorConfig;
+import eu.toop.simulator.util.ChunkedBody;
+import eu.toop.simulator.util.MessageJournal;
+
+/**
+ * Records the messages crossing the simulator into a {@link MessageJournal}, if
+ * <code>recorder.enabled</code> is set. The bytes of a message are only copied when the recorder is enabled.
+ */
+public final class MessageRecorder {
+
+  /**
+   * Where a message was captured. The IDs are written into the journal, they must not change.
+   */
+  public enum EChannel {
+    /**
+     * A message received by the simulated DC
+     */
+    TO_DC(1),
+    /**
+     * A message received by the simulated DP
+     */
+    TO_DP(2),
+    /**
+     * A payload passed to the mocked gateway
+     */
+    SEND_OUTGOING(3),
+    /**
+     * A message submitted to the connector
+     */
+    SUBMIT(4);
+
+    private final byte id;
+
+    EChannel(int id) {
+      this.id = (byte) id;
+    }
+
+    /**
+     * @return the ID written into the journal
+     */
+    public byte getID() {
+      return id;
+    }
+
+    /**
+     * @param id an ID read from the journal
+     * @return the channel, <code>null</code> if the ID is unknown
+     */
+    @Nullable
+    public static EChannel getFromIDOrNull(byte id) {
+      for (EChannel channel : values()) {
+        if (channel.id == id)
+          return channel;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * The journal, created on the first message
+   */
+  private static MessageJournal journal;
+
+  private MessageRecorder() {
+  }
+
+  /**
+   * @return <code>true</code> if the messages are recorded
+   */
+  public static boolean isEnabled() {
+    return SimulatorConfig.isRecorderEnabled();
+  }
+
+  /**
+   * @return the journal, <code>null</code> if nothing was recorded yet
+   */
+  @Nullable
+  public static synchronized MessageJournal getJournal() {
+    return journal;
+  }
+
+  private static synchronized MessageJournal getOrCreateJournal() {
+    if (journal == null) {
+      journal = new MessageJournal(new File(SimulatorConfig.getRecorderDirectory()),
+          SimulatorConfig.getRecorderSegmentSize() * 1024L * 1024L, SimulatorConfig.getRecorderMaxSegments(),
+          SimulatorConfig.getRecorderQueueSize());
+    }
+    return journal;
+  }
+
+  /**
+   * Write the queued messages and close the journal
+   *
+   * @param maxWaitMillis the remaining shutdown time
+   */
+  public static synchronized void shutdown(long maxWaitMillis) {
+    if (journal != null) {
+      journal.shutdown(maxWaitMillis, TimeUnit.MILLISECONDS);
+      journal = null;
+    }
+  }
+
+  /**
+   * Record a message, if the recorder is enabled
+   *
+   * @param channel  where the message was captured
+   * @param metadata the metadata, e.g. the sender and the receiver
+   * @param payload  the message. It must not be changed afterwards
+   */
+  public static void record(@Nonnull EChannel channel, @Nonnull String metadata, @Nonnull byte[] payload) {
+    if (isEnabled())
+      getOrCreateJournal().record(channel.getID(), metadata, payload);
+  }
+
+  /**
+   * Record a request body, if the recorder is enabled. The body is copied, it may be released afterwards.
+   *
+   * @param channel  where the message was captured
+   * @param metadata the metadata
+   * @param body     the request body
+   */
+  public static void record(@Nonnull EChannel channel, @Nonnull String metadata, @Nonnull ChunkedBody body) {
+    if (isEnabled())
+      getOrCreateJournal().record(channel.getID(), metadata, body.toByteArray());
+  }
+
+  /**
+   * Record a message submitted to the connector, if the recorder is enabled. Only the message
+   * without the attachments is recorded, the size and the SHA-256 digest of each attachment are
+   * appended to the metadata. A message is recorded once, its delivery retries are not recorded.
+   *
+   * @param channel  where the message was captured
+   * @param metadata the metadata
+   * @param entity   the message
+   */
+  public static void record(@Nonnull EChannel channel, @Nonnull String metadata, @Nonnull TCMessageEntity entity) {
+    if (!isEnabled() || !entity.markRecorded())
+      return;
+    final List<String> digests = entity.getAttachmentDigests();
+    getOrCreateJournal().record(channel.getID(), digests.isEmpty() ? metadata : metadata + " attachments=" + String.join(",", digests),
+        entity.getSkeleton().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param metadata the routing of a message
+   * @return the routing as the metadata of a record
+   */
+  @Nonnull
+  public static String describe(@Nonnull MEIncomingTransportMetadata metadata) {
+    return "sender=" + metadata.getSenderID().getURIEncoded() + " receiver=" + metadata.getReceiverID().getURIEncoded() +
+        " doctype=" + metadata.getDocumentTypeID().getURIEncoded() + " process=" + metadata.getProcessID().getURIEncoded();
+  }
+}
@@ -25,6 +25,13 @@ import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.io.stream.ByteBufferInputStream;
+import com.helger.json.IJson;
+import com.helger.json.serialize.JsonWriter;
+import com.helger.json.serialize.JsonWriterSettings;
+
+import eu.toop.simulator.SimulatorConfig;
+
 /**
  * A MOCK class that generates and sends DC requests
  *
@@ -34,6 +41,15 @@ public class MockDC {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(MockDC.class);
 
+  private static final String DEFAULT_REQUEST_RESOURCE = "/datasets/edm-conceptRequest-lp.xml";
+  private static final String CONNECTOR_ENDPOINT = "/api/user/submit/request";
+
+  /**
+   * The requests waiting for a response and the measured latencies
+   */
+  private static final CorrelationTracker correlationTracker =
+      new CorrelationTracker(SimulatorConfig.getCorrelationMaxSize(), SimulatorConfig.getCorrelationExpiry());
+
   /**
    * Sends a request that is contained in a file with name <code>sFileName</code>
    *
@@ -44,10 +60,62 @@ public class MockDC {
    */
   public static void sendDCRequest(@Nullable String sender, @Nullable String receiver, @Nullable String docTypeId, @Nullable String sFileName) {
 
-    final String defaultResourceName = "/datasets/edm-conceptRequest-lp.xml";
-    final String connectorEndpoint = "/api/user/submit/request";
+    final TCMessageEntity request = createDCRequest(sender, receiver, docTypeId, sFileName);
+    LOGGER.info(request.getSkeleton());
 
-    DCDPUtil.sendTCOutgoingMessage(sender, receiver, docTypeId, sFileName, defaultResourceName, connectorEndpoint);
+    try {
+      final IJson aJson = submitDCRequest(request);
+      LOGGER.info(new JsonWriter(new JsonWriterSettings().setIndentEnabled(true)).writeAsString(aJson));
+    } catch (IOException e) {
+      LOGGER.error("IOException during submission to " + CONNECTOR_ENDPOINT + ": " + sFileName + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Create a request that can be submitted many times with {@link #submitDCRequest(TCMessageEntity)}
+   *
+   * @param sender    the identifier of the sender
+   * @param receiver  the identifier of the recevier
+   * @param docTypeId The doctypeid
+   * @param sFileName the file that contains the request. Optional
+   * @return the request
+   */
+  public static TCMessageEntity createDCRequest(String sender, String receiver, String docTypeId, @Nullable String sFileName) {
+    final ResponseAttachment edmSource = DCDPUtil.loadEdmSource(sFileName, DEFAULT_REQUEST_RESOURCE);
+    final EDMPeek root = EDMPeek.peek(new ByteBufferInputStream(edmSource.getData()));
+    return DCDPUtil.createMessage(sender, receiver, docTypeId, edmSource).setRequestID(root == null ? null : root.getRequestID());
+  }
+
+  /**
+   * Submit a request to the connector. A request with a known ID is tracked until its
+   * response arrives (see {@link #getCorrelationTracker()}).
+   *
+   * @param request the request
+   * @return the JSON response of the connector
+   * @throws IOException on a transport error or an error status
+   */
+  public static IJson submitDCRequest(TCMessageEntity request) throws IOException {
+    final CorrelationTracker.Exchange exchange = request.getRequestID() == null ? null : correlationTracker.sent(request.getRequestID());
+    boolean accepted = false;
+    try {
+      final IJson aJson = DCDPUtil.postToConnector(CONNECTOR_ENDPOINT, request);
+      accepted = DCDPUtil.isAccepted(aJson);
+      return aJson;
+    } finally {
+      if (exchange != null) {
+        if (accepted)
+          correlationTracker.accepted(exchange);
+        else
+          correlationTracker.failed(exchange);
+      }
+    }
+  }
+
+  /**
+   * @return the table that matches the sent requests with the responses arriving at /to-dc
+   */
+  public static CorrelationTracker getCorrelationTracker() {
+    return correlationTracker;
   }
 
   public static void main(String[] args) throws IOException {
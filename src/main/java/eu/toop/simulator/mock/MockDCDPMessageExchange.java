@@ -30,25 +30,17 @@ import org.slf4j.LoggerFactory;
 import com.helger.commons.annotation.IsSPIImplementation;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.impl.CommonsArrayList;
-import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.error.level.EErrorLevel;
 
 import eu.toop.connector.api.me.IMessageExchangeSPI;
-import eu.toop.connector.api.me.incoming.IIncomingEDMResponse;
 import eu.toop.connector.api.me.incoming.IMEIncomingHandler;
-import eu.toop.connector.api.me.incoming.IncomingEDMErrorResponse;
-import eu.toop.connector.api.me.incoming.IncomingEDMResponse;
 import eu.toop.connector.api.me.incoming.MEIncomingTransportMetadata;
 import eu.toop.connector.api.me.model.MEMessage;
 import eu.toop.connector.api.me.model.MEPayload;
 import eu.toop.connector.api.me.outgoing.IMERoutingInformation;
 import eu.toop.connector.api.me.outgoing.MEOutgoingException;
-import eu.toop.connector.app.incoming.DC_DP_TriggerViaHttp;
-import eu.toop.edm.EDMErrorResponse;
+import eu.toop.connector.api.rest.ETCPayloadType;
 import eu.toop.edm.EDMRequest;
-import eu.toop.edm.EDMResponse;
-import eu.toop.edm.IEDMTopLevelObject;
-import eu.toop.edm.xml.EDMPayloadDeterminator;
 import eu.toop.kafkaclient.ToopKafkaClient;
 import eu.toop.simulator.SimulationMode;
 import eu.toop.simulator.SimulatorConfig;
@@ -82,45 +74,49 @@ public class MockDCDPMessageExchange implements IMessageExchangeSPI {
   public void sendOutgoing(@Nonnull IMERoutingInformation imeRoutingInformation, @Nonnull MEMessage meMessage) throws MEOutgoingException {
     try {
       final MEPayload aHead = meMessage.payloads().getFirst();
-      final InputStream inputStream = aHead.getData().getInputStream();
-      final IEDMTopLevelObject aTopLevel = EDMPayloadDeterminator.parseAndFind(inputStream);
+      //only the root element is read to learn what the message is, the payloads are passed through as they are
+      final EDMPeek aPeek;
+      try (final InputStream inputStream = aHead.getData().getInputStream()) {
+        aPeek = EDMPeek.peek(inputStream);
+      }
       final MEIncomingTransportMetadata aMetadata = new MEIncomingTransportMetadata(
           imeRoutingInformation.getSenderID(), imeRoutingInformation.getReceiverID(),
           imeRoutingInformation.getDocumentTypeID(), imeRoutingInformation.getProcessID());
+      if (MessageRecorder.isEnabled()) {
+        final String aRouting = MessageRecorder.describe(aMetadata);
+        for (final MEPayload aPayload : meMessage.payloads()) {
+          MessageRecorder.record(MessageRecorder.EChannel.SEND_OUTGOING,
+              aRouting + " contentID=" + aPayload.getContentID() + " mimeType=" + aPayload.getMimeType().getAsString(), aPayload.getData().bytes());
+        }
+      }
 
-      if (aTopLevel instanceof EDMRequest) {
+      if (aPeek != null && aPeek.isRequest()) {
         if (SimulatorConfig.getMode() == SimulationMode.DP) {
           if (SimulatorConfig.isDpResponseAuto()) {
             LOGGER.debug("Automatic response will be created and sent");
+            //the mini DP needs the parsed request
+            final EDMRequest aRequest = EDMRequest.reader().read(aHead.getData().bytes());
+            if (aRequest == null)
+              throw new IllegalArgumentException("The request " + aPeek.getRequestID() + " is not a valid EDMRequest");
             //create response and send back
-            final IIncomingEDMResponse response = MockDP.eloniaCreateResponse((EDMRequest) aTopLevel, aMetadata);
-            if (response instanceof IncomingEDMResponse)
-              DC_DP_TriggerViaHttp.forwardMessage((IncomingEDMResponse) response, SimulatorConfig.getDcEndpoint());
-            if (response instanceof IncomingEDMErrorResponse)
-              DC_DP_TriggerViaHttp.forwardMessage((IncomingEDMErrorResponse) response, SimulatorConfig.getDcEndpoint());
+            MockDP.createAndForwardResponse(aRequest, aMetadata);
           } else {
             LOGGER.debug("Automatic response is disabled. Having a rest");
           }
         } else {
           //send it to the configured /to-dp
-          MockDP.deliverRequestToDP((EDMRequest) aTopLevel, aMetadata);
+          IncomingMessageForwarder.forward(ETCPayloadType.REQUEST, aMetadata, new CommonsArrayList<>(aHead), SimulatorConfig.getDpEndpoint());
         }
-      } else if (aTopLevel instanceof EDMResponse) {
-        // Response, send to freedonia
-        final ICommonsList<MEPayload> aAttachments = new CommonsArrayList<>();
-        for (final MEPayload aItem : meMessage.payloads())
-          if (aItem != aHead)
-            aAttachments.add(aItem);
-        DC_DP_TriggerViaHttp.forwardMessage(new IncomingEDMResponse((EDMResponse) aTopLevel,"mock@toop",
-            aAttachments,
-            aMetadata), SimulatorConfig.getDcEndpoint());
-      } else if (aTopLevel instanceof EDMErrorResponse) {
+      } else if (aPeek != null && aPeek.isResponse()) {
+        // Response with its attachments, send to freedonia
+        IncomingMessageForwarder.forward(ETCPayloadType.RESPONSE, aMetadata, meMessage.payloads(), SimulatorConfig.getDcEndpoint());
+      } else if (aPeek != null && aPeek.isErrorResponse()) {
         // Error response
-        DC_DP_TriggerViaHttp.forwardMessage(new IncomingEDMErrorResponse((EDMErrorResponse) aTopLevel,"mock@toop",
-            aMetadata), SimulatorConfig.getDcEndpoint());
+        IncomingMessageForwarder.forward(ETCPayloadType.ERROR_RESPONSE, aMetadata, new CommonsArrayList<>(aHead), SimulatorConfig.getDcEndpoint());
       } else {
         // Unknown
-        ToopKafkaClient.send(EErrorLevel.ERROR, () -> "Unsupported Message: " + aTopLevel);
+        ToopKafkaClient.send(EErrorLevel.ERROR, () -> "Unsupported Message: " +
+            (aPeek == null ? "not XML" : "{" + aPeek.getRootNamespace() + "}" + aPeek.getRootName()));
       }
     } catch (Exception ex) {
       LOGGER.error(ex.getMessage(), ex);
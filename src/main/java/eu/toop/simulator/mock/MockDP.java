@@ -18,42 +18,49 @@
  */
 package eu.toop.simulator.mock;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ByteArrayEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.mime.CMimeType;
-import com.helger.commons.mime.MimeTypeDeterminator;
-import com.helger.httpclient.HttpClientManager;
-import com.helger.httpclient.response.ResponseHandlerJson;
+import com.helger.json.IJson;
 
 import eu.toop.connector.api.me.EMEProtocol;
 import eu.toop.connector.api.me.incoming.IIncomingEDMResponse;
 import eu.toop.connector.api.me.incoming.IncomingEDMErrorResponse;
-import eu.toop.connector.api.me.incoming.IncomingEDMRequest;
 import eu.toop.connector.api.me.incoming.IncomingEDMResponse;
 import eu.toop.connector.api.me.incoming.MEIncomingTransportMetadata;
 import eu.toop.connector.api.me.model.MEPayload;
+import eu.toop.connector.api.rest.ETCPayloadType;
 import eu.toop.connector.api.rest.TCOutgoingMessage;
 import eu.toop.connector.api.rest.TCOutgoingMetadata;
 import eu.toop.connector.api.rest.TCPayload;
 import eu.toop.connector.api.rest.TCRestJAXB;
-import eu.toop.connector.app.incoming.DC_DP_TriggerViaHttp;
 import eu.toop.edm.EDMErrorResponse;
 import eu.toop.edm.EDMRequest;
+import eu.toop.edm.EDMResponse;
 import eu.toop.playground.dp.DPException;
 import eu.toop.playground.dp.model.EDMResponseWithAttachment;
 import eu.toop.playground.dp.service.ToopDP;
 import eu.toop.simulator.SimulatorConfig;
+import eu.toop.simulator.util.DelayScheduler;
 
 /**
  * A MOCK class that generates and sends DP responses
@@ -66,6 +73,148 @@ public class MockDP {
 
   private static final ToopDP miniDP = new ToopDP();
 
+  /**
+   * The content ID of the EDM document of the responses forwarded to the DC
+   */
+  private static final String RESPONSE_CONTENT_ID = "mock@toop";
+
+  /**
+   * The responses of the mini DP, invalidated when the datasets change
+   */
+  private static final ResponseTemplateCache responseTemplateCache =
+      new ResponseTemplateCache(new File("datasets"), SimulatorConfig.getDpResponseCacheSize());
+
+  /**
+   * @return the cache of the responses created by the mini DP
+   */
+  public static ResponseTemplateCache getResponseTemplateCache() {
+    return responseTemplateCache;
+  }
+
+  /**
+   * Delivers the responses to the connector, created on the first response
+   */
+  private static ResponseDeliveryPipeline deliveryPipeline;
+
+  /**
+   * @return the pipeline that delivers the responses, <code>null</code> if no response was sent yet
+   */
+  @Nullable
+  public static synchronized ResponseDeliveryPipeline getDeliveryPipeline() {
+    return deliveryPipeline;
+  }
+
+  private static synchronized ResponseDeliveryPipeline getOrCreateDeliveryPipeline() {
+    if (deliveryPipeline == null) {
+      deliveryPipeline = new ResponseDeliveryPipeline(DCDPUtil::postToConnector, SimulatorConfig.getDpDeliveryConcurrency(),
+          SimulatorConfig.getDpDeliveryMaxAttempts(), SimulatorConfig.getDpDeliveryRetryBackoff(), SimulatorConfig.getDpDeliveryQueueSize());
+    }
+    return deliveryPipeline;
+  }
+
+  /**
+   * Wait for the undelivered responses (at most <code>dpResponseDrainTimeout</code> seconds)
+   * and stop the delivery pipeline
+   *
+   * @param maxWaitMillis the remaining shutdown time, caps the drain timeout
+   */
+  public static synchronized void shutdownDeliveryPipeline(long maxWaitMillis) {
+    if (deliveryPipeline != null) {
+      deliveryPipeline.shutdown(Math.min(TimeUnit.SECONDS.toMillis(SimulatorConfig.getDpResponseDrainTimeout()), maxWaitMillis),
+          TimeUnit.MILLISECONDS);
+      deliveryPipeline = null;
+    }
+  }
+
+  /**
+   * How long the responses take and how often they fail
+   */
+  private static final DPResponseProfile responseProfile = DPResponseProfile.createFromConfig();
+
+  /**
+   * @return the profile that delays the responses and injects the failures
+   */
+  public static DPResponseProfile getResponseProfile() {
+    return responseProfile;
+  }
+
+  /**
+   * Holds the delayed responses, created on the first delayed response
+   */
+  private static DelayScheduler delayScheduler;
+
+  /**
+   * @return the scheduler of the delayed responses, <code>null</code> if no response was delayed yet
+   */
+  @Nullable
+  public static synchronized DelayScheduler getDelayScheduler() {
+    return delayScheduler;
+  }
+
+  private static synchronized DelayScheduler getOrCreateDelayScheduler() {
+    if (delayScheduler == null) {
+      delayScheduler = new DelayScheduler("dp-delayed", SimulatorConfig.getDpResponseWorkers(), SimulatorConfig.getDpResponseQueueSize());
+    }
+    return delayScheduler;
+  }
+
+  /**
+   * Drop the responses that are still waiting for their time and wait
+   * for the due ones (at most <code>dpResponseDrainTimeout</code> seconds)
+   *
+   * @param maxWaitMillis the remaining shutdown time, caps the drain timeout
+   */
+  public static synchronized void shutdownDelayScheduler(long maxWaitMillis) {
+    if (delayScheduler != null) {
+      delayScheduler.shutdown(Math.min(TimeUnit.SECONDS.toMillis(SimulatorConfig.getDpResponseDrainTimeout()), maxWaitMillis),
+          TimeUnit.MILLISECONDS);
+      delayScheduler = null;
+    }
+  }
+
+  /**
+   * The error response sent when the profile injects an error, loaded on its first use
+   */
+  private static final class ErrorResponseTemplate {
+    private static final String XML = load();
+
+    private static String load() {
+      try (InputStream inputStream = MockDP.class.getResourceAsStream("/edm-errorResponse-template.xml")) {
+        if (inputStream == null)
+          throw new IllegalStateException("The resource /edm-errorResponse-template.xml is missing");
+        return new String(StreamHelper.getAllBytes(inputStream), StandardCharsets.UTF_8);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+  }
+
+  /**
+   * A response of the mini DP with its attachments
+   */
+  private static final class DPResponse {
+    private final EDMResponse response;
+    private final EDMErrorResponse errorResponse;
+    private final List<ResponseAttachment> attachments;
+    private final MEIncomingTransportMetadata metadata;
+
+    private DPResponse(@Nullable EDMResponse response, @Nullable EDMErrorResponse errorResponse,
+                       List<ResponseAttachment> attachments, MEIncomingTransportMetadata metadata) {
+      this.response = response;
+      this.errorResponse = errorResponse;
+      this.attachments = attachments;
+      this.metadata = metadata;
+    }
+
+    private IIncomingEDMResponse getAsIncomingResponse() {
+      if (errorResponse != null)
+        return new IncomingEDMErrorResponse(errorResponse, RESPONSE_CONTENT_ID, metadata);
+
+      final List<MEPayload> payloads = attachments.stream().map(ResponseAttachment::getAsPayload).collect(Collectors.toList());
+      return new IncomingEDMResponse(response, RESPONSE_CONTENT_ID, payloads, metadata);
+    }
+  }
+
   /**
    * Provide the message to miniDP and get back an {@link IIncomingEDMResponse}
    *
@@ -74,60 +223,146 @@ public class MockDP {
    * @return the response
    */
   public static IIncomingEDMResponse eloniaCreateResponse(EDMRequest aTopLevel, MEIncomingTransportMetadata aMetadata) {
+    return createResponse(aTopLevel, aMetadata).getAsIncomingResponse();
+  }
+
+  /**
+   * Provide the message to miniDP and forward the response directly to the DC, as
+   * the response profile decides (delayed, replaced with an error or not at all)
+   *
+   * @param aTopLevel the request
+   * @param aMetadata the metadata
+   */
+  public static void createAndForwardResponse(EDMRequest aTopLevel, MEIncomingTransportMetadata aMetadata) {
+    final DPResponseProfile.Decision decision = responseProfile.decide();
+    if (decision.getOutcome() == DPResponseProfile.EOutcome.TIMEOUT) {
+      LOGGER.info("The response profile leaves the request " + aTopLevel.getRequestID() + " unanswered");
+      return;
+    }
+
+    if (decision.getDelayMillis() <= 0) {
+      forwardToDC(createResponse(aTopLevel, aMetadata, decision.getOutcome()));
+      return;
+    }
+
+    getOrCreateDelayScheduler().schedule(() -> {
+      forwardToDC(createResponse(aTopLevel, aMetadata, decision.getOutcome()));
+      return null;
+    }, decision.getDelayMillis()).exceptionally(ex -> {
+      LOGGER.error("Could not forward the delayed response to " + aTopLevel.getRequestID(), ex);
+      return null;
+    });
+  }
+
+  /**
+   * Hand the response to the DC in-process or post it with the shared HTTP client, the
+   * attachments are passed through as they are
+   */
+  private static void forwardToDC(DPResponse dpResponse) {
+    final List<MEPayload> payloads = new ArrayList<>();
+    final ETCPayloadType payloadType;
+    if (dpResponse.response != null) {
+      payloadType = ETCPayloadType.RESPONSE;
+      payloads.add(ResponseAttachment.of(RESPONSE_CONTENT_ID, CMimeType.APPLICATION_XML, dpResponse.response.getWriter().getAsBytes()).getAsPayload());
+      dpResponse.attachments.forEach(attachment -> payloads.add(attachment.getAsPayload()));
+    } else {
+      payloadType = ETCPayloadType.ERROR_RESPONSE;
+      payloads.add(ResponseAttachment.of(RESPONSE_CONTENT_ID, CMimeType.APPLICATION_XML, dpResponse.errorResponse.getWriter().getAsBytes()).getAsPayload());
+    }
+    IncomingMessageForwarder.forward(payloadType, dpResponse.metadata, payloads, SimulatorConfig.getDcEndpoint());
+  }
+
+  /**
+   * Provide the message to miniDP and queue the response for the delivery to the connector.
+   * The attachments are streamed from where they are stored (see {@link AttachmentStore}).
+   * The response profile may delay the response, replace it with an error or drop it.
+   *
+   * @param aTopLevel the request
+   * @param aMetadata the metadata
+   * @return the future of the reply of the connector, completed with <code>null</code> if the profile dropped the response
+   */
+  public static CompletableFuture<IJson> createAndSendResponse(EDMRequest aTopLevel, MEIncomingTransportMetadata aMetadata) {
+    final DPResponseProfile.Decision decision = responseProfile.decide();
+    if (decision.getOutcome() == DPResponseProfile.EOutcome.TIMEOUT) {
+      LOGGER.info("The response profile leaves the request " + aTopLevel.getRequestID() + " unanswered");
+      return CompletableFuture.completedFuture(null);
+    }
+
+    if (decision.getDelayMillis() <= 0)
+      return sendResponse(createResponse(aTopLevel, aMetadata, decision.getOutcome()));
 
-    //we need to create a new metadata where the sender and receiver are switched.
-    final MEIncomingTransportMetadata aMetadataInverse = new MEIncomingTransportMetadata(
+    //the response is only created when it is due, nothing but the request waits meanwhile
+    return getOrCreateDelayScheduler()
+        .schedule(() -> sendResponse(createResponse(aTopLevel, aMetadata, decision.getOutcome())), decision.getDelayMillis())
+        .thenCompose(future -> future);
+  }
+
+  private static DPResponse createResponse(EDMRequest aTopLevel, MEIncomingTransportMetadata aMetadata,
+                                           DPResponseProfile.EOutcome outcome) {
+    if (outcome == DPResponseProfile.EOutcome.ERROR)
+      return createErrorResponse(aTopLevel, aMetadata);
+    return createResponse(aTopLevel, aMetadata);
+  }
+
+  //we need to create a new metadata where the sender and receiver are switched.
+  private static MEIncomingTransportMetadata invert(MEIncomingTransportMetadata aMetadata) {
+    return new MEIncomingTransportMetadata(
         aMetadata.getReceiverID(), aMetadata.getSenderID(),
         aMetadata.getDocumentTypeID(), aMetadata.getProcessID());
+  }
+
+  private static DPResponse createErrorResponse(EDMRequest aTopLevel, MEIncomingTransportMetadata aMetadata) {
+    final String xml = ErrorResponseTemplate.XML
+        .replace("${requestId}", aTopLevel.getRequestID())
+        .replace("${issueDateTime}", DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(OffsetDateTime.now().truncatedTo(ChronoUnit.SECONDS)));
+    final EDMErrorResponse errorResponse = EDMErrorResponse.reader().read(xml.getBytes(StandardCharsets.UTF_8));
+    if (errorResponse == null)
+      throw new IllegalStateException("The error response template is not a valid EDMErrorResponse");
+    return new DPResponse(null, errorResponse, Collections.emptyList(), invert(aMetadata));
+  }
+
+  private static DPResponse createResponse(EDMRequest aTopLevel, MEIncomingTransportMetadata aMetadata) {
+
+    final MEIncomingTransportMetadata aMetadataInverse = invert(aMetadata);
+
+    final String templateKey = responseTemplateCache.isEnabled() ? ResponseTemplateCache.createKey(aTopLevel) : null;
+    if (templateKey != null) {
+      final ResponseTemplateCache.ResponseTemplate template = responseTemplateCache.get(templateKey);
+      if (template != null) {
+        final EDMResponse cachedResponse = template.createResponse(aTopLevel.getRequestID());
+        if (cachedResponse != null) {
+          LOGGER.debug("Using the cached response for request " + aTopLevel.getRequestID());
+          return new DPResponse(cachedResponse, null, template.getAttachments(), aMetadataInverse);
+        }
+      }
+    }
 
     try {
       //we have a response from DP, push it back
       EDMResponseWithAttachment edmResponse = miniDP.createEDMResponseWithAttachmentsFromRequest(aTopLevel);
-      List<MEPayload> attachments = new ArrayList<>();
-      if (!edmResponse.getAllAttachments().isEmpty()) {
-        attachments =
-                edmResponse.getAllAttachments().stream()
-                        .map(
-                                attachment -> {
-                                  byte[] fileBytes = attachment.getAttachment ();
-
-                                  return MEPayload.builder()
-                                          .data(fileBytes)
-                                          .mimeType(
-                                                  MimeTypeDeterminator.getInstance()
-                                                          .getMimeTypeFromBytes(fileBytes))
-                                          .contentID(attachment.getAttachedFileCid())
-                                          .build();
-                                })
-                        .collect(Collectors.toList());
-      }
-      return new IncomingEDMResponse(edmResponse.getEdmResponse(),"mock@toop",
-          attachments,
-          aMetadataInverse);
+      final List<ResponseAttachment> attachments = edmResponse.getAllAttachments().stream()
+          .map(attachment -> templateKey != null ?
+              //the cached responses keep their attachments off the heap
+              responseTemplateCache.getAttachmentStore().get(attachment.getAttachedFileCid(), attachment.getAttachment()) :
+              ResponseAttachment.of(attachment.getAttachedFileCid(), attachment.getAttachment()))
+          .collect(Collectors.toList());
+
+      if (templateKey != null)
+        responseTemplateCache.put(templateKey, new ResponseTemplateCache.ResponseTemplate(edmResponse.getEdmResponse(), attachments));
+
+      return new DPResponse(edmResponse.getEdmResponse(), null, attachments, aMetadataInverse);
 
     } catch (DPException e) {
       EDMErrorResponse edmError = e.getEdmErrorResponse();
       //we have an error from DP, push it back
 
-      return new IncomingEDMErrorResponse(edmError,"mock@toop",
-          aMetadataInverse);
+      return new DPResponse(null, edmError, Collections.emptyList(), aMetadataInverse);
     }catch (IOException ex) {
       throw new UncheckedIOException (ex);
     }
   }
 
 
-  /**
-   * Send the request directly to the DP/to-dp
-   *
-   * @param edmRequest
-   * @param aMetadata
-   */
-  public static void deliverRequestToDP(EDMRequest edmRequest, MEIncomingTransportMetadata aMetadata) {
-    DC_DP_TriggerViaHttp.forwardMessage(new IncomingEDMRequest(edmRequest,"mock@toop",
-        aMetadata), SimulatorConfig.getDpEndpoint());
-  }
-
   /**
    * Sends a request that is contained in a file with name <code>sFileName</code>
    *
@@ -147,78 +382,57 @@ public class MockDP {
 
 
   /**
-   * Build a TCOutgoingMessage from the response and send it to the connector
+   * Build a TCOutgoingMessage from the response and queue it for the delivery to the connector
    *
    * @param response the response
+   * @return the future of the reply of the connector
    */
-  public static void buildAndSendResponse(IIncomingEDMResponse response) {
+  public static CompletableFuture<IJson> buildAndSendResponse(IIncomingEDMResponse response) {
+    if (response instanceof IncomingEDMResponse) {
+      final IncomingEDMResponse edmResponse = (IncomingEDMResponse) response;
+      final List<ResponseAttachment> attachments = edmResponse.attachments().values().stream()
+          .map(m -> ResponseAttachment.of(m.getContentID(), m.getMimeType(), m.getData().bytes()))
+          .collect(Collectors.toList());
+      return sendResponse(new DPResponse(edmResponse.getResponse(), null, attachments, response.getMetadata()));
+    }
+    if (response instanceof IncomingEDMErrorResponse) {
+      return sendResponse(new DPResponse(null, ((IncomingEDMErrorResponse) response).getErrorResponse(), Collections.emptyList(), response.getMetadata()));
+    }
+    throw new IllegalArgumentException("Unsupported response type " + response.getClass().getName());
+  }
+
+  private static CompletableFuture<IJson> sendResponse(DPResponse response) {
     final TCOutgoingMessage aOM = new TCOutgoingMessage();
     {
       final TCOutgoingMetadata aMetadata = new TCOutgoingMetadata();
-      aMetadata.setSenderID(TCRestJAXB.createTCID(response.getMetadata().getSenderID().getScheme(), response.getMetadata().getSenderID().getValue()));
-      aMetadata.setReceiverID(TCRestJAXB.createTCID(response.getMetadata().getReceiverID().getScheme(), response.getMetadata().getReceiverID().getValue()));
+      aMetadata.setSenderID(TCRestJAXB.createTCID(response.metadata.getSenderID().getScheme(), response.metadata.getSenderID().getValue()));
+      aMetadata.setReceiverID(TCRestJAXB.createTCID(response.metadata.getReceiverID().getScheme(), response.metadata.getReceiverID().getValue()));
       aMetadata.setDocTypeID(
               TCRestJAXB.createTCID("toop-doctypeid-qns", "QueryResponse::toop-edm:v2.1"));
-      aMetadata.setProcessID(TCRestJAXB.createTCID(response.getMetadata().getProcessID().getScheme(), response.getMetadata().getProcessID().getValue()));
+      aMetadata.setProcessID(TCRestJAXB.createTCID(response.metadata.getProcessID().getScheme(), response.metadata.getProcessID().getValue()));
 
       aMetadata.setTransportProtocol(EMEProtocol.AS4.getTransportProfileID());
       aOM.setMetadata(aMetadata);
     }
     {
-
       final TCPayload aPayload = new TCPayload();
-      final List<TCPayload> filePayloads = new ArrayList<>();
-      byte[] payload = null;
-
-      if (response instanceof IncomingEDMResponse) {
-        payload = ((IncomingEDMResponse) response).getResponse().getWriter().getAsBytes();
-
-        filePayloads.addAll(
-                ((IncomingEDMResponse) response)
-                        .attachments().values().stream()
-                        .map(
-                                m -> {
-                                  TCPayload attachedFilePayload = new TCPayload();
-                                  attachedFilePayload.setContentID(m.getContentID());
-                                  attachedFilePayload.setMimeType(m.getMimeTypeString());
-                                  attachedFilePayload.setValue(m.getData().bytes());
-                                  return attachedFilePayload;
-                                })
-                        .collect(Collectors.toList()));
-
-        aPayload.setContentID(
-                ((IncomingEDMResponse) response).getResponse().getRequestID() + "@elonia-dev");
-      }
-      if (response instanceof IncomingEDMErrorResponse) {
-        payload =
-                ((IncomingEDMErrorResponse) response)
-                        .getErrorResponse()
-                        .getWriter()
-                        .getAsBytes();
-        aPayload.setContentID(((IncomingEDMErrorResponse) response).getErrorResponse().getRequestID()+"@elonia");
-
+      if (response.response != null) {
+        aPayload.setValue(response.response.getWriter().getAsBytes());
+        aPayload.setContentID(response.response.getRequestID() + "@elonia-dev");
+      } else {
+        aPayload.setValue(response.errorResponse.getWriter().getAsBytes());
+        aPayload.setContentID(response.errorResponse.getRequestID() + "@elonia");
       }
-
-      aPayload.setValue(payload);
       aPayload.setMimeType(CMimeType.APPLICATION_XML.getAsString());
       aOM.addPayload(aPayload);
-      if(!filePayloads.isEmpty()){
-        filePayloads.forEach(aOM::addPayload);
-      }
     }
 
-    LOGGER.info(TCRestJAXB.outgoingMessage().getAsString(aOM));
+    //the attachments are appended to the message while it is written
+    final TCMessageEntity entity = new TCMessageEntity(aOM, response.attachments);
+    LOGGER.info(entity.getSkeleton());
 
-    try (HttpClientManager aHCM = new HttpClientManager()) {
-      HttpPost post;
-      if (response instanceof IncomingEDMResponse)
-        post = new HttpPost("http://localhost:" + SimulatorConfig.getConnectorPort() + "/api/user/submit/error");
-      else
-        post = new HttpPost("http://localhost:" + SimulatorConfig.getConnectorPort() + "/api/user/submit/response");
-      post.setEntity(new ByteArrayEntity(TCRestJAXB.outgoingMessage().getAsBytes(aOM)));
-      aHCM.execute(post, new ResponseHandlerJson());
-    } catch (IOException e) {
-      LOGGER.error(e.getMessage(), e);
-    }
+    final String requestID = response.response != null ? response.response.getRequestID() : response.errorResponse.getRequestID();
+    final String connectorEndpoint = response.response != null ? "/api/user/submit/error" : "/api/user/submit/response";
+    return getOrCreateDeliveryPipeline().deliver("the response to " + requestID, connectorEndpoint, entity);
   }
 }
@@ -0,0 +1,170 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.mime.IMimeType;
+import com.helger.commons.mime.MimeTypeDeterminator;
+
+import eu.toop.connector.api.me.model.MEPayload;
+
+/**
+ * A payload of an outgoing message, e.g. an attachment of a DP response. The content is
+ * either a heap array or a read-only buffer (memory-mapped by the {@link AttachmentStore}
+ * or from a file), so that it can be written to the connector without being copied to
+ * the heap first.
+ */
+public final class ResponseAttachment {
+
+  private final String contentID;
+  private final IMimeType mimeType;
+  private final ByteBuffer data;
+
+  /**
+   * The content, if it is on the heap
+   */
+  private final byte[] bytes;
+
+  private ResponseAttachment(@Nonnull String contentID, @Nonnull IMimeType mimeType, @Nonnull ByteBuffer data, @Nullable byte[] bytes) {
+    this.contentID = ValueEnforcer.notNull(contentID, "contentID");
+    this.mimeType = ValueEnforcer.notNull(mimeType, "mimeType");
+    this.data = data.asReadOnlyBuffer();
+    this.bytes = bytes;
+  }
+
+  /**
+   * Create an attachment from heap bytes, the mime type is determined from the content
+   *
+   * @param contentID the content id
+   * @param bytes     the content. Not copied
+   * @return the attachment
+   */
+  @Nonnull
+  public static ResponseAttachment of(@Nonnull String contentID, @Nonnull byte[] bytes) {
+    return of(contentID, MimeTypeDeterminator.getInstance().getMimeTypeFromBytes(bytes), bytes);
+  }
+
+  /**
+   * Create an attachment from heap bytes
+   *
+   * @param contentID the content id
+   * @param mimeType  the mime type
+   * @param bytes     the content. Not copied
+   * @return the attachment
+   */
+  @Nonnull
+  public static ResponseAttachment of(@Nonnull String contentID, @Nonnull IMimeType mimeType, @Nonnull byte[] bytes) {
+    return new ResponseAttachment(contentID, mimeType, ByteBuffer.wrap(bytes), bytes);
+  }
+
+  /**
+   * Create an attachment from a buffer
+   *
+   * @param contentID the content id
+   * @param mimeType  the mime type
+   * @param data      the content. Not copied
+   * @return the attachment
+   */
+  @Nonnull
+  public static ResponseAttachment of(@Nonnull String contentID, @Nonnull IMimeType mimeType, @Nonnull ByteBuffer data) {
+    return new ResponseAttachment(contentID, mimeType, data, null);
+  }
+
+  /**
+   * Create an attachment from a file, which is memory-mapped instead of being read
+   *
+   * @param contentID the content id
+   * @param mimeType  the mime type
+   * @param file      the file. Must be smaller than 2 GB
+   * @return the attachment
+   * @throws IOException if the file can't be mapped
+   */
+  @Nonnull
+  public static ResponseAttachment map(@Nonnull String contentID, @Nonnull IMimeType mimeType, @Nonnull File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      //the mapping stays valid after the channel is closed
+      return of(contentID, mimeType, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * @return the content id
+   */
+  @Nonnull
+  public String getContentID() {
+    return contentID;
+  }
+
+  /**
+   * @return the mime type
+   */
+  @Nonnull
+  public IMimeType getMimeType() {
+    return mimeType;
+  }
+
+  /**
+   * @return the content size in bytes
+   */
+  public int getSize() {
+    return data.remaining();
+  }
+
+  /**
+   * @return a new read-only view of the content
+   */
+  @Nonnull
+  public ByteBuffer getData() {
+    return data.duplicate();
+  }
+
+  /**
+   * @return the content as an array. The heap content is returned as is, a buffer content is copied
+   */
+  @Nonnull
+  public byte[] getAsBytes() {
+    if (bytes != null)
+      return bytes;
+
+    final byte[] ret = new byte[getSize()];
+    getData().get(ret);
+    return ret;
+  }
+
+  /**
+   * @return the attachment as a connector payload
+   */
+  @Nonnull
+  public MEPayload getAsPayload() {
+    return MEPayload.builder()
+        .data(getAsBytes())
+        .mimeType(mimeType)
+        .contentID(contentID)
+        .build();
+  }
+}
@@ -0,0 +1,466 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.json.IJson;
+
+/**
+ * Delivers the messages of the simulated DP to the connector without blocking the caller.
+ * A message is queued per destination (connector endpoint) and at most
+ * <code>concurrencyPerDestination</code> messages are posted to one destination at the same time,
+ * so a slow destination doesn't hold up the others. A failed delivery is retried with an
+ * exponential backoff, and a message that couldn't be delivered after <code>maxAttempts</code>
+ * (or didn't fit into the queue) is kept in the dead-letter list for inspection.
+ */
+public class ResponseDeliveryPipeline {
+  /**
+   * The Logger instance
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResponseDeliveryPipeline.class);
+
+  /**
+   * The upper limit of the delay between two attempts
+   */
+  static final long MAX_BACKOFF_MS = 30_000;
+
+  /**
+   * The number of dead letters kept, the older ones are dropped
+   */
+  static final int DEAD_LETTER_CAPACITY = 100;
+
+  /**
+   * Posts a message to a connector endpoint
+   */
+  @FunctionalInterface
+  public interface ISender {
+    /**
+     * @param destination the connector endpoint
+     * @param entity      the message
+     * @return the JSON response of the connector
+     * @throws IOException on a transport error or an error status
+     */
+    IJson send(@Nonnull String destination, @Nonnull TCMessageEntity entity) throws IOException;
+  }
+
+  /**
+   * A message that couldn't be delivered
+   */
+  public static final class DeadLetter {
+    private final String description;
+    private final String destination;
+    private final int attempts;
+    private final String error;
+    private final LocalDateTime time;
+
+    private DeadLetter(String description, String destination, int attempts, String error) {
+      this.description = description;
+      this.destination = destination;
+      this.attempts = attempts;
+      this.error = error;
+      this.time = PDTFactory.getCurrentLocalDateTime();
+    }
+
+    /**
+     * @return the description of the message (e.g. the request it responds to)
+     */
+    public String getDescription() {
+      return description;
+    }
+
+    /**
+     * @return the connector endpoint
+     */
+    public String getDestination() {
+      return destination;
+    }
+
+    /**
+     * @return the number of delivery attempts, <code>0</code> if the message was rejected
+     */
+    public int getAttempts() {
+      return attempts;
+    }
+
+    /**
+     * @return the error of the last attempt
+     */
+    public String getError() {
+      return error;
+    }
+
+    /**
+     * @return the time the message was given up
+     */
+    public LocalDateTime getTime() {
+      return time;
+    }
+  }
+
+  private static final class Delivery {
+    private final String description;
+    private final String destination;
+    private final TCMessageEntity entity;
+    private final CompletableFuture<IJson> future = new CompletableFuture<>();
+    private int attempts;
+
+    private Delivery(String description, String destination, TCMessageEntity entity) {
+      this.description = description;
+      this.destination = destination;
+      this.entity = entity;
+    }
+  }
+
+  private static final class Destination {
+    private final ArrayDeque<Delivery> pending = new ArrayDeque<>();
+    private int inflight;
+  }
+
+  private final ISender sender;
+  private final int concurrencyPerDestination;
+  private final int maxAttempts;
+  private final long retryBackoffMs;
+  private final int queueCapacity;
+
+  private final ExecutorService workers;
+  private final ScheduledExecutorService retryScheduler;
+
+  //guarded by this
+  private final Map<String, Destination> destinations = new HashMap<>();
+  private final ArrayDeque<DeadLetter> deadLetters = new ArrayDeque<>();
+  private int outstanding;
+  private final Set<Delivery> waitingForRetry = new HashSet<>();
+  private boolean shutdown;
+
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong retried = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong deadLettered = new AtomicLong();
+
+  /**
+   * Create a new pipeline
+   *
+   * @param sender                    posts the messages
+   * @param concurrencyPerDestination the maximum number of messages posted to one destination at the same time
+   * @param maxAttempts               the maximum number of attempts of a message
+   * @param retryBackoffMs            the delay before the first retry, doubled for every further retry
+   * @param queueCapacity             the maximum number of undelivered messages, the messages beyond it are rejected
+   */
+  public ResponseDeliveryPipeline(@Nonnull ISender sender, int concurrencyPerDestination, int maxAttempts, long retryBackoffMs,
+                                  int queueCapacity) {
+    ValueEnforcer.notNull(sender, "sender");
+    ValueEnforcer.isGT0(concurrencyPerDestination, "concurrencyPerDestination");
+    ValueEnforcer.isGT0(maxAttempts, "maxAttempts");
+    ValueEnforcer.isGE0(retryBackoffMs, "retryBackoffMs");
+    ValueEnforcer.isGT0(queueCapacity, "queueCapacity");
+    this.sender = sender;
+    this.concurrencyPerDestination = concurrencyPerDestination;
+    this.maxAttempts = maxAttempts;
+    this.retryBackoffMs = retryBackoffMs;
+    this.queueCapacity = queueCapacity;
+
+    //the number of threads is bounded by the number of destinations times concurrencyPerDestination
+    final AtomicInteger threadIndex = new AtomicInteger();
+    workers = Executors.newCachedThreadPool(runnable -> {
+      final Thread thread = new Thread(runnable, "dp-delivery-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "dp-delivery-retry");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Queue the message for delivery
+   *
+   * @param description the description of the message, for logging and the dead-letter list
+   * @param destination the connector endpoint
+   * @param entity      the message, it must be repeatable to be retried
+   * @return the future of the response of the connector. It fails if the message is dead-lettered
+   */
+  @Nonnull
+  public CompletableFuture<IJson> deliver(@Nonnull String description, @Nonnull String destination, @Nonnull TCMessageEntity entity) {
+    ValueEnforcer.notNull(destination, "destination");
+    ValueEnforcer.notNull(entity, "entity");
+    final Delivery delivery = new Delivery(description, destination, entity);
+    synchronized (this) {
+      if (shutdown || outstanding >= queueCapacity) {
+        rejected.incrementAndGet();
+        final String reason = shutdown ? "The delivery pipeline is shut down" : "The delivery queue is full (" + queueCapacity + ")";
+        addDeadLetter(delivery, reason);
+        delivery.future.completeExceptionally(new RejectedExecutionException(reason));
+        return delivery.future;
+      }
+      submitted.incrementAndGet();
+      ++outstanding;
+      final Destination dest = destinations.computeIfAbsent(destination, k -> new Destination());
+      dest.pending.add(delivery);
+      dispatch(dest);
+    }
+    return delivery.future;
+  }
+
+  //called with the lock held
+  private void dispatch(Destination dest) {
+    while (dest.inflight < concurrencyPerDestination && !dest.pending.isEmpty()) {
+      final Delivery delivery = dest.pending.poll();
+      ++dest.inflight;
+      workers.execute(() -> attempt(delivery));
+    }
+  }
+
+  private void attempt(Delivery delivery) {
+    delivery.attempts++;
+    IJson result = null;
+    Exception failure = null;
+    try {
+      result = sender.send(delivery.destination, delivery.entity);
+    } catch (IOException | RuntimeException ex) {
+      failure = ex;
+    }
+
+    boolean done = true;
+    synchronized (this) {
+      final Destination dest = destinations.get(delivery.destination);
+      --dest.inflight;
+      if (failure == null) {
+        delivered.incrementAndGet();
+      } else if (delivery.attempts < maxAttempts && !shutdown) {
+        retried.incrementAndGet();
+        waitingForRetry.add(delivery);
+        final long delay = getBackoff(delivery.attempts);
+        LOGGER.warn("Delivery of " + delivery.description + " to " + delivery.destination + " failed (attempt " + delivery.attempts
+            + "), retrying in " + delay + " ms: " + failure.getMessage());
+        retryScheduler.schedule(() -> retry(delivery), delay, TimeUnit.MILLISECONDS);
+        done = false;
+      } else {
+        LOGGER.error("Delivery of " + delivery.description + " to " + delivery.destination + " failed after " + delivery.attempts
+            + " attempts: " + failure.getMessage());
+        addDeadLetter(delivery, failure.getMessage());
+      }
+      if (done) {
+        --outstanding;
+        notifyAll();
+      }
+      if (!shutdown)
+        dispatch(dest);
+    }
+
+    if (done) {
+      if (failure == null)
+        delivery.future.complete(result);
+      else
+        delivery.future.completeExceptionally(failure);
+    }
+  }
+
+  private void retry(Delivery delivery) {
+    synchronized (this) {
+      //after shutdown the delivery is dead-lettered by shutdown()
+      if (!waitingForRetry.remove(delivery))
+        return;
+      final Destination dest = destinations.get(delivery.destination);
+      dest.pending.add(delivery);
+      dispatch(dest);
+    }
+  }
+
+  /**
+   * @param attempts the number of attempts so far
+   * @return the delay before the next attempt
+   */
+  long getBackoff(int attempts) {
+    //retryBackoffMs * 2^(attempts - 1), without overflowing
+    final int shift = Math.min(attempts - 1, 30);
+    return Math.min(retryBackoffMs << shift, MAX_BACKOFF_MS);
+  }
+
+  //called with the lock held
+  private void addDeadLetter(Delivery delivery, String error) {
+    deadLettered.incrementAndGet();
+    if (deadLetters.size() == DEAD_LETTER_CAPACITY)
+      deadLetters.removeFirst();
+    deadLetters.add(new DeadLetter(delivery.description, delivery.destination, delivery.attempts, error));
+  }
+
+  /**
+   * Wait until the queued messages are delivered (or dead-lettered), then stop the pipeline.
+   * The messages that are still undelivered after the timeout are dead-lettered.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit    the unit of the timeout
+   * @return <code>true</code> if every message was handled in time
+   */
+  public boolean shutdown(long timeout, @Nonnull TimeUnit unit) {
+    final List<Delivery> abandoned = new ArrayList<>();
+    final boolean drained;
+    synchronized (this) {
+      final long deadline = System.nanoTime() + unit.toNanos(timeout);
+      try {
+        long remaining;
+        while (outstanding > 0 && (remaining = deadline - System.nanoTime()) > 0)
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      drained = outstanding == 0;
+      shutdown = true;
+      for (final Destination dest : destinations.values()) {
+        for (final Delivery delivery : dest.pending) {
+          addDeadLetter(delivery, "The delivery pipeline was shut down");
+          abandoned.add(delivery);
+        }
+        dest.pending.clear();
+      }
+      for (final Delivery delivery : waitingForRetry) {
+        addDeadLetter(delivery, "The delivery pipeline was shut down");
+        abandoned.add(delivery);
+      }
+      waitingForRetry.clear();
+      outstanding -= abandoned.size();
+    }
+    retryScheduler.shutdownNow();
+    workers.shutdownNow();
+
+    if (!drained)
+      LOGGER.warn("The delivery pipeline was shut down with " + abandoned.size() + " undelivered messages");
+    final RejectedExecutionException reason = new RejectedExecutionException("The delivery pipeline was shut down");
+    abandoned.forEach(delivery -> delivery.future.completeExceptionally(reason));
+    return drained;
+  }
+
+  /**
+   * @return the number of messages that are queued, being posted or waiting for a retry
+   */
+  public synchronized int getOutstandingCount() {
+    return outstanding;
+  }
+
+  /**
+   * @return the number of messages waiting for a retry
+   */
+  public synchronized int getWaitingForRetryCount() {
+    return waitingForRetry.size();
+  }
+
+  /**
+   * @return the number of messages being posted, per destination
+   */
+  @Nonnull
+  public synchronized Map<String, Integer> getInflightCounts() {
+    final Map<String, Integer> ret = new HashMap<>();
+    destinations.forEach((name, dest) -> ret.put(name, dest.inflight));
+    return ret;
+  }
+
+  /**
+   * @return the number of messages waiting for a free slot, per destination
+   */
+  @Nonnull
+  public synchronized Map<String, Integer> getPendingCounts() {
+    final Map<String, Integer> ret = new HashMap<>();
+    destinations.forEach((name, dest) -> ret.put(name, dest.pending.size()));
+    return ret;
+  }
+
+  /**
+   * @return the most recent dead letters, the oldest first
+   */
+  @Nonnull
+  public synchronized List<DeadLetter> getDeadLetters() {
+    return new ArrayList<>(deadLetters);
+  }
+
+  /**
+   * @return the maximum number of messages posted to one destination at the same time
+   */
+  public int getConcurrencyPerDestination() {
+    return concurrencyPerDestination;
+  }
+
+  /**
+   * @return the maximum number of undelivered messages
+   */
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * @return the number of accepted messages
+   */
+  public long getSubmittedCount() {
+    return submitted.get();
+  }
+
+  /**
+   * @return the number of delivered messages
+   */
+  public long getDeliveredCount() {
+    return delivered.get();
+  }
+
+  /**
+   * @return the number of retries
+   */
+  public long getRetriedCount() {
+    return retried.get();
+  }
+
+  /**
+   * @return the number of messages rejected because the queue was full
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * @return the number of messages that were given up, including the ones no longer in the dead-letter list
+   */
+  public long getDeadLetteredCount() {
+    return deadLettered.get();
+  }
+}
@@ -0,0 +1,286 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+
+import eu.toop.edm.EDMRequest;
+import eu.toop.edm.EDMResponse;
+
+/**
+ * A size bounded LRU cache of the responses created by the mini DP. The DP reads the
+ * datasets (YAML files and attachments) from the disk for every request, although the
+ * response of a request only depends on the request content (data subject, concept,
+ * distribution, document id etc.) and on the datasets. So the response and its
+ * attachment payloads are cached by the request content without the request id and
+ * the issue date time, and a cached response is re-issued with the id of the new request.
+ * <p>
+ * The whole cache is invalidated when a file below the datasets directory changes. The
+ * directory is checked at most once per {@link #CHECK_INTERVAL_MS}.
+ * <p>
+ * The attachments of the cached responses are kept in an {@link AttachmentStore}.
+ */
+public class ResponseTemplateCache {
+  /**
+   * The Logger instance
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResponseTemplateCache.class);
+
+  /**
+   * The minimum time between two checks of the datasets directory
+   */
+  static final long CHECK_INTERVAL_MS = 1000;
+
+  /**
+   * The issue date time slot of the request, which differs for each request
+   */
+  private static final Pattern ISSUE_DATE_TIME = Pattern.compile("<(\\w+:)?Slot name=\"IssueDateTime\">.*?</(\\w+:)?Slot>", Pattern.DOTALL);
+
+  private final File datasetsDirectory;
+  private final int maxSize;
+  private final LinkedHashMap<String, ResponseTemplate> templates;
+  private final AttachmentStore attachmentStore = new AttachmentStore();
+
+  private long datasetsStamp;
+  private long nextCheck;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * Create a new cache
+   *
+   * @param datasetsDirectory the directory of the DP datasets, watched for changes
+   * @param maxSize           the maximum number of cached responses. If <code>0</code> then nothing is cached.
+   */
+  public ResponseTemplateCache(@Nonnull File datasetsDirectory, int maxSize) {
+    ValueEnforcer.notNull(datasetsDirectory, "datasetsDirectory");
+    ValueEnforcer.isGE0(maxSize, "maxSize");
+    this.datasetsDirectory = datasetsDirectory;
+    this.maxSize = maxSize;
+    //access order = true, so that the iteration order is LRU first
+    this.templates = new LinkedHashMap<String, ResponseTemplate>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ResponseTemplate> eldest) {
+        return size() > ResponseTemplateCache.this.maxSize;
+      }
+    };
+    this.datasetsStamp = getDatasetsStamp(datasetsDirectory);
+    this.nextCheck = System.currentTimeMillis() + CHECK_INTERVAL_MS;
+  }
+
+  /**
+   * @return whether responses are cached at all
+   */
+  public boolean isEnabled() {
+    return maxSize > 0;
+  }
+
+  /**
+   * Create the cache key of a request: its XML representation without the request id and the issue date time
+   *
+   * @param request the request
+   * @return the key
+   */
+  @Nonnull
+  public static String createKey(@Nonnull EDMRequest request) {
+    final String requestXml = request.getWriter().getAsString();
+    return ISSUE_DATE_TIME.matcher(requestXml.replace(request.getRequestID(), "")).replaceAll("");
+  }
+
+  /**
+   * Get the cached response for the request key
+   *
+   * @param key the request key, see {@link #createKey(EDMRequest)}
+   * @return the cached response or <code>null</code>
+   */
+  @Nullable
+  public ResponseTemplate get(@Nonnull String key) {
+    final ResponseTemplate template;
+    synchronized (this) {
+      checkDatasets();
+      template = templates.get(key);
+    }
+
+    if (template == null)
+      misses.incrementAndGet();
+    else
+      hits.incrementAndGet();
+    return template;
+  }
+
+  /**
+   * Cache the response for the request key
+   *
+   * @param key      the request key, see {@link #createKey(EDMRequest)}
+   * @param template the response
+   */
+  public synchronized void put(@Nonnull String key, @Nonnull ResponseTemplate template) {
+    if (maxSize > 0)
+      templates.put(key, template);
+  }
+
+  /**
+   * Drop all the cached responses
+   */
+  public synchronized void invalidate() {
+    if (!templates.isEmpty()) {
+      invalidations.incrementAndGet();
+      templates.clear();
+    }
+    attachmentStore.clear();
+  }
+
+  /**
+   * @return the store of the attachments of the cached responses
+   */
+  @Nonnull
+  public AttachmentStore getAttachmentStore() {
+    return attachmentStore;
+  }
+
+  private void checkDatasets() {
+    final long now = System.currentTimeMillis();
+    if (now < nextCheck)
+      return;
+
+    nextCheck = now + CHECK_INTERVAL_MS;
+    final long stamp = getDatasetsStamp(datasetsDirectory);
+    if (stamp != datasetsStamp) {
+      LOGGER.info("The datasets in " + datasetsDirectory + " have changed, dropping the cached DP responses");
+      datasetsStamp = stamp;
+      invalidate();
+    }
+  }
+
+  /**
+   * A value that changes when a file below the directory is added, removed or modified
+   */
+  static long getDatasetsStamp(File directory) {
+    if (!directory.isDirectory())
+      return 0;
+
+    try (Stream<Path> paths = Files.walk(directory.toPath())) {
+      long stamp = 0;
+      for (Iterator<Path> it = paths.iterator(); it.hasNext(); ) {
+        final File file = it.next().toFile();
+        stamp = 31 * stamp + file.getPath().hashCode() + 17 * file.lastModified() + file.length();
+      }
+      return stamp;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * @return the number of cached responses
+   */
+  public synchronized int size() {
+    return templates.size();
+  }
+
+  /**
+   * @return the maximum number of cached responses
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @return the number of requests served from the cache
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of requests not found in the cache
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return the number of times the cache was dropped because of a dataset change
+   */
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+
+  /**
+   * A cached response: the serialized EDM response and the attachments, with the detected mime types
+   */
+  public static final class ResponseTemplate {
+    private final String requestID;
+    private final String responseXml;
+    private final List<ResponseAttachment> attachments;
+
+    /**
+     * @param response    the response created by the DP
+     * @param attachments the attachments of the response
+     */
+    public ResponseTemplate(@Nonnull EDMResponse response, @Nonnull List<ResponseAttachment> attachments) {
+      this.requestID = response.getRequestID();
+      this.responseXml = response.getWriter().getAsString();
+      this.attachments = Collections.unmodifiableList(new ArrayList<>(attachments));
+    }
+
+    /**
+     * Create a copy of the response for the request with the given id
+     *
+     * @param newRequestID the id of the request
+     * @return the response or <code>null</code> if it couldn't be read back
+     */
+    @Nullable
+    public EDMResponse createResponse(@Nonnull String newRequestID) {
+      return EDMResponse.reader().read(responseXml.replace(requestID, newRequestID).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the attachments of the response. Immutable
+     */
+    @Nonnull
+    public List<ResponseAttachment> getAttachments() {
+      return attachments;
+    }
+  }
+}
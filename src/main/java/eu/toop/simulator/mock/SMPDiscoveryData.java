@@ -0,0 +1,497 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+
+import org.yaml.snakeyaml.Yaml;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.xsds.bdxr.smp1.DocumentIdentifierType;
+import com.helger.xsds.bdxr.smp1.ObjectFactory;
+import com.helger.xsds.bdxr.smp1.ParticipantIdentifierType;
+import com.helger.xsds.bdxr.smp1.ServiceMetadataType;
+
+import eu.toop.simulator.util.ImmutableCommonsSortedMap;
+
+/**
+ * The SMP part of the discovery data: the service group hrefs of the participants and the
+ * service metadata of the (participant, doctype) pairs.
+ * <p>
+ * The data can be read either from the YAML files generated by <code>DiscoveryCacheUpdater</code>
+ * or from a compact binary snapshot of them. The snapshot is read with a single sequential
+ * read and avoids the reflective bean construction of SnakeYAML. Its layout is:
+ * <pre>
+ *   int     magic (TSMP)
+ *   int     version
+ *   int     number of participants with hrefs
+ *           per participant: UTF scheme, UTF value, int number of hrefs, (UTF key, UTF href)*
+ *   int     number of service metadata entries
+ *           per entry: UTF participant scheme, UTF participant value, UTF doctype scheme,
+ *           UTF doctype value, int length (-1 for null), the ServiceMetadata XML bytes
+ * </pre>
+ * <p>
+ * A snapshot can also be read lazily. Then only the keys and the positions of the XML
+ * bytes are read at startup, and each {@link ServiceMetadataType} is decoded the first time
+ * it is asked for and retained afterwards.
+ */
+public class SMPDiscoveryData {
+
+  private static final int SNAPSHOT_MAGIC = 0x54534D50;
+  private static final int SNAPSHOT_VERSION = 1;
+
+  /**
+   * The JAXB context is expensive to create, so create it once
+   */
+  private static JAXBContext jaxbContext;
+
+  private final LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap;
+
+  /**
+   * The sorted, immutable service group hrefs, keyed by the canonical participant id
+   */
+  private final SMPIdentifierIndex<ICommonsSortedMap<String, String>> sortedHrefsIndex;
+
+  /**
+   * The service metadata entries, keyed by the canonical participant and doctype ids
+   */
+  private final SMPIdentifierIndex<ServiceMetadataEntry> serviceMetadataIndex;
+
+  private SMPDiscoveryData(@Nonnull LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap,
+                           @Nonnull SMPIdentifierIndex<ServiceMetadataEntry> serviceMetadataIndex) {
+    this.hrefsMap = hrefsMap;
+    this.sortedHrefsIndex = createSortedHrefsIndex(hrefsMap);
+    this.serviceMetadataIndex = serviceMetadataIndex;
+  }
+
+  /**
+   * Create a new instance with the given maps. The identifiers must have a scheme and a value,
+   * the hrefs must not be <code>null</code>.
+   *
+   * @param hrefsMap           the service group hrefs per participant
+   * @param serviceMetadataMap the service metadata per participant and doctype
+   */
+  public SMPDiscoveryData(@Nonnull LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap,
+                          @Nonnull LinkedHashMap<SMPServiceMetadataKey, ServiceMetadataType> serviceMetadataMap) {
+    ValueEnforcer.notNull(hrefsMap, "hrefsMap");
+    ValueEnforcer.notNull(serviceMetadataMap, "serviceMetadataMap");
+    this.hrefsMap = hrefsMap;
+    this.sortedHrefsIndex = createSortedHrefsIndex(hrefsMap);
+    this.serviceMetadataIndex = new SMPIdentifierIndex<>(serviceMetadataMap.size());
+    serviceMetadataMap.forEach((key, value) -> putEntry(serviceMetadataIndex, key.getParticipantIdentifierType(),
+        key.getDocumentIdentifierType(), new ServiceMetadataEntry(value)));
+  }
+
+  /**
+   * Merge the data of several shards. The service metadata entries are shared with the
+   * shards, so the ones that are not decoded yet stay lazy. If a participant or a key
+   * exists in more than one shard, the last one wins.
+   *
+   * @param shards the shards. May not be empty
+   * @return the merged data, or the only shard
+   */
+  @Nonnull
+  public static SMPDiscoveryData merge(@Nonnull List<SMPDiscoveryData> shards) {
+    ValueEnforcer.notEmptyNoNullValue(shards, "shards");
+    if (shards.size() == 1)
+      return shards.get(0);
+
+    final LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap = new LinkedHashMap<>();
+    int entryCount = 0;
+    for (SMPDiscoveryData shard : shards) {
+      hrefsMap.putAll(shard.hrefsMap);
+      entryCount += shard.serviceMetadataIndex.size();
+    }
+
+    final SMPIdentifierIndex<ServiceMetadataEntry> serviceMetadataIndex = new SMPIdentifierIndex<>(entryCount);
+    for (SMPDiscoveryData shard : shards) {
+      final SMPIdentifierIndex<ServiceMetadataEntry> shardIndex = shard.serviceMetadataIndex;
+      for (int i = 0; i < shardIndex.size(); ++i) {
+        final String participantKey = shardIndex.getParticipantKey(i);
+        final String docTypeKey = shardIndex.getDocTypeKey(i);
+        serviceMetadataIndex.put(SMPIdentifierIndex.getScheme(participantKey), SMPIdentifierIndex.getValue(participantKey),
+            SMPIdentifierIndex.getScheme(docTypeKey), SMPIdentifierIndex.getValue(docTypeKey), shardIndex.getValue(i));
+      }
+    }
+    return new SMPDiscoveryData(hrefsMap, serviceMetadataIndex);
+  }
+
+  /**
+   * @return the service group hrefs per participant
+   */
+  @Nonnull
+  public LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> getHrefsMap() {
+    return hrefsMap;
+  }
+
+  /**
+   * Returns the service group hrefs of the given participant. The returned map is immutable
+   * and shared between the callers.
+   *
+   * @param participantScheme the participant id scheme
+   * @param participantValue  the participant id value
+   * @return the sorted hrefs or <code>null</code> if the participant is unknown
+   */
+  @Nullable
+  public ICommonsSortedMap<String, String> getServiceGroupHrefs(@Nullable String participantScheme, @Nullable String participantValue) {
+    return sortedHrefsIndex.get(participantScheme, participantValue);
+  }
+
+  /**
+   * Returns the service metadata of the given participant and doctype. In lazy mode it is
+   * decoded at the first call.
+   *
+   * @param key the participant and doctype
+   * @return the service metadata or <code>null</code> if there is none
+   */
+  @Nullable
+  public ServiceMetadataType getServiceMetadata(@Nonnull SMPServiceMetadataKey key) {
+    return getServiceMetadata(key.getParticipantIdentifierType().getScheme(), key.getParticipantIdentifierType().getValue(),
+        key.getDocumentIdentifierType().getScheme(), key.getDocumentIdentifierType().getValue());
+  }
+
+  /**
+   * Returns the service metadata of the given participant and doctype, without allocating
+   * a key. In lazy mode it is decoded at the first call.
+   *
+   * @param participantScheme the participant id scheme
+   * @param participantValue  the participant id value
+   * @param docTypeScheme     the doctype id scheme
+   * @param docTypeValue      the doctype id value
+   * @return the service metadata or <code>null</code> if there is none
+   */
+  @Nullable
+  public ServiceMetadataType getServiceMetadata(@Nullable String participantScheme, @Nullable String participantValue,
+                                                @Nullable String docTypeScheme, @Nullable String docTypeValue) {
+    if (docTypeScheme == null || docTypeValue == null)
+      return null;
+
+    final ServiceMetadataEntry entry = serviceMetadataIndex.get(participantScheme, participantValue, docTypeScheme, docTypeValue);
+    return entry == null ? null : entry.get();
+  }
+
+  /**
+   * Returns all the service metadata. In lazy mode, this decodes all the entries.
+   *
+   * @return the service metadata per participant and doctype
+   */
+  @Nonnull
+  public LinkedHashMap<SMPServiceMetadataKey, ServiceMetadataType> getServiceMetadataMap() {
+    final LinkedHashMap<SMPServiceMetadataKey, ServiceMetadataType> ret = new LinkedHashMap<>();
+    for (int i = 0; i < serviceMetadataIndex.size(); ++i) {
+      ret.put(getKey(i), serviceMetadataIndex.getValue(i).get());
+    }
+    return ret;
+  }
+
+  /**
+   * @return the number of the service metadata entries
+   */
+  public int getServiceMetadataCount() {
+    return serviceMetadataIndex.size();
+  }
+
+  /**
+   * @return the number of the service metadata entries that are decoded so far
+   */
+  public int getMaterializedCount() {
+    int ret = 0;
+    for (int i = 0; i < serviceMetadataIndex.size(); ++i) {
+      if (serviceMetadataIndex.getValue(i).isMaterialized())
+        ++ret;
+    }
+    return ret;
+  }
+
+  /**
+   * Read the data from the YAML files
+   *
+   * @param hrefsStream           the endpointhrefs.yml content. May not be <code>null</code>
+   * @param serviceMetadataStream the serviceMetadataTypes.yml content. May not be <code>null</code>
+   * @return the data
+   */
+  @Nonnull
+  public static SMPDiscoveryData readYaml(@Nonnull InputStream hrefsStream, @Nonnull InputStream serviceMetadataStream) {
+    ValueEnforcer.notNull(hrefsStream, "hrefsStream");
+    ValueEnforcer.notNull(serviceMetadataStream, "serviceMetadataStream");
+
+    Yaml yaml = new Yaml();
+    LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap = yaml.load(hrefsStream);
+    LinkedHashMap<SMPServiceMetadataKey, ServiceMetadataType> serviceMetadataMap = yaml.load(serviceMetadataStream);
+    return new SMPDiscoveryData(hrefsMap, serviceMetadataMap);
+  }
+
+  /**
+   * Read the data from a binary snapshot, decoding all the entries
+   *
+   * @param snapshotStream the snapshot content. May not be <code>null</code>
+   * @return the data
+   */
+  @Nonnull
+  public static SMPDiscoveryData readSnapshot(@Nonnull InputStream snapshotStream) {
+    return readSnapshot(snapshotStream, false);
+  }
+
+  /**
+   * Read the data from a binary snapshot. In lazy mode each service metadata entry keeps
+   * its encoded XML in a byte array of its own until it is decoded, the snapshot buffer
+   * itself is not kept.
+   *
+   * @param snapshotStream the snapshot content. May not be <code>null</code>
+   * @param lazy           if <code>true</code>, the service metadata entries are decoded on demand
+   * @return the data
+   */
+  @Nonnull
+  public static SMPDiscoveryData readSnapshot(@Nonnull InputStream snapshotStream, boolean lazy) {
+    ValueEnforcer.notNull(snapshotStream, "snapshotStream");
+
+    //a single sequential read, the rest is in memory
+    final byte[] bytes = StreamHelper.getAllBytes(snapshotStream);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      if (in.readInt() != SNAPSHOT_MAGIC)
+        throw new IllegalStateException("Not an SMP snapshot");
+
+      final int version = in.readInt();
+      if (version != SNAPSHOT_VERSION)
+        throw new IllegalStateException("Unsupported SMP snapshot version " + version);
+
+      final LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap = new LinkedHashMap<>();
+      final int participantCount = in.readInt();
+      for (int i = 0; i < participantCount; ++i) {
+        final ParticipantIdentifierType pId = createParticipantId(in.readUTF(), in.readUTF());
+        final int hrefCount = in.readInt();
+        final LinkedHashMap<String, String> hrefs = new LinkedHashMap<>();
+        for (int j = 0; j < hrefCount; ++j) {
+          hrefs.put(in.readUTF(), in.readUTF());
+        }
+        hrefsMap.put(pId, hrefs);
+      }
+
+      final Unmarshaller unmarshaller = lazy ? null : getJAXBContext().createUnmarshaller();
+      final int entryCount = in.readInt();
+      final SMPIdentifierIndex<ServiceMetadataEntry> serviceMetadataIndex = new SMPIdentifierIndex<>(entryCount);
+      for (int i = 0; i < entryCount; ++i) {
+        final ParticipantIdentifierType pId = createParticipantId(in.readUTF(), in.readUTF());
+        final DocumentIdentifierType docId = createDocTypeId(in.readUTF(), in.readUTF());
+        final int length = in.readInt();
+        final ServiceMetadataEntry entry;
+        if (length < 0) {
+          entry = new ServiceMetadataEntry((ServiceMetadataType) null);
+        } else {
+          //a copy of its own, so that the snapshot bytes are not kept
+          final byte[] xml = new byte[length];
+          in.readFully(xml);
+          entry = lazy ? new ServiceMetadataEntry(xml) : new ServiceMetadataEntry(decode(unmarshaller, xml));
+        }
+        putEntry(serviceMetadataIndex, pId, docId, entry);
+      }
+
+      return new SMPDiscoveryData(hrefsMap, serviceMetadataIndex);
+    } catch (IOException | JAXBException ex) {
+      throw new IllegalStateException("Couldn't read the SMP snapshot [" + ex.getMessage() + "]", ex);
+    }
+  }
+
+  /**
+   * Write the data as a binary snapshot
+   *
+   * @param outputStream the stream to write to. May not be <code>null</code>. It is not closed
+   * @throws IOException in case of a write error
+   */
+  public void writeSnapshot(@Nonnull OutputStream outputStream) throws IOException {
+    ValueEnforcer.notNull(outputStream, "outputStream");
+
+    final DataOutputStream out = new DataOutputStream(outputStream);
+    out.writeInt(SNAPSHOT_MAGIC);
+    out.writeInt(SNAPSHOT_VERSION);
+
+    out.writeInt(hrefsMap.size());
+    for (Map.Entry<ParticipantIdentifierType, LinkedHashMap<String, String>> entry : hrefsMap.entrySet()) {
+      out.writeUTF(entry.getKey().getScheme());
+      out.writeUTF(entry.getKey().getValue());
+      out.writeInt(entry.getValue().size());
+      for (Map.Entry<String, String> href : entry.getValue().entrySet()) {
+        out.writeUTF(href.getKey());
+        out.writeUTF(href.getValue());
+      }
+    }
+
+    try {
+      final Marshaller marshaller = getJAXBContext().createMarshaller();
+      final ObjectFactory objectFactory = new ObjectFactory();
+      final ByteArrayOutputStream xml = new ByteArrayOutputStream();
+
+      out.writeInt(serviceMetadataIndex.size());
+      for (int i = 0; i < serviceMetadataIndex.size(); ++i) {
+        final String participantKey = serviceMetadataIndex.getParticipantKey(i);
+        final String docTypeKey = serviceMetadataIndex.getDocTypeKey(i);
+        out.writeUTF(SMPIdentifierIndex.getScheme(participantKey));
+        out.writeUTF(SMPIdentifierIndex.getValue(participantKey));
+        out.writeUTF(SMPIdentifierIndex.getScheme(docTypeKey));
+        out.writeUTF(SMPIdentifierIndex.getValue(docTypeKey));
+
+        final ServiceMetadataEntry value = serviceMetadataIndex.getValue(i);
+        final byte[] source = value.getSource();
+        if (source != null) {
+          //not decoded yet, copy the original bytes
+          out.writeInt(source.length);
+          out.write(source);
+        } else if (value.get() == null) {
+          out.writeInt(-1);
+        } else {
+          xml.reset();
+          marshaller.marshal(objectFactory.createServiceMetadata(value.get()), xml);
+          out.writeInt(xml.size());
+          xml.writeTo(out);
+        }
+      }
+    } catch (JAXBException ex) {
+      throw new IOException("Couldn't marshal the service metadata [" + ex.getMessage() + "]", ex);
+    }
+    out.flush();
+  }
+
+  static synchronized JAXBContext getJAXBContext() throws JAXBException {
+    if (jaxbContext == null)
+      jaxbContext = JAXBContext.newInstance(ObjectFactory.class);
+    return jaxbContext;
+  }
+
+  private static SMPIdentifierIndex<ICommonsSortedMap<String, String>> createSortedHrefsIndex(
+      LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap) {
+    final SMPIdentifierIndex<ICommonsSortedMap<String, String>> index = new SMPIdentifierIndex<>(hrefsMap.size());
+    hrefsMap.forEach((pId, hrefs) -> {
+      checkIdentifier("participant", pId.getScheme(), pId.getValue());
+      hrefs.forEach((docType, href) -> {
+        ValueEnforcer.notNull(docType, () -> "A doctype in the service group of " + pId.getScheme() + "::" + pId.getValue());
+        ValueEnforcer.notNull(href, () -> "The href of " + docType + " in the service group of " + pId.getScheme() + "::" + pId.getValue());
+      });
+      index.put(pId.getScheme(), pId.getValue(), null, null, new ImmutableCommonsSortedMap<>(hrefs));
+    });
+    return index;
+  }
+
+  private static void putEntry(SMPIdentifierIndex<ServiceMetadataEntry> index, ParticipantIdentifierType pId,
+                               DocumentIdentifierType docId, ServiceMetadataEntry entry) {
+    checkIdentifier("participant", pId.getScheme(), pId.getValue());
+    checkIdentifier("doctype", docId.getScheme(), docId.getValue());
+    index.put(pId.getScheme(), pId.getValue(), docId.getScheme(), docId.getValue(), entry);
+  }
+
+  /**
+   * The index and the snapshot need both parts of an identifier, so an incomplete one is
+   * rejected when the data is built, not halfway through writing a snapshot
+   */
+  private static void checkIdentifier(String kind, @Nullable String scheme, @Nullable String value) {
+    ValueEnforcer.notNull(scheme, () -> "The scheme of the " + kind + " " + value);
+    ValueEnforcer.notNull(value, () -> "The value of the " + kind + " with the scheme " + scheme);
+  }
+
+  private SMPServiceMetadataKey getKey(int index) {
+    final String participantKey = serviceMetadataIndex.getParticipantKey(index);
+    final String docTypeKey = serviceMetadataIndex.getDocTypeKey(index);
+    return new SMPServiceMetadataKey(
+        createParticipantId(SMPIdentifierIndex.getScheme(participantKey), SMPIdentifierIndex.getValue(participantKey)),
+        createDocTypeId(SMPIdentifierIndex.getScheme(docTypeKey), SMPIdentifierIndex.getValue(docTypeKey)));
+  }
+
+  private static ServiceMetadataType decode(Unmarshaller unmarshaller, byte[] source) throws JAXBException {
+    return unmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(source)), ServiceMetadataType.class).getValue();
+  }
+
+  private static ParticipantIdentifierType createParticipantId(@Nullable String scheme, @Nullable String value) {
+    ParticipantIdentifierType pId = new ParticipantIdentifierType();
+    pId.setScheme(scheme);
+    pId.setValue(value);
+    return pId;
+  }
+
+  private static DocumentIdentifierType createDocTypeId(@Nullable String scheme, @Nullable String value) {
+    DocumentIdentifierType docId = new DocumentIdentifierType();
+    docId.setScheme(scheme);
+    docId.setValue(value);
+    return docId;
+  }
+
+  /**
+   * A service metadata value that is either decoded upfront or on demand from its encoded
+   * bytes. The bytes are dropped once the value is decoded.
+   */
+  private static final class ServiceMetadataEntry {
+    private volatile byte[] source;
+    private volatile ServiceMetadataType value;
+
+    ServiceMetadataEntry(@Nullable ServiceMetadataType value) {
+      this.value = value;
+    }
+
+    ServiceMetadataEntry(@Nonnull byte[] source) {
+      this.source = source;
+    }
+
+    /**
+     * @return the encoded value, <code>null</code> if it is decoded already
+     */
+    @Nullable
+    byte[] getSource() {
+      return source;
+    }
+
+    boolean isMaterialized() {
+      return source == null;
+    }
+
+    ServiceMetadataType get() {
+      if (source != null) {
+        synchronized (this) {
+          final byte[] xml = source;
+          if (xml != null) {
+            try {
+              value = decode(getJAXBContext().createUnmarshaller(), xml);
+            } catch (JAXBException ex) {
+              throw new IllegalStateException("Couldn't decode the service metadata [" + ex.getMessage() + "]", ex);
+            }
+            //the value is published before the source is dropped
+            source = null;
+          }
+        }
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,290 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * An open addressing hash index that is keyed by a participant identifier and optionally a
+ * doctype identifier. The identifiers are kept as interned canonical strings
+ * (<code>scheme::value</code>), but a lookup is made with the scheme and value parts
+ * directly: the hash of the canonical string is computed arithmetically from the cached
+ * hashes of the parts, and the comparison is made in place. So a lookup is a single probe
+ * sequence that doesn't allocate any object.
+ * <p>
+ * The entries keep their insertion order. The index is not thread safe while it is being
+ * built, but it can be read concurrently once it is fully built and safely published.
+ *
+ * @param <V> the value type
+ */
+public class SMPIdentifierIndex<V> {
+
+  private static final String SEPARATOR = "::";
+  private static final int SEPARATOR_HASH = SEPARATOR.hashCode();
+
+  private String[] participantKeys;
+  private String[] docTypeKeys;
+  private Object[] values;
+  private int size;
+
+  /**
+   * The hash table. Each slot contains the entry index + 1, 0 means that the slot is empty
+   */
+  private int[] slots;
+
+  /**
+   * Create a new index
+   *
+   * @param expectedSize the expected number of entries
+   */
+  public SMPIdentifierIndex(int expectedSize) {
+    ValueEnforcer.isGE0(expectedSize, "expectedSize");
+    final int capacity = Math.max(expectedSize, 8);
+    participantKeys = new String[capacity];
+    docTypeKeys = new String[capacity];
+    values = new Object[capacity];
+    slots = new int[tableSizeFor(capacity)];
+  }
+
+  /**
+   * Put a value for the participant and doctype. If the key already exists, its value is replaced.
+   *
+   * @param pScheme the participant scheme
+   * @param pValue  the participant value
+   * @param dScheme the doctype scheme, <code>null</code> for a participant-only key
+   * @param dValue  the doctype value, <code>null</code> for a participant-only key
+   * @param value   the value
+   */
+  public void put(@Nonnull String pScheme, @Nonnull String pValue, @Nullable String dScheme, @Nullable String dValue, V value) {
+    ValueEnforcer.notNull(pScheme, "pScheme");
+    ValueEnforcer.notNull(pValue, "pValue");
+    ValueEnforcer.isTrue((dScheme == null) == (dValue == null), "The doctype scheme and value must be both set or both null");
+
+    final int hash = hash(pScheme, pValue, dScheme, dValue);
+    final int slot = findSlot(hash, pScheme, pValue, dScheme, dValue);
+    if (slots[slot] != 0) {
+      values[slots[slot] - 1] = value;
+      return;
+    }
+
+    if (size == values.length)
+      grow();
+
+    participantKeys[size] = (pScheme + SEPARATOR + pValue).intern();
+    docTypeKeys[size] = dScheme == null ? null : (dScheme + SEPARATOR + dValue).intern();
+    values[size] = value;
+    ++size;
+
+    if (size * 2 > slots.length) {
+      rehash(slots.length * 2);
+    } else {
+      slots[slot] = size;
+    }
+  }
+
+  /**
+   * Get the value of a participant-only key
+   *
+   * @param pScheme the participant scheme
+   * @param pValue  the participant value
+   * @return the value or <code>null</code> if there is no such key
+   */
+  @Nullable
+  public V get(@Nullable String pScheme, @Nullable String pValue) {
+    return get(pScheme, pValue, null, null);
+  }
+
+  /**
+   * Get the value of a participant and doctype key
+   *
+   * @param pScheme the participant scheme
+   * @param pValue  the participant value
+   * @param dScheme the doctype scheme, <code>null</code> for a participant-only key
+   * @param dValue  the doctype value, <code>null</code> for a participant-only key
+   * @return the value or <code>null</code> if there is no such key
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public V get(@Nullable String pScheme, @Nullable String pValue, @Nullable String dScheme, @Nullable String dValue) {
+    if (pScheme == null || pValue == null || (dScheme == null) != (dValue == null))
+      return null;
+
+    final int entry = slots[findSlot(hash(pScheme, pValue, dScheme, dValue), pScheme, pValue, dScheme, dValue)];
+    return entry == 0 ? null : (V) values[entry - 1];
+  }
+
+  /**
+   * @return the number of entries
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param index the entry index, in insertion order
+   * @return the canonical participant id of the entry
+   */
+  @Nonnull
+  public String getParticipantKey(int index) {
+    ValueEnforcer.isBetweenInclusive(index, "index", 0, size - 1);
+    return participantKeys[index];
+  }
+
+  /**
+   * @param index the entry index, in insertion order
+   * @return the canonical doctype id of the entry or <code>null</code> for a participant-only key
+   */
+  @Nullable
+  public String getDocTypeKey(int index) {
+    ValueEnforcer.isBetweenInclusive(index, "index", 0, size - 1);
+    return docTypeKeys[index];
+  }
+
+  /**
+   * @param index the entry index, in insertion order
+   * @return the value of the entry
+   */
+  @SuppressWarnings("unchecked")
+  public V getValue(int index) {
+    ValueEnforcer.isBetweenInclusive(index, "index", 0, size - 1);
+    return (V) values[index];
+  }
+
+  /**
+   * Returns the scheme part of a canonical identifier
+   *
+   * @param canonical the canonical identifier (<code>scheme::value</code>)
+   * @return the scheme
+   */
+  @Nonnull
+  public static String getScheme(@Nonnull String canonical) {
+    return canonical.substring(0, canonical.indexOf(SEPARATOR));
+  }
+
+  /**
+   * Returns the value part of a canonical identifier
+   *
+   * @param canonical the canonical identifier (<code>scheme::value</code>)
+   * @return the value
+   */
+  @Nonnull
+  public static String getValue(@Nonnull String canonical) {
+    return canonical.substring(canonical.indexOf(SEPARATOR) + SEPARATOR.length());
+  }
+
+  /**
+   * Computes the hash code of <code>scheme + "::" + value</code> without creating the string.
+   *
+   * @param scheme the scheme
+   * @param value  the value
+   * @return the same value as <code>(scheme + "::" + value).hashCode()</code>
+   */
+  static int canonicalHash(@Nonnull String scheme, @Nonnull String value) {
+    // hash(a + b) = hash(a) * 31^length(b) + hash(b)
+    final int prefixHash = scheme.hashCode() * 31 * 31 + SEPARATOR_HASH;
+    return prefixHash * pow31(value.length()) + value.hashCode();
+  }
+
+  private static int hash(String pScheme, String pValue, String dScheme, String dValue) {
+    int h = canonicalHash(pScheme, pValue) * 31;
+    if (dScheme != null)
+      h += canonicalHash(dScheme, dValue);
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean matches(String canonical, String scheme, String value) {
+    if (canonical == null)
+      return scheme == null;
+    if (scheme == null)
+      return false;
+
+    final int schemeLength = scheme.length();
+    return canonical.length() == schemeLength + SEPARATOR.length() + value.length() &&
+        canonical.startsWith(scheme) &&
+        canonical.startsWith(SEPARATOR, schemeLength) &&
+        canonical.startsWith(value, schemeLength + SEPARATOR.length());
+  }
+
+  /**
+   * Linear probing. Returns the slot that contains the key, or the empty slot where it
+   * would be inserted.
+   */
+  private int findSlot(int hash, String pScheme, String pValue, String dScheme, String dValue) {
+    final int mask = slots.length - 1;
+    int slot = hash & mask;
+    while (true) {
+      final int entry = slots[slot];
+      if (entry == 0)
+        return slot;
+
+      if (matches(participantKeys[entry - 1], pScheme, pValue) && matches(docTypeKeys[entry - 1], dScheme, dValue))
+        return slot;
+
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private void grow() {
+    final int capacity = values.length * 2;
+    final String[] newParticipantKeys = new String[capacity];
+    final String[] newDocTypeKeys = new String[capacity];
+    final Object[] newValues = new Object[capacity];
+    System.arraycopy(participantKeys, 0, newParticipantKeys, 0, size);
+    System.arraycopy(docTypeKeys, 0, newDocTypeKeys, 0, size);
+    System.arraycopy(values, 0, newValues, 0, size);
+    participantKeys = newParticipantKeys;
+    docTypeKeys = newDocTypeKeys;
+    values = newValues;
+  }
+
+  private void rehash(int tableSize) {
+    slots = new int[tableSize];
+    final int mask = tableSize - 1;
+    for (int i = 0; i < size; ++i) {
+      int h = participantKeys[i].hashCode() * 31;
+      if (docTypeKeys[i] != null)
+        h += docTypeKeys[i].hashCode();
+      int slot = (h ^ (h >>> 16)) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = i + 1;
+    }
+  }
+
+  private static int tableSizeFor(int capacity) {
+    //at most half full
+    return Integer.highestOneBit(capacity * 2 - 1) << 1;
+  }
+
+  private static int pow31(int exponent) {
+    int result = 1;
+    int base = 31;
+    while (exponent > 0) {
+      if ((exponent & 1) != 0)
+        result *= base;
+      base *= base;
+      exponent >>= 1;
+    }
+    return result;
+  }
+}
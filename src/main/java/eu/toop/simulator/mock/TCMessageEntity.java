@@ -0,0 +1,231 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.helger.commons.string.StringHelper;
+
+import eu.toop.connector.api.rest.TCOutgoingMessage;
+import eu.toop.connector.api.rest.TCPayload;
+import eu.toop.connector.api.rest.TCRestJAXB;
+
+/**
+ * An HTTP entity that writes a {@link TCOutgoingMessage} with attachments, without
+ * building the base64 encoded attachments in memory. The message is marshalled with
+ * a short marker as the value of each attachment payload, then on writing, the
+ * attachment contents are base64 encoded chunk by chunk directly into the output in
+ * place of the markers.
+ */
+public class TCMessageEntity extends AbstractHttpEntity {
+
+  private static final int CHUNK_SIZE = 3 * 8192;
+
+  /**
+   * The marshalled message without the attachments, used for logging
+   */
+  private final String skeleton;
+
+  /**
+   * The parts of the marshalled message around the attachments
+   */
+  private final List<byte[]> parts = new ArrayList<>();
+  private final List<ByteBuffer> attachments = new ArrayList<>();
+
+  /**
+   * The EDM request ID of the message, for correlation
+   */
+  private String requestID;
+
+  /**
+   * Set once the message is recorded, the delivery retries are not recorded again
+   */
+  private final AtomicBoolean recorded = new AtomicBoolean();
+
+  /**
+   * Create a new entity
+   *
+   * @param message     the message, with the payloads that are already added. The attachments are appended
+   *                    as further payloads
+   * @param attachments the attachments
+   */
+  public TCMessageEntity(@Nonnull TCOutgoingMessage message, @Nonnull List<ResponseAttachment> attachments) {
+    final String markerPrefix = UUID.randomUUID().toString();
+    final List<String> markers = new ArrayList<>();
+    for (ResponseAttachment attachment : attachments) {
+      //a multiple of 3 bytes, so that the base64 form has no padding and can't merge with a neighbour
+      final byte[] marker = String.format("%s-%08d", markerPrefix, markers.size()).getBytes(StandardCharsets.US_ASCII);
+      markers.add(Base64.getEncoder().encodeToString(marker));
+
+      final TCPayload payload = new TCPayload();
+      payload.setContentID(attachment.getContentID());
+      payload.setMimeType(attachment.getMimeType().getAsString());
+      payload.setValue(marker);
+      message.addPayload(payload);
+      this.attachments.add(attachment.getData());
+    }
+
+    final String xml = TCRestJAXB.outgoingMessage().getAsString(message);
+    if (xml == null)
+      throw new IllegalStateException("Couldn't marshal the outgoing message");
+
+    int start = 0;
+    for (String marker : markers) {
+      final int index = xml.indexOf(marker, start);
+      if (index < 0)
+        throw new IllegalStateException("The attachment marker is missing from the outgoing message");
+      parts.add(xml.substring(start, index).getBytes(StandardCharsets.UTF_8));
+      start = index + marker.length();
+    }
+    parts.add(xml.substring(start).getBytes(StandardCharsets.UTF_8));
+
+    final StringBuilder skeletonBuilder = new StringBuilder(xml.length());
+    for (int i = 0; i < parts.size(); ++i) {
+      if (i > 0)
+        skeletonBuilder.append("[").append(this.attachments.get(i - 1).remaining()).append(" bytes]");
+      skeletonBuilder.append(new String(parts.get(i), StandardCharsets.UTF_8));
+    }
+    skeleton = skeletonBuilder.toString();
+  }
+
+  /**
+   * @return the marshalled message with placeholders instead of the attachment contents
+   */
+  @Nonnull
+  public String getSkeleton() {
+    return skeleton;
+  }
+
+  /**
+   * @return the EDM request ID of the message, <code>null</code> if it is not known
+   */
+  @Nullable
+  public String getRequestID() {
+    return requestID;
+  }
+
+  /**
+   * @param requestID the EDM request ID of the message
+   * @return this for chaining
+   */
+  @Nonnull
+  public TCMessageEntity setRequestID(@Nullable String requestID) {
+    this.requestID = requestID;
+    return this;
+  }
+
+  /**
+   * Compute the size and the SHA-256 digest of each attachment, in the order of the
+   * placeholders in the {@link #getSkeleton() skeleton}
+   *
+   * @return one <code>size:digest</code> entry per attachment
+   */
+  @Nonnull
+  public List<String> getAttachmentDigests() {
+    final List<String> ret = new ArrayList<>(attachments.size());
+    try {
+      for (ByteBuffer attachment : attachments) {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        final ByteBuffer data = attachment.duplicate();
+        final int size = data.remaining();
+        digest.update(data);
+        ret.add(size + ":" + StringHelper.getHexEncoded(digest.digest()));
+      }
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex.getMessage(), ex);
+    }
+    return ret;
+  }
+
+  /**
+   * @return <code>true</code> on the first call only
+   */
+  boolean markRecorded() {
+    return recorded.compareAndSet(false, true);
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    long length = 0;
+    for (byte[] part : parts) {
+      length += part.length;
+    }
+    for (ByteBuffer attachment : attachments) {
+      length += 4L * ((attachment.remaining() + 2) / 3);
+    }
+    return length;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+      writeTo(out);
+      return new ByteArrayInputStream(out.toByteArray());
+    }
+  }
+
+  @Override
+  public void writeTo(@Nonnull OutputStream outStream) throws IOException {
+    final byte[] chunk = new byte[CHUNK_SIZE];
+    for (int i = 0; i < parts.size(); ++i) {
+      if (i > 0) {
+        final ByteBuffer data = attachments.get(i - 1).duplicate();
+        //closing the encoder writes the padding, but must not close the output
+        try (OutputStream base64 = Base64.getEncoder().wrap(new CloseShieldOutputStream(outStream))) {
+          while (data.hasRemaining()) {
+            final int length = Math.min(chunk.length, data.remaining());
+            data.get(chunk, 0, length);
+            base64.write(chunk, 0, length);
+          }
+        }
+      }
+      outStream.write(parts.get(i));
+    }
+    outStream.flush();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+}
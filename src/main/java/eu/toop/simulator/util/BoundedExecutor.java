@@ -0,0 +1,227 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * A fixed size worker pool with a bounded queue. A task that doesn't fit into the queue
+ * is rejected instead of being run on a new thread, so that the caller can apply
+ * backpressure (e.g. answer with HTTP 503). The queue depth, the number of submitted,
+ * rejected, completed and failed tasks and the processing times are recorded for
+ * monitoring purposes.
+ */
+public class BoundedExecutor {
+  /**
+   * The Logger instance
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(BoundedExecutor.class);
+
+  private final String name;
+  private final int queueCapacity;
+  private final ThreadPoolExecutor executor;
+
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong totalProcessingNanos = new AtomicLong();
+  private final AtomicLong maxProcessingNanos = new AtomicLong();
+
+  /**
+   * Create a new pool
+   *
+   * @param name          the name of the pool, used as the thread name prefix
+   * @param threads       the number of worker threads. Must be &gt; 0
+   * @param queueCapacity the maximum number of waiting tasks. If <code>0</code> then a task is
+   *                      accepted only if a worker is idle
+   */
+  public BoundedExecutor(@Nonnull String name, int threads, int queueCapacity) {
+    ValueEnforcer.notEmpty(name, "name");
+    ValueEnforcer.isGT0(threads, "threads");
+    ValueEnforcer.isGE0(queueCapacity, "queueCapacity");
+    this.name = name;
+    this.queueCapacity = queueCapacity;
+
+    final BlockingQueue<Runnable> queue = queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+    final AtomicInteger threadIndex = new AtomicInteger();
+    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, runnable -> {
+      final Thread thread = new Thread(runnable, name + "-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }, new ThreadPoolExecutor.AbortPolicy());
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Submit the task, if there is room for it
+   *
+   * @param task the task to be run
+   * @return <code>false</code> if the pool is saturated (or shut down) and the task was rejected
+   */
+  public boolean trySubmit(@Nonnull Runnable task) {
+    ValueEnforcer.notNull(task, "task");
+    try {
+      executor.execute(() -> run(task));
+      submitted.incrementAndGet();
+      return true;
+    } catch (RejectedExecutionException ex) {
+      rejected.incrementAndGet();
+      LOGGER.warn("The " + name + " pool is saturated (queue depth " + getQueueDepth() + "), rejecting the task");
+      return false;
+    }
+  }
+
+  private void run(Runnable task) {
+    final long start = System.nanoTime();
+    try {
+      task.run();
+      completed.incrementAndGet();
+    } catch (RuntimeException ex) {
+      failed.incrementAndGet();
+      LOGGER.error("A task of the " + name + " pool failed: " + ex.getMessage(), ex);
+    } finally {
+      final long duration = System.nanoTime() - start;
+      totalProcessingNanos.addAndGet(duration);
+      maxProcessingNanos.accumulateAndGet(duration, Math::max);
+    }
+  }
+
+  /**
+   * Stop accepting tasks and wait until the queued and the running tasks are done.
+   * The tasks that are still running after the timeout are interrupted.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit    the time unit of the timeout
+   * @return <code>true</code> if all the tasks were done within the timeout
+   */
+  public boolean shutdown(long timeout, @Nonnull TimeUnit unit) {
+    executor.shutdown();
+    LOGGER.info("Draining the " + name + " pool, " + getQueueDepth() + " queued and " + getActiveCount() + " running tasks");
+    try {
+      if (executor.awaitTermination(timeout, unit))
+        return true;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+
+    LOGGER.warn("The " + name + " pool couldn't be drained in time, dropping " + executor.shutdownNow().size() + " queued tasks");
+    return false;
+  }
+
+  /**
+   * @return the name of the pool
+   */
+  @Nonnull
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of worker threads
+   */
+  public int getThreads() {
+    return executor.getMaximumPoolSize();
+  }
+
+  /**
+   * @return the maximum number of waiting tasks
+   */
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * @return the number of tasks waiting for a worker
+   */
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * @return the approximate number of the tasks being run
+   */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * @return the number of accepted tasks
+   */
+  public long getSubmittedCount() {
+    return submitted.get();
+  }
+
+  /**
+   * @return the number of rejected tasks
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * @return the number of tasks that were run successfully
+   */
+  public long getCompletedCount() {
+    return completed.get();
+  }
+
+  /**
+   * @return the number of tasks that threw an exception
+   */
+  public long getFailedCount() {
+    return failed.get();
+  }
+
+  /**
+   * @return the average processing time of a task in milliseconds
+   */
+  public double getAverageProcessingMillis() {
+    final long count = completed.get() + failed.get();
+    return count == 0 ? 0 : totalProcessingNanos.get() / 1_000_000d / count;
+  }
+
+  /**
+   * @return the longest processing time of a task in milliseconds
+   */
+  public double getMaxProcessingMillis() {
+    return maxProcessingNanos.get() / 1_000_000d;
+  }
+
+  /**
+   * @return whether the pool was shut down
+   */
+  public boolean isShutdown() {
+    return executor.isShutdown();
+  }
+}
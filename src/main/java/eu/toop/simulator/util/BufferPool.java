@@ -0,0 +1,119 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * A pool of equally sized byte arrays, so that the request bodies don't allocate (and
+ * the GC doesn't collect) a new buffer for every request. At most <code>maxPooled</code>
+ * arrays are kept, the arrays released beyond it are left to the GC.
+ */
+public class BufferPool {
+
+  private final int chunkSize;
+  private final int maxPooled;
+  private final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooled = new AtomicInteger();
+  private final AtomicLong allocated = new AtomicLong();
+  private final AtomicLong reused = new AtomicLong();
+
+  /**
+   * Create a new pool
+   *
+   * @param chunkSize the size of the arrays. Must be &gt; 0
+   * @param maxPooled the maximum number of arrays kept in the pool
+   */
+  public BufferPool(int chunkSize, int maxPooled) {
+    ValueEnforcer.isGT0(chunkSize, "chunkSize");
+    ValueEnforcer.isGE0(maxPooled, "maxPooled");
+    this.chunkSize = chunkSize;
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * @return an array of <code>chunkSize</code> bytes, with undefined content
+   */
+  @Nonnull
+  public byte[] acquire() {
+    final byte[] chunk = pool.poll();
+    if (chunk != null) {
+      pooled.decrementAndGet();
+      reused.incrementAndGet();
+      return chunk;
+    }
+    allocated.incrementAndGet();
+    return new byte[chunkSize];
+  }
+
+  /**
+   * Give an array back to the pool. It must not be used afterwards.
+   *
+   * @param chunk an array acquired from this pool
+   */
+  public void release(@Nonnull byte[] chunk) {
+    if (chunk.length != chunkSize)
+      return;
+    if (pooled.incrementAndGet() <= maxPooled)
+      pool.offer(chunk);
+    else
+      pooled.decrementAndGet();
+  }
+
+  /**
+   * @return the size of the arrays
+   */
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * @return the maximum number of arrays kept in the pool
+   */
+  public int getMaxPooled() {
+    return maxPooled;
+  }
+
+  /**
+   * @return the number of arrays in the pool
+   */
+  public int getPooledCount() {
+    return pooled.get();
+  }
+
+  /**
+   * @return the number of arrays allocated because the pool was empty
+   */
+  public long getAllocatedCount() {
+    return allocated.get();
+  }
+
+  /**
+   * @return the number of arrays taken from the pool
+   */
+  public long getReusedCount() {
+    return reused.get();
+  }
+}
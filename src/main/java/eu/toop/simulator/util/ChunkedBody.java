@@ -0,0 +1,125 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * A body read in chunks taken from a {@link BufferPool}, so that it is never copied
+ * into one contiguous array. {@link #release()} gives the chunks back to the pool.
+ */
+public final class ChunkedBody {
+
+  private final BufferPool pool;
+  private final List<byte[]> chunks = new ArrayList<>();
+  private final AtomicBoolean released = new AtomicBoolean();
+  /**
+   * The number of bytes used in the last chunk
+   */
+  private int lastLength;
+  private long size;
+
+  /**
+   * Create an empty body
+   *
+   * @param pool the pool of the chunks
+   */
+  public ChunkedBody(@Nonnull BufferPool pool) {
+    ValueEnforcer.notNull(pool, "pool");
+    this.pool = pool;
+  }
+
+  /**
+   * Read the next bytes from the stream into the free space of the last chunk (a new chunk if it is full).
+   * It reads only once, so that a non-blocking stream is only read while it is ready.
+   *
+   * @param inputStream the stream
+   * @return the number of bytes read, -1 at the end of the stream
+   * @throws IOException if the stream cannot be read
+   */
+  public int readFrom(@Nonnull InputStream inputStream) throws IOException {
+    if (released.get())
+      throw new IllegalStateException("The body was released");
+    if (chunks.isEmpty() || lastLength == pool.getChunkSize()) {
+      chunks.add(pool.acquire());
+      lastLength = 0;
+    }
+    final byte[] chunk = chunks.get(chunks.size() - 1);
+    final int read = inputStream.read(chunk, lastLength, chunk.length - lastLength);
+    if (read > 0) {
+      lastLength += read;
+      size += read;
+    }
+    return read;
+  }
+
+  /**
+   * @return the number of bytes in the body
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * @return a stream over the chunks, valid until the body is released
+   */
+  @Nonnull
+  public InputStream openStream() {
+    final List<InputStream> streams = new ArrayList<>(chunks.size());
+    for (int i = 0; i < chunks.size(); ++i)
+      streams.add(new ByteArrayInputStream(chunks.get(i), 0, i == chunks.size() - 1 ? lastLength : chunks.get(i).length));
+    return new SequenceInputStream(Collections.enumeration(streams));
+  }
+
+  /**
+   * @return a copy of the body in one array
+   */
+  @Nonnull
+  public byte[] toByteArray() {
+    final byte[] bytes = new byte[Math.toIntExact(size)];
+    int offset = 0;
+    for (int i = 0; i < chunks.size(); ++i) {
+      final int length = i == chunks.size() - 1 ? lastLength : chunks.get(i).length;
+      System.arraycopy(chunks.get(i), 0, bytes, offset, length);
+      offset += length;
+    }
+    return bytes;
+  }
+
+  /**
+   * Give the chunks back to the pool, only the first call has an effect
+   */
+  public void release() {
+    if (released.compareAndSet(false, true)) {
+      chunks.forEach(pool::release);
+      chunks.clear();
+    }
+  }
+}
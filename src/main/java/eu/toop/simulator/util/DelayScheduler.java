@@ -0,0 +1,143 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * Runs tasks after a delay without holding a thread while they wait: a single timer
+ * thread keeps the waiting tasks (any number of them, each is only a queue entry) and
+ * hands each task over to a {@link BoundedExecutor} when it is due.
+ */
+public class DelayScheduler {
+  /**
+   * The Logger instance
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(DelayScheduler.class);
+
+  private final String name;
+  private final ScheduledThreadPoolExecutor timer;
+  private final BoundedExecutor workers;
+  private final Set<CompletableFuture<?>> waiting = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Create a new scheduler
+   *
+   * @param name          the name, used as the thread name prefix
+   * @param threads       the number of threads that run the due tasks
+   * @param queueCapacity the maximum number of due tasks waiting for a thread, the tasks beyond it are rejected
+   */
+  public DelayScheduler(@Nonnull String name, int threads, int queueCapacity) {
+    ValueEnforcer.notEmpty(name, "name");
+    this.name = name;
+    timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      final Thread thread = new Thread(runnable, name + "-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.setRemoveOnCancelPolicy(true);
+    workers = new BoundedExecutor(name, threads, queueCapacity);
+  }
+
+  /**
+   * Run the task after the delay
+   *
+   * @param task    the task
+   * @param delayMs the delay in milliseconds, the task is handed over right away if it is not positive
+   * @param <T>     the result type of the task
+   * @return the future of the result of the task. It fails if the task threw an exception
+   * or it was rejected (the workers were saturated when it was due, or the scheduler is shut down)
+   */
+  @Nonnull
+  public <T> CompletableFuture<T> schedule(@Nonnull Supplier<T> task, long delayMs) {
+    ValueEnforcer.notNull(task, "task");
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    final Runnable handOver = () -> {
+      waiting.remove(future);
+      final boolean accepted = workers.trySubmit(() -> {
+        try {
+          future.complete(task.get());
+        } catch (RuntimeException ex) {
+          future.completeExceptionally(ex);
+          throw ex;
+        }
+      });
+      if (!accepted)
+        future.completeExceptionally(new RejectedExecutionException("The " + name + " pool is saturated"));
+    };
+
+    if (delayMs <= 0) {
+      handOver.run();
+    } else {
+      waiting.add(future);
+      try {
+        timer.schedule(handOver, delayMs, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException ex) {
+        waiting.remove(future);
+        future.completeExceptionally(ex);
+      }
+    }
+    return future;
+  }
+
+  /**
+   * Drop the waiting tasks (their futures fail), then wait for the due ones
+   *
+   * @param timeout the maximum time to wait for the due tasks
+   * @param unit    the time unit of the timeout
+   * @return <code>true</code> if all the due tasks were done within the timeout
+   */
+  public boolean shutdown(long timeout, @Nonnull TimeUnit unit) {
+    final int dropped = timer.shutdownNow().size();
+    if (dropped > 0)
+      LOGGER.warn("Dropping " + dropped + " delayed tasks of " + name);
+    final RejectedExecutionException reason = new RejectedExecutionException("The " + name + " scheduler was shut down");
+    waiting.forEach(future -> future.completeExceptionally(reason));
+    waiting.clear();
+    return workers.shutdown(timeout, unit);
+  }
+
+  /**
+   * @return the number of tasks waiting for their time
+   */
+  public int getWaitingCount() {
+    return timer.getQueue().size();
+  }
+
+  /**
+   * @return the pool that runs the due tasks
+   */
+  @Nonnull
+  public BoundedExecutor getWorkers() {
+    return workers;
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Predicate;
+
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+
+/**
+ * A read-only {@link com.helger.commons.collection.impl.ICommonsSet} that can be
+ * built once and shared between callers. All the modifying operations throw an
+ * {@link UnsupportedOperationException}, <code>getClone()</code> can be used to
+ * obtain a modifiable copy.
+ *
+ * @param <T> the element type
+ */
+public class ImmutableCommonsSet<T> extends CommonsLinkedHashSet<T> {
+
+  /**
+   * Create a new immutable set that contains the elements of the given collection
+   *
+   * @param elements the elements of the set. May not be <code>null</code>
+   */
+  public ImmutableCommonsSet(Collection<? extends T> elements) {
+    super(elements.size());
+    for (T element : elements) {
+      super.add(element);
+    }
+  }
+
+  @Override
+  public boolean add(T t) {
+    throw new UnsupportedOperationException("The set is immutable");
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends T> c) {
+    throw new UnsupportedOperationException("The set is immutable");
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    throw new UnsupportedOperationException("The set is immutable");
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    throw new UnsupportedOperationException("The set is immutable");
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    throw new UnsupportedOperationException("The set is immutable");
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super T> filter) {
+    throw new UnsupportedOperationException("The set is immutable");
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("The set is immutable");
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    final Iterator<T> it = super.iterator();
+    //Iterator.remove throws UnsupportedOperationException by default
+    return new Iterator<T>() {
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public T next() {
+        return it.next();
+      }
+    };
+  }
+}
@@ -0,0 +1,197 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.helger.commons.collection.impl.CommonsTreeMap;
+
+/**
+ * A read-only {@link com.helger.commons.collection.impl.ICommonsSortedMap} that can be
+ * built once and shared between callers. All the modifying operations throw an
+ * {@link UnsupportedOperationException} and the key, value and entry views are read-only,
+ * <code>getClone()</code> can be used to obtain a modifiable copy.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ImmutableCommonsSortedMap<K, V> extends CommonsTreeMap<K, V> {
+
+  /**
+   * A read-only full range view of the tree. It is used for the views, because it doesn't go
+   * through the overridden methods of this class.
+   */
+  private final NavigableMap<K, V> readOnlyView;
+
+  /**
+   * Create a new immutable map that contains the entries of the given map, sorted by the
+   * natural order of the keys
+   *
+   * @param map the entries of the map. May not be <code>null</code>
+   */
+  public ImmutableCommonsSortedMap(Map<? extends K, ? extends V> map) {
+    for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+      super.put(entry.getKey(), entry.getValue());
+    }
+    readOnlyView = Collections.unmodifiableNavigableMap(super.descendingMap().descendingMap());
+  }
+
+  @Override
+  public V put(K key, V value) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public void putAll(Map<? extends K, ? extends V> map) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public V remove(Object key) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public Map.Entry<K, V> pollFirstEntry() {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public Map.Entry<K, V> pollLastEntry() {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("The map is immutable");
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return readOnlyView.keySet();
+  }
+
+  @Override
+  public NavigableSet<K> navigableKeySet() {
+    return readOnlyView.navigableKeySet();
+  }
+
+  @Override
+  public NavigableSet<K> descendingKeySet() {
+    return readOnlyView.descendingKeySet();
+  }
+
+  @Override
+  public Collection<V> values() {
+    return readOnlyView.values();
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return readOnlyView.entrySet();
+  }
+
+  @Override
+  public NavigableMap<K, V> descendingMap() {
+    return readOnlyView.descendingMap();
+  }
+
+  @Override
+  public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+    return readOnlyView.subMap(fromKey, fromInclusive, toKey, toInclusive);
+  }
+
+  @Override
+  public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+    return readOnlyView.headMap(toKey, inclusive);
+  }
+
+  @Override
+  public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+    return readOnlyView.tailMap(fromKey, inclusive);
+  }
+
+  @Override
+  public SortedMap<K, V> subMap(K fromKey, K toKey) {
+    return readOnlyView.subMap(fromKey, toKey);
+  }
+
+  @Override
+  public SortedMap<K, V> headMap(K toKey) {
+    return readOnlyView.headMap(toKey);
+  }
+
+  @Override
+  public SortedMap<K, V> tailMap(K fromKey) {
+    return readOnlyView.tailMap(fromKey);
+  }
+}
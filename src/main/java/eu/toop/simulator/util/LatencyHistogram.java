@@ -0,0 +1,150 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * A latency histogram with fixed buckets (1, 2, 5, 10, 20, 50 ... 60000 ms). Recording is
+ * lock free and takes constant memory, the percentiles are estimated as the upper bound of
+ * the bucket they fall into (or the maximum, if that is lower).
+ */
+public class LatencyHistogram {
+
+  private static final long[] BUCKET_LIMITS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 60_000};
+
+  /**
+   * One counter per bucket, plus one for the latencies above the last limit
+   */
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_LIMITS_MS.length + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Record a latency
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    final long value = Math.max(nanos, 0);
+    int bucket = 0;
+    while (bucket < BUCKET_LIMITS_MS.length && value > TimeUnit.MILLISECONDS.toNanos(BUCKET_LIMITS_MS[bucket]))
+      ++bucket;
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    totalNanos.addAndGet(value);
+    maxNanos.accumulateAndGet(value, Math::max);
+  }
+
+  /**
+   * Forget the recorded latencies. Latencies recorded at the same time may be partially kept.
+   */
+  public void reset() {
+    for (int i = 0; i < buckets.length(); ++i)
+      buckets.set(i, 0);
+    count.set(0);
+    totalNanos.set(0);
+    maxNanos.set(0);
+  }
+
+  /**
+   * @return the number of recorded latencies
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return the mean latency in milliseconds, <code>0</code> if nothing was recorded
+   */
+  public double getMeanMillis() {
+    final long n = count.get();
+    return n == 0 ? 0 : totalNanos.get() / 1_000_000.0 / n;
+  }
+
+  /**
+   * @return the maximum latency in milliseconds
+   */
+  public double getMaxMillis() {
+    return maxNanos.get() / 1_000_000.0;
+  }
+
+  /**
+   * @param percentile the percentile, between 0 (exclusive) and 100
+   * @return the estimated latency at the percentile in milliseconds, <code>0</code> if nothing was recorded
+   */
+  public double getPercentileMillis(double percentile) {
+    ValueEnforcer.isTrue(percentile > 0 && percentile <= 100, "percentile must be in (0, 100]");
+    final long[] snapshot = getBucketCounts();
+    long n = 0;
+    for (long c : snapshot)
+      n += c;
+    if (n == 0)
+      return 0;
+
+    final long rank = (long) Math.ceil(percentile / 100 * n);
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; ++i) {
+      seen += snapshot[i];
+      if (seen >= rank)
+        return i < BUCKET_LIMITS_MS.length ? Math.min(BUCKET_LIMITS_MS[i], getMaxMillis()) : getMaxMillis();
+    }
+    return getMaxMillis();
+  }
+
+  /**
+   * @return the upper limits of the buckets in milliseconds, the last bucket has no limit
+   */
+  public static long[] getBucketLimitsMillis() {
+    return BUCKET_LIMITS_MS.clone();
+  }
+
+  /**
+   * @return the number of latencies per bucket
+   */
+  public long[] getBucketCounts() {
+    final long[] ret = new long[buckets.length()];
+    for (int i = 0; i < ret.length; ++i)
+      ret[i] = buckets.get(i);
+    return ret;
+  }
+
+  /**
+   * @return the summary and the non-empty buckets, one per line
+   */
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(String.format("count %d, mean %.1f ms, p50 %.0f ms, p95 %.0f ms, p99 %.0f ms, max %.1f ms", getCount(), getMeanMillis(),
+        getPercentileMillis(50), getPercentileMillis(95), getPercentileMillis(99), getMaxMillis()));
+    final long[] snapshot = getBucketCounts();
+    for (int i = 0; i < snapshot.length; ++i) {
+      if (snapshot[i] == 0)
+        continue;
+      final String label = i < BUCKET_LIMITS_MS.length ? "<= " + BUCKET_LIMITS_MS[i] + " ms" : "> " + BUCKET_LIMITS_MS[BUCKET_LIMITS_MS.length - 1] + " ms";
+      sb.append(System.lineSeparator()).append(String.format("  %-12s %d", label, snapshot[i]));
+    }
+    return sb.toString();
+  }
+}
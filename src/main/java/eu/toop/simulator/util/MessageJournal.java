@@ -0,0 +1,503 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * An append-only journal of binary records on memory-mapped segment files. The records are
+ * queued by any thread without locking and written by a single writer thread, a record that
+ * doesn't fit into the queue is dropped (and counted) instead of blocking the caller. A new
+ * segment is started when the current one is full and the oldest segments beyond
+ * <code>maxSegments</code> are deleted.
+ * <p>
+ * A segment starts with a magic number and the format version, followed by the records:
+ * <pre>
+ *   int    length of the rest of the record (0: no more records in the segment)
+ *   int    CRC32 of the rest of the record
+ *   long   sequence number
+ *   long   timestamp in milliseconds
+ *   byte   channel
+ *   int    metadata length, UTF-8 metadata
+ *   int    payload length, payload
+ * </pre>
+ * The length is written last, so that a reader never sees a half written record. The segments
+ * are only forced to the disk when they are closed, the pages written before a crash of the
+ * process are still flushed by the operating system.
+ */
+public class MessageJournal {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MessageJournal.class);
+
+  /**
+   * "TSJ1"
+   */
+  private static final int MAGIC = 0x54534a31;
+  private static final int VERSION = 1;
+  private static final int SEGMENT_HEADER_SIZE = 8;
+  /**
+   * length, crc, sequence, timestamp, channel, metadata length, payload length
+   */
+  private static final int RECORD_OVERHEAD = 4 + 4 + 8 + 8 + 1 + 4 + 4;
+  private static final String SEGMENT_PREFIX = "journal-";
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  private static final class Entry {
+    private final long timestamp;
+    private final byte channel;
+    private final byte[] metadata;
+    private final byte[] payload;
+
+    private Entry(long timestamp, byte channel, byte[] metadata, byte[] payload) {
+      this.timestamp = timestamp;
+      this.channel = channel;
+      this.metadata = metadata;
+      this.payload = payload;
+    }
+  }
+
+  /**
+   * A record read back from the journal
+   */
+  public static final class Record {
+    private final File segment;
+    private final long sequence;
+    private final long timestamp;
+    private final byte channel;
+    private final String metadata;
+    private final ByteBuffer payload;
+
+    private Record(File segment, long sequence, long timestamp, byte channel, String metadata, ByteBuffer payload) {
+      this.segment = segment;
+      this.sequence = sequence;
+      this.timestamp = timestamp;
+      this.channel = channel;
+      this.metadata = metadata;
+      this.payload = payload;
+    }
+
+    /**
+     * @return the segment file of the record
+     */
+    @Nonnull
+    public File getSegment() {
+      return segment;
+    }
+
+    /**
+     * @return the sequence number of the record, unique within the journal
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * @return the time of the recording in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    /**
+     * @return the channel given to {@link MessageJournal#record(byte, String, byte[])}
+     */
+    public byte getChannel() {
+      return channel;
+    }
+
+    /**
+     * @return the metadata of the record
+     */
+    @Nonnull
+    public String getMetadata() {
+      return metadata;
+    }
+
+    /**
+     * @return the length of the payload in bytes
+     */
+    public int getPayloadLength() {
+      return payload.remaining();
+    }
+
+    /**
+     * @return a copy of the payload
+     */
+    @Nonnull
+    public byte[] getPayload() {
+      final byte[] bytes = new byte[payload.remaining()];
+      payload.duplicate().get(bytes);
+      return bytes;
+    }
+  }
+
+  private final File directory;
+  private final long segmentSize;
+  private final int maxSegments;
+  private final int queueSize;
+
+  private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong recorded = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong writtenBytes = new AtomicLong();
+  private final Thread writer;
+  /**
+   * Whether the writer is about to park, so the producers have to wake it up
+   */
+  private volatile boolean writerWaiting;
+  private volatile boolean stopping;
+
+  //only accessed by the writer thread
+  private final List<File> segments = new ArrayList<>();
+  private int nextSegmentNumber;
+  private long nextSequence;
+  private MappedByteBuffer currentBuffer;
+  private volatile File currentSegment;
+
+  /**
+   * Create a new journal and start its writer thread. The records are appended to new segments,
+   * after the ones that are already in the directory.
+   *
+   * @param directory   the directory of the segments, created if it doesn't exist
+   * @param segmentSize the size of a segment in bytes. A record larger than it gets a segment of its own
+   * @param maxSegments the maximum number of segments kept in the directory, 0 for no limit
+   * @param queueSize   the maximum number of records waiting for the writer. Must be &gt; 0
+   */
+  public MessageJournal(@Nonnull File directory, long segmentSize, int maxSegments, int queueSize) {
+    ValueEnforcer.notNull(directory, "directory");
+    ValueEnforcer.isGT0(segmentSize, "segmentSize");
+    ValueEnforcer.isGE0(maxSegments, "maxSegments");
+    ValueEnforcer.isGT0(queueSize, "queueSize");
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IllegalStateException("Couldn't create the journal directory " + directory.getAbsolutePath());
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.maxSegments = maxSegments;
+    this.queueSize = queueSize;
+
+    segments.addAll(listSegments(directory));
+    if (!segments.isEmpty()) {
+      final File last = segments.get(segments.size() - 1);
+      nextSegmentNumber = getSegmentNumber(last) + 1;
+      //continue the sequence of the previous run
+      final AtomicLong lastSequence = new AtomicLong(-1);
+      readSegment(last, r -> lastSequence.set(r.getSequence()));
+      nextSequence = lastSequence.get() + 1;
+    }
+
+    writer = new Thread(this::writeLoop, "journal-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Queue a record for the writer. The arrays are written as they are, they must not be changed afterwards.
+   *
+   * @param channel  the channel of the record, e.g. where the message was captured
+   * @param metadata the metadata, e.g. the sender and the receiver of the message
+   * @param payload  the payload
+   * @return <code>false</code> if the record was dropped because the queue is full or the journal is shut down
+   */
+  public boolean record(byte channel, @Nonnull String metadata, @Nonnull byte[] payload) {
+    if (stopping) {
+      dropped.incrementAndGet();
+      return false;
+    }
+    if (queued.incrementAndGet() > queueSize) {
+      queued.decrementAndGet();
+      dropped.incrementAndGet();
+      return false;
+    }
+    queue.offer(new Entry(System.currentTimeMillis(), channel, metadata.getBytes(StandardCharsets.UTF_8), payload));
+    if (writerWaiting)
+      LockSupport.unpark(writer);
+    return true;
+  }
+
+  private void writeLoop() {
+    while (true) {
+      final Entry entry = queue.poll();
+      if (entry == null) {
+        if (stopping)
+          break;
+        writerWaiting = true;
+        //a record queued before the flag was visible is seen here, the later ones unpark the writer
+        if (queue.isEmpty() && !stopping)
+          LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+        writerWaiting = false;
+        continue;
+      }
+      queued.decrementAndGet();
+      try {
+        write(entry);
+        recorded.incrementAndGet();
+      } catch (IOException | RuntimeException ex) {
+        failed.incrementAndGet();
+        LOGGER.error("Couldn't write to the journal in " + directory.getAbsolutePath() + ": " + ex.getMessage(), ex);
+        closeSegment();
+      }
+    }
+    closeSegment();
+  }
+
+  private void write(Entry entry) throws IOException {
+    final int length = RECORD_OVERHEAD - 4 + entry.metadata.length + entry.payload.length;
+    //the record and the 0 length marking the end of the segment
+    final long needed = 4L + length + 4;
+    if (currentBuffer == null || currentBuffer.remaining() < needed) {
+      closeSegment();
+      openSegment(Math.max(segmentSize, SEGMENT_HEADER_SIZE + needed));
+    }
+
+    final MappedByteBuffer buffer = currentBuffer;
+    final int start = buffer.position();
+    buffer.position(start + 8);
+    buffer.putLong(nextSequence);
+    buffer.putLong(entry.timestamp);
+    buffer.put(entry.channel);
+    buffer.putInt(entry.metadata.length);
+    buffer.put(entry.metadata);
+    buffer.putInt(entry.payload.length);
+    buffer.put(entry.payload);
+
+    final CRC32 crc = new CRC32();
+    final ByteBuffer body = buffer.duplicate();
+    body.position(start + 8);
+    body.limit(buffer.position());
+    crc.update(body);
+    buffer.putInt(start + 4, (int) crc.getValue());
+    //publish the record
+    buffer.putInt(start, length);
+
+    nextSequence++;
+    writtenBytes.addAndGet(4L + length);
+  }
+
+  private void openSegment(long size) throws IOException {
+    if (size > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("The record is too large for a segment: " + size + " bytes");
+    final File file = new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      //the mapping stays valid after the file is closed
+      currentBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+    currentBuffer.putInt(MAGIC);
+    currentBuffer.putInt(VERSION);
+    currentSegment = file;
+    segments.add(file);
+    LOGGER.info("Recording messages to " + file.getAbsolutePath());
+
+    while (maxSegments > 0 && segments.size() > maxSegments) {
+      final File oldest = segments.remove(0);
+      if (!oldest.delete())
+        LOGGER.warn("Couldn't delete the old journal segment " + oldest.getAbsolutePath());
+    }
+  }
+
+  private void closeSegment() {
+    if (currentBuffer != null) {
+      currentBuffer.force();
+      currentBuffer = null;
+      currentSegment = null;
+    }
+  }
+
+  /**
+   * Write the queued records (at most <code>timeout</code>), stop the writer and force the current
+   * segment to the disk. The records offered afterwards are dropped.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit    the unit of the timeout
+   */
+  public void shutdown(long timeout, @Nonnull TimeUnit unit) {
+    stopping = true;
+    LockSupport.unpark(writer);
+    try {
+      // join(0) would wait forever
+      writer.join(Math.max(1, unit.toMillis(timeout)));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (writer.isAlive())
+      LOGGER.warn("The journal writer didn't finish in time, " + queued.get() + " records are lost");
+  }
+
+  /**
+   * @return the directory of the segments
+   */
+  @Nonnull
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return the segment being written, <code>null</code> if nothing was written yet
+   */
+  @Nullable
+  public File getCurrentSegment() {
+    return currentSegment;
+  }
+
+  /**
+   * @return the number of records waiting for the writer
+   */
+  public int getQueueDepth() {
+    return queued.get();
+  }
+
+  /**
+   * @return the number of records written
+   */
+  public long getRecordedCount() {
+    return recorded.get();
+  }
+
+  /**
+   * @return the number of records dropped because the queue was full
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  /**
+   * @return the number of records that couldn't be written
+   */
+  public long getFailedCount() {
+    return failed.get();
+  }
+
+  /**
+   * @return the number of bytes written
+   */
+  public long getWrittenBytes() {
+    return writtenBytes.get();
+  }
+
+  private static int getSegmentNumber(File segment) {
+    final String name = segment.getName();
+    try {
+      return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+  /**
+   * @param directory the directory of a journal
+   * @return the segments in the directory, the oldest first
+   */
+  @Nonnull
+  public static List<File> listSegments(@Nonnull File directory) {
+    final File[] files = directory.listFiles(f -> f.isFile() && f.getName().startsWith(SEGMENT_PREFIX) &&
+        f.getName().endsWith(SEGMENT_SUFFIX) && getSegmentNumber(f) >= 0);
+    if (files == null)
+      return new ArrayList<>();
+    Arrays.sort(files, (a, b) -> Integer.compare(getSegmentNumber(a), getSegmentNumber(b)));
+    return new ArrayList<>(Arrays.asList(files));
+  }
+
+  /**
+   * Read all the records of a journal, including the segment being written. The payloads of the
+   * records are not copied until {@link Record#getPayload()} is called.
+   *
+   * @param directory the directory of the journal
+   * @param consumer  gets the records, the oldest first
+   */
+  public static void read(@Nonnull File directory, @Nonnull Consumer<Record> consumer) {
+    ValueEnforcer.notNull(directory, "directory");
+    ValueEnforcer.notNull(consumer, "consumer");
+    for (File segment : listSegments(directory)) {
+      readSegment(segment, consumer);
+    }
+  }
+
+  private static void readSegment(File segment, Consumer<Record> consumer) {
+    final MappedByteBuffer buffer;
+    try (RandomAccessFile raf = new RandomAccessFile(segment, "r")) {
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+    } catch (IOException ex) {
+      //e.g. deleted by the rotation in the meantime
+      LOGGER.warn("Couldn't read the journal segment " + segment.getAbsolutePath() + ": " + ex.getMessage());
+      return;
+    }
+
+    if (buffer.remaining() < SEGMENT_HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      LOGGER.warn(segment.getAbsolutePath() + " is not a journal segment");
+      return;
+    }
+
+    while (buffer.remaining() >= 4) {
+      final int start = buffer.position();
+      final int length = buffer.getInt();
+      if (length == 0)
+        return;
+      if (length < RECORD_OVERHEAD - 4 || length > buffer.remaining() - 4) {
+        LOGGER.warn("Invalid record length at " + start + " in " + segment.getAbsolutePath());
+        return;
+      }
+      final int crc = buffer.getInt();
+      final ByteBuffer body = buffer.duplicate();
+      body.limit(body.position() + length - 4);
+      final CRC32 actual = new CRC32();
+      actual.update(body.duplicate());
+      if ((int) actual.getValue() != crc) {
+        LOGGER.warn("Invalid record checksum at " + start + " in " + segment.getAbsolutePath());
+        return;
+      }
+
+      final long sequence = body.getLong();
+      final long timestamp = body.getLong();
+      final byte channel = body.get();
+      final byte[] metadata = new byte[body.getInt()];
+      body.get(metadata);
+      final int payloadLength = body.getInt();
+      final ByteBuffer payload = body.slice();
+      payload.limit(payloadLength);
+      consumer.accept(new Record(segment, sequence, timestamp, channel, new String(metadata, StandardCharsets.UTF_8), payload));
+
+      buffer.position(start + 4 + length);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+
+import eu.toop.simulator.SimulatorConfig;
+
+/**
+ * The HTTP client of the outbound calls of the simulator (e.g. the submissions to the
+ * connector). The connections are pooled and kept alive, so consecutive messages to the
+ * same endpoint reuse a connection instead of connecting for every message.
+ * <p>
+ * The client is created on first use, or when the web application starts, and closed
+ * when the web application stops.
+ */
+public class SimulatorHttpClient {
+  /**
+   * The Logger instance
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(SimulatorHttpClient.class);
+
+  private static SimulatorHttpClient instance;
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
+  /**
+   * Create a new client
+   *
+   * @param maxConnectionsPerRoute the maximum number of connections to one host
+   * @param maxConnectionsTotal    the maximum number of connections
+   * @param connectTimeoutMs       the connect timeout in milliseconds
+   * @param socketTimeoutMs        the read timeout in milliseconds
+   */
+  public SimulatorHttpClient(int maxConnectionsPerRoute, int maxConnectionsTotal, int connectTimeoutMs, int socketTimeoutMs) {
+    ValueEnforcer.isGT0(maxConnectionsPerRoute, "maxConnectionsPerRoute");
+    ValueEnforcer.isGT0(maxConnectionsTotal, "maxConnectionsTotal");
+
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+    connectionManager.setMaxTotal(maxConnectionsTotal);
+    //a connection closed by the server while idle in the pool is detected before reuse
+    connectionManager.setValidateAfterInactivity(2_000);
+
+    httpClient = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectTimeout(connectTimeoutMs)
+            .setConnectionRequestTimeout(connectTimeoutMs)
+            .setSocketTimeout(socketTimeoutMs)
+            .build())
+        .evictIdleConnections(60, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * @return the shared client, configured from the simulator configuration
+   */
+  @Nonnull
+  public static synchronized SimulatorHttpClient getInstance() {
+    if (instance == null) {
+      instance = new SimulatorHttpClient(SimulatorConfig.getHttpMaxConnectionsPerRoute(), SimulatorConfig.getHttpMaxConnectionsTotal(),
+          SimulatorConfig.getHttpConnectTimeout(), SimulatorConfig.getHttpSocketTimeout());
+      LOGGER.info("Created the shared HTTP client");
+    }
+    return instance;
+  }
+
+  /**
+   * Close the shared client (if it was created). The next {@link #getInstance()} creates a new one.
+   */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      instance.close();
+      instance = null;
+    }
+  }
+
+  /**
+   * Execute the request on a pooled connection
+   *
+   * @param request         the request
+   * @param responseHandler the handler of the response
+   * @param <T>             the result type
+   * @return the result of the response handler
+   * @throws IOException on a transport error
+   */
+  public <T> T execute(@Nonnull HttpUriRequest request, @Nonnull ResponseHandler<? extends T> responseHandler) throws IOException {
+    requests.incrementAndGet();
+    try {
+      return httpClient.execute(request, responseHandler);
+    } catch (IOException | RuntimeException ex) {
+      failures.incrementAndGet();
+      throw ex;
+    }
+  }
+
+  /**
+   * Close the client and its connections
+   */
+  public void close() {
+    try {
+      httpClient.close();
+    } catch (IOException ex) {
+      LOGGER.warn("Couldn't close the HTTP client: " + ex.getMessage());
+    }
+  }
+
+  /**
+   * @return the statistics of the connection pool (leased, pending, available connections)
+   */
+  @Nonnull
+  public PoolStats getPoolStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  /**
+   * @return the number of executed requests
+   */
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  /**
+   * @return the number of requests that failed with an exception
+   */
+  public long getFailureCount() {
+    return failures.get();
+  }
+}
@@ -0,0 +1,172 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.web;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.toop.simulator.util.BufferPool;
+import eu.toop.simulator.util.ChunkedBody;
+
+/**
+ * Reads the body of a request with the non-blocking Servlet 3.1 I/O into pooled chunks. No
+ * container thread waits while a slow client uploads its body, the handler is called once
+ * the whole body is there. The servlet must be <code>asyncSupported</code>.
+ */
+final class AsyncBodyReader implements ReadListener, AsyncListener {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncBodyReader.class);
+
+  /**
+   * The chunks of the request bodies, 16 KiB each and at most 16 MiB kept for reuse
+   */
+  static final BufferPool BUFFER_POOL = new BufferPool(16 * 1024, 1024);
+
+  /**
+   * The maximum time in milliseconds to read a body
+   */
+  static final long READ_TIMEOUT_MS = 60_000;
+
+  /**
+   * Handles a request once its body was read
+   */
+  interface IBodyHandler {
+    /**
+     * Handle the body and set the response. Runs on a container thread, the request is
+     * completed afterwards. The handler owns the body and has to release it.
+     *
+     * @param body     the body
+     * @param response the response
+     * @throws IOException if the response cannot be sent
+     */
+    void onBody(@Nonnull ChunkedBody body, @Nonnull HttpServletResponse response) throws IOException;
+
+    /**
+     * Called instead of {@link #onBody} if the body could not be read (the client went away or timed out)
+     */
+    default void onAbort() {
+    }
+  }
+
+  private final AsyncContext asyncContext;
+  private final ServletInputStream inputStream;
+  private final IBodyHandler handler;
+  private final ChunkedBody body = new ChunkedBody(BUFFER_POOL);
+  private final AtomicBoolean done = new AtomicBoolean();
+
+  private AsyncBodyReader(AsyncContext asyncContext, ServletInputStream inputStream, IBodyHandler handler) {
+    this.asyncContext = asyncContext;
+    this.inputStream = inputStream;
+    this.handler = handler;
+  }
+
+  /**
+   * Put the request into async mode and start reading its body
+   *
+   * @param request the request
+   * @param handler called when the body was read
+   * @throws IOException if the body cannot be read
+   */
+  static void start(@Nonnull HttpServletRequest request, @Nonnull IBodyHandler handler) throws IOException {
+    final AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(READ_TIMEOUT_MS);
+    final AsyncBodyReader reader = new AsyncBodyReader(asyncContext, request.getInputStream(), handler);
+    asyncContext.addListener(reader);
+    reader.inputStream.setReadListener(reader);
+  }
+
+  @Override
+  public void onDataAvailable() throws IOException {
+    while (inputStream.isReady()) {
+      if (body.readFrom(inputStream) < 0)
+        return;
+    }
+  }
+
+  @Override
+  public void onAllDataRead() {
+    if (!done.compareAndSet(false, true))
+      return;
+    final HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+    try {
+      handler.onBody(body, response);
+    } catch (IOException | RuntimeException ex) {
+      body.release();
+      LOGGER.error("Could not handle the request: " + ex.getMessage(), ex);
+      sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    } finally {
+      asyncContext.complete();
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    if (!done.compareAndSet(false, true))
+      return;
+    LOGGER.warn("Could not read the request body: " + t);
+    body.release();
+    handler.onAbort();
+    asyncContext.complete();
+  }
+
+  @Override
+  public void onTimeout(AsyncEvent event) {
+    if (!done.compareAndSet(false, true))
+      return;
+    LOGGER.warn("The request body was not read within " + READ_TIMEOUT_MS + " ms");
+    //the chunks are not released, a late read callback may still write into them
+    handler.onAbort();
+    sendError((HttpServletResponse) asyncContext.getResponse(), HttpServletResponse.SC_REQUEST_TIMEOUT);
+    asyncContext.complete();
+  }
+
+  @Override
+  public void onError(AsyncEvent event) {
+    onError(event.getThrowable());
+  }
+
+  @Override
+  public void onComplete(AsyncEvent event) {
+  }
+
+  @Override
+  public void onStartAsync(AsyncEvent event) {
+  }
+
+  private static void sendError(HttpServletResponse response, int status) {
+    try {
+      if (!response.isCommitted())
+        response.sendError(status);
+    } catch (IOException ex) {
+      LOGGER.debug("Could not send the error " + status + ": " + ex.getMessage());
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.web;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.helger.commons.mime.CMimeType;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.json.serialize.JsonWriter;
+import com.helger.json.serialize.JsonWriterSettings;
+
+import eu.toop.simulator.mock.CorrelationTracker;
+import eu.toop.simulator.mock.MockDC;
+import eu.toop.simulator.util.LatencyHistogram;
+
+/**
+ * Reports the correlation of the DC requests with their responses as JSON: the counters
+ * and the latency histograms. A POST resets the measurements.
+ */
+@WebServlet("/correlation-status")
+public class CorrelationStatusServlet extends HttpServlet {
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    final CorrelationTracker aTracker = MockDC.getCorrelationTracker();
+    final IJsonObject aStatus = new JsonObject()
+        .add("sent", aTracker.getSentCount())
+        .add("accepted", aTracker.getAcceptedCount())
+        .add("failed", aTracker.getFailedCount())
+        .add("responded", aTracker.getRespondedCount())
+        .add("waiting", aTracker.getPendingCount())
+        .add("unmatched", aTracker.getUnmatchedCount())
+        .add("expired", aTracker.getExpiredCount())
+        .add("evicted", aTracker.getEvictedCount())
+        .add("maxSize", aTracker.getMaxSize())
+        .add("expirySeconds", aTracker.getExpirySeconds())
+        .add("acceptanceLatency", getAsJson(aTracker.getAcceptanceLatency()))
+        .add("endToEndLatency", getAsJson(aTracker.getEndToEndLatency()));
+
+    resp.setContentType(CMimeType.APPLICATION_JSON.getAsString());
+    resp.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    resp.getWriter().write(new JsonWriter(new JsonWriterSettings().setIndentEnabled(true)).writeAsString(aStatus));
+  }
+
+  @Override
+  protected void doPost(HttpServletRequest req, HttpServletResponse resp) {
+    MockDC.getCorrelationTracker().reset();
+    resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+  }
+
+  private static IJsonObject getAsJson(LatencyHistogram aHistogram) {
+    final long[] aLimits = LatencyHistogram.getBucketLimitsMillis();
+    final long[] aCounts = aHistogram.getBucketCounts();
+    final JsonArray aBuckets = new JsonArray();
+    for (int i = 0; i < aCounts.length; ++i) {
+      aBuckets.add(new JsonObject()
+          .add("upToMillis", i < aLimits.length ? Long.toString(aLimits[i]) : "inf")
+          .add("count", aCounts[i]));
+    }
+    return new JsonObject()
+        .add("count", aHistogram.getCount())
+        .add("meanMillis", aHistogram.getMeanMillis())
+        .add("p50Millis", aHistogram.getPercentileMillis(50))
+        .add("p95Millis", aHistogram.getPercentileMillis(95))
+        .add("p99Millis", aHistogram.getPercentileMillis(99))
+        .add("maxMillis", aHistogram.getMaxMillis())
+        .add("buckets", aBuckets);
+  }
+}
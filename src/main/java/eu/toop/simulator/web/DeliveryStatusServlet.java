@@ -0,0 +1,83 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.web;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.helger.commons.mime.CMimeType;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.json.serialize.JsonWriter;
+import com.helger.json.serialize.JsonWriterSettings;
+
+import eu.toop.simulator.mock.MockDP;
+import eu.toop.simulator.mock.ResponseDeliveryPipeline;
+
+/**
+ * Reports the state of the delivery of the DP responses to the connector as JSON:
+ * the counters, the queued and in-flight responses per destination and the dead letters.
+ */
+@WebServlet("/delivery-status")
+public class DeliveryStatusServlet extends HttpServlet {
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    final IJsonObject aStatus = new JsonObject();
+    final ResponseDeliveryPipeline aPipeline = MockDP.getDeliveryPipeline();
+    aStatus.add("active", aPipeline != null);
+    if (aPipeline != null) {
+      aStatus.add("submitted", aPipeline.getSubmittedCount());
+      aStatus.add("delivered", aPipeline.getDeliveredCount());
+      aStatus.add("retried", aPipeline.getRetriedCount());
+      aStatus.add("rejected", aPipeline.getRejectedCount());
+      aStatus.add("deadLettered", aPipeline.getDeadLetteredCount());
+      aStatus.add("outstanding", aPipeline.getOutstandingCount());
+      aStatus.add("waitingForRetry", aPipeline.getWaitingForRetryCount());
+      aStatus.add("queueCapacity", aPipeline.getQueueCapacity());
+      aStatus.add("concurrencyPerDestination", aPipeline.getConcurrencyPerDestination());
+
+      final IJsonObject aDestinations = new JsonObject();
+      aPipeline.getPendingCounts().forEach((sDestination, aPending) -> aDestinations.add(sDestination,
+          new JsonObject().add("pending", aPending).add("inflight", aPipeline.getInflightCounts().getOrDefault(sDestination, 0))));
+      aStatus.add("destinations", aDestinations);
+
+      final JsonArray aDeadLetters = new JsonArray();
+      for (final ResponseDeliveryPipeline.DeadLetter aDeadLetter : aPipeline.getDeadLetters()) {
+        aDeadLetters.add(new JsonObject()
+            .add("time", aDeadLetter.getTime().toString())
+            .add("description", aDeadLetter.getDescription())
+            .add("destination", aDeadLetter.getDestination())
+            .add("attempts", aDeadLetter.getAttempts())
+            .add("error", aDeadLetter.getError()));
+      }
+      aStatus.add("deadLetters", aDeadLetters);
+    }
+
+    resp.setContentType(CMimeType.APPLICATION_JSON.getAsString());
+    resp.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    resp.getWriter().write(new JsonWriter(new JsonWriterSettings().setIndentEnabled(true)).writeAsString(aStatus));
+  }
+}
@@ -18,11 +18,14 @@
  */
 package eu.toop.simulator.web;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.Nullable;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -32,8 +35,11 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
 
+import eu.toop.connector.api.me.incoming.MEIncomingTransportMetadata;
+import eu.toop.connector.api.rest.ETCPayloadType;
 import eu.toop.connector.api.rest.TCIncomingMessage;
 import eu.toop.connector.api.rest.TCIncomingMetadata;
 import eu.toop.connector.api.rest.TCRestJAXB;
@@ -41,43 +47,205 @@ import eu.toop.edm.EDMErrorResponse;
 import eu.toop.edm.EDMResponse;
 import eu.toop.edm.IEDMTopLevelObject;
 import eu.toop.edm.xml.EDMPayloadDeterminator;
+import eu.toop.simulator.SimulatorConfig;
+import eu.toop.simulator.mock.IncomingMessageForwarder;
+import eu.toop.simulator.mock.MessageRecorder;
+import eu.toop.simulator.mock.MockDC;
+import eu.toop.simulator.util.BoundedExecutor;
+import eu.toop.simulator.util.ChunkedBody;
 
-@WebServlet("/to-dc")
+/**
+ * The /to-dc endpoint of the simulated DC. The body is read without blocking a container thread
+ * (see {@link AsyncBodyReader}) and the message is acknowledged as soon as the body is there, it is
+ * parsed and inspected on a bounded worker pool. When too many messages are in flight the requests
+ * are rejected with HTTP 429 before their body is read, when the pool is saturated with HTTP 503,
+ * so that the connector retries them later.
+ */
+@WebServlet(value = "/to-dc", asyncSupported = true)
 public class MockDCServlet extends HttpServlet {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(MockDCServlet.class);
 
+  /**
+   * The HTTP status of a request rejected because of too many messages in flight
+   */
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+
+  /**
+   * The messages being read, waiting for the pool or being processed
+   */
+  private static final AtomicInteger inflight = new AtomicInteger();
+
+  /**
+   * The requests rejected because of too many messages in flight
+   */
+  private static final AtomicLong throttled = new AtomicLong();
+
+  /**
+   * The pool that processes the messages, created on the first message
+   */
+  private static BoundedExecutor ingestExecutor;
+
+  /**
+   * @return the pool that processes the messages, <code>null</code> if no message was received yet
+   */
+  @Nullable
+  public static synchronized BoundedExecutor getIngestExecutor() {
+    return ingestExecutor;
+  }
+
+  private static synchronized BoundedExecutor getOrCreateIngestExecutor() {
+    if (ingestExecutor == null) {
+      ingestExecutor = new BoundedExecutor("dc-ingest", SimulatorConfig.getDcIngestWorkers(), SimulatorConfig.getDcIngestQueueSize());
+    }
+    return ingestExecutor;
+  }
+
+  /**
+   * Wait for the pending messages (at most <code>dcIngestDrainTimeout</code> seconds) and stop the pool
+   *
+   * @param maxWaitMillis the remaining shutdown time, caps the drain timeout
+   */
+  public static synchronized void shutdownIngestExecutor(long maxWaitMillis) {
+    if (ingestExecutor != null) {
+      ingestExecutor.shutdown(Math.min(TimeUnit.SECONDS.toMillis(SimulatorConfig.getDcIngestDrainTimeout()), maxWaitMillis),
+          TimeUnit.MILLISECONDS);
+      ingestExecutor = null;
+    }
+  }
+
+  /**
+   * @return the number of messages being read, waiting for the pool or being processed
+   */
+  public static int getInflightCount() {
+    return inflight.get();
+  }
+
+  /**
+   * @return the number of requests rejected with HTTP 429
+   */
+  public static long getThrottledCount() {
+    return throttled.get();
+  }
+
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-    byte []bytes = StreamHelper.getAllBytes(req.getInputStream());
+    final long arrivalNanos = System.nanoTime();
 
-    LOGGER.info("DC Servlet got message:");
-    final String sIncomingMessage = new String(bytes, StandardCharsets.UTF_8);
-    LOGGER.info(sIncomingMessage);
+    final int maxInflight = SimulatorConfig.getDcMaxInflight();
+    if (inflight.incrementAndGet() > maxInflight && maxInflight > 0) {
+      inflight.decrementAndGet();
+      throttled.incrementAndGet();
+      resp.setHeader(CHttpHeader.RETRY_AFTER, "1");
+      resp.sendError(SC_TOO_MANY_REQUESTS, "Too many messages in flight");
+      return;
+    }
 
-    final TCIncomingMessage tcIncomingMessage = TCRestJAXB.incomingMessage().read(sIncomingMessage);
+    boolean started = false;
+    try {
+      AsyncBodyReader.start(req, new AsyncBodyReader.IBodyHandler() {
+        @Override
+        public void onBody(ChunkedBody body, HttpServletResponse response) throws IOException {
+          final boolean submitted = getOrCreateIngestExecutor().trySubmit(() -> {
+            try {
+              process(body, arrivalNanos);
+            } finally {
+              body.release();
+              inflight.decrementAndGet();
+            }
+          });
+          if (!submitted) {
+            body.release();
+            inflight.decrementAndGet();
+            response.setHeader(CHttpHeader.RETRY_AFTER, "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many pending messages");
+            return;
+          }
+          response.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        @Override
+        public void onAbort() {
+          inflight.decrementAndGet();
+        }
+      });
+      started = true;
+    } finally {
+      if (!started)
+        inflight.decrementAndGet();
+    }
+  }
+
+  /**
+   * Receive a message in-process, as if it had been posted (see {@link IncomingMessageForwarder})
+   *
+   * @param payloadType the type of the document
+   * @param metadata    the metadata
+   * @param document    the EDM document
+   * @return <code>false</code> if the message was rejected because too many messages are in flight or the pool is saturated
+   */
+  public static boolean receiveInProcess(ETCPayloadType payloadType, MEIncomingTransportMetadata metadata, byte[] document) {
+    final long arrivalNanos = System.nanoTime();
+
+    final int maxInflight = SimulatorConfig.getDcMaxInflight();
+    if (inflight.incrementAndGet() > maxInflight && maxInflight > 0) {
+      inflight.decrementAndGet();
+      throttled.incrementAndGet();
+      return false;
+    }
+
+    LOGGER.info("DC Received in-process " + payloadType + " from " + metadata.getSenderID().getURIEncoded());
+    if (MessageRecorder.isEnabled())
+      MessageRecorder.record(MessageRecorder.EChannel.TO_DC, "in-process " + payloadType + " " + MessageRecorder.describe(metadata), document);
+    final boolean submitted = getOrCreateIngestExecutor().trySubmit(() -> {
+      try {
+        processDocument(document, arrivalNanos);
+      } finally {
+        inflight.decrementAndGet();
+      }
+    });
+    if (!submitted)
+      inflight.decrementAndGet();
+    return submitted;
+  }
+
+  private static void process(ChunkedBody body, long arrivalNanos) {
+    MessageRecorder.record(MessageRecorder.EChannel.TO_DC, "POST /to-dc", body);
+    if (LOGGER.isDebugEnabled())
+      LOGGER.debug("DC Servlet got message:\n" + new String(body.toByteArray(), StandardCharsets.UTF_8));
+
+    final TCIncomingMessage tcIncomingMessage = TCRestJAXB.incomingMessage().read(body.openStream());
+    if (tcIncomingMessage == null) {
+      LOGGER.error("DC Servlet got an invalid TCIncomingMessage");
+      return;
+    }
     final TCIncomingMetadata metadata = tcIncomingMessage.getMetadata();
 
     LOGGER.info("DC Received Metadata: " + metadata);
     tcIncomingMessage.getPayload().forEach(tcPayload -> {
       LOGGER.info("DC Received Payload  Content ID: " + tcPayload.getContentID());
       LOGGER.info("DC Received Payload  Mime Type: " + tcPayload.getMimeType());
-      InputStream bis = new ByteArrayInputStream(tcPayload.getValue());
-      IEDMTopLevelObject aTLO = EDMPayloadDeterminator.parseAndFind(bis);
-
-      if (aTLO != null && aTLO instanceof EDMResponse) {
-        EDMResponse edmResponse = (EDMResponse) aTLO;
+      processDocument(tcPayload.getValue(), arrivalNanos);
+    });
+  }
 
-        LOGGER.debug("DC received EDMResponse payload:\n {}", edmResponse.getWriter().getAsString());
-      } else if (aTLO != null && aTLO instanceof EDMErrorResponse) {
-        EDMErrorResponse edmErrorResponse = (EDMErrorResponse) aTLO;
+  private static void processDocument(byte[] document, long arrivalNanos) {
+    InputStream bis = new NonBlockingByteArrayInputStream(document);
+    IEDMTopLevelObject aTLO = EDMPayloadDeterminator.parseAndFind(bis);
 
-        LOGGER.debug("DC received EDMErrorResponse payload:\n {}", edmErrorResponse.getWriter().getAsString());
+    if (aTLO instanceof EDMResponse) {
+      EDMResponse edmResponse = (EDMResponse) aTLO;
+      MockDC.getCorrelationTracker().responded(edmResponse.getRequestID(), arrivalNanos);
+    } else if (aTLO instanceof EDMErrorResponse) {
+      EDMErrorResponse edmErrorResponse = (EDMErrorResponse) aTLO;
+      MockDC.getCorrelationTracker().responded(edmErrorResponse.getRequestID(), arrivalNanos);
+    } else {
+      LOGGER.debug("DC unable to parse supplied response.");
+      return;
+    }
 
-      } else {
-        LOGGER.debug("DC unable to parse supplied response.");
-      }
-    });
-    resp.setStatus(HttpServletResponse.SC_OK);
+    //the payload is logged as received, not serialized again
+    if (LOGGER.isDebugEnabled())
+      LOGGER.debug("DC received " + aTLO.getClass().getSimpleName() + " payload:\n" + new String(document, StandardCharsets.UTF_8));
   }
 }
@@ -19,7 +19,11 @@
 package eu.toop.simulator.web;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -30,68 +34,188 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.http.CHttpHeader;
 import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
 import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
 import com.helger.peppolid.simple.process.SimpleProcessIdentifier;
 
-import eu.toop.connector.api.me.incoming.IIncomingEDMResponse;
 import eu.toop.connector.api.me.incoming.MEIncomingTransportMetadata;
+import eu.toop.connector.api.rest.ETCPayloadType;
 import eu.toop.connector.api.rest.TCIdentifierType;
 import eu.toop.connector.api.rest.TCIncomingMessage;
 import eu.toop.connector.api.rest.TCIncomingMetadata;
+import eu.toop.connector.api.rest.TCPayload;
 import eu.toop.connector.api.rest.TCRestJAXB;
 import eu.toop.edm.EDMRequest;
 import eu.toop.simulator.SimulatorConfig;
+import eu.toop.simulator.mock.IncomingMessageForwarder;
+import eu.toop.simulator.mock.MessageRecorder;
 import eu.toop.simulator.mock.MockDP;
+import eu.toop.simulator.util.BoundedExecutor;
+import eu.toop.simulator.util.ChunkedBody;
 
-@WebServlet("/to-dp")
+/**
+ * The /to-dp endpoint of the simulated DP. The body is read without blocking a container thread
+ * (see {@link AsyncBodyReader}), then the message is parsed straight from the pooled chunks of the
+ * body (it is only kept as text if debug is enabled). The automatic responses are created and sent on
+ * a bounded worker pool, a request that doesn't fit into the pool is rejected with HTTP 503.
+ */
+@WebServlet(value = "/to-dp", asyncSupported = true)
 public class MockDPServlet extends HttpServlet {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(MockDPServlet.class);
 
+  /**
+   * The pool that creates the automatic responses, created on the first request
+   */
+  private static BoundedExecutor responseExecutor;
+
+  /**
+   * @return the pool that creates the automatic responses, <code>null</code> if no request was received yet
+   */
+  @Nullable
+  public static synchronized BoundedExecutor getResponseExecutor() {
+    return responseExecutor;
+  }
+
+  private static synchronized BoundedExecutor getOrCreateResponseExecutor() {
+    if (responseExecutor == null) {
+      responseExecutor = new BoundedExecutor("dp-response", SimulatorConfig.getDpResponseWorkers(), SimulatorConfig.getDpResponseQueueSize());
+    }
+    return responseExecutor;
+  }
+
+  /**
+   * Wait for the pending automatic responses (at most <code>dpResponseDrainTimeout</code> seconds)
+   * and stop the pool
+   *
+   * @param maxWaitMillis the remaining shutdown time, caps the drain timeout
+   */
+  public static synchronized void shutdownResponseExecutor(long maxWaitMillis) {
+    if (responseExecutor != null) {
+      responseExecutor.shutdown(Math.min(TimeUnit.SECONDS.toMillis(SimulatorConfig.getDpResponseDrainTimeout()), maxWaitMillis),
+          TimeUnit.MILLISECONDS);
+      responseExecutor = null;
+    }
+  }
+
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-    byte[] bytes = StreamHelper.getAllBytes(req.getInputStream());
+    AsyncBodyReader.start(req, MockDPServlet::handle);
+  }
 
-    LOGGER.info("DP Servlet got message:");
-    final String sIncomingMessage = new String(bytes, StandardCharsets.UTF_8);
-    LOGGER.info(sIncomingMessage);
-    resp.setStatus(HttpServletResponse.SC_OK);
+  private static void handle(ChunkedBody body, HttpServletResponse resp) throws IOException {
+    final TCIncomingMessage tcIncomingMessage;
+    try {
+      MessageRecorder.record(MessageRecorder.EChannel.TO_DP, "POST /to-dp", body);
+      //the raw message is only needed for the log
+      if (LOGGER.isDebugEnabled())
+        LOGGER.debug("DP Servlet got message:\n" + new String(body.toByteArray(), StandardCharsets.UTF_8));
+      tcIncomingMessage = readMessage(body.openStream());
+    } finally {
+      body.release();
+    }
+
+    if (tcIncomingMessage == null) {
+      resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "The body is not a valid TCIncomingMessage");
+      return;
+    }
+    LOGGER.info("DP Servlet got a message with " + tcIncomingMessage.getPayload().size() + " payload(s)");
 
     if(SimulatorConfig.isDpResponseAuto()) {
       LOGGER.debug("Automatic response will be created and sent");
-      new Thread(() -> {
-        final TCIncomingMessage tcIncomingMessage = TCRestJAXB.incomingMessage().read(sIncomingMessage);
-        final TCIncomingMetadata metadata = tcIncomingMessage.getMetadata();
-
-        LOGGER.info("DP Received Metadata: " + metadata);
-        tcIncomingMessage.getPayload().forEach(tcPayload -> {
-          LOGGER.info("DP Received Payload  Content ID: " + tcPayload.getContentID());
-          LOGGER.info("DP Received Payload  Mime Type: " + tcPayload.getMimeType());
-
-          final EDMRequest edmRequest = EDMRequest.reader().read(tcPayload.getValue());
-          LOGGER.info("DP Received Payload:\n" + edmRequest.getWriter().getAsString());
-
-          final TCIdentifierType receiverID = metadata.getReceiverID();
-          final TCIdentifierType senderID = metadata.getSenderID();
-          final TCIdentifierType docTypeID = metadata.getDocTypeID();
-          final TCIdentifierType processID = metadata.getProcessID();
-          MEIncomingTransportMetadata meIncomingTransportMetadata = new MEIncomingTransportMetadata(
-              new SimpleParticipantIdentifier(senderID.getScheme(), senderID.getValue()),
-              new SimpleParticipantIdentifier(receiverID.getScheme(), receiverID.getValue()),
-              new SimpleDocumentTypeIdentifier(docTypeID.getScheme(), docTypeID.getValue()),
-              new SimpleProcessIdentifier(processID.getScheme(), processID.getValue())
-          );
-
-          final IIncomingEDMResponse response = MockDP.eloniaCreateResponse(edmRequest, meIncomingTransportMetadata);
-          final String sDestURL = "http://localhost:" + SimulatorConfig.getConnectorPort() + "/api/user/submit/response";
-          LOGGER.info("MOCKDPServlet sending back response to " + sDestURL);
-          MockDP.buildAndSendResponse(response);
-        });
-      }).start();
+      if (!getOrCreateResponseExecutor().trySubmit(() -> respond(tcIncomingMessage))) {
+        resp.setHeader(CHttpHeader.RETRY_AFTER, "1");
+        resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many pending requests");
+        return;
+      }
     } else {
       LOGGER.debug("Automatic response is disabled. Having a rest");
     }
+    resp.setStatus(HttpServletResponse.SC_OK);
+  }
+
+  /**
+   * Parse the message directly from the stream, without a copy of the whole body
+   *
+   * @param inputStream the body of the request, closed when done
+   * @return the message, <code>null</code> if it is not a valid TCIncomingMessage
+   */
+  @Nullable
+  static TCIncomingMessage readMessage(InputStream inputStream) {
+    return TCRestJAXB.incomingMessage().read(inputStream);
+  }
+
+  /**
+   * Parse the EDM request of a payload. The payload is only written to the log if debug is enabled.
+   *
+   * @param tcPayload the payload
+   * @return the request, <code>null</code> if the payload is not a valid EDMRequest
+   */
+  @Nullable
+  static EDMRequest readRequest(TCPayload tcPayload) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("DP Received Payload  Content ID: " + tcPayload.getContentID());
+      LOGGER.debug("DP Received Payload  Mime Type: " + tcPayload.getMimeType());
+      LOGGER.debug("DP Received Payload:\n" + new String(tcPayload.getValue(), StandardCharsets.UTF_8));
+    }
+    return EDMRequest.reader().read(tcPayload.getValue());
+  }
+
+  /**
+   * Receive a request in-process, as if it had been posted (see {@link IncomingMessageForwarder})
+   *
+   * @param payloadType the type of the document
+   * @param metadata    the metadata
+   * @param document    the EDM request
+   * @return <code>false</code> if the response pool is saturated and the request was rejected
+   */
+  public static boolean receiveInProcess(ETCPayloadType payloadType, MEIncomingTransportMetadata metadata, byte[] document) {
+    LOGGER.info("DP Received in-process " + payloadType + " from " + metadata.getSenderID().getURIEncoded());
+    if (MessageRecorder.isEnabled())
+      MessageRecorder.record(MessageRecorder.EChannel.TO_DP, "in-process " + payloadType + " " + MessageRecorder.describe(metadata), document);
+    if (!SimulatorConfig.isDpResponseAuto()) {
+      LOGGER.debug("Automatic response is disabled. Having a rest");
+      return true;
+    }
+    return getOrCreateResponseExecutor().trySubmit(() -> {
+      final EDMRequest edmRequest = EDMRequest.reader().read(document);
+      if (edmRequest == null) {
+        LOGGER.error("The in-process " + payloadType + " is not a valid EDMRequest");
+        return;
+      }
+      respond(edmRequest, metadata);
+    });
+  }
+
+  private static void respond(TCIncomingMessage tcIncomingMessage) {
+    final TCIncomingMetadata metadata = tcIncomingMessage.getMetadata();
+
+    LOGGER.info("DP Received Metadata: " + metadata);
+    tcIncomingMessage.getPayload().forEach(tcPayload -> {
+      final EDMRequest edmRequest = readRequest(tcPayload);
+      if (edmRequest == null) {
+        LOGGER.error("The payload " + tcPayload.getContentID() + " is not a valid EDMRequest");
+        return;
+      }
+
+      final TCIdentifierType receiverID = metadata.getReceiverID();
+      final TCIdentifierType senderID = metadata.getSenderID();
+      final TCIdentifierType docTypeID = metadata.getDocTypeID();
+      final TCIdentifierType processID = metadata.getProcessID();
+      MEIncomingTransportMetadata meIncomingTransportMetadata = new MEIncomingTransportMetadata(
+          new SimpleParticipantIdentifier(senderID.getScheme(), senderID.getValue()),
+          new SimpleParticipantIdentifier(receiverID.getScheme(), receiverID.getValue()),
+          new SimpleDocumentTypeIdentifier(docTypeID.getScheme(), docTypeID.getValue()),
+          new SimpleProcessIdentifier(processID.getScheme(), processID.getValue())
+      );
+
+      respond(edmRequest, meIncomingTransportMetadata);
+    });
+  }
+
+  private static void respond(EDMRequest edmRequest, MEIncomingTransportMetadata meIncomingTransportMetadata) {
+    LOGGER.info("MOCKDPServlet sending back the response to " + edmRequest.getRequestID());
+    MockDP.createAndSendResponse(edmRequest, meIncomingTransportMetadata);
   }
 }
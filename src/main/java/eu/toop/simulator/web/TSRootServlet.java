@@ -29,6 +29,8 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.http.pool.PoolStats;
+
 import com.helger.commons.collection.CollectionHelper;
 import com.helger.commons.datetime.PDTFactory;
 import com.helger.commons.http.CHttpHeader;
@@ -37,6 +39,23 @@ import com.helger.commons.mime.CMimeType;
 import eu.toop.connector.api.me.IMessageExchangeSPI;
 import eu.toop.connector.api.me.MessageExchangeManager;
 import eu.toop.connector.app.CTC;
+import eu.toop.simulator.SimulatorConfig;
+import eu.toop.simulator.mock.CorrelationTracker;
+import eu.toop.simulator.mock.DPResponseProfile;
+import eu.toop.simulator.mock.DSDQueryCache;
+import eu.toop.simulator.mock.DiscoveryProvider;
+import eu.toop.simulator.mock.IncomingMessageForwarder;
+import eu.toop.simulator.mock.MessageRecorder;
+import eu.toop.simulator.mock.MockDC;
+import eu.toop.simulator.mock.MockDP;
+import eu.toop.simulator.mock.ResponseDeliveryPipeline;
+import eu.toop.simulator.mock.ResponseTemplateCache;
+import eu.toop.simulator.util.BoundedExecutor;
+import eu.toop.simulator.util.BufferPool;
+import eu.toop.simulator.util.DelayScheduler;
+import eu.toop.simulator.util.LatencyHistogram;
+import eu.toop.simulator.util.MessageJournal;
+import eu.toop.simulator.util.SimulatorHttpClient;
 
 /**
  * Servlet for handling the initial calls without any path. This servlet
@@ -83,6 +102,142 @@ public class TSRootServlet extends HttpServlet {
       }
     }
 
+    {
+      final DSDQueryCache aDSDCache = DiscoveryProvider.getInstance().getDSDQueryCache();
+      aSB.append("<h2>DSD query cache</h2>");
+      aSB.append("<div>Size: ").append(aDSDCache.size()).append(" / ").append(aDSDCache.getMaxSize()).append("</div>");
+      aSB.append("<div>Hits: ").append(aDSDCache.getHitCount()).append("</div>");
+      aSB.append("<div>Misses: ").append(aDSDCache.getMissCount()).append("</div>");
+      aSB.append("<div>Evictions: ").append(aDSDCache.getEvictionCount()).append("</div>");
+      aSB.append("<div>Discovery data reloads: ").append(DiscoveryProvider.getInstance().getReloadCount()).append("</div>");
+    }
+
+    {
+      final ResponseTemplateCache aResponseCache = MockDP.getResponseTemplateCache();
+      aSB.append("<h2>DP response cache</h2>");
+      aSB.append("<div>Size: ").append(aResponseCache.size()).append(" / ").append(aResponseCache.getMaxSize()).append("</div>");
+      aSB.append("<div>Hits: ").append(aResponseCache.getHitCount()).append("</div>");
+      aSB.append("<div>Misses: ").append(aResponseCache.getMissCount()).append("</div>");
+      aSB.append("<div>Invalidations: ").append(aResponseCache.getInvalidationCount()).append("</div>");
+      aSB.append("<div>Mapped attachments: ").append(aResponseCache.getAttachmentStore().size()).append(" (")
+        .append(aResponseCache.getAttachmentStore().getMappedBytes()).append(" bytes)</div>");
+    }
+
+    {
+      final BoundedExecutor aDPExecutor = MockDPServlet.getResponseExecutor();
+      if (aDPExecutor != null) {
+        aSB.append("<h2>DP auto response pool</h2>");
+        aSB.append("<div>Threads: ").append(aDPExecutor.getActiveCount()).append(" active / ").append(aDPExecutor.getThreads()).append("</div>");
+        aSB.append("<div>Queue depth: ").append(aDPExecutor.getQueueDepth()).append(" / ").append(aDPExecutor.getQueueCapacity()).append("</div>");
+        aSB.append("<div>Submitted: ").append(aDPExecutor.getSubmittedCount()).append("</div>");
+        aSB.append("<div>Rejected (503): ").append(aDPExecutor.getRejectedCount()).append("</div>");
+        aSB.append("<div>Completed: ").append(aDPExecutor.getCompletedCount()).append("</div>");
+        aSB.append("<div>Failed: ").append(aDPExecutor.getFailedCount()).append("</div>");
+        aSB.append("<div>Processing time: ").append(String.format("%.1f", aDPExecutor.getAverageProcessingMillis()))
+          .append(" ms average, ").append(String.format("%.1f", aDPExecutor.getMaxProcessingMillis())).append(" ms max</div>");
+      }
+    }
+
+    {
+      final BoundedExecutor aDCExecutor = MockDCServlet.getIngestExecutor();
+      if (aDCExecutor != null) {
+        aSB.append("<h2>DC message ingestion</h2>");
+        aSB.append("<div>In flight: ").append(MockDCServlet.getInflightCount()).append(" / ").append(SimulatorConfig.getDcMaxInflight()).append("</div>");
+        aSB.append("<div>Threads: ").append(aDCExecutor.getActiveCount()).append(" active / ").append(aDCExecutor.getThreads()).append("</div>");
+        aSB.append("<div>Queue depth: ").append(aDCExecutor.getQueueDepth()).append(" / ").append(aDCExecutor.getQueueCapacity()).append("</div>");
+        aSB.append("<div>Accepted: ").append(aDCExecutor.getSubmittedCount()).append("</div>");
+        aSB.append("<div>Throttled (429): ").append(MockDCServlet.getThrottledCount()).append("</div>");
+        aSB.append("<div>Rejected (503): ").append(aDCExecutor.getRejectedCount()).append("</div>");
+        aSB.append("<div>Failed: ").append(aDCExecutor.getFailedCount()).append("</div>");
+        aSB.append("<div>Processing time: ").append(String.format("%.1f", aDCExecutor.getAverageProcessingMillis()))
+          .append(" ms average, ").append(String.format("%.1f", aDCExecutor.getMaxProcessingMillis())).append(" ms max</div>");
+      }
+    }
+
+    {
+      final BufferPool aBufferPool = AsyncBodyReader.BUFFER_POOL;
+      if (aBufferPool.getAllocatedCount() > 0) {
+        aSB.append("<h2>Request body buffers</h2>");
+        aSB.append("<div>Pooled chunks: ").append(aBufferPool.getPooledCount()).append(" / ").append(aBufferPool.getMaxPooled())
+          .append(" (").append(aBufferPool.getChunkSize()).append(" bytes each)</div>");
+        aSB.append("<div>Allocated: ").append(aBufferPool.getAllocatedCount()).append(", reused: ").append(aBufferPool.getReusedCount()).append("</div>");
+      }
+    }
+
+    {
+      final DPResponseProfile aProfile = MockDP.getResponseProfile();
+      if (aProfile.isActive()) {
+        aSB.append("<h2>DP response profile</h2>");
+        aSB.append("<div>").append(aProfile).append("</div>");
+        aSB.append("<div>Responses: ").append(aProfile.getResponseCount()).append(", errors: ").append(aProfile.getErrorCount())
+          .append(", unanswered: ").append(aProfile.getTimeoutCount()).append("</div>");
+        final DelayScheduler aScheduler = MockDP.getDelayScheduler();
+        if (aScheduler != null)
+          aSB.append("<div>Delayed responses waiting: ").append(aScheduler.getWaitingCount()).append("</div>");
+      }
+    }
+
+    {
+      final ResponseDeliveryPipeline aPipeline = MockDP.getDeliveryPipeline();
+      if (aPipeline != null) {
+        aSB.append("<h2>DP response delivery</h2>");
+        aSB.append("<div>Undelivered: ").append(aPipeline.getOutstandingCount()).append(" / ").append(aPipeline.getQueueCapacity())
+          .append(" (").append(aPipeline.getWaitingForRetryCount()).append(" waiting for a retry)</div>");
+        aSB.append("<div>Delivered: ").append(aPipeline.getDeliveredCount()).append("</div>");
+        aSB.append("<div>Retries: ").append(aPipeline.getRetriedCount()).append("</div>");
+        aSB.append("<div>Dead letters: ").append(aPipeline.getDeadLetteredCount()).append(" - <a href='")
+          .append(sContextPath).append("/delivery-status' target='_blank'>details</a></div>");
+      }
+    }
+
+    {
+      final CorrelationTracker aTracker = MockDC.getCorrelationTracker();
+      if (aTracker.getSentCount() > 0) {
+        final LatencyHistogram aEndToEnd = aTracker.getEndToEndLatency();
+        aSB.append("<h2>DC request latency</h2>");
+        aSB.append("<div>Sent: ").append(aTracker.getSentCount()).append(", responded: ").append(aTracker.getRespondedCount())
+          .append(", waiting: ").append(aTracker.getPendingCount()).append("</div>");
+        aSB.append("<div>End-to-end: ").append(String.format("p50 %.0f ms, p95 %.0f ms, p99 %.0f ms, max %.1f ms",
+          aEndToEnd.getPercentileMillis(50), aEndToEnd.getPercentileMillis(95), aEndToEnd.getPercentileMillis(99), aEndToEnd.getMaxMillis()))
+          .append(" - <a href='").append(sContextPath).append("/correlation-status' target='_blank'>details</a></div>");
+      }
+    }
+
+    {
+      aSB.append("<h2>Mocked gateway forwarding</h2>");
+      aSB.append("<div>In-process: ").append(IncomingMessageForwarder.getInProcessCount())
+        .append(SimulatorConfig.isInProcessDelivery() ? "" : " (disabled)").append("</div>");
+      aSB.append("<div>Over HTTP: ").append(IncomingMessageForwarder.getHttpCount()).append("</div>");
+    }
+
+    {
+      aSB.append("<h2>Message recorder</h2>");
+      final MessageJournal aJournal = MessageRecorder.getJournal();
+      if (!MessageRecorder.isEnabled()) {
+        aSB.append("<div>Disabled</div>");
+      } else if (aJournal == null) {
+        aSB.append("<div>Nothing recorded yet</div>");
+      } else {
+        aSB.append("<div>Segment: ").append(aJournal.getCurrentSegment()).append("</div>");
+        aSB.append("<div>Recorded: ").append(aJournal.getRecordedCount()).append(" messages, ")
+          .append(aJournal.getWrittenBytes()).append(" bytes</div>");
+        aSB.append("<div>Waiting: ").append(aJournal.getQueueDepth()).append(" / ").append(SimulatorConfig.getRecorderQueueSize()).append("</div>");
+        aSB.append("<div>Dropped: ").append(aJournal.getDroppedCount()).append("</div>");
+        aSB.append("<div>Failed: ").append(aJournal.getFailedCount()).append("</div>");
+      }
+    }
+
+    {
+      final SimulatorHttpClient aHttpClient = SimulatorHttpClient.getInstance();
+      final PoolStats aPoolStats = aHttpClient.getPoolStats();
+      aSB.append("<h2>Outbound HTTP connections</h2>");
+      aSB.append("<div>Connections: ").append(aPoolStats.getLeased()).append(" leased, ").append(aPoolStats.getAvailable())
+        .append(" idle / ").append(aPoolStats.getMax()).append("</div>");
+      aSB.append("<div>Waiting for a connection: ").append(aPoolStats.getPending()).append("</div>");
+      aSB.append("<div>Requests: ").append(aHttpClient.getRequestCount()).append("</div>");
+      aSB.append("<div>Failed: ").append(aHttpClient.getFailureCount()).append("</div>");
+    }
+
     // APIs
     {
       aSB.append("<h2>API information</h2>");
@@ -18,6 +18,8 @@
  */
 package eu.toop.simulator.web;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.Nonnull;
 import javax.servlet.ServletContext;
 
@@ -26,6 +28,12 @@ import com.helger.photon.core.servlet.WebAppListener;
 
 import eu.toop.connector.app.TCInit;
 import eu.toop.connector.webapi.TCAPIInit;
+import eu.toop.simulator.SimulatorConfig;
+import eu.toop.simulator.mock.DiscoveryProvider;
+import eu.toop.simulator.mock.IncomingMessageForwarder;
+import eu.toop.simulator.mock.MessageRecorder;
+import eu.toop.simulator.mock.MockDP;
+import eu.toop.simulator.util.SimulatorHttpClient;
 
 /**
  * Global startup etc. listener.
@@ -38,6 +46,8 @@ public class TSWebAppListener extends WebAppListener
   protected void afterContextInitialized (final ServletContext aSC)
   {
     TCInit.initGlobally (aSC);
+    SimulatorHttpClient.getInstance ();
+    IncomingMessageForwarder.setLocalEndpoints (MockDCServlet::receiveInProcess, MockDPServlet::receiveInProcess);
   }
 
   @Override
@@ -50,6 +60,21 @@ public class TSWebAppListener extends WebAppListener
   @Override
   protected void beforeContextDestroyed (final ServletContext aSC)
   {
+    DiscoveryProvider.getInstance ().stopWatching ();
+    IncomingMessageForwarder.setLocalEndpoints (null, null);
+    // The drains share one budget, so the undeploy doesn't take the sum of their timeouts
+    final long nDeadline = System.nanoTime () + TimeUnit.SECONDS.toNanos (SimulatorConfig.getShutdownTimeout ());
+    MockDPServlet.shutdownResponseExecutor (_getRemainingMillis (nDeadline));
+    MockDCServlet.shutdownIngestExecutor (_getRemainingMillis (nDeadline));
+    MockDP.shutdownDelayScheduler (_getRemainingMillis (nDeadline));
+    MockDP.shutdownDeliveryPipeline (_getRemainingMillis (nDeadline));
+    SimulatorHttpClient.shutdown ();
+    MessageRecorder.shutdown (_getRemainingMillis (nDeadline));
     TCInit.shutdownGlobally (aSC);
   }
+
+  private static long _getRemainingMillis (final long nDeadline)
+  {
+    return Math.max (0, TimeUnit.NANOSECONDS.toMillis (nDeadline - System.nanoTime ()));
+  }
 }
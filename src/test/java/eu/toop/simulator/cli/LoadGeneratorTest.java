@@ -0,0 +1,106 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.helger.commons.mime.CMimeType;
+import com.helger.json.JsonObject;
+
+import eu.toop.connector.api.rest.TCOutgoingMessage;
+import eu.toop.connector.api.rest.TCPayload;
+import eu.toop.simulator.mock.TCMessageEntity;
+
+/**
+ * Tests the load generator of the load-dc-requests command
+ */
+public class LoadGeneratorTest {
+
+  private static TCMessageEntity createRequest(String content) {
+    final TCOutgoingMessage message = new TCOutgoingMessage();
+    final TCPayload payload = new TCPayload();
+    payload.setContentID("request@freedonia");
+    payload.setMimeType(CMimeType.APPLICATION_XML.getAsString());
+    payload.setValue(content.getBytes(StandardCharsets.UTF_8));
+    message.addPayload(payload);
+    return new TCMessageEntity(message, Collections.emptyList());
+  }
+
+  @Test
+  public void cyclesThroughTheRequests() throws Exception {
+    final List<TCMessageEntity> requests = Arrays.asList(createRequest("<a/>"), createRequest("<b/>"), createRequest("<c/>"));
+    final Set<TCMessageEntity> sent = ConcurrentHashMap.newKeySet();
+    final AtomicInteger calls = new AtomicInteger();
+    final LoadGenerator.Report report = new LoadGenerator(request -> {
+      sent.add(request);
+      //every 10th request fails
+      if (calls.incrementAndGet() % 10 == 0)
+        throw new IOException("HTTP 503");
+      return new JsonObject().add("success", true);
+    }, requests, 100, 4, 0).run();
+
+    assertEquals(100, calls.get());
+    assertEquals(3, sent.size());
+    assertEquals(100, report.getCount());
+    assertEquals(10, report.getFailedCount());
+    assertTrue(report.toString().contains("First error: HTTP 503"));
+  }
+
+  @Test
+  public void countsRejectedRequestsAsFailures() throws Exception {
+    final LoadGenerator.Report report = new LoadGenerator(request -> new JsonObject().add("success", false),
+        Collections.singletonList(createRequest("<a/>")), 5, 1, 0).run();
+    assertEquals(5, report.getFailedCount());
+  }
+
+  @Test
+  public void keepsTheRate() throws Exception {
+    final LoadGenerator.Report report = new LoadGenerator(request -> new JsonObject(),
+        Collections.singletonList(createRequest("<a/>")), 50, 2, 500).run();
+    //the last request is due 49 intervals of 2 ms after the first
+    assertTrue(report.getElapsedMillis() >= 98);
+    assertEquals(0, report.getFailedCount());
+  }
+
+  @Test
+  public void computesNearestRankPercentiles() {
+    final long[] latencies = new long[100];
+    for (int i = 0; i < latencies.length; ++i)
+      latencies[i] = (100 - i) * 1_000_000L;
+    final LoadGenerator.Report report = new LoadGenerator.Report(latencies, 0, 1_000_000_000L, null);
+
+    assertEquals(50, report.getLatencyMillis(50), 0);
+    assertEquals(95, report.getLatencyMillis(95), 0);
+    assertEquals(99, report.getLatencyMillis(99), 0);
+    assertEquals(100, report.getLatencyMillis(100), 0);
+    assertEquals(100, report.getThroughput(), 0.001);
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.mime.CMimeType;
+
+/**
+ * Tests the off-heap attachment store
+ */
+public class AttachmentStoreTest {
+
+  @Test
+  public void mapsEachContentOnce() throws Exception {
+    final byte[] pdf;
+    try (InputStream in = getClass().getResourceAsStream("/datasets/document/attachments/a852053e-ba86-4690-86cf-7190a2f5d915.pdf")) {
+      pdf = StreamHelper.getAllBytes(in);
+    }
+
+    final AttachmentStore store = new AttachmentStore();
+    final ResponseAttachment first = store.get("first@elonia", pdf);
+    final ResponseAttachment second = store.get("second@elonia", pdf.clone());
+    store.get("text@elonia", "some text".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(2, store.size());
+    assertEquals(pdf.length + 9, store.getMappedBytes());
+
+    assertEquals("first@elonia", first.getContentID());
+    assertEquals("second@elonia", second.getContentID());
+    assertEquals(CMimeType.APPLICATION_PDF, first.getMimeType());
+    assertEquals(pdf.length, first.getSize());
+    assertArrayEquals(pdf, first.getAsBytes());
+
+    //the views are independent
+    final ByteBuffer data = first.getData();
+    data.get(new byte[10]);
+    assertEquals(pdf.length, first.getData().remaining());
+    assertFalse(first.getData() == first.getData());
+
+    store.clear();
+    assertEquals(0, store.size());
+    //the attachments that were handed out stay valid
+    assertArrayEquals(pdf, second.getAsBytes());
+  }
+}
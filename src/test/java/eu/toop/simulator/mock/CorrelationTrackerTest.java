@@ -0,0 +1,105 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests matching the DC requests with their responses
+ */
+public class CorrelationTrackerTest {
+
+  @Test
+  public void matchesResponsesToRequests() {
+    final CorrelationTracker tracker = new CorrelationTracker(100, 60);
+    final CorrelationTracker.Exchange first = tracker.sent("req-1");
+    final CorrelationTracker.Exchange second = tracker.sent("req-2");
+    tracker.accepted(first);
+    tracker.accepted(second);
+
+    assertTrue(tracker.responded("req-2", System.nanoTime()));
+    assertFalse(tracker.responded("req-2", System.nanoTime()));
+    assertFalse(tracker.responded(null, System.nanoTime()));
+    //the response may arrive before the connector's answer to the submission
+    final CorrelationTracker.Exchange third = tracker.sent("req-3");
+    assertTrue(tracker.responded("req-3", System.nanoTime()));
+    tracker.accepted(third);
+
+    assertEquals(3, tracker.getSentCount());
+    assertEquals(3, tracker.getAcceptedCount());
+    assertEquals(2, tracker.getRespondedCount());
+    assertEquals(2, tracker.getUnmatchedCount());
+    assertEquals(1, tracker.getPendingCount());
+    assertEquals(2, tracker.getEndToEndLatency().getCount());
+    assertEquals(3, tracker.getAcceptanceLatency().getCount());
+  }
+
+  @Test
+  public void matchesRepeatedIDsInOrder() {
+    final CorrelationTracker tracker = new CorrelationTracker(100, 60);
+    for (int i = 0; i < 5; ++i)
+      tracker.sent("same");
+    for (int i = 0; i < 5; ++i)
+      assertTrue(tracker.responded("same", System.nanoTime()));
+    assertFalse(tracker.responded("same", System.nanoTime()));
+    assertEquals(0, tracker.getPendingCount());
+  }
+
+  @Test
+  public void failedSubmissionsExpectNoResponse() {
+    final CorrelationTracker tracker = new CorrelationTracker(100, 60);
+    tracker.failed(tracker.sent("req-1"));
+    assertEquals(0, tracker.getPendingCount());
+    assertFalse(tracker.responded("req-1", System.nanoTime()));
+    assertEquals(1, tracker.getFailedCount());
+  }
+
+  @Test
+  public void boundsAndExpiresTheTable() {
+    final CorrelationTracker tracker = new CorrelationTracker(10, 1);
+    for (int i = 0; i < 25; ++i)
+      tracker.sent("req-" + i);
+    assertEquals(10, tracker.getPendingCount());
+    assertEquals(15, tracker.getEvictedCount());
+    assertFalse(tracker.responded("req-0", System.nanoTime()));
+    assertTrue(tracker.responded("req-24", System.nanoTime()));
+
+    //a response two seconds later finds the other requests expired
+    assertFalse(tracker.responded("req-23", System.nanoTime() + TimeUnit.SECONDS.toNanos(2)));
+    assertEquals(9, tracker.getExpiredCount());
+  }
+
+  @Test
+  public void staysBoundedBehindAWaitingRequest() {
+    final CorrelationTracker tracker = new CorrelationTracker(10, 60);
+    tracker.sent("waiting");
+    for (int i = 0; i < 1000; ++i) {
+      tracker.sent("req-" + i);
+      assertTrue(tracker.responded("req-" + i, System.nanoTime()));
+    }
+    assertEquals(1, tracker.getPendingCount());
+    assertTrue(tracker.responded("waiting", System.nanoTime()));
+  }
+}
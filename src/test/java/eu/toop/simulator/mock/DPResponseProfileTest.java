@@ -0,0 +1,120 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the simulated DP latency and failure profiles
+ */
+public class DPResponseProfileTest {
+
+  private static DPResponseProfile latency(DPResponseProfile.ELatency latency) {
+    return new DPResponseProfile(latency, 150, 100, 300, 200, 0.5, 0, 0);
+  }
+
+  @Test
+  public void noneRespondsRightAway() {
+    final DPResponseProfile profile = latency(DPResponseProfile.ELatency.NONE);
+    assertFalse(profile.isActive());
+    final DPResponseProfile.Decision decision = profile.decide(new Random(1));
+    assertEquals(DPResponseProfile.EOutcome.RESPONSE, decision.getOutcome());
+    assertEquals(0, decision.getDelayMillis());
+  }
+
+  @Test
+  public void fixedAndUniformDelays() {
+    final Random random = new Random(42);
+    assertEquals(150, latency(DPResponseProfile.ELatency.FIXED).nextDelayMillis(random));
+
+    final DPResponseProfile uniform = latency(DPResponseProfile.ELatency.UNIFORM);
+    assertTrue(uniform.isActive());
+    long sum = 0;
+    for (int i = 0; i < 10_000; ++i) {
+      final long delay = uniform.nextDelayMillis(random);
+      assertTrue(delay >= 100 && delay <= 300);
+      sum += delay;
+    }
+    assertEquals(200, sum / 10_000.0, 5);
+  }
+
+  @Test
+  public void lognormalDelaysHaveTheMedian() {
+    final DPResponseProfile profile = latency(DPResponseProfile.ELatency.LOGNORMAL);
+    final Random random = new Random(7);
+    final long[] delays = new long[10_001];
+    for (int i = 0; i < delays.length; ++i)
+      delays[i] = profile.nextDelayMillis(random);
+    Arrays.sort(delays);
+    assertEquals(200, delays[delays.length / 2], 10);
+    //the tail is longer than the head
+    assertTrue(delays[delays.length - 1] - 200 > 200 - delays[0]);
+  }
+
+  @Test
+  public void lognormalDelaysAreCapped() {
+    final DPResponseProfile profile = new DPResponseProfile(DPResponseProfile.ELatency.LOGNORMAL, 0, 0, 0,
+        DPResponseProfile.MAX_DELAY_MS, 3, 0, 0);
+    final Random random = new Random(3);
+    for (int i = 0; i < 1000; ++i)
+      assertTrue(profile.nextDelayMillis(random) <= DPResponseProfile.MAX_DELAY_MS);
+  }
+
+  @Test
+  public void injectsErrorsAndTimeouts() {
+    final DPResponseProfile profile = new DPResponseProfile(DPResponseProfile.ELatency.NONE, 0, 0, 0, 0, 0, 0.2, 0.1);
+    assertTrue(profile.isActive());
+    final Random random = new Random(11);
+    for (int i = 0; i < 10_000; ++i) {
+      final DPResponseProfile.Decision decision = profile.decide(random);
+      if (decision.getOutcome() == DPResponseProfile.EOutcome.TIMEOUT)
+        assertEquals(0, decision.getDelayMillis());
+    }
+    assertEquals(10_000, profile.getResponseCount() + profile.getErrorCount() + profile.getTimeoutCount());
+    assertEquals(2000, profile.getErrorCount(), 200);
+    assertEquals(1000, profile.getTimeoutCount(), 150);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void ratesMustNotExceedOne() {
+    new DPResponseProfile(DPResponseProfile.ELatency.NONE, 0, 0, 0, 0, 0, 0.6, 0.5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void uniformRangeMustBeOrdered() {
+    new DPResponseProfile(DPResponseProfile.ELatency.UNIFORM, 0, 300, 100, 0, 0, 0, 0);
+  }
+
+  @Test
+  public void parsesTheLatencyIgnoringTheCase() {
+    assertEquals(DPResponseProfile.ELatency.LOGNORMAL, DPResponseProfile.ELatency.getFromID(" LogNormal "));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAnUnknownLatency() {
+    DPResponseProfile.ELatency.getFromID("gaussian");
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+
+import eu.toop.connector.api.dsd.DSDDatasetResponse;
+
+public class DSDQueryCacheTest {
+
+  @Test
+  public void repeatedQueriesAreServedFromCache() {
+    final DSDQueryCache cache = new DSDQueryCache(2);
+    final AtomicInteger loads = new AtomicInteger();
+    final DSDQueryKey key = DSDQueryKey.byCountry("REGISTERED_ORGANIZATION_TYPE", "SV");
+
+    final ICommonsSet<DSDDatasetResponse> first = cache.get(key, k -> {
+      loads.incrementAndGet();
+      return new CommonsHashSet<>();
+    });
+    final ICommonsSet<DSDDatasetResponse> second = cache.get(DSDQueryKey.byCountry("REGISTERED_ORGANIZATION_TYPE", "SV"), k -> {
+      loads.incrementAndGet();
+      return new CommonsHashSet<>();
+    });
+
+    assertSame(first, second);
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntryIsEvicted() {
+    final DSDQueryCache cache = new DSDQueryCache(2);
+    final DSDQueryKey sv = DSDQueryKey.byCountry("REGISTERED_ORGANIZATION_TYPE", "SV");
+    final DSDQueryKey gq = DSDQueryKey.byCountry("REGISTERED_ORGANIZATION_TYPE", "GQ");
+    final DSDQueryKey ro = DSDQueryKey.byDPType("REGISTERED_ORGANIZATION_TYPE", "RO");
+
+    cache.get(sv, k -> new CommonsHashSet<>());
+    cache.get(gq, k -> new CommonsHashSet<>());
+    //touch sv, so that gq becomes the eldest
+    cache.get(sv, k -> new CommonsHashSet<>());
+    cache.get(ro, k -> new CommonsHashSet<>());
+
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+
+    cache.get(sv, k -> new CommonsHashSet<>());
+    assertEquals(2, cache.getHitCount());
+
+    cache.get(gq, k -> new CommonsHashSet<>());
+    assertEquals(4, cache.getMissCount());
+  }
+}
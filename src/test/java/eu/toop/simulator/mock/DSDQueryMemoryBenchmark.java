@@ -0,0 +1,95 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.helger.commons.collection.impl.ICommonsSet;
+
+import eu.toop.connector.api.dsd.DSDDatasetHelper;
+import eu.toop.connector.api.dsd.DSDDatasetResponse;
+import eu.toop.dsd.api.DsdDataConverter;
+import eu.toop.edm.jaxb.dcatap.DCatAPDatasetType;
+
+/**
+ * Compares the allocation of a DSD query on the full directory (directory string, XSLT over all of it,
+ * DOM of the full DSD result) with the StAX filtered query of {@link DSDResponseIndex}. Run with
+ * <code>-prof gc</code>, <code>gc.alloc.rate.norm</code> is the number of bytes allocated per query:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=eu.toop.simulator.mock.DSDQueryMemoryBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DSDQueryMemoryBenchmark {
+
+  private static final String DATASET_TYPE = "REGISTERED_ORGANIZATION_TYPE";
+
+  @Param({"1000", "10000"})
+  private int participantCount;
+
+  @Param({"50"})
+  private int countryCount;
+
+  private byte[] directory;
+  private String countryCode;
+
+  @Setup
+  public void setup() {
+    directory = SyntheticDiscoveryGenerator.generateDirectory(participantCount, countryCount);
+    countryCode = SyntheticDiscoveryGenerator.getCountryCode(countryCount / 2);
+  }
+
+  @Benchmark
+  public ICommonsSet<DSDDatasetResponse> fullDirectoryQuery() throws Exception {
+    final String directoryXml = new String(directory, StandardCharsets.UTF_8);
+    final String dsdXml = DsdDataConverter.convertDIRToDSDWithCountryCode(directoryXml, DATASET_TYPE, countryCode);
+    final List<DCatAPDatasetType> datasetTypes = DsdDataConverter.parseDataset(dsdXml);
+    return DSDDatasetHelper.buildDSDResponseSet(datasetTypes);
+  }
+
+  @Benchmark
+  public ICommonsSet<DSDDatasetResponse> streamingQuery() {
+    return DSDResponseIndex.queryByCountry(directory, DATASET_TYPE, countryCode);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(DSDQueryMemoryBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+  }
+}
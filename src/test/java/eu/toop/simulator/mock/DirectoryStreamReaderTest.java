@@ -0,0 +1,89 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import eu.toop.connector.api.dsd.DSDDatasetHelper;
+import eu.toop.dsd.api.DsdDataConverter;
+
+/**
+ * Tests the streaming directory passes
+ */
+public class DirectoryStreamReaderTest {
+
+  private static final String DATASET_TYPE = "REGISTERED_ORGANIZATION_TYPE";
+
+  private final byte[] directory = SyntheticDiscoveryGenerator.generateDirectory(100, 4);
+
+  @Test
+  public void keepsOnlyTheMatchingEntries() {
+    final String filtered = DirectoryStreamReader.filter(directory, DATASET_TYPE, DirectoryStreamReader.COUNTRY_CODE, "AB");
+    assertEquals(25, countMatches(filtered));
+    assertFalse(filtered.contains("<countryCode>AA</countryCode>"));
+
+    assertEquals(10, countMatches(DirectoryStreamReader.filter(directory, DATASET_TYPE, DirectoryStreamReader.IDENTIFIER, "SYN3")));
+
+    assertNull(DirectoryStreamReader.filter(directory, DATASET_TYPE, DirectoryStreamReader.COUNTRY_CODE, "ZZ"));
+    assertNull(DirectoryStreamReader.filter(directory, "UNKNOWN_TYPE", DirectoryStreamReader.COUNTRY_CODE, "AB"));
+  }
+
+  @Test
+  public void collectsTheQueryTerms() {
+    final int[] counts = new int[3];
+    DirectoryStreamReader.forEachQueryTerm(directory, (name, value) -> {
+      if (DirectoryStreamReader.DOCTYPE_ID.equals(name))
+        counts[0]++;
+      else if (DirectoryStreamReader.COUNTRY_CODE.equals(name))
+        counts[1]++;
+      else
+        counts[2]++;
+    });
+
+    assertEquals(100 * SyntheticDiscoveryGenerator.DOCTYPES.length, counts[0]);
+    assertEquals(100, counts[1]);
+    //only the DP types, not the other identifiers of the entities
+    assertEquals(100, counts[2]);
+  }
+
+  @Test
+  public void sameResultsAsTheFullDirectory() throws Exception {
+    for (String countryCode : new String[]{"AA", "AD", "ZZ"}) {
+      final String dsdXml = DsdDataConverter.convertDIRToDSDWithCountryCode(new String(directory, StandardCharsets.UTF_8), DATASET_TYPE, countryCode);
+      assertEquals(DSDDatasetHelper.buildDSDResponseSet(DsdDataConverter.parseDataset(dsdXml)),
+          DSDResponseIndex.queryByCountry(directory, DATASET_TYPE, countryCode));
+    }
+    assertTrue(DSDResponseIndex.queryByCountry(directory, DATASET_TYPE, "ZZ").isEmpty());
+  }
+
+  private static int countMatches(String directoryXml) {
+    int count = 0;
+    for (int i = directoryXml.indexOf("<match>"); i >= 0; i = directoryXml.indexOf("<match>", i + 1)) {
+      ++count;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,300 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the {@link DiscoveryCacheUpdater} against a local stub directory and SMP
+ */
+public class DiscoveryCacheUpdaterTest {
+
+  private static final String PARTICIPANT_SCHEME = "iso6523-actorid-upis";
+  private static final String DOCTYPE_SCHEME = "toop-doctypeid-qns";
+  private static final Pattern COUNTRY = Pattern.compile("country=([A-Z]{2})");
+
+  private HttpServer server;
+  private String baseUrl;
+  private File outputDirectory;
+
+  /**
+   * The doctypes that the stub directory lists for each participant
+   */
+  private final Map<String, List<String>> docTypes = new ConcurrentHashMap<>();
+
+  /**
+   * The SMP paths that were requested, the first request of each existing path fails
+   */
+  private final Set<String> smpPaths = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private final AtomicInteger smpRequestCount = new AtomicInteger();
+
+  /**
+   * The countries whose participants the stub SMP doesn't know (HTTP 404)
+   */
+  private final Set<String> missingCountries = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+  /**
+   * The countries whose participants the stub SMP always fails for (HTTP 500)
+   */
+  private final Set<String> failingCountries = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+  @Before
+  public void setUp() throws Exception {
+    docTypes.put("SV", Arrays.asList("doc-a", "doc-b"));
+    docTypes.put("GQ", Arrays.asList("doc-a", "doc-b"));
+
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/search", this::handleDirectory);
+    server.createContext("/smp", this::handleSMP);
+    server.start();
+    baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+    outputDirectory = Files.createTempDirectory("discovery-cache").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    FileOperationManager.INSTANCE.deleteDirRecursive(outputDirectory);
+  }
+
+  @Test
+  public void updatesInParallelWithRetriesAndIncrementally() throws Exception {
+    try (DirectSMPClient smpClient = new DirectSMPClient(baseUrl + "/smp")) {
+      final DiscoveryCacheUpdater updater = new DiscoveryCacheUpdater()
+          .setDirectoryUrl(baseUrl)
+          .setCountryCodes(Arrays.asList("SV", "GQ"))
+          .setOutputDirectory(outputDirectory)
+          .setParallelism(4)
+          .setRetries(3, 10)
+          .setSMPProviders(smpClient, smpClient::queryServiceMetadata);
+
+      updater.update();
+      assertEquals(2, updater.getFetchedParticipantCount());
+      assertEquals(0, updater.getReusedParticipantCount());
+      //every SMP path failed once: 2 service groups and 4 service metadata
+      assertEquals(6, updater.getRetryCount());
+      assertEquals(0, updater.getFailureCount());
+      assertEquals(12, smpRequestCount.get());
+
+      SMPDiscoveryData data = readOutput();
+      assertEquals(4, data.getServiceMetadataCount());
+      assertEquals(2, data.getServiceGroupHrefs(PARTICIPANT_SCHEME, "9999:stub-sv").size());
+      assertNotNull(data.getServiceMetadata(PARTICIPANT_SCHEME, "9999:stub-gq", DOCTYPE_SCHEME, "doc-b"));
+      assertTrue(new File(outputDirectory, DiscoveryProvider.SNAPSHOT_FILE).exists());
+      //no temporary files are left behind
+      assertEquals(4, outputDirectory.list().length);
+
+      //nothing changed in the directory, so the SMP is not queried
+      updater.update();
+      assertEquals(0, updater.getFetchedParticipantCount());
+      assertEquals(2, updater.getReusedParticipantCount());
+      assertEquals(12, smpRequestCount.get());
+
+      //a new doctype for SV
+      docTypes.put("SV", Arrays.asList("doc-a", "doc-b", "doc-c"));
+      updater.update();
+      assertEquals(1, updater.getFetchedParticipantCount());
+      assertEquals(1, updater.getReusedParticipantCount());
+
+      data = readOutput();
+      assertEquals(5, data.getServiceMetadataCount());
+      assertEquals(3, data.getServiceGroupHrefs(PARTICIPANT_SCHEME, "9999:stub-sv").size());
+    }
+  }
+
+  @Test
+  public void doesNotRetryTheMissingParticipants() throws Exception {
+    docTypes.put("PF", Arrays.asList("doc-a"));
+    missingCountries.add("PF");
+
+    try (DirectSMPClient smpClient = new DirectSMPClient(baseUrl + "/smp")) {
+      final DiscoveryCacheUpdater updater = new DiscoveryCacheUpdater()
+          .setDirectoryUrl(baseUrl)
+          .setCountryCodes(Arrays.asList("SV", "PF"))
+          .setOutputDirectory(outputDirectory)
+          .setRetries(3, 10)
+          .setSMPProviders(smpClient, smpClient::queryServiceMetadata);
+
+      updater.update();
+      //only the SV paths failed once, the PF service group and service metadata are missing
+      assertEquals(3, updater.getRetryCount());
+      assertEquals(0, updater.getFailureCount());
+      assertEquals(2, updater.getNotFoundCount());
+      assertEquals(6 + 2, smpRequestCount.get());
+
+      final SMPDiscoveryData data = readOutput();
+      assertEquals(0, data.getServiceGroupHrefs(PARTICIPANT_SCHEME, "9999:stub-pf").size());
+      assertNull(data.getServiceMetadata(PARTICIPANT_SCHEME, "9999:stub-pf", DOCTYPE_SCHEME, "doc-a"));
+      assertNotNull(data.getServiceMetadata(PARTICIPANT_SCHEME, "9999:stub-sv", DOCTYPE_SCHEME, "doc-a"));
+    }
+  }
+
+  @Test
+  public void keepsThePreviousCacheWhenAQueryFails() throws Exception {
+    try (DirectSMPClient smpClient = new DirectSMPClient(baseUrl + "/smp")) {
+      final DiscoveryCacheUpdater updater = new DiscoveryCacheUpdater()
+          .setDirectoryUrl(baseUrl)
+          .setCountryCodes(Arrays.asList("SV", "GQ"))
+          .setOutputDirectory(outputDirectory)
+          .setRetries(2, 10)
+          .setSMPProviders(smpClient, smpClient::queryServiceMetadata);
+      updater.update();
+
+      //SV has a new doctype, but its SMP is down
+      docTypes.put("SV", Arrays.asList("doc-a", "doc-b", "doc-c"));
+      failingCountries.add("SV");
+      final File directoryFile = new File(outputDirectory, DiscoveryProvider.DIRECTORY_FILE);
+      final byte[] previousDirectory = Files.readAllBytes(directoryFile.toPath());
+      try {
+        updater.update();
+        fail();
+      } catch (IOException ex) {
+        //expected
+      }
+      //the SV service group and its 3 service metadata
+      assertEquals(4, updater.getFailureCount());
+
+      SMPDiscoveryData data = readOutput();
+      assertEquals(4, data.getServiceMetadataCount());
+      assertEquals(2, data.getServiceGroupHrefs(PARTICIPANT_SCHEME, "9999:stub-sv").size());
+      assertNotNull(data.getServiceMetadata(PARTICIPANT_SCHEME, "9999:stub-sv", DOCTYPE_SCHEME, "doc-a"));
+      assertArrayEquals(previousDirectory, Files.readAllBytes(directoryFile.toPath()));
+
+      //SV is queried again once its SMP is back
+      failingCountries.clear();
+      updater.update();
+      assertEquals(1, updater.getFetchedParticipantCount());
+      assertEquals(1, updater.getReusedParticipantCount());
+
+      data = readOutput();
+      assertEquals(5, data.getServiceMetadataCount());
+      assertEquals(3, data.getServiceGroupHrefs(PARTICIPANT_SCHEME, "9999:stub-sv").size());
+    }
+  }
+
+  private SMPDiscoveryData readOutput() throws IOException {
+    try (FileInputStream hrefs = new FileInputStream(new File(outputDirectory, DiscoveryProvider.HREFS_FILE));
+         FileInputStream smd = new FileInputStream(new File(outputDirectory, DiscoveryProvider.SERVICE_METADATA_FILE))) {
+      return SMPDiscoveryData.readYaml(hrefs, smd);
+    }
+  }
+
+  private void handleDirectory(HttpExchange exchange) throws IOException {
+    final String query = exchange.getRequestURI().getRawQuery();
+    final Matcher matcher = COUNTRY.matcher(query == null ? "" : query);
+    final String country = matcher.find() ? matcher.group(1) : "";
+
+    final StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<resultlist version=\"1.0\" total-result-count=\"1\" used-result-count=\"1\"")
+        .append(" result-page-index=\"0\" result-page-count=\"100\" first-result-index=\"0\" last-result-index=\"0\"")
+        .append(" query-terms=\"country=").append(country).append("\" creation-dt=\"2020-11-09T12:39:41.571\">\n");
+    if (docTypes.containsKey(country)) {
+      sb.append("<match><participantID scheme=\"").append(PARTICIPANT_SCHEME).append("\">").append(participant(country)).append("</participantID>");
+      for (String docType : docTypes.get(country)) {
+        sb.append("<docTypeID scheme=\"").append(DOCTYPE_SCHEME).append("\">").append(docType).append("</docTypeID>");
+      }
+      sb.append("<entity><name>Stub ").append(country).append("</name><countryCode>").append(country)
+          .append("</countryCode></entity></match>\n");
+    }
+    sb.append("</resultlist>");
+    respond(exchange, 200, sb.toString());
+  }
+
+  private void handleSMP(HttpExchange exchange) throws IOException {
+    smpRequestCount.incrementAndGet();
+    final String path = URLDecoder.decode(exchange.getRequestURI().getRawPath().substring("/smp/".length()), "UTF-8");
+    final int servicesIndex = path.indexOf("/services/");
+    final String participant = (servicesIndex < 0 ? path : path.substring(0, servicesIndex)).substring((PARTICIPANT_SCHEME + "::").length());
+    final String country = participant.substring("9999:stub-".length()).toUpperCase();
+    if (missingCountries.contains(country)) {
+      respond(exchange, 404, "not found");
+      return;
+    }
+    if (failingCountries.contains(country) || smpPaths.add(path)) {
+      respond(exchange, 500, "try again");
+      return;
+    }
+
+    final String ns = "http://docs.oasis-open.org/bdxr/ns/SMP/2016/05";
+    final StringBuilder sb = new StringBuilder();
+    if (servicesIndex < 0) {
+      sb.append("<ServiceGroup xmlns=\"").append(ns).append("\"><ParticipantIdentifier scheme=\"").append(PARTICIPANT_SCHEME).append("\">")
+          .append(participant).append("</ParticipantIdentifier><ServiceMetadataReferenceCollection>");
+      for (String docType : docTypes.get(country)) {
+        sb.append("<ServiceMetadataReference href=\"").append(baseUrl).append("/smp/")
+            .append(URLEncoder.encode(PARTICIPANT_SCHEME + "::" + participant, "UTF-8")).append("/services/")
+            .append(URLEncoder.encode(DOCTYPE_SCHEME + "::" + docType, "UTF-8")).append("\"/>");
+      }
+      sb.append("</ServiceMetadataReferenceCollection></ServiceGroup>");
+    } else {
+      final String docType = path.substring(servicesIndex + "/services/".length()).substring((DOCTYPE_SCHEME + "::").length());
+      sb.append("<SignedServiceMetadata xmlns=\"").append(ns).append("\"><ServiceMetadata><ServiceInformation>")
+          .append("<ParticipantIdentifier scheme=\"").append(PARTICIPANT_SCHEME).append("\">").append(participant).append("</ParticipantIdentifier>")
+          .append("<DocumentIdentifier scheme=\"").append(DOCTYPE_SCHEME).append("\">").append(docType).append("</DocumentIdentifier>")
+          .append("<ProcessList/></ServiceInformation></ServiceMetadata></SignedServiceMetadata>");
+    }
+    respond(exchange, 200, sb.toString());
+  }
+
+  private static String participant(String country) {
+    return "9999:stub-" + country.toLowerCase();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/xml");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.xsds.bdxr.smp1.ParticipantIdentifierType;
+
+import eu.toop.connector.api.error.LoggingTCErrorHandler;
+
+/**
+ * Tests reloading the discovery data from the file system
+ */
+public class DiscoveryReloadTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("discovery").toFile();
+    for (String fileName : new String[]{DiscoveryProvider.DIRECTORY_FILE, DiscoveryProvider.HREFS_FILE, DiscoveryProvider.SERVICE_METADATA_FILE}) {
+      try (InputStream in = getClass().getResourceAsStream("/discovery/" + fileName);
+           FileOutputStream out = new FileOutputStream(new File(directory, fileName))) {
+        StreamHelper.copyInputStreamToOutputStream(in, out);
+      }
+    }
+  }
+
+  @After
+  public void tearDown() {
+    FileOperationManager.INSTANCE.deleteDirRecursive(directory);
+  }
+
+  @Test
+  public void reloadsWhenTheFilesChange() throws Exception {
+    final DiscoveryProvider provider = new DiscoveryProvider(directory);
+    final SimpleParticipantIdentifier participant = new SimpleParticipantIdentifier("iso6523-actorid-upis", "9999:reloaded");
+    assertTrue(provider.getAllServiceGroupHrefs(participant, LoggingTCErrorHandler.INSTANCE).isEmpty());
+
+    provider.startWatching();
+    try {
+      final ParticipantIdentifierType pId = new ParticipantIdentifierType();
+      pId.setScheme(participant.getScheme());
+      pId.setValue(participant.getValue());
+      final LinkedHashMap<String, String> hrefs = new LinkedHashMap<>();
+      hrefs.put("http://localhost/reloaded", "http://localhost/reloaded");
+      final LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap = new LinkedHashMap<>();
+      hrefsMap.put(pId, hrefs);
+
+      try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, DiscoveryProvider.HREFS_FILE)), StandardCharsets.UTF_8)) {
+        new Yaml().dump(hrefsMap, writer);
+      }
+
+      //the watch service may be polling, give it some time
+      final long deadline = System.currentTimeMillis() + 30_000;
+      while (provider.getReloadCount() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+      }
+
+      assertTrue(provider.getReloadCount() > 0);
+      assertEquals(hrefs, provider.getAllServiceGroupHrefs(participant, LoggingTCErrorHandler.INSTANCE));
+    } finally {
+      provider.stopWatching();
+    }
+  }
+
+  @Test
+  public void keepsTheDataIfTheReloadFails() throws Exception {
+    final DiscoveryProvider provider = new DiscoveryProvider(directory);
+    final SimpleParticipantIdentifier participant = new SimpleParticipantIdentifier("iso6523-actorid-upis", "9999:elonia");
+    assertTrue(!provider.getAllServiceGroupHrefs(participant, LoggingTCErrorHandler.INSTANCE).isEmpty());
+
+    //an empty file can't be read
+    new FileOutputStream(new File(directory, DiscoveryProvider.HREFS_FILE)).close();
+    provider.reload();
+
+    assertEquals(0, provider.getReloadCount());
+    assertTrue(!provider.getAllServiceGroupHrefs(participant, LoggingTCErrorHandler.INSTANCE).isEmpty());
+  }
+}
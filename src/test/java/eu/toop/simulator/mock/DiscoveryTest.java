@@ -21,13 +21,19 @@ package eu.toop.simulator.mock;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
 import org.junit.Test;
 
 import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
 import com.helger.commons.error.level.EErrorLevel;
+import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
 
 import eu.toop.connector.api.dsd.DSDDatasetResponse;
 import eu.toop.connector.api.error.ITCErrorHandler;
+import eu.toop.connector.api.error.LoggingTCErrorHandler;
 import eu.toop.edm.error.IToopErrorCode;
 
 public class DiscoveryTest {
@@ -67,4 +73,43 @@ public class DiscoveryTest {
       System.out.println(resp.getAsJson().getAsJsonString());
     });
   }
+
+  @Test
+  public void dsdIndexReturnsSharedResults() {
+    DiscoveryProvider discoveryProvider = DiscoveryProvider.getInstance();
+
+    final ICommonsSet<DSDDatasetResponse> first = discoveryProvider.getAllDatasetResponsesByCountry("", "REGISTERED_ORGANIZATION_TYPE", "SV", LoggingTCErrorHandler.INSTANCE);
+    final ICommonsSet<DSDDatasetResponse> second = discoveryProvider.getAllDatasetResponsesByCountry("", "REGISTERED_ORGANIZATION_TYPE", "SV", LoggingTCErrorHandler.INSTANCE);
+
+    assertFalse(first.isEmpty());
+    assertSame(first, second);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void dsdIndexResultsAreImmutable() {
+    DiscoveryProvider discoveryProvider = DiscoveryProvider.getInstance();
+
+    discoveryProvider.getAllDatasetResponsesByDPType("", "REGISTERED_ORGANIZATION_TYPE", "RO", LoggingTCErrorHandler.INSTANCE).clear();
+  }
+
+  @Test
+  public void serviceGroupHrefsAreShared() {
+    DiscoveryProvider discoveryProvider = DiscoveryProvider.getInstance();
+
+    final ICommonsSortedMap<String, String> first = discoveryProvider.getAllServiceGroupHrefs(
+        new SimpleParticipantIdentifier("iso6523-actorid-upis", "9999:elonia"), LoggingTCErrorHandler.INSTANCE);
+    final ICommonsSortedMap<String, String> second = discoveryProvider.getAllServiceGroupHrefs(
+        new SimpleParticipantIdentifier("iso6523-actorid-upis", "9999:elonia"), LoggingTCErrorHandler.INSTANCE);
+
+    assertFalse(first.isEmpty());
+    assertSame(first, second);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void serviceGroupHrefsAreImmutable() {
+    DiscoveryProvider discoveryProvider = DiscoveryProvider.getInstance();
+
+    discoveryProvider.getAllServiceGroupHrefs(new SimpleParticipantIdentifier("iso6523-actorid-upis", "9999:elonia"),
+        LoggingTCErrorHandler.INSTANCE).entrySet().clear();
+  }
 }
@@ -0,0 +1,87 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests reading the root element of the EDM documents
+ */
+public class EDMPeekTest {
+
+  private static EDMPeek peek(String xml) {
+    return EDMPeek.peek(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void readsTheRequestID() {
+    final EDMPeek request = peek("<?xml version='1.0'?><!-- comment -->" +
+        "<query:QueryRequest xmlns:query='urn:oasis:names:tc:ebxml-regrep:xsd:query:4.0' id='req-1'><x/></query:QueryRequest>");
+    assertEquals("QueryRequest", request.getRootName());
+    assertEquals("urn:oasis:names:tc:ebxml-regrep:xsd:query:4.0", request.getRootNamespace());
+    assertEquals("req-1", request.getRequestID());
+
+    final EDMPeek response = peek("<query:QueryResponse xmlns:query='urn:oasis:names:tc:ebxml-regrep:xsd:query:4.0' " +
+        "requestId='req-1' status='urn:oasis:names:tc:ebxml-regrep:ResponseStatusType:Success'/>");
+    assertEquals("QueryResponse", response.getRootName());
+    assertEquals("req-1", response.getRequestID());
+  }
+
+  @Test
+  public void classifiesTheDocuments() {
+    final EDMPeek request = peek("<query:QueryRequest xmlns:query='urn:oasis:names:tc:ebxml-regrep:xsd:query:4.0' id='req-1'/>");
+    assertTrue(request.isRequest());
+    assertFalse(request.isResponse());
+    assertFalse(request.isErrorResponse());
+
+    final EDMPeek response = peek("<query:QueryResponse xmlns:query='urn:oasis:names:tc:ebxml-regrep:xsd:query:4.0' " +
+        "requestId='req-1' status='urn:oasis:names:tc:ebxml-regrep:ResponseStatusType:Success'/>");
+    assertTrue(response.isResponse());
+    assertFalse(response.isErrorResponse());
+
+    final EDMPeek error = peek("<query:QueryResponse xmlns:query='urn:oasis:names:tc:ebxml-regrep:xsd:query:4.0' " +
+        "requestId='req-1' status='urn:oasis:names:tc:ebxml-regrep:ResponseStatusType:Failure'/>");
+    assertEquals("urn:oasis:names:tc:ebxml-regrep:ResponseStatusType:Failure", error.getStatus());
+    assertTrue(error.isErrorResponse());
+    assertFalse(error.isResponse());
+
+    //the name alone is not enough
+    final EDMPeek foreign = peek("<QueryRequest xmlns='urn:other' id='req-1'/>");
+    assertFalse(foreign.isRequest());
+  }
+
+  @Test
+  public void stopsAtTheRootElement() {
+    //the rest of the document is not read, so it doesn't have to be well-formed
+    final EDMPeek other = peek("<other id='x'><unclosed>");
+    assertEquals("other", other.getRootName());
+    assertNull(other.getRootNamespace());
+    assertNull(other.getRequestID());
+
+    assertNull(peek("not xml"));
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the detection of the simulator's own endpoints
+ */
+public class IncomingMessageForwarderTest {
+
+  @Test
+  public void detectsTheOwnEndpoints() {
+    assertTrue(IncomingMessageForwarder.isSelf("http://localhost:8081/to-dc", 8081, "/to-dc"));
+    assertTrue(IncomingMessageForwarder.isSelf("http://LOCALHOST:8081/to-dp", 8081, "/to-dp"));
+    assertTrue(IncomingMessageForwarder.isSelf("http://127.0.0.1:8081/to-dc", 8081, "/to-dc"));
+    assertTrue(IncomingMessageForwarder.isSelf("http://[::1]:8081/to-dc", 8081, "/to-dc"));
+    assertTrue(IncomingMessageForwarder.isSelf("http://localhost/to-dc", 80, "/to-dc"));
+  }
+
+  @Test
+  public void leavesTheOtherEndpointsToHttp() {
+    assertFalse(IncomingMessageForwarder.isSelf("http://localhost:8082/to-dc", 8081, "/to-dc"));
+    assertFalse(IncomingMessageForwarder.isSelf("http://localhost:8081/to-dp", 8081, "/to-dc"));
+    assertFalse(IncomingMessageForwarder.isSelf("http://localhost:8081/other/to-dc", 8081, "/to-dc"));
+    assertFalse(IncomingMessageForwarder.isSelf("https://localhost:8081/to-dc", 8081, "/to-dc"));
+    assertFalse(IncomingMessageForwarder.isSelf("http://dc.example.org:8081/to-dc", 8081, "/to-dc"));
+    assertFalse(IncomingMessageForwarder.isSelf("http://docker.for.mac.localhost:8081/to-dc", 8081, "/to-dc"));
+    assertFalse(IncomingMessageForwarder.isSelf("not a url", 8081, "/to-dc"));
+  }
+}
@@ -0,0 +1,196 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.helger.commons.mime.CMimeType;
+import com.helger.json.IJson;
+import com.helger.json.JsonObject;
+
+import eu.toop.connector.api.rest.TCOutgoingMessage;
+import eu.toop.connector.api.rest.TCOutgoingMetadata;
+import eu.toop.connector.api.rest.TCPayload;
+import eu.toop.connector.api.rest.TCRestJAXB;
+
+/**
+ * Tests the asynchronous delivery of the DP responses
+ */
+public class ResponseDeliveryPipelineTest {
+
+  private static final IJson OK = new JsonObject().add("success", true);
+
+  private static TCMessageEntity createEntity() {
+    final TCOutgoingMessage message = new TCOutgoingMessage();
+    final TCOutgoingMetadata metadata = new TCOutgoingMetadata();
+    metadata.setSenderID(TCRestJAXB.createTCID("iso6523-actorid-upis", "9999:elonia"));
+    metadata.setReceiverID(TCRestJAXB.createTCID("iso6523-actorid-upis", "9999:freedonia"));
+    message.setMetadata(metadata);
+
+    final TCPayload payload = new TCPayload();
+    payload.setContentID("response@elonia");
+    payload.setMimeType(CMimeType.APPLICATION_XML.getAsString());
+    payload.setValue("<response/>".getBytes(StandardCharsets.UTF_8));
+    message.addPayload(payload);
+    return new TCMessageEntity(message, Collections.emptyList());
+  }
+
+  @Test
+  public void retriesUntilDelivered() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final ResponseDeliveryPipeline pipeline = new ResponseDeliveryPipeline((destination, entity) -> {
+      if (calls.incrementAndGet() < 3)
+        throw new IOException("connection refused");
+      return OK;
+    }, 1, 5, 1, 10);
+    try {
+      assertSame(OK, pipeline.deliver("response 1", "/submit", createEntity()).get(10, TimeUnit.SECONDS));
+      assertEquals(3, calls.get());
+      assertEquals(2, pipeline.getRetriedCount());
+      assertEquals(1, pipeline.getDeliveredCount());
+      assertEquals(0, pipeline.getOutstandingCount());
+      assertTrue(pipeline.getDeadLetters().isEmpty());
+    } finally {
+      pipeline.shutdown(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void deadLettersAfterMaxAttempts() throws Exception {
+    final ResponseDeliveryPipeline pipeline = new ResponseDeliveryPipeline((destination, entity) -> {
+      throw new IOException("HTTP 500");
+    }, 1, 3, 1, 10);
+    try {
+      pipeline.deliver("response 1", "/submit", createEntity()).get(10, TimeUnit.SECONDS);
+      fail("The delivery should fail");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof IOException);
+    } finally {
+      pipeline.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    final List<ResponseDeliveryPipeline.DeadLetter> deadLetters = pipeline.getDeadLetters();
+    assertEquals(1, deadLetters.size());
+    assertEquals("response 1", deadLetters.get(0).getDescription());
+    assertEquals("/submit", deadLetters.get(0).getDestination());
+    assertEquals(3, deadLetters.get(0).getAttempts());
+    assertEquals("HTTP 500", deadLetters.get(0).getError());
+    assertEquals(2, pipeline.getRetriedCount());
+  }
+
+  @Test
+  public void slowDestinationDoesNotBlockOthers() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger slowInflight = new AtomicInteger();
+    final AtomicInteger maxSlowInflight = new AtomicInteger();
+    final ResponseDeliveryPipeline pipeline = new ResponseDeliveryPipeline((destination, entity) -> {
+      if (destination.equals("/slow")) {
+        maxSlowInflight.accumulateAndGet(slowInflight.incrementAndGet(), Math::max);
+        try {
+          release.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        slowInflight.decrementAndGet();
+      }
+      return OK;
+    }, 2, 1, 1, 100);
+    try {
+      final CompletableFuture<?>[] slow = new CompletableFuture<?>[10];
+      for (int i = 0; i < slow.length; ++i)
+        slow[i] = pipeline.deliver("slow " + i, "/slow", createEntity());
+
+      //the fast destination is served while the slow one holds its slots
+      pipeline.deliver("fast", "/fast", createEntity()).get(10, TimeUnit.SECONDS);
+      assertEquals(8, pipeline.getPendingCounts().get("/slow").intValue());
+      assertEquals(2, pipeline.getInflightCounts().get("/slow").intValue());
+
+      release.countDown();
+      CompletableFuture.allOf(slow).get(10, TimeUnit.SECONDS);
+      assertEquals(2, maxSlowInflight.get());
+      assertEquals(11, pipeline.getDeliveredCount());
+    } finally {
+      release.countDown();
+      pipeline.shutdown(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void rejectsWhenTheQueueIsFull() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final ResponseDeliveryPipeline pipeline = new ResponseDeliveryPipeline((destination, entity) -> {
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return OK;
+    }, 1, 1, 1, 2);
+    try {
+      pipeline.deliver("response 1", "/submit", createEntity());
+      pipeline.deliver("response 2", "/submit", createEntity());
+      final CompletableFuture<IJson> rejected = pipeline.deliver("response 3", "/submit", createEntity());
+      assertTrue(rejected.isCompletedExceptionally());
+      try {
+        rejected.get();
+        fail("The delivery should be rejected");
+      } catch (ExecutionException ex) {
+        assertTrue(ex.getCause() instanceof RejectedExecutionException);
+      }
+      assertEquals(1, pipeline.getRejectedCount());
+      assertEquals(0, pipeline.getDeadLetters().get(0).getAttempts());
+    } finally {
+      release.countDown();
+      assertTrue(pipeline.shutdown(10, TimeUnit.SECONDS));
+    }
+    assertEquals(2, pipeline.getDeliveredCount());
+  }
+
+  @Test
+  public void backoffDoublesUpToTheLimit() {
+    final ResponseDeliveryPipeline pipeline = new ResponseDeliveryPipeline((destination, entity) -> OK, 1, 100, 500, 1);
+    try {
+      assertEquals(500, pipeline.getBackoff(1));
+      assertEquals(1000, pipeline.getBackoff(2));
+      assertEquals(4000, pipeline.getBackoff(4));
+      assertEquals(ResponseDeliveryPipeline.MAX_BACKOFF_MS, pipeline.getBackoff(20));
+      assertEquals(ResponseDeliveryPipeline.MAX_BACKOFF_MS, pipeline.getBackoff(100));
+      assertFalse(pipeline.getBackoff(100) < 0);
+    } finally {
+      pipeline.shutdown(0, TimeUnit.SECONDS);
+    }
+  }
+}
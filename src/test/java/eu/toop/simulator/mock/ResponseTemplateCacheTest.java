@@ -0,0 +1,125 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.stream.StreamHelper;
+
+import eu.toop.edm.EDMRequest;
+import eu.toop.edm.EDMResponse;
+
+/**
+ * Tests the DP response cache
+ */
+public class ResponseTemplateCacheTest {
+
+  private static final String REQUEST_ID = "c4369c4d-740e-4b64-80f0-7b209a66d629";
+
+  private File directory;
+  private String requestXml;
+  private EDMResponse response;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("datasets").toFile();
+    Files.write(new File(directory, "example.yaml").toPath(), "a: 1".getBytes(StandardCharsets.UTF_8));
+
+    requestXml = readResource("/datasets/edm-conceptRequest-lp.xml");
+    response = EDMResponse.reader().read(readResource("/datasets/edm-conceptResponse-lp.xml").getBytes(StandardCharsets.UTF_8));
+  }
+
+  @After
+  public void tearDown() {
+    FileOperationManager.INSTANCE.deleteDirRecursive(directory);
+  }
+
+  @Test
+  public void keyIgnoresTheRequestIdAndTheIssueTime() {
+    final EDMRequest request = EDMRequest.reader().read(requestXml.getBytes(StandardCharsets.UTF_8));
+    final EDMRequest otherRequest = EDMRequest.reader().read(requestXml.replace(REQUEST_ID, "8e3ac2e9-4a5b-4d1d-a3a6-0c1a3a6a3b9c")
+        .replaceAll("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}", "2021-03-04T05:06:07").getBytes(StandardCharsets.UTF_8));
+
+    assertNotEquals(request.getRequestID(), otherRequest.getRequestID());
+    assertEquals(ResponseTemplateCache.createKey(request), ResponseTemplateCache.createKey(otherRequest));
+  }
+
+  @Test
+  public void reissuesTheResponseWithTheNewRequestId() {
+    final ResponseTemplateCache cache = new ResponseTemplateCache(directory, 10);
+    cache.put("key", new ResponseTemplateCache.ResponseTemplate(response, Collections.emptyList()));
+
+    final ResponseTemplateCache.ResponseTemplate template = cache.get("key");
+    assertNotNull(template);
+    assertEquals("new-request-id", template.createResponse("new-request-id").getRequestID());
+    assertSame(template, cache.get("key"));
+    assertEquals(2, cache.getHitCount());
+
+    assertNull(cache.get("other"));
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsed() {
+    final ResponseTemplateCache cache = new ResponseTemplateCache(directory, 2);
+    final ResponseTemplateCache.ResponseTemplate template = new ResponseTemplateCache.ResponseTemplate(response, Collections.emptyList());
+    cache.put("a", template);
+    cache.put("b", template);
+    cache.get("a");
+    cache.put("c", template);
+
+    assertEquals(2, cache.size());
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+  }
+
+  @Test
+  public void invalidatedWhenTheDatasetsChange() throws Exception {
+    final ResponseTemplateCache cache = new ResponseTemplateCache(directory, 10);
+    cache.put("key", new ResponseTemplateCache.ResponseTemplate(response, Collections.emptyList()));
+
+    final File dataset = new File(directory, "example_NP.yaml");
+    Files.write(dataset.toPath(), "b: 2".getBytes(StandardCharsets.UTF_8));
+
+    Thread.sleep(ResponseTemplateCache.CHECK_INTERVAL_MS + 100);
+    assertNull(cache.get("key"));
+    assertEquals(1, cache.getInvalidationCount());
+  }
+
+  private static String readResource(String name) throws Exception {
+    try (InputStream in = ResponseTemplateCacheTest.class.getResourceAsStream(name)) {
+      return new String(StreamHelper.getAllBytes(in), StandardCharsets.UTF_8);
+    }
+  }
+}
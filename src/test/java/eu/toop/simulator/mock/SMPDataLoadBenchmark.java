@@ -0,0 +1,84 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the startup paths of the SMP data: parsing the YAML files, reading the binary
+ * snapshot and reading the snapshot lazily:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=eu.toop.simulator.mock.SMPDataLoadBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SMPDataLoadBenchmark {
+
+  private byte[] snapshot;
+
+  @Setup
+  public void setup() throws Exception {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    yaml().writeSnapshot(baos);
+    snapshot = baos.toByteArray();
+  }
+
+  @Benchmark
+  public SMPDiscoveryData yaml() throws Exception {
+    try (InputStream hrefs = getClass().getResourceAsStream("/discovery/endpointhrefs.yml");
+         InputStream smd = getClass().getResourceAsStream("/discovery/serviceMetadataTypes.yml")) {
+      return SMPDiscoveryData.readYaml(hrefs, smd);
+    }
+  }
+
+  @Benchmark
+  public SMPDiscoveryData snapshot() {
+    return SMPDiscoveryData.readSnapshot(new ByteArrayInputStream(snapshot));
+  }
+
+  @Benchmark
+  public SMPDiscoveryData lazySnapshot() {
+    return SMPDiscoveryData.readSnapshot(new ByteArrayInputStream(snapshot), true);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(SMPDataLoadBenchmark.class.getSimpleName()).build()).run();
+  }
+}
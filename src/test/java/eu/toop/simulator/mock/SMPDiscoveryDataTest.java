@@ -0,0 +1,124 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+
+import org.junit.Test;
+
+import com.helger.xsds.bdxr.smp1.DocumentIdentifierType;
+import com.helger.xsds.bdxr.smp1.ParticipantIdentifierType;
+import com.helger.xsds.bdxr.smp1.ServiceMetadataType;
+
+/**
+ * Compares the YAML and the binary snapshot loading paths of the SMP data
+ */
+public class SMPDiscoveryDataTest {
+
+  private static SMPDiscoveryData loadYaml() throws Exception {
+    try (InputStream hrefs = SMPDiscoveryDataTest.class.getResourceAsStream("/discovery/endpointhrefs.yml");
+         InputStream smd = SMPDiscoveryDataTest.class.getResourceAsStream("/discovery/serviceMetadataTypes.yml")) {
+      return SMPDiscoveryData.readYaml(hrefs, smd);
+    }
+  }
+
+  @Test
+  public void snapshotRoundTrip() throws Exception {
+    final SMPDiscoveryData yamlData = loadYaml();
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    yamlData.writeSnapshot(baos);
+    final SMPDiscoveryData snapshotData = SMPDiscoveryData.readSnapshot(new ByteArrayInputStream(baos.toByteArray()));
+
+    assertEquals(yamlData.getHrefsMap(), snapshotData.getHrefsMap());
+    assertEquals(yamlData.getServiceMetadataMap(), snapshotData.getServiceMetadataMap());
+  }
+
+  @Test
+  public void lazySnapshotDecodesOnDemand() throws Exception {
+    final SMPDiscoveryData yamlData = loadYaml();
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    yamlData.writeSnapshot(baos);
+    final SMPDiscoveryData lazyData = SMPDiscoveryData.readSnapshot(new ByteArrayInputStream(baos.toByteArray()), true);
+
+    assertEquals(yamlData.getServiceMetadataCount(), lazyData.getServiceMetadataCount());
+    assertEquals(0, lazyData.getMaterializedCount());
+
+    final SMPServiceMetadataKey key = yamlData.getServiceMetadataMap().keySet().iterator().next();
+    final ServiceMetadataType serviceMetadata = lazyData.getServiceMetadata(key);
+    assertEquals(yamlData.getServiceMetadata(key), serviceMetadata);
+    assertEquals(1, lazyData.getMaterializedCount());
+
+    //decoded only once
+    assertSame(serviceMetadata, lazyData.getServiceMetadata(key));
+
+    //a lazy snapshot is written back without decoding
+    final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+    lazyData.writeSnapshot(copy);
+    assertEquals(1, lazyData.getMaterializedCount());
+    assertEquals(yamlData.getServiceMetadataMap(), SMPDiscoveryData.readSnapshot(new ByteArrayInputStream(copy.toByteArray())).getServiceMetadataMap());
+  }
+
+  @Test
+  public void emptySchemesRoundTrip() throws Exception {
+    final ParticipantIdentifierType pId = new ParticipantIdentifierType();
+    pId.setScheme("");
+    pId.setValue("9999:elonia");
+    final DocumentIdentifierType docId = new DocumentIdentifierType();
+    docId.setScheme("");
+    docId.setValue("doc::type");
+    final LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap = new LinkedHashMap<>();
+    hrefsMap.put(pId, new LinkedHashMap<>());
+    final LinkedHashMap<SMPServiceMetadataKey, ServiceMetadataType> serviceMetadataMap = new LinkedHashMap<>();
+    serviceMetadataMap.put(new SMPServiceMetadataKey(pId, docId), null);
+    final SMPDiscoveryData data = new SMPDiscoveryData(hrefsMap, serviceMetadataMap);
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    data.writeSnapshot(baos);
+    final SMPDiscoveryData snapshotData = SMPDiscoveryData.readSnapshot(new ByteArrayInputStream(baos.toByteArray()));
+
+    assertEquals(hrefsMap, snapshotData.getHrefsMap());
+    assertEquals(serviceMetadataMap, snapshotData.getServiceMetadataMap());
+    assertEquals(0, snapshotData.getServiceGroupHrefs("", "9999:elonia").size());
+  }
+
+  @Test
+  public void rejectsAParticipantWithoutAScheme() {
+    final ParticipantIdentifierType pId = new ParticipantIdentifierType();
+    pId.setValue("9999:elonia");
+    final LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap = new LinkedHashMap<>();
+    hrefsMap.put(pId, new LinkedHashMap<>());
+    try {
+      new SMPDiscoveryData(hrefsMap, new LinkedHashMap<>());
+      fail();
+    } catch (NullPointerException ex) {
+      //rejected before a snapshot can be written
+      assertTrue(ex.getMessage().contains("9999:elonia"));
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests the lookups of {@link SMPIdentifierIndex}
+ */
+public class SMPIdentifierIndexTest {
+
+  @Test
+  public void canonicalHashMatchesStringHash() {
+    final String[][] samples = {
+        {"iso6523-actorid-upis", "9999:elonia"},
+        {"toop-doctypeid-qns", "RegisteredOrganization::REGISTERED_ORGANIZATION_TYPE::CONCEPT##CCCEV::toop-edm:v2.1"},
+        {"", ""},
+        {"a", "a very long value that overflows the hash several times over and over again"}};
+    for (String[] sample : samples) {
+      assertEquals((sample[0] + "::" + sample[1]).hashCode(), SMPIdentifierIndex.canonicalHash(sample[0], sample[1]));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAHalfDocTypeKey() {
+    new SMPIdentifierIndex<String>(0).put("p", "1", "d", null, "p1-d");
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void rejectsANullParticipant() {
+    new SMPIdentifierIndex<String>(0).put("p", null, null, null, "p");
+  }
+
+  @Test
+  public void lookups() {
+    final SMPIdentifierIndex<String> index = new SMPIdentifierIndex<>(0);
+    index.put("p", "1", null, null, "p1");
+    index.put("p", "1", "d", "1", "p1-d1");
+    index.put("p", "1", "d", "2", "p1-d2");
+
+    assertEquals("p1", index.get("p", "1"));
+    assertEquals("p1-d1", index.get("p", "1", "d", "1"));
+    assertEquals("p1-d2", index.get("p", "1", "d", "2"));
+    assertNull(index.get("p", "2"));
+    assertNull(index.get("p", "1", "d", "3"));
+    assertNull(index.get("p:", ":1", "d", "1"));
+    assertNull(index.get(null, "1"));
+    assertNull(index.get("p", "1", "d", null));
+
+    assertEquals("p::1", index.getParticipantKey(1));
+    assertEquals("d::1", index.getDocTypeKey(1));
+    assertEquals("d", SMPIdentifierIndex.getScheme(index.getDocTypeKey(1)));
+    assertEquals("1", SMPIdentifierIndex.getValue(index.getDocTypeKey(1)));
+
+    //the canonical ids are interned
+    assertSame("p::1", index.getParticipantKey(0));
+  }
+
+  @Test
+  public void growAndReplace() {
+    final SMPIdentifierIndex<Integer> index = new SMPIdentifierIndex<>(1);
+    for (int i = 0; i < 1000; ++i) {
+      index.put("scheme", "participant" + i, "doctype", "value" + (i % 7), i);
+    }
+    index.put("scheme", "participant5", "doctype", "value5", -5);
+
+    assertEquals(1000, index.size());
+    for (int i = 0; i < 1000; ++i) {
+      final Integer expected = i == 5 ? -5 : i;
+      assertEquals(expected, index.get("scheme", "participant" + i, "doctype", "value" + (i % 7)));
+      //insertion order is kept
+      assertEquals(expected, index.getValue(i));
+    }
+  }
+}
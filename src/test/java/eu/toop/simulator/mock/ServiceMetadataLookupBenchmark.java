@@ -0,0 +1,105 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.helger.xsds.bdxr.smp1.DocumentIdentifierType;
+import com.helger.xsds.bdxr.smp1.ParticipantIdentifierType;
+import com.helger.xsds.bdxr.smp1.ServiceMetadataType;
+
+/**
+ * Compares the previous service metadata lookup (building a {@link SMPServiceMetadataKey} from new
+ * JAXB identifiers, then <code>containsKey</code> + <code>get</code>) with the allocation-free
+ * {@link SMPIdentifierIndex} lookup. Run with <code>-prof gc</code> to see the allocation rates:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=eu.toop.simulator.mock.ServiceMetadataLookupBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceMetadataLookupBenchmark {
+
+  private LinkedHashMap<SMPServiceMetadataKey, ServiceMetadataType> serviceMetadataMap;
+  private SMPDiscoveryData smpData;
+
+  private String participantScheme;
+  private String participantValue;
+  private String docTypeScheme;
+  private String docTypeValue;
+
+  @Setup
+  public void setup() throws Exception {
+    try (InputStream hrefs = getClass().getResourceAsStream("/discovery/endpointhrefs.yml");
+         InputStream smd = getClass().getResourceAsStream("/discovery/serviceMetadataTypes.yml")) {
+      smpData = SMPDiscoveryData.readYaml(hrefs, smd);
+    }
+    serviceMetadataMap = smpData.getServiceMetadataMap();
+
+    //copy the ids, so that the lookups don't hit identical references
+    final SMPServiceMetadataKey key = serviceMetadataMap.keySet().iterator().next();
+    participantScheme = new String(key.getParticipantIdentifierType().getScheme());
+    participantValue = new String(key.getParticipantIdentifierType().getValue());
+    docTypeScheme = new String(key.getDocumentIdentifierType().getScheme());
+    docTypeValue = new String(key.getDocumentIdentifierType().getValue());
+  }
+
+  @Benchmark
+  public ServiceMetadataType jaxbKeyLookup() {
+    final ParticipantIdentifierType pId = new ParticipantIdentifierType();
+    pId.setScheme(participantScheme);
+    pId.setValue(participantValue);
+    final DocumentIdentifierType docId = new DocumentIdentifierType();
+    docId.setScheme(docTypeScheme);
+    docId.setValue(docTypeValue);
+
+    final SMPServiceMetadataKey key = new SMPServiceMetadataKey(pId, docId);
+    if (serviceMetadataMap.containsKey(key))
+      return serviceMetadataMap.get(key);
+    return null;
+  }
+
+  @Benchmark
+  public ServiceMetadataType indexLookup() {
+    return smpData.getServiceMetadata(participantScheme, participantValue, docTypeScheme, docTypeValue);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(ServiceMetadataLookupBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,122 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
+import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.peppolid.simple.process.SimpleProcessIdentifier;
+
+import eu.toop.connector.api.error.LoggingTCErrorHandler;
+
+/**
+ * Tests loading the discovery data from several shards
+ */
+public class ShardedDiscoveryTest {
+
+  private static final int PARTICIPANT_COUNT = 300;
+  private static final int SHARD_COUNT = 3;
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("discovery").toFile();
+    SyntheticDiscoveryGenerator.generate(directory, PARTICIPANT_COUNT, SHARD_COUNT);
+  }
+
+  @After
+  public void tearDown() {
+    FileOperationManager.INSTANCE.deleteDirRecursive(directory);
+  }
+
+  @Test
+  public void findsTheShards() {
+    assertEquals(SHARD_COUNT, new DiscoveryProvider(directory).getShardDirectories().size());
+  }
+
+  @Test
+  public void ignoresTheRootDataWhenThereAreShards() throws Exception {
+    //e.g. the sample data copied to the discovery directory at startup
+    final File firstShard = new DiscoveryProvider(directory).getShardDirectories().get(0);
+    for (File file : firstShard.listFiles()) {
+      Files.copy(file.toPath(), new File(directory, file.getName()).toPath());
+    }
+
+    final List<File> shardDirectories = new DiscoveryProvider(directory).getShardDirectories();
+    assertEquals(SHARD_COUNT, shardDirectories.size());
+    assertFalse(shardDirectories.contains(directory));
+
+    //without shards the root is used
+    FileOperationManager.INSTANCE.deleteDirRecursive(new File(directory, DiscoveryProvider.SHARDS_DIRECTORY));
+    assertEquals(Collections.singletonList(directory), new DiscoveryProvider(directory).getShardDirectories());
+  }
+
+  @Test
+  public void looksUpParticipantsOfAllShards() {
+    final DiscoveryProvider provider = new DiscoveryProvider(directory);
+
+    for (int i = 0; i < SHARD_COUNT; ++i) {
+      final SimpleParticipantIdentifier participant = new SimpleParticipantIdentifier(SyntheticDiscoveryGenerator.PARTICIPANT_SCHEME,
+          SyntheticDiscoveryGenerator.getParticipant(PARTICIPANT_COUNT - 1 - i));
+      assertEquals(SyntheticDiscoveryGenerator.DOCTYPES.length,
+          provider.getAllServiceGroupHrefs(participant, LoggingTCErrorHandler.INSTANCE).size());
+
+      for (String docType : SyntheticDiscoveryGenerator.DOCTYPES) {
+        assertNotNull(provider.getServiceMetadata(participant, new SimpleDocumentTypeIdentifier(SyntheticDiscoveryGenerator.DOCTYPE_SCHEME, docType),
+            new SimpleProcessIdentifier("dummy-procid", "procid-dummy"), "bdxr-transport-ebms3-as4-v1p0"));
+      }
+    }
+
+    assertNull(provider.getServiceMetadata(
+        new SimpleParticipantIdentifier(SyntheticDiscoveryGenerator.PARTICIPANT_SCHEME, SyntheticDiscoveryGenerator.getParticipant(PARTICIPANT_COUNT)),
+        new SimpleDocumentTypeIdentifier(SyntheticDiscoveryGenerator.DOCTYPE_SCHEME, SyntheticDiscoveryGenerator.DOCTYPES[0]),
+        new SimpleProcessIdentifier("dummy-procid", "procid-dummy"), "bdxr-transport-ebms3-as4-v1p0"));
+  }
+
+  @Test
+  public void queriesTheDirectoryOfAllShards() {
+    final DiscoveryProvider provider = new DiscoveryProvider(directory);
+
+    for (int i = 0; i < SHARD_COUNT; ++i) {
+      assertFalse(provider.getAllDatasetResponsesByCountry("", "REGISTERED_ORGANIZATION_TYPE",
+          SyntheticDiscoveryGenerator.getCountryCode(i), LoggingTCErrorHandler.INSTANCE).isEmpty());
+    }
+    assertTrue(provider.getAllDatasetResponsesByCountry("", "REGISTERED_ORGANIZATION_TYPE",
+        SyntheticDiscoveryGenerator.getCountryCode(SHARD_COUNT), LoggingTCErrorHandler.INSTANCE).isEmpty());
+
+    //every dp type is spread over all the shards
+    assertFalse(provider.getAllDatasetResponsesByDPType("", "REGISTERED_ORGANIZATION_TYPE", "SYN0", LoggingTCErrorHandler.INSTANCE).isEmpty());
+  }
+}
@@ -0,0 +1,225 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
+import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.peppolid.simple.process.SimpleProcessIdentifier;
+import com.helger.xsds.bdxr.smp1.DocumentIdentifierType;
+import com.helger.xsds.bdxr.smp1.ParticipantIdentifierType;
+import com.helger.xsds.bdxr.smp1.ProcessListType;
+import com.helger.xsds.bdxr.smp1.ServiceInformationType;
+import com.helger.xsds.bdxr.smp1.ServiceMetadataType;
+
+import eu.toop.connector.api.error.LoggingTCErrorHandler;
+
+/**
+ * Generates a synthetic, sharded discovery directory of a configurable size, to measure
+ * how the startup and the lookups of {@link DiscoveryProvider} scale. Each shard is a
+ * country (AA, AB, ...), each participant is registered for two EDM dataset doctypes.
+ * <pre>
+ *   SyntheticDiscoveryGenerator [participantCount] [shardCount] [outputDirectory]
+ * </pre>
+ * Without an output directory, a temporary one is used and the startup and lookup times are printed.
+ */
+public class SyntheticDiscoveryGenerator {
+
+  static final String PARTICIPANT_SCHEME = "iso6523-actorid-upis";
+  static final String DOCTYPE_SCHEME = "toop-doctypeid-qns";
+  static final String[] DOCTYPES = {
+      "RegisteredOrganization::REGISTERED_ORGANIZATION_TYPE::CONCEPT##CCCEV::toop-edm:v2.1",
+      "FinancialRatioDocument::FINANCIAL_RECORD_TYPE::UNSTRUCTURED::toop-edm:v2.1"};
+
+  /**
+   * The number of distinct dp types
+   */
+  static final int DP_TYPE_COUNT = 10;
+
+  /**
+   * @param index the participant index
+   * @return the participant id value of the participant
+   */
+  static String getParticipant(int index) {
+    return "9999:synthetic-" + index;
+  }
+
+  /**
+   * @param shard the shard index
+   * @return the country code of the shard
+   */
+  static String getCountryCode(int shard) {
+    return "" + (char) ('A' + shard / 26 % 26) + (char) ('A' + shard % 26);
+  }
+
+  /**
+   * Generate the shards into <code>discoveryDirectory/shards</code>
+   *
+   * @param discoveryDirectory the discovery directory
+   * @param participantCount   the total number of participants
+   * @param shardCount         the number of shards, participant <code>i</code> goes to shard <code>i % shardCount</code>
+   */
+  public static void generate(File discoveryDirectory, int participantCount, int shardCount) throws IOException {
+    final ProcessListType processList = loadTemplateProcessList();
+
+    for (int shard = 0; shard < shardCount; ++shard) {
+      final String countryCode = getCountryCode(shard);
+      final File shardDirectory = new File(discoveryDirectory, DiscoveryProvider.SHARDS_DIRECTORY + "/" + countryCode);
+      shardDirectory.mkdirs();
+
+      final StringBuilder directory = startDirectory();
+
+      final LinkedHashMap<ParticipantIdentifierType, LinkedHashMap<String, String>> hrefsMap = new LinkedHashMap<>();
+      final LinkedHashMap<SMPServiceMetadataKey, ServiceMetadataType> serviceMetadataMap = new LinkedHashMap<>();
+
+      for (int i = shard; i < participantCount; i += shardCount) {
+        final String participant = getParticipant(i);
+        appendMatch(directory, i, countryCode);
+
+        final ParticipantIdentifierType pId = new ParticipantIdentifierType();
+        pId.setScheme(PARTICIPANT_SCHEME);
+        pId.setValue(participant);
+        final LinkedHashMap<String, String> hrefs = new LinkedHashMap<>();
+
+        for (String docType : DOCTYPES) {
+          final String href = "http://smp.synthetic/" + PARTICIPANT_SCHEME + "::" + participant + "/services/" + DOCTYPE_SCHEME + "::" + docType;
+          hrefs.put(href, "http://smp.synthetic/" + URLEncoder.encode(PARTICIPANT_SCHEME + "::" + participant, "UTF-8") +
+              "/services/" + URLEncoder.encode(DOCTYPE_SCHEME + "::" + docType, "UTF-8"));
+
+          final DocumentIdentifierType docId = new DocumentIdentifierType();
+          docId.setScheme(DOCTYPE_SCHEME);
+          docId.setValue(docType);
+          final ServiceInformationType serviceInformation = new ServiceInformationType();
+          serviceInformation.setParticipantIdentifier(pId);
+          serviceInformation.setDocumentIdentifier(docId);
+          serviceInformation.setProcessList(processList);
+          final ServiceMetadataType serviceMetadata = new ServiceMetadataType();
+          serviceMetadata.setServiceInformation(serviceInformation);
+          serviceMetadataMap.put(new SMPServiceMetadataKey(pId, docId), serviceMetadata);
+        }
+
+        hrefsMap.put(pId, hrefs);
+      }
+      directory.append("</resultlist>\n");
+
+      Files.write(new File(shardDirectory, DiscoveryProvider.DIRECTORY_FILE).toPath(), directory.toString().getBytes(StandardCharsets.UTF_8));
+      try (OutputStream out = new FileOutputStream(new File(shardDirectory, DiscoveryProvider.SNAPSHOT_FILE))) {
+        new SMPDiscoveryData(hrefsMap, serviceMetadataMap).writeSnapshot(out);
+      }
+    }
+  }
+
+  /**
+   * Generate a single directory content with participants from several countries
+   *
+   * @param participantCount the number of participants
+   * @param countryCount     the number of countries, participant <code>i</code> is in country <code>i % countryCount</code>
+   * @return the directory content
+   */
+  public static byte[] generateDirectory(int participantCount, int countryCount) {
+    final StringBuilder directory = startDirectory();
+    for (int i = 0; i < participantCount; ++i) {
+      appendMatch(directory, i, getCountryCode(i % countryCount));
+    }
+    directory.append("</resultlist>\n");
+    return directory.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static StringBuilder startDirectory() {
+    final StringBuilder directory = new StringBuilder();
+    directory.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<resultlist version=\"1.0\" total-result-count=\"1\" used-result-count=\"1\"")
+        .append(" result-page-index=\"0\" result-page-count=\"100\" first-result-index=\"0\" last-result-index=\"0\"")
+        .append(" creation-dt=\"2020-11-09T12:39:41.571\">\n");
+    return directory;
+  }
+
+  private static void appendMatch(StringBuilder directory, int index, String countryCode) {
+    directory.append("  <match>\n    <participantID scheme=\"").append(PARTICIPANT_SCHEME).append("\">").append(getParticipant(index)).append("</participantID>\n");
+    for (String docType : DOCTYPES) {
+      directory.append("    <docTypeID scheme=\"").append(DOCTYPE_SCHEME).append("\">").append(docType).append("</docTypeID>\n");
+    }
+    directory.append("    <entity>\n      <name>Synthetic ").append(index).append("</name>\n")
+        .append("      <countryCode>").append(countryCode).append("</countryCode>\n")
+        .append("      <identifier scheme=\"DataProviderIdentifierType\">SYN").append(index % DP_TYPE_COUNT).append("</identifier>\n")
+        .append("      <identifier scheme=\"DataSubjectIdentifierScheme\">VAT").append(index).append("</identifier>\n")
+        .append("    </entity>\n  </match>\n");
+  }
+
+  private static ProcessListType loadTemplateProcessList() {
+    try (InputStream hrefs = SyntheticDiscoveryGenerator.class.getResourceAsStream("/discovery/endpointhrefs.yml");
+         InputStream smd = SyntheticDiscoveryGenerator.class.getResourceAsStream("/discovery/serviceMetadataTypes.yml")) {
+      return SMPDiscoveryData.readYaml(hrefs, smd).getServiceMetadataMap().values().iterator().next()
+          .getServiceInformation().getProcessList();
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex.getMessage(), ex);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int participantCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    final int shardCount = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+    final boolean temporary = args.length < 3;
+    final File directory = temporary ? Files.createTempDirectory("synthetic-discovery").toFile() : new File(args[2]);
+
+    long start = System.nanoTime();
+    generate(directory, participantCount, shardCount);
+    System.out.println("Generated " + participantCount + " participants in " + shardCount + " shards into " + directory +
+        " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    if (!temporary)
+      return;
+
+    try {
+      start = System.nanoTime();
+      final DiscoveryProvider provider = new DiscoveryProvider(directory);
+      System.out.println("Startup: " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+      final Random random = new Random(42);
+      final int lookups = 1_000_000;
+      int found = 0;
+      start = System.nanoTime();
+      for (int i = 0; i < lookups; ++i) {
+        final String participant = getParticipant(random.nextInt(participantCount));
+        if (provider.getServiceMetadata(new SimpleParticipantIdentifier(PARTICIPANT_SCHEME, participant),
+            new SimpleDocumentTypeIdentifier(DOCTYPE_SCHEME, DOCTYPES[i & 1]), new SimpleProcessIdentifier("dummy-procid", "procid-dummy"),
+            "bdxr-transport-ebms3-as4-v1p0") != null)
+          ++found;
+      }
+      System.out.println(lookups + " service metadata lookups (" + found + " found): " + (System.nanoTime() - start) / lookups + " ns per lookup");
+
+      start = System.nanoTime();
+      for (int i = 0; i < shardCount; ++i) {
+        provider.getAllDatasetResponsesByCountry("", "REGISTERED_ORGANIZATION_TYPE", getCountryCode(i), LoggingTCErrorHandler.INSTANCE);
+      }
+      System.out.println(shardCount + " DSD queries by country: " + (System.nanoTime() - start) / 1_000 / shardCount + " µs per query");
+    } finally {
+      FileOperationManager.INSTANCE.deleteDirRecursive(directory);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.mock;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.helger.commons.mime.CMimeType;
+import com.helger.commons.string.StringHelper;
+
+import eu.toop.connector.api.rest.TCOutgoingMessage;
+import eu.toop.connector.api.rest.TCOutgoingMetadata;
+import eu.toop.connector.api.rest.TCPayload;
+import eu.toop.connector.api.rest.TCRestJAXB;
+
+/**
+ * Tests writing an outgoing message with streamed attachments
+ */
+public class TCMessageEntityTest {
+
+  @Test
+  public void writesTheSameMessageAsJAXB() throws Exception {
+    final TCOutgoingMessage message = new TCOutgoingMessage();
+    final TCOutgoingMetadata metadata = new TCOutgoingMetadata();
+    metadata.setSenderID(TCRestJAXB.createTCID("iso6523-actorid-upis", "9999:elonia"));
+    metadata.setReceiverID(TCRestJAXB.createTCID("iso6523-actorid-upis", "9999:freedonia"));
+    message.setMetadata(metadata);
+
+    final TCPayload head = new TCPayload();
+    head.setContentID("head@elonia");
+    head.setMimeType(CMimeType.APPLICATION_XML.getAsString());
+    head.setValue("<response/>".getBytes(StandardCharsets.UTF_8));
+    message.addPayload(head);
+
+    //sizes with all the base64 padding variants
+    final byte[][] contents = new byte[3][];
+    final Random random = new Random(7);
+    for (int i = 0; i < contents.length; ++i) {
+      contents[i] = new byte[100_000 + i];
+      random.nextBytes(contents[i]);
+    }
+
+    final AttachmentStore store = new AttachmentStore();
+    final TCMessageEntity entity = new TCMessageEntity(message, Arrays.asList(
+        store.get("a@elonia", contents[0]),
+        ResponseAttachment.of("b@elonia", CMimeType.APPLICATION_OCTET_STREAM, contents[1]),
+        store.get("c@elonia", contents[2])));
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    entity.writeTo(out);
+    final byte[] written = out.toByteArray();
+    assertEquals(entity.getContentLength(), written.length);
+
+    final TCOutgoingMessage read = TCRestJAXB.outgoingMessage().read(written);
+    assertEquals(4, read.getPayload().size());
+    assertArrayEquals(head.getValue(), read.getPayload().get(0).getValue());
+    for (int i = 0; i < contents.length; ++i) {
+      assertArrayEquals(contents[i], read.getPayload().get(i + 1).getValue());
+    }
+    assertEquals("b@elonia", read.getPayload().get(2).getContentID());
+
+    //the log form doesn't contain the attachments
+    assertTrue(entity.getSkeleton().contains("[100001 bytes]"));
+    assertFalse(entity.getSkeleton().length() > 10_000);
+
+    //the journal form of the attachments, recorded once
+    assertEquals(3, entity.getAttachmentDigests().size());
+    assertEquals("100001:" + StringHelper.getHexEncoded(MessageDigest.getInstance("SHA-256").digest(contents[1])),
+        entity.getAttachmentDigests().get(1));
+    assertTrue(entity.markRecorded());
+    assertFalse(entity.markRecorded());
+
+    //repeatable
+    final ByteArrayOutputStream again = new ByteArrayOutputStream();
+    entity.writeTo(again);
+    assertArrayEquals(written, again.toByteArray());
+  }
+
+  @Test
+  public void streamsLargeAttachmentsWithBoundedHeap() throws Exception {
+    final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean &&
+        ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported());
+    final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+
+    final int size = 100 * 1024 * 1024;
+    final File file = File.createTempFile("large-attachment", ".bin");
+    try {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(size);
+      }
+
+      final TCOutgoingMessage message = new TCOutgoingMessage();
+      message.setMetadata(new TCOutgoingMetadata());
+
+      final long threadId = Thread.currentThread().getId();
+      final long allocatedBefore = allocationBean.getThreadAllocatedBytes(threadId);
+
+      final ResponseAttachment attachment = ResponseAttachment.map("large@elonia", CMimeType.APPLICATION_OCTET_STREAM, file);
+      final TCMessageEntity entity = new TCMessageEntity(message, Arrays.asList(attachment));
+      final long[] written = new long[1];
+      entity.writeTo(new OutputStream() {
+        @Override
+        public void write(int b) {
+          written[0]++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+          written[0] += len;
+        }
+      });
+
+      final long allocated = allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+      assertNotNull(entity.getSkeleton());
+      assertEquals(entity.getContentLength(), written[0]);
+      assertTrue(written[0] > size);
+      //neither the attachment (100 MB) nor its base64 form (133 MB) is ever on the heap
+      assertTrue("Allocated " + allocated + " bytes", allocated < 8 * 1024 * 1024);
+    } finally {
+      file.delete();
+    }
+  }
+}
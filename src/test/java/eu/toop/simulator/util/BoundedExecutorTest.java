@@ -0,0 +1,103 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests the bounded worker pool
+ */
+public class BoundedExecutorTest {
+
+  @Test
+  public void rejectsWhenSaturated() throws Exception {
+    final BoundedExecutor executor = new BoundedExecutor("test", 2, 3);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch started = new CountDownLatch(2);
+    try {
+      int accepted = 0;
+      for (int i = 0; i < 10; ++i) {
+        if (executor.trySubmit(() -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }))
+          ++accepted;
+        //let the first tasks reach the workers, so that the queue holds exactly the rest
+        if (i == 1)
+          assertTrue(started.await(10, TimeUnit.SECONDS));
+      }
+
+      assertEquals(5, accepted);
+      assertEquals(5, executor.getRejectedCount());
+      assertEquals(3, executor.getQueueDepth());
+    } finally {
+      release.countDown();
+      assertTrue(executor.shutdown(10, TimeUnit.SECONDS));
+    }
+    assertEquals(5, executor.getCompletedCount());
+  }
+
+  @Test
+  public void drainsTheQueueAtShutdown() {
+    final BoundedExecutor executor = new BoundedExecutor("test", 1, 100);
+    final AtomicInteger done = new AtomicInteger();
+    for (int i = 0; i < 50; ++i) {
+      assertTrue(executor.trySubmit(() -> {
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        done.incrementAndGet();
+      }));
+    }
+
+    assertTrue(executor.shutdown(30, TimeUnit.SECONDS));
+    assertEquals(50, done.get());
+    assertFalse(executor.trySubmit(done::incrementAndGet));
+    assertEquals(50, done.get());
+  }
+
+  @Test
+  public void countsFailures() {
+    final BoundedExecutor executor = new BoundedExecutor("test", 1, 10);
+    executor.trySubmit(() -> {
+      throw new IllegalStateException("expected");
+    });
+    executor.trySubmit(() -> {
+    });
+    assertTrue(executor.shutdown(10, TimeUnit.SECONDS));
+
+    assertEquals(1, executor.getFailedCount());
+    assertEquals(1, executor.getCompletedCount());
+    assertEquals(2, executor.getSubmittedCount());
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.StreamHelper;
+
+/**
+ * Tests the pooled chunks of the request bodies
+ */
+public class ChunkedBodyTest {
+
+  private static byte[] randomBytes(int length) {
+    final byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static ChunkedBody readAll(BufferPool pool, byte[] bytes) throws Exception {
+    final ChunkedBody body = new ChunkedBody(pool);
+    try (InputStream inputStream = new ByteArrayInputStream(bytes)) {
+      while (body.readFrom(inputStream) >= 0) {
+        //read until the end
+      }
+    }
+    return body;
+  }
+
+  @Test
+  public void keepsTheBytesAcrossChunks() throws Exception {
+    final BufferPool pool = new BufferPool(64, 10);
+    for (final int length : new int[]{0, 1, 63, 64, 65, 1000}) {
+      final byte[] bytes = randomBytes(length);
+      final ChunkedBody body = readAll(pool, bytes);
+      assertEquals(length, body.size());
+      assertArrayEquals(bytes, body.toByteArray());
+      assertArrayEquals(bytes, StreamHelper.getAllBytes(body.openStream()));
+      body.release();
+    }
+  }
+
+  @Test
+  public void reusesTheReleasedChunks() throws Exception {
+    final BufferPool pool = new BufferPool(64, 100);
+    final ChunkedBody first = readAll(pool, randomBytes(640));
+    final long allocated = pool.getAllocatedCount();
+    first.release();
+    //a second release must not put the chunks into the pool twice
+    first.release();
+    assertEquals(allocated, pool.getPooledCount());
+
+    final byte[] bytes = randomBytes(600);
+    final ChunkedBody second = readAll(pool, bytes);
+    assertEquals(allocated, pool.getAllocatedCount());
+    assertArrayEquals(bytes, second.toByteArray());
+    second.release();
+  }
+
+  @Test
+  public void keepsAtMostMaxPooled() throws Exception {
+    final BufferPool pool = new BufferPool(64, 3);
+    readAll(pool, randomBytes(640)).release();
+    assertEquals(3, pool.getPooledCount());
+  }
+}
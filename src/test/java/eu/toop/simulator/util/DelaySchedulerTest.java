@@ -0,0 +1,98 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the scheduler of the delayed tasks
+ */
+public class DelaySchedulerTest {
+
+  @Test
+  public void runsTheTasksAfterTheirDelay() throws Exception {
+    final DelayScheduler scheduler = new DelayScheduler("test", 2, 10);
+    try {
+      final long start = System.nanoTime();
+      final CompletableFuture<Long> late = scheduler.schedule(System::nanoTime, 200);
+      final CompletableFuture<Long> early = scheduler.schedule(System::nanoTime, 50);
+      final CompletableFuture<Long> now = scheduler.schedule(System::nanoTime, 0);
+
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(late.get(10, TimeUnit.SECONDS) - start) >= 200);
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(early.get(10, TimeUnit.SECONDS) - start) >= 50);
+      assertTrue(early.get() < late.get());
+      assertTrue(now.get(10, TimeUnit.SECONDS) < early.get());
+    } finally {
+      scheduler.shutdown(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void manyWaitingTasksHoldNoThreads() throws Exception {
+    final DelayScheduler scheduler = new DelayScheduler("test", 1, 10);
+    try {
+      for (int i = 0; i < 10_000; ++i)
+        scheduler.schedule(() -> null, 60_000);
+      assertEquals(10_000, scheduler.getWaitingCount());
+      assertEquals(0, scheduler.getWorkers().getActiveCount());
+    } finally {
+      scheduler.shutdown(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void failsTheWaitingTasksAtShutdown() throws Exception {
+    final DelayScheduler scheduler = new DelayScheduler("test", 1, 10);
+    final CompletableFuture<Object> future = scheduler.schedule(() -> "late", 60_000);
+    assertTrue(scheduler.shutdown(10, TimeUnit.SECONDS));
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof RejectedExecutionException);
+    }
+  }
+
+  @Test
+  public void passesTheExceptionOfTheTask() throws Exception {
+    final DelayScheduler scheduler = new DelayScheduler("test", 1, 10);
+    try {
+      final CompletableFuture<Object> future = scheduler.schedule(() -> {
+        throw new IllegalStateException("boom");
+      }, 10);
+      try {
+        future.get(10, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException ex) {
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+      }
+    } finally {
+      scheduler.shutdown(10, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the latency histogram
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void estimatesPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    //90 fast, 9 medium and 1 slow latency
+    for (int i = 0; i < 90; ++i)
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(1500));
+    for (int i = 0; i < 9; ++i)
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(40));
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(70_000));
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(2, histogram.getPercentileMillis(50), 0);
+    assertEquals(50, histogram.getPercentileMillis(95), 0);
+    assertEquals(50, histogram.getPercentileMillis(99), 0);
+    assertEquals(70_000, histogram.getPercentileMillis(100), 0);
+    assertEquals(70_000, histogram.getMaxMillis(), 0);
+    assertEquals((90 * 1.5 + 9 * 40 + 70_000) / 100, histogram.getMeanMillis(), 0.001);
+
+    final long[] counts = histogram.getBucketCounts();
+    assertEquals(90, counts[1]);
+    assertEquals(1, counts[counts.length - 1]);
+  }
+
+  @Test
+  public void percentileIsCappedByTheMaximum() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(120));
+    assertEquals(120, histogram.getPercentileMillis(50), 0);
+
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentileMillis(99), 0);
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the memory-mapped message journal
+ */
+public class MessageJournalTest {
+
+  private static File createDirectory() throws IOException {
+    final File directory = Files.createTempDirectory("journal").toFile();
+    directory.deleteOnExit();
+    return directory;
+  }
+
+  private static void delete(File directory) {
+    for (File segment : MessageJournal.listSegments(directory)) {
+      segment.delete();
+    }
+    directory.delete();
+  }
+
+  private static byte[] randomBytes(int length) {
+    final byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static List<MessageJournal.Record> readAll(File directory) {
+    final List<MessageJournal.Record> records = new ArrayList<>();
+    MessageJournal.read(directory, records::add);
+    return records;
+  }
+
+  @Test
+  public void readsBackTheRecords() throws Exception {
+    final File directory = createDirectory();
+    try {
+      final MessageJournal journal = new MessageJournal(directory, 1024 * 1024, 0, 100);
+      for (int i = 0; i < 10; ++i) {
+        assertTrue(journal.record((byte) (i % 3), "message " + i, randomBytes(i * 100)));
+      }
+      journal.shutdown(10, TimeUnit.SECONDS);
+      assertEquals(10, journal.getRecordedCount());
+      assertFalse(journal.record((byte) 0, "too late", new byte[0]));
+
+      final List<MessageJournal.Record> records = readAll(directory);
+      assertEquals(10, records.size());
+      for (int i = 0; i < 10; ++i) {
+        final MessageJournal.Record record = records.get(i);
+        assertEquals(i, record.getSequence());
+        assertEquals(i % 3, record.getChannel());
+        assertEquals("message " + i, record.getMetadata());
+        assertEquals(i * 100, record.getPayloadLength());
+        assertArrayEquals(randomBytes(i * 100), record.getPayload());
+      }
+    } finally {
+      delete(directory);
+    }
+  }
+
+  @Test
+  public void rotatesTheSegments() throws Exception {
+    final File directory = createDirectory();
+    try {
+      //about 3 records per segment, at most 2 segments kept
+      final MessageJournal journal = new MessageJournal(directory, 1024, 2, 100);
+      for (int i = 0; i < 20; ++i) {
+        journal.record((byte) 1, "m" + i, randomBytes(300));
+      }
+      //larger than a segment
+      journal.record((byte) 1, "large", randomBytes(5000));
+      journal.shutdown(10, TimeUnit.SECONDS);
+
+      assertEquals(2, MessageJournal.listSegments(directory).size());
+      final List<MessageJournal.Record> records = readAll(directory);
+      final MessageJournal.Record last = records.get(records.size() - 1);
+      assertEquals(20, last.getSequence());
+      assertArrayEquals(randomBytes(5000), last.getPayload());
+      for (int i = 1; i < records.size(); ++i) {
+        assertEquals(records.get(i - 1).getSequence() + 1, records.get(i).getSequence());
+      }
+    } finally {
+      delete(directory);
+    }
+  }
+
+  @Test
+  public void continuesTheSequenceAfterARestart() throws Exception {
+    final File directory = createDirectory();
+    try {
+      MessageJournal journal = new MessageJournal(directory, 4096, 0, 100);
+      journal.record((byte) 1, "first", randomBytes(10));
+      journal.shutdown(10, TimeUnit.SECONDS);
+
+      journal = new MessageJournal(directory, 4096, 0, 100);
+      journal.record((byte) 1, "second", randomBytes(10));
+      journal.shutdown(10, TimeUnit.SECONDS);
+
+      final List<MessageJournal.Record> records = readAll(directory);
+      assertEquals(2, records.size());
+      assertEquals(2, MessageJournal.listSegments(directory).size());
+      assertEquals("second", records.get(1).getMetadata());
+      assertEquals(1, records.get(1).getSequence());
+    } finally {
+      delete(directory);
+    }
+  }
+
+  @Test
+  public void recordsFromManyThreads() throws Exception {
+    final File directory = createDirectory();
+    try {
+      final MessageJournal journal = new MessageJournal(directory, 64 * 1024, 0, 100_000);
+      final Thread[] threads = new Thread[8];
+      for (int t = 0; t < threads.length; ++t) {
+        final int thread = t;
+        threads[t] = new Thread(() -> {
+          for (int i = 0; i < 1000; ++i) {
+            journal.record((byte) thread, thread + "/" + i, randomBytes(i % 50));
+          }
+        });
+        threads[t].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      journal.shutdown(10, TimeUnit.SECONDS);
+
+      assertEquals(8000, journal.getRecordedCount() + journal.getDroppedCount());
+      assertEquals(journal.getRecordedCount(), readAll(directory).size());
+    } finally {
+      delete(directory);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.BasicResponseHandler;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests that the shared client keeps the connections alive
+ */
+public class SimulatorHttpClientTest {
+
+  @Test
+  public void reusesConnections() throws Exception {
+    final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", exchange -> {
+      clientPorts.add(exchange.getRemoteAddress().getPort());
+      try (InputStream in = exchange.getRequestBody()) {
+        while (in.read() >= 0) {
+          //consume the request
+        }
+      }
+      final byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+
+    final SimulatorHttpClient client = new SimulatorHttpClient(2, 4, 5000, 5000);
+    try {
+      final String url = "http://localhost:" + server.getAddress().getPort() + "/submit";
+      for (int i = 0; i < 10; ++i) {
+        final HttpPost post = new HttpPost(url);
+        post.setEntity(new ByteArrayEntity(("message " + i).getBytes(StandardCharsets.UTF_8)));
+        assertEquals("{}", client.execute(post, new BasicResponseHandler()));
+      }
+
+      assertEquals(1, clientPorts.size());
+      assertEquals(10, client.getRequestCount());
+      assertEquals(0, client.getFailureCount());
+      assertEquals(0, client.getPoolStats().getLeased());
+      assertEquals(1, client.getPoolStats().getAvailable());
+      assertEquals(4, client.getPoolStats().getMax());
+    } finally {
+      client.close();
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void countsFailures() {
+    final SimulatorHttpClient client = new SimulatorHttpClient(1, 1, 1000, 1000);
+    try {
+      //nothing listens on port 1
+      client.execute(new HttpPost("http://localhost:1/"), new BasicResponseHandler());
+    } catch (IOException expected) {
+      //expected
+    } finally {
+      client.close();
+    }
+    assertEquals(1, client.getRequestCount());
+    assertEquals(1, client.getFailureCount());
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.Test;
+
+/**
+ * Tests that slow uploads don't hold container threads
+ */
+public class AsyncBodyReaderTest {
+
+  private static final int SENDERS = 500;
+  private static final int CHUNK = 100;
+  private static final int ROUNDS = 5;
+  private static final int BODY_SIZE = CHUNK * (ROUNDS + 2);
+
+  /**
+   * Records the size of the bodies it receives
+   */
+  private static final class UploadServlet extends HttpServlet {
+    private final AtomicInteger started = new AtomicInteger();
+    private final Queue<Long> sizes = new ConcurrentLinkedQueue<>();
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      started.incrementAndGet();
+      AsyncBodyReader.start(req, (body, response) -> {
+        sizes.add(body.size());
+        body.release();
+        response.setStatus(HttpServletResponse.SC_OK);
+      });
+    }
+  }
+
+  @Test
+  public void slowSendersDoNotPinThreads() throws Exception {
+    final QueuedThreadPool threadPool = new QueuedThreadPool(SENDERS + 100, 8);
+    final Server server = new Server(threadPool);
+    final ServerConnector connector = new ServerConnector(server);
+    connector.setPort(0);
+    server.addConnector(connector);
+    final UploadServlet servlet = new UploadServlet();
+    final ServletContextHandler context = new ServletContextHandler();
+    final ServletHolder holder = new ServletHolder(servlet);
+    holder.setAsyncSupported(true);
+    context.addServlet(holder, "/upload");
+    server.setHandler(context);
+    server.start();
+
+    final List<Socket> sockets = new ArrayList<>(SENDERS);
+    try {
+      //the selectors and the acceptors are busy all the time
+      Thread.sleep(200);
+      final int idleBusyThreads = threadPool.getBusyThreads();
+
+      final byte[] chunk = new byte[CHUNK];
+      Arrays.fill(chunk, (byte) 'x');
+      final byte[] headers = ("POST /upload HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/octet-stream\r\n" +
+          "Content-Length: " + BODY_SIZE + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+      for (int i = 0; i < SENDERS; ++i) {
+        final Socket socket = new Socket("localhost", connector.getLocalPort());
+        socket.setSoTimeout(30_000);
+        sockets.add(socket);
+        final OutputStream outputStream = socket.getOutputStream();
+        outputStream.write(headers);
+        outputStream.write(chunk);
+        outputStream.flush();
+      }
+
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (servlet.started.get() < SENDERS && System.nanoTime() < deadline)
+        Thread.sleep(10);
+      assertEquals(SENDERS, servlet.started.get());
+
+      //all the uploads are in progress, trickle the rest of the bodies
+      int maxBusyThreads = 0;
+      for (int round = 0; round < ROUNDS + 1; ++round) {
+        for (final Socket socket : sockets) {
+          socket.getOutputStream().write(chunk);
+          socket.getOutputStream().flush();
+        }
+        if (round < ROUNDS) {
+          Thread.sleep(100);
+          maxBusyThreads = Math.max(maxBusyThreads, threadPool.getBusyThreads());
+        }
+      }
+      assertTrue("Busy threads went from " + idleBusyThreads + " to " + maxBusyThreads,
+          maxBusyThreads <= idleBusyThreads + 20);
+
+      for (final Socket socket : sockets) {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        final String statusLine = reader.readLine();
+        assertTrue(statusLine, statusLine != null && statusLine.contains(" 200"));
+      }
+      assertEquals(SENDERS, servlet.sizes.size());
+      for (final Long size : servlet.sizes)
+        assertEquals(BODY_SIZE, size.longValue());
+    } finally {
+      for (final Socket socket : sockets)
+        socket.close();
+      server.stop();
+    }
+  }
+}
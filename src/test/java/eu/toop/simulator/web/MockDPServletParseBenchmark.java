@@ -0,0 +1,114 @@
+/**
+ * This work is protected under copyrights held by the members of the
+ * TOOP Project Consortium as indicated at
+ * http://wiki.ds.unipi.gr/display/TOOP/Contributors
+ * (c) 2018-2021. All rights reserved.
+ *
+ * This work is licensed under the EUPL 1.2.
+ *
+ *  = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = = =
+ *
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL
+ * (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *         https://joinup.ec.europa.eu/software/page/eupl
+ */
+package eu.toop.simulator.web;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.mime.CMimeType;
+
+import eu.toop.connector.api.rest.ETCPayloadType;
+import eu.toop.connector.api.rest.TCIncomingMessage;
+import eu.toop.connector.api.rest.TCIncomingMetadata;
+import eu.toop.connector.api.rest.TCPayload;
+import eu.toop.connector.api.rest.TCRestJAXB;
+import eu.toop.edm.EDMRequest;
+
+/**
+ * Compares the previous handling of a /to-dp request (body to a String, parse the String,
+ * parse the payload and serialize it again for the log) with the current one (parse the
+ * body stream once, no serialization unless debug is enabled). Run with <code>-prof gc</code>
+ * to see the allocations per request:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=eu.toop.simulator.web.MockDPServletParseBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MockDPServletParseBenchmark {
+
+  private byte[] body;
+
+  @Setup
+  public void setup() throws Exception {
+    final byte[] edmRequest;
+    try (InputStream inputStream = getClass().getResourceAsStream("/sample_query_request.xml")) {
+      edmRequest = StreamHelper.getAllBytes(inputStream);
+    }
+
+    final TCIncomingMessage message = new TCIncomingMessage();
+    final TCIncomingMetadata metadata = new TCIncomingMetadata();
+    metadata.setSenderID(TCRestJAXB.createTCID("iso6523-actorid-upis", "9999:freedonia"));
+    metadata.setReceiverID(TCRestJAXB.createTCID("iso6523-actorid-upis", "9999:elonia"));
+    metadata.setDocTypeID(TCRestJAXB.createTCID("toop-doctypeid-qns", "RegisteredOrganization::REGISTERED_ORGANIZATION_TYPE::CONCEPT##CCCEV::toop-edm:v2.1"));
+    metadata.setProcessID(TCRestJAXB.createTCID("toop-procid-agreement", "urn:eu.toop.process.datarequestresponse"));
+    metadata.setPayloadType(ETCPayloadType.REQUEST);
+    message.setMetadata(metadata);
+    final TCPayload payload = new TCPayload();
+    payload.setValue(edmRequest);
+    payload.setContentID("request@freedonia");
+    payload.setMimeType(CMimeType.APPLICATION_XML.getAsString());
+    message.addPayload(payload);
+    body = TCRestJAXB.incomingMessage().getAsBytes(message);
+  }
+
+  @Benchmark
+  public void stringRoundTrip(Blackhole blackhole) {
+    final byte[] bytes = StreamHelper.getAllBytes(new NonBlockingByteArrayInputStream(body));
+    final String sIncomingMessage = new String(bytes, StandardCharsets.UTF_8);
+    blackhole.consume(sIncomingMessage);
+    final TCIncomingMessage message = TCRestJAXB.incomingMessage().read(sIncomingMessage);
+    for (final TCPayload payload : message.getPayload()) {
+      final EDMRequest edmRequest = EDMRequest.reader().read(payload.getValue());
+      blackhole.consume(edmRequest.getWriter().getAsString());
+    }
+  }
+
+  @Benchmark
+  public void streamedParse(Blackhole blackhole) {
+    final TCIncomingMessage message = MockDPServlet.readMessage(new NonBlockingByteArrayInputStream(body));
+    for (final TCPayload payload : message.getPayload())
+      blackhole.consume(MockDPServlet.readRequest(payload));
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(MockDPServletParseBenchmark.class.getSimpleName()).build()).run();
+  }
+}